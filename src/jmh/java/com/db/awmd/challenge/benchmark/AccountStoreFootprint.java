@@ -0,0 +1,63 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+
+/**
+ * Loads a repository with N accounts and reports heap used, direct memory
+ * used and how long a full collection of the loaded heap takes.
+ *
+ * ./gradlew accountsFootprint -PfootprintStore=offheap -PfootprintAccounts=100000000
+ */
+public class AccountStoreFootprint {
+
+	public static void main(String[] args) {
+		String store = args.length > 0 ? args[0] : "offheap";
+		long count = args.length > 1 ? Long.parseLong(args[1]) : 10_000_000L;
+
+		long start = System.nanoTime();
+		AccountsRepository repository = "memory".equals(store) ? new AccountsRepositoryInMemory()
+				: new AccountsRepositoryOffHeap(count, 16);
+		for (long i = 0; i < count; i++) {
+			repository.createAccount(new Account("Id-" + i, i, 2));
+		}
+		long loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		long gcMillisBefore = totalGcMillis();
+		long gcStart = System.nanoTime();
+		System.gc();
+		long fullGcMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - gcStart);
+		long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+		System.out.printf("store=%s accounts=%d load=%dms%n", store, count, loadMillis);
+		System.out.printf("heap used=%dMB (%d bytes/account)%n", heapUsed >> 20, heapUsed / Math.max(1, count));
+		System.out.printf("direct used=%dMB%n", directUsed() >> 20);
+		System.out.printf("full gc=%dms (collector reported %dms)%n", fullGcMillis, totalGcMillis() - gcMillisBefore);
+		// Keep the repository reachable through the collection above.
+		System.out.println(repository.getAccount("Id-0"));
+	}
+
+	private static long totalGcMillis() {
+		long total = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			total += Math.max(0, collector.getCollectionTime());
+		}
+		return total;
+	}
+
+	private static long directUsed() {
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if ("direct".equals(pool.getName())) {
+				return pool.getMemoryUsed();
+			}
+		}
+		return 0;
+	}
+}
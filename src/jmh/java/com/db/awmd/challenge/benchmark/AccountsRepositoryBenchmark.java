@@ -0,0 +1,78 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.loadgen.ZipfianGenerator;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountsRepositoryBenchmark {
+
+	// Large enough that debits never run an account dry during a run.
+	static final long INITIAL_UNITS = Long.MAX_VALUE / 4;
+
+	@Param({ "1000", "1000000" })
+	public int accounts;
+
+	@Param({ "0", "0.99" })
+	public double skew;
+
+	private AccountsRepositoryInMemory repository;
+
+	private Account[] book;
+
+	private ZipfianGenerator generator;
+
+	private final AtomicLong nextNewAccount = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void createBook() {
+		this.repository = new AccountsRepositoryInMemory();
+		this.book = new Account[this.accounts];
+		for (int i = 0; i < this.accounts; i++) {
+			this.book[i] = new Account("Id-" + i, INITIAL_UNITS, 2);
+			this.repository.createAccount(this.book[i]);
+		}
+		this.generator = new ZipfianGenerator(this.accounts, this.skew);
+	}
+
+	@Benchmark
+	public void createAccount() {
+		this.repository.createAccount(new Account("New-" + this.nextNewAccount.incrementAndGet(), 0, 0));
+	}
+
+	@Benchmark
+	public Account getAccount() {
+		return this.repository.getAccount(this.book[this.generator.next()].getAccountId());
+	}
+
+	@Benchmark
+	public Account debitAccount() {
+		return this.repository.debitAccount(this.book[this.generator.next()], 1, 2);
+	}
+
+	@Benchmark
+	public Account creditAccount() {
+		return this.repository.creditAccount(this.book[this.generator.next()], 1, 2);
+	}
+}
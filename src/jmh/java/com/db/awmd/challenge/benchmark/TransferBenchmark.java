@@ -0,0 +1,153 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.loadgen.ZipfianGenerator;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.ClusterClient;
+import com.db.awmd.challenge.service.CrossPartitionTransfers;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import com.db.awmd.challenge.service.MonitorTransferEngine;
+import com.db.awmd.challenge.service.NotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.OptimisticTransferEngine;
+import com.db.awmd.challenge.service.PartitionMap;
+import com.db.awmd.challenge.service.RequestLogSampler;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+import com.db.awmd.challenge.service.StripedAccountLockManager;
+import com.db.awmd.challenge.service.StripedLockTransferEngine;
+import com.db.awmd.challenge.service.TransactionHistory;
+import com.db.awmd.challenge.service.TransferEngine;
+import com.db.awmd.challenge.service.TransferMetrics;
+
+/**
+ * End to end {@link AccountsService#transferMoney} including validation, the
+ * selected engine and notification hand-off. Notifications go to a no-op
+ * service with a drop-newest queue so delivery never throttles the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferBenchmark {
+
+	@Param({ "monitor", "striped", "sharded", "optimistic" })
+	public String engine;
+
+	@Param({ "16", "100000" })
+	public int accounts;
+
+	@Param({ "0", "0.99" })
+	public double skew;
+
+	@Param({ "ALL", "SAMPLED" })
+	public String requestLog;
+
+	// Per-account history depth, 0 records nothing
+	@Param({ "0", "32" })
+	public int historyDepth;
+
+	private static final String EMPTY_ACCOUNT = "Empty";
+
+	private AccountsService accountsService;
+
+	private NotificationDispatcher notificationDispatcher;
+
+	private TransferEngine transferEngine;
+
+	private String[] accountIds;
+
+	private ZipfianGenerator generator;
+
+	private final BigDecimal amount = new BigDecimal("0.01");
+
+	@Setup(Level.Trial)
+	public void createService() {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		NotificationService notificationService = (account, description) -> {
+		};
+		this.notificationDispatcher = new NotificationDispatcher(notificationService, 1024,
+				NotificationDispatcher.OverflowPolicy.DROP_NEWEST, 256);
+		TransactionHistory history = new TransactionHistory(this.historyDepth, "", 0);
+		TransferMetrics metrics = new TransferMetrics(0);
+		this.transferEngine = createEngine(repository, metrics, history);
+		this.accountsService = new AccountsService(repository, notificationService, this.notificationDispatcher,
+				this.transferEngine, new IdempotencyCache(1000, 60), metrics,
+				new RequestLogSampler(RequestLogSampler.Mode.valueOf(this.requestLog), 100), history,
+				new CrossPartitionTransfers(repository, this.transferEngine, history, this.notificationDispatcher,
+						new PartitionMap("", "", 0), new ClusterClient(1000, 5000), 1000),
+				1000);
+		this.accountIds = new String[this.accounts];
+		for (int i = 0; i < this.accounts; i++) {
+			this.accountIds[i] = "Id-" + i;
+			repository.createAccount(new Account(this.accountIds[i], AccountsRepositoryBenchmark.INITIAL_UNITS, 2));
+		}
+		repository.createAccount(new Account(EMPTY_ACCOUNT, 0, 0));
+		this.generator = new ZipfianGenerator(this.accounts, this.skew);
+	}
+
+	private TransferEngine createEngine(AccountsRepositoryInMemory repository, TransferMetrics metrics,
+			TransactionHistory history) {
+		switch (this.engine) {
+		case "monitor":
+			return new MonitorTransferEngine(repository, metrics, history);
+		case "striped":
+			return new StripedLockTransferEngine(repository, new StripedAccountLockManager(1024, 0), metrics,
+					history);
+		case "sharded":
+			return new ShardedTransferEngine(repository, 4, 1024, metrics, history);
+		case "optimistic":
+			return new OptimisticTransferEngine(repository, 0, metrics, history);
+		default:
+			throw new IllegalArgumentException("Unknown engine " + this.engine);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdown() {
+		this.notificationDispatcher.shutdown();
+		if (this.transferEngine instanceof ShardedTransferEngine) {
+			((ShardedTransferEngine) this.transferEngine).shutdown();
+		}
+	}
+
+	@Benchmark
+	public boolean transferMoney() {
+		int from = this.generator.next();
+		int to = this.generator.nextExcluding(from);
+		return this.accountsService.transferMoney(
+				new BalanceTransferRequest(this.accountIds[from], this.accountIds[to], this.amount));
+	}
+
+	// The expected failure path: validation, a rejected debit and the business exception
+	@Benchmark
+	public boolean transferMoneyInsufficient() {
+		try {
+			return this.accountsService.transferMoney(
+					new BalanceTransferRequest(EMPTY_ACCOUNT, this.accountIds[this.generator.next()], this.amount));
+		} catch (InsufficientAmountException iae) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.db.awmd.challenge.loadgen;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.web.AccountsController;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Posts to {@link AccountsController} over keep-alive HTTP/1.1 connections.
+ * Every response body is read to the end so the connection goes back to the
+ * JDK's pool; set {@code http.maxConnections} to at least the number of
+ * threads or connections beyond it are closed after each request.
+ *
+ * Given the comma-separated urls of a cluster's nodes, each sending thread
+ * sticks to one node and the nodes relay requests for accounts they do not
+ * own. Accounts are imported into every node, which keeps its own share, and
+ * the total is summed over every node's export.
+ */
+public class HttpTransferDriver implements TransferDriver {
+
+	private final List<URL> transferUrls = new ArrayList<>();
+
+	private final List<URL> importUrls = new ArrayList<>();
+
+	private final List<URL> exportUrls = new ArrayList<>();
+
+	private final AtomicInteger threads = new AtomicInteger();
+
+	private final ThreadLocal<URL> threadTransferUrl = ThreadLocal
+			.withInitial(() -> this.transferUrls.get(this.threads.getAndIncrement() % this.transferUrls.size()));
+
+	private final ObjectWriter requestWriter;
+
+	private final ObjectReader accountReader;
+
+	public HttpTransferDriver(String baseUrls, ObjectMapper objectMapper) throws IOException {
+		for (String baseUrl : baseUrls.split(",")) {
+			String accounts = baseUrl.trim().replaceAll("/+$", "") + "/v1/accounts";
+			this.transferUrls.add(new URL(accounts + "/transferMoney"));
+			this.importUrls.add(new URL(accounts + "/import"));
+			this.exportUrls.add(new URL(accounts + "/export"));
+		}
+		this.requestWriter = objectMapper.writerFor(BalanceTransferRequest.class);
+		this.accountReader = objectMapper.readerFor(Account.class);
+	}
+
+	@Override
+	public void createAccounts(Collection<String> accountIds, BigDecimal balance) throws IOException {
+		for (URL importUrl : this.importUrls) {
+			createAccounts(importUrl, accountIds, balance);
+		}
+	}
+
+	private static void createAccounts(URL importUrl, Collection<String> accountIds, BigDecimal balance)
+			throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) importUrl.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", AccountsController.CSV_VALUE);
+		connection.setDoOutput(true);
+		connection.setChunkedStreamingMode(64 * 1024);
+		try (Writer body = new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8)) {
+			for (String accountId : accountIds) {
+				body.write(accountId);
+				body.write(',');
+				body.write(balance.toPlainString());
+				body.write('\n');
+			}
+		}
+		int status = connection.getResponseCode();
+		drain(connection, status);
+		if (status != 200) {
+			throw new IOException("Account import answered " + status);
+		}
+	}
+
+	@Override
+	public Outcome transfer(BalanceTransferRequest request) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) this.threadTransferUrl.get().openConnection();
+			connection.setRequestMethod("POST");
+			connection.setRequestProperty("Content-Type", "application/json");
+			connection.setDoOutput(true);
+			byte[] body = this.requestWriter.writeValueAsBytes(request);
+			connection.setFixedLengthStreamingMode(body.length);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(body);
+			}
+			int status = connection.getResponseCode();
+			String message = drain(connection, status);
+			switch (status) {
+			case 202:
+				return Outcome.ACCEPTED;
+			case 400:
+				return message.contains("sufficent balance") ? Outcome.INSUFFICIENT_FUNDS : Outcome.INVALID_ACCOUNT;
+			case 429:
+				return Outcome.REJECTED;
+			case 503:
+				return Outcome.UNAVAILABLE;
+			default:
+				return Outcome.ERROR;
+			}
+		} catch (IOException ioe) {
+			return Outcome.ERROR;
+		}
+	}
+
+	@Override
+	public BigDecimal totalBalance() throws IOException {
+		BigDecimal total = BigDecimal.ZERO;
+		for (URL exportUrl : this.exportUrls) {
+			total = total.add(totalBalance(exportUrl));
+		}
+		return total;
+	}
+
+	private BigDecimal totalBalance(URL exportUrl) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) exportUrl.openConnection();
+		if (connection.getResponseCode() != 200) {
+			drain(connection, connection.getResponseCode());
+			throw new IOException("Account export answered " + connection.getResponseCode());
+		}
+		BigDecimal total = BigDecimal.ZERO;
+		try (BufferedReader lines = new BufferedReader(
+				new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = lines.readLine()) != null) {
+				if (!line.isEmpty()) {
+					Account account = this.accountReader.readValue(line);
+					total = total.add(account.getBalance());
+				}
+			}
+		}
+		return total;
+	}
+
+	// Reads the whole body, which lets the connection be reused
+	private static String drain(HttpURLConnection connection, int status) throws IOException {
+		InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		if (in == null) {
+			return "";
+		}
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (InputStream stream = in) {
+			byte[] buffer = new byte[1024];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				body.write(buffer, 0, read);
+			}
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
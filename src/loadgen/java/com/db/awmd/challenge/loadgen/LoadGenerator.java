@@ -0,0 +1,331 @@
+package com.db.awmd.challenge.loadgen;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.db.awmd.challenge.DevChallengeApplication;
+import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.domain.LatencySummary;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.LatencyHistogram;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Closed-loop load generator: every thread sends its next transfer as soon as
+ * the previous one is answered, and the report gives throughput, client side
+ * latency, outcome counts and whether the book still holds the money it
+ * started with.
+ *
+ * A synthetic run creates {@code accounts} accounts and draws both sides of
+ * each transfer from a Zipfian distribution; a share of the requests is for
+ * more money than exists, and another share names the same account twice.
+ * Each thread has its own seeded {@link Random} and quota, so a thread's
+ * requests are the same on every run. A run can be recorded as a trace and
+ * replayed; with one thread a replay repeats the exact order.
+ *
+ * {@code ./gradlew loadgen -PloadgenArgs="--target=http --threads=16"}
+ */
+public class LoadGenerator {
+
+	private static final String ACCOUNT_PREFIX = "LG-";
+
+	private final LoadGeneratorConfig config;
+
+	private final TransferDriver driver;
+
+	private final ObjectReader requestReader;
+
+	private final ObjectWriter requestWriter;
+
+	public LoadGenerator(LoadGeneratorConfig config, TransferDriver driver, ObjectMapper objectMapper) {
+		this.config = config;
+		this.driver = driver;
+		this.requestReader = objectMapper.readerFor(BalanceTransferRequest.class);
+		this.requestWriter = objectMapper.writerFor(BalanceTransferRequest.class);
+	}
+
+	public LoadReport run() throws IOException, InterruptedException {
+		boolean replay = this.config.getMode() == LoadGeneratorConfig.Mode.REPLAY;
+		List<String> accountIds = replay ? traceAccountIds() : syntheticAccountIds();
+		this.driver.createAccounts(accountIds, this.config.getInitialBalance());
+		BigDecimal totalBefore = this.driver.totalBalance();
+
+		try (Writer recorder = this.config.getRecord() == null ? null
+				: Files.newBufferedWriter(new File(this.config.getRecord()).toPath(), StandardCharsets.UTF_8)) {
+			Phase measured;
+			if (replay) {
+				try (BufferedReader trace = Files.newBufferedReader(new File(this.config.getTrace()).toPath(),
+						StandardCharsets.UTF_8)) {
+					RequestSource shared = new TraceSource(trace);
+					RequestSource[] sources = new RequestSource[this.config.getThreads()];
+					Arrays.fill(sources, shared);
+					measured = runPhase(sources, null);
+				}
+			} else {
+				String[] ids = accountIds.toArray(new String[0]);
+				BigDecimal unaffordable = totalBefore.add(this.config.getInitialBalance()).add(BigDecimal.ONE);
+				ZipfianGenerator zipf = new ZipfianGenerator(ids.length, this.config.getSkew());
+				Random[] randoms = new Random[this.config.getThreads()];
+				for (int i = 0; i < randoms.length; i++) {
+					randoms[i] = new Random(this.config.getSeed() + i);
+				}
+				runPhase(syntheticSources(this.config.getWarmupRequests(), ids, zipf, randoms, unaffordable), recorder);
+				measured = runPhase(syntheticSources(this.config.getRequests(), ids, zipf, randoms, unaffordable),
+						recorder);
+			}
+			BigDecimal totalAfter = this.driver.totalBalance();
+			return new LoadReport(this.config.getTarget().name(), this.config.getThreads(), measured.requests,
+					measured.nanos / 1e9, measured.outcomes, measured.latency, totalBefore, totalAfter);
+		}
+	}
+
+	private List<String> syntheticAccountIds() {
+		List<String> ids = new ArrayList<>(this.config.getAccounts());
+		for (int i = 0; i < this.config.getAccounts(); i++) {
+			ids.add(ACCOUNT_PREFIX + i);
+		}
+		return ids;
+	}
+
+	// Every id named by the trace, in order of first appearance
+	private List<String> traceAccountIds() throws IOException {
+		Set<String> ids = new LinkedHashSet<>();
+		try (BufferedReader trace = Files.newBufferedReader(new File(this.config.getTrace()).toPath(),
+				StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = trace.readLine()) != null) {
+				if (!line.trim().isEmpty()) {
+					BalanceTransferRequest request = this.requestReader.readValue(line);
+					ids.add(request.getAccountFromId());
+					ids.add(request.getAccountToId());
+				}
+			}
+		}
+		return new ArrayList<>(ids);
+	}
+
+	private RequestSource[] syntheticSources(long requests, String[] ids, ZipfianGenerator zipf, Random[] randoms,
+			BigDecimal unaffordable) {
+		RequestSource[] sources = new RequestSource[randoms.length];
+		for (int i = 0; i < sources.length; i++) {
+			// The first requests % threads threads send one extra
+			long quota = requests / sources.length + (i < requests % sources.length ? 1 : 0);
+			sources[i] = new SyntheticSource(quota, ids, zipf, randoms[i], unaffordable);
+		}
+		return sources;
+	}
+
+	private Phase runPhase(RequestSource[] sources, Writer recorder) throws InterruptedException {
+		LatencyHistogram histogram = new LatencyHistogram();
+		LongAdder[] counts = new LongAdder[TransferDriver.Outcome.values().length];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = new LongAdder();
+		}
+		Thread[] workers = new Thread[sources.length];
+		Throwable[] failure = new Throwable[1];
+		for (int i = 0; i < workers.length; i++) {
+			RequestSource source = sources[i];
+			workers[i] = new Thread(() -> {
+				BalanceTransferRequest request;
+				while ((request = source.next()) != null) {
+					long start = System.nanoTime();
+					TransferDriver.Outcome outcome = this.driver.transfer(request);
+					histogram.record(System.nanoTime() - start);
+					counts[outcome.ordinal()].increment();
+					if (recorder != null) {
+						record(recorder, request);
+					}
+				}
+			}, "loadgen-" + i);
+			workers[i].setUncaughtExceptionHandler((thread, e) -> failure[0] = e);
+		}
+		long start = System.nanoTime();
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long nanos = System.nanoTime() - start;
+		if (failure[0] != null) {
+			throw new IllegalStateException("Load generator thread failed", failure[0]);
+		}
+		Map<TransferDriver.Outcome, Long> outcomes = new EnumMap<>(TransferDriver.Outcome.class);
+		long requests = 0;
+		for (TransferDriver.Outcome outcome : TransferDriver.Outcome.values()) {
+			outcomes.put(outcome, counts[outcome.ordinal()].sum());
+			requests += counts[outcome.ordinal()].sum();
+		}
+		return new Phase(requests, nanos, outcomes, histogram.drain());
+	}
+
+	private void record(Writer recorder, BalanceTransferRequest request) {
+		try {
+			String line = this.requestWriter.writeValueAsString(request);
+			synchronized (recorder) {
+				recorder.write(line);
+				recorder.write('\n');
+			}
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadGeneratorConfig config = LoadGeneratorConfig.parse(args);
+		// Read once by the JDK's keep-alive cache; the default of 5 would close the other threads' connections
+		System.setProperty("http.maxConnections", String.valueOf(Math.max(config.getThreads(), 5)));
+		ObjectMapper objectMapper = new ObjectMapper();
+		boolean http = config.getTarget() == LoadGeneratorConfig.Target.HTTP;
+		ConfigurableApplicationContext context = null;
+		LoadReport report;
+		try {
+			TransferDriver driver;
+			if (http && config.getUrl() != null) {
+				driver = new HttpTransferDriver(config.getUrl(), objectMapper);
+			} else {
+				List<String> applicationArgs = new ArrayList<>(config.getApplicationArgs());
+				if (http) {
+					applicationArgs.add("--server.port=0");
+				}
+				SpringApplication application = new SpringApplication(DevChallengeApplication.class);
+				application.setWebEnvironment(http);
+				context = application.run(applicationArgs.toArray(new String[0]));
+				driver = http
+						? new HttpTransferDriver("http://localhost:"
+								+ ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort(),
+								objectMapper)
+						: new ServiceTransferDriver(context.getBean(AccountsService.class));
+			}
+			report = new LoadGenerator(config, driver, objectMapper).run();
+		} finally {
+			if (context != null) {
+				context.close();
+			}
+		}
+		print(report);
+		if (config.getReport() != null) {
+			objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(config.getReport()), report);
+		}
+		System.exit(report.isConserved() && report.getFailures() == 0 ? 0 : 1);
+	}
+
+	private static void print(LoadReport report) {
+		System.out.printf("target %s, %d threads: %d transfers in %.2f s = %.0f/s%n", report.getTarget(),
+				report.getThreads(), report.getRequests(), report.getSeconds(), report.getThroughput());
+		System.out.printf("latency us: p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+				report.getLatency().getP50Nanos() / 1e3, report.getLatency().getP99Nanos() / 1e3,
+				report.getLatency().getP999Nanos() / 1e3, report.getLatency().getMaxNanos() / 1e3);
+		System.out.printf("outcomes: %s%n", report.getOutcomes());
+		System.out.printf("money %s: %s before, %s after%n", report.isConserved() ? "conserved" : "NOT CONSERVED",
+				report.getTotalBefore().toPlainString(), report.getTotalAfter().toPlainString());
+	}
+
+	// Next request for a worker, or null when it is done
+	private interface RequestSource {
+
+		BalanceTransferRequest next();
+	}
+
+	private final class SyntheticSource implements RequestSource {
+
+		private final String[] ids;
+
+		private final ZipfianGenerator zipf;
+
+		private final Random random;
+
+		private final BigDecimal unaffordable;
+
+		private long remaining;
+
+		SyntheticSource(long quota, String[] ids, ZipfianGenerator zipf, Random random, BigDecimal unaffordable) {
+			this.remaining = quota;
+			this.ids = ids;
+			this.zipf = zipf;
+			this.random = random;
+			this.unaffordable = unaffordable;
+		}
+
+		@Override
+		public BalanceTransferRequest next() {
+			if (this.remaining == 0) {
+				return null;
+			}
+			this.remaining--;
+			double kind = this.random.nextDouble();
+			int from = this.zipf.next(this.random);
+			if (kind < LoadGenerator.this.config.getSameAccountRatio() || this.ids.length == 1) {
+				return new BalanceTransferRequest(this.ids[from], this.ids[from], LoadGenerator.this.config.getAmount());
+			}
+			int to = this.zipf.nextExcluding(from, this.random);
+			boolean insufficient = kind < LoadGenerator.this.config.getSameAccountRatio()
+					+ LoadGenerator.this.config.getInsufficientRatio();
+			return new BalanceTransferRequest(this.ids[from], this.ids[to],
+					insufficient ? this.unaffordable : LoadGenerator.this.config.getAmount());
+		}
+	}
+
+	// One trace shared by every worker; each line is handed out once
+	private final class TraceSource implements RequestSource {
+
+		private final BufferedReader trace;
+
+		TraceSource(BufferedReader trace) {
+			this.trace = trace;
+		}
+
+		@Override
+		public synchronized BalanceTransferRequest next() {
+			try {
+				String line;
+				do {
+					line = this.trace.readLine();
+				} while (line != null && line.trim().isEmpty());
+				return line == null ? null : LoadGenerator.this.requestReader.readValue(line);
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+		}
+	}
+
+	private static final class Phase {
+
+		private final long requests;
+
+		private final long nanos;
+
+		private final Map<TransferDriver.Outcome, Long> outcomes;
+
+		private final LatencySummary latency;
+
+		Phase(long requests, long nanos, Map<TransferDriver.Outcome, Long> outcomes, LatencySummary latency) {
+			this.requests = requests;
+			this.nanos = nanos;
+			this.outcomes = outcomes;
+			this.latency = latency;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.db.awmd.challenge.loadgen;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Settings of one {@link LoadGenerator} run, parsed from {@code --name=value}
+ * arguments. Arguments starting with {@code --accounts.}, {@code --server.},
+ * {@code --spring.} or {@code --logging.} are handed to the application the
+ * generator starts.
+ */
+@Data
+public class LoadGeneratorConfig {
+
+	public enum Mode {
+		// Requests drawn from the account, skew and error ratio settings
+		SYNTHETIC,
+		// Requests read from an NDJSON trace of BalanceTransferRequests
+		REPLAY
+	}
+
+	public enum Target {
+		// AccountsService in this JVM
+		SERVICE,
+		// AccountsController over HTTP, at url or on an application started on a free port;
+		// a comma-separated url spreads the threads over a cluster's nodes
+		HTTP
+	}
+
+	private Mode mode = Mode.SYNTHETIC;
+
+	private Target target = Target.SERVICE;
+
+	private String url;
+
+	private int threads = 8;
+
+	// Measured synthetic requests across all threads; a replay sends the whole trace
+	private long requests = 1_000_000;
+
+	// Synthetic requests sent and discarded before measuring
+	private long warmupRequests = 100_000;
+
+	private int accounts = 10_000;
+
+	private double skew = 0.99;
+
+	private BigDecimal initialBalance = new BigDecimal("1000.00");
+
+	private BigDecimal amount = new BigDecimal("0.01");
+
+	// Share of requests for more money than exists in total
+	private double insufficientRatio = 0.01;
+
+	// Share of requests with the same account on both sides
+	private double sameAccountRatio = 0.01;
+
+	// Thread i of a synthetic run draws from Random(seed + i), so runs repeat exactly per thread
+	private long seed = 42;
+
+	private String trace;
+
+	// Synthetic mode writes every request it sends here, as a trace for replay
+	private String record;
+
+	// Writes the report as JSON here as well
+	private String report;
+
+	private List<String> applicationArgs = new ArrayList<>();
+
+	public static LoadGeneratorConfig parse(String[] args) {
+		LoadGeneratorConfig config = new LoadGeneratorConfig();
+		for (String arg : args) {
+			if (arg.startsWith("--accounts.") || arg.startsWith("--server.") || arg.startsWith("--spring.")
+					|| arg.startsWith("--logging.")) {
+				config.applicationArgs.add(arg);
+				continue;
+			}
+			int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0) {
+				throw new IllegalArgumentException("Expected --name=value but got " + arg);
+			}
+			String value = arg.substring(equals + 1);
+			switch (arg.substring(2, equals)) {
+			case "mode":
+				config.mode = Mode.valueOf(value.toUpperCase());
+				break;
+			case "target":
+				config.target = Target.valueOf(value.toUpperCase());
+				break;
+			case "url":
+				config.url = value;
+				break;
+			case "threads":
+				config.threads = Integer.parseInt(value);
+				break;
+			case "requests":
+				config.requests = Long.parseLong(value);
+				break;
+			case "warmup-requests":
+				config.warmupRequests = Long.parseLong(value);
+				break;
+			case "accounts":
+				config.accounts = Integer.parseInt(value);
+				break;
+			case "skew":
+				config.skew = Double.parseDouble(value);
+				break;
+			case "initial-balance":
+				config.initialBalance = new BigDecimal(value);
+				break;
+			case "amount":
+				config.amount = new BigDecimal(value);
+				break;
+			case "insufficient-ratio":
+				config.insufficientRatio = Double.parseDouble(value);
+				break;
+			case "same-account-ratio":
+				config.sameAccountRatio = Double.parseDouble(value);
+				break;
+			case "seed":
+				config.seed = Long.parseLong(value);
+				break;
+			case "trace":
+				config.trace = value;
+				break;
+			case "record":
+				config.record = value;
+				break;
+			case "report":
+				config.report = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+		if (config.mode == Mode.REPLAY && config.trace == null) {
+			throw new IllegalArgumentException("--mode=replay needs --trace=<file>");
+		}
+		return config;
+	}
+}
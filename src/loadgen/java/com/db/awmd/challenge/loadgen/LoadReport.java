@@ -0,0 +1,43 @@
+package com.db.awmd.challenge.loadgen;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import com.db.awmd.challenge.domain.LatencySummary;
+
+import lombok.Data;
+
+@Data
+public class LoadReport {
+
+	private final String target;
+
+	private final int threads;
+
+	private final long requests;
+
+	private final double seconds;
+
+	private final Map<TransferDriver.Outcome, Long> outcomes;
+
+	// Client side, from sending a request to having its outcome
+	private final LatencySummary latency;
+
+	// Sum of every balance in the book before and after the run
+	private final BigDecimal totalBefore;
+
+	private final BigDecimal totalAfter;
+
+	public double getThroughput() {
+		return this.seconds > 0 ? this.requests / this.seconds : 0;
+	}
+
+	public boolean isConserved() {
+		return this.totalBefore.compareTo(this.totalAfter) == 0;
+	}
+
+	// Outcomes that mean the service failed rather than refused the transfer
+	public long getFailures() {
+		return this.outcomes.get(TransferDriver.Outcome.UNAVAILABLE) + this.outcomes.get(TransferDriver.Outcome.ERROR);
+	}
+}
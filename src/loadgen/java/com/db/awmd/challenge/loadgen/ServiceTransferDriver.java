@@ -0,0 +1,63 @@
+package com.db.awmd.challenge.loadgen;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.service.AccountsService;
+
+/**
+ * Calls {@link AccountsService} directly, without HTTP, JSON or validation.
+ */
+public class ServiceTransferDriver implements TransferDriver {
+
+	private final AccountsService accountsService;
+
+	public ServiceTransferDriver(AccountsService accountsService) {
+		this.accountsService = accountsService;
+	}
+
+	@Override
+	public void createAccounts(Collection<String> accountIds, BigDecimal balance) {
+		for (String accountId : accountIds) {
+			try {
+				this.accountsService.createAccount(new Account(accountId, balance));
+			} catch (DuplicateAccountIdException daie) {
+				// kept with its current balance
+			}
+		}
+	}
+
+	@Override
+	public Outcome transfer(BalanceTransferRequest request) {
+		try {
+			this.accountsService.transferMoney(request);
+			return Outcome.ACCEPTED;
+		} catch (InsufficientAmountException iae) {
+			return Outcome.INSUFFICIENT_FUNDS;
+		} catch (InvalidAccountIdException iaie) {
+			return Outcome.INVALID_ACCOUNT;
+		} catch (LockTimeoutException lte) {
+			return Outcome.UNAVAILABLE;
+		} catch (RuntimeException e) {
+			return Outcome.ERROR;
+		}
+	}
+
+	@Override
+	public BigDecimal totalBalance() {
+		BigDecimal[] total = { BigDecimal.ZERO };
+		this.accountsService.getAccountsRepository().forEachAccount(account -> {
+			BigDecimal balance = account.getBalance();
+			if (balance != null) {
+				total[0] = total[0].add(balance);
+			}
+		});
+		return total[0];
+	}
+}
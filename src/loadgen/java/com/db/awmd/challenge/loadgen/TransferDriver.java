@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.loadgen;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collection;
+
+import com.db.awmd.challenge.domain.BalanceTransferRequest;
+
+/**
+ * How the load generator reaches the accounts service. Implementations must
+ * allow {@link #transfer} from many threads at once.
+ */
+public interface TransferDriver {
+
+	enum Outcome {
+		// REJECTED is a 429 from the rate limits or load shedding
+		ACCEPTED, INSUFFICIENT_FUNDS, INVALID_ACCOUNT, REJECTED, UNAVAILABLE, ERROR
+	}
+
+	// Ids that already exist are left as they are
+	void createAccounts(Collection<String> accountIds, BigDecimal balance) throws IOException;
+
+	Outcome transfer(BalanceTransferRequest request);
+
+	BigDecimal totalBalance() throws IOException;
+}
@@ -0,0 +1,47 @@
+package com.db.awmd.challenge.loadgen;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Draws account indexes in {@code [0, n)} where index {@code k} is picked with
+ * probability proportional to {@code 1 / (k + 1)^skew}. A skew of 0 is uniform;
+ * around 1 a handful of hot accounts take most of the traffic.
+ */
+public final class ZipfianGenerator {
+
+	private final double[] cumulative;
+
+	public ZipfianGenerator(int n, double skew) {
+		this.cumulative = new double[n];
+		double sum = 0;
+		for (int k = 0; k < n; k++) {
+			sum += 1.0 / Math.pow(k + 1, skew);
+			this.cumulative[k] = sum;
+		}
+		for (int k = 0; k < n; k++) {
+			this.cumulative[k] /= sum;
+		}
+	}
+
+	public int next() {
+		return next(ThreadLocalRandom.current());
+	}
+
+	// Draws from the given source, so a seeded Random yields the same sequence every run
+	public int next(Random random) {
+		int index = Arrays.binarySearch(this.cumulative, random.nextDouble());
+		return Math.min(index < 0 ? -index - 1 : index, this.cumulative.length - 1);
+	}
+
+	// Returns an index different from {@code excluded}, for picking the other side of a transfer
+	public int nextExcluding(int excluded) {
+		return nextExcluding(excluded, ThreadLocalRandom.current());
+	}
+
+	public int nextExcluding(int excluded, Random random) {
+		int index = next(random);
+		return index != excluded ? index : (index + 1) % this.cumulative.length;
+	}
+}
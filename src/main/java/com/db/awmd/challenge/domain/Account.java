@@ -1,34 +1,176 @@
 package com.db.awmd.challenge.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.UnaryOperator;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
 import org.hibernate.validator.constraints.NotBlank;
 import org.hibernate.validator.constraints.NotEmpty;
 
 @Data
+@EqualsAndHashCode(exclude = "state")
 public class Account {
 
+  // Taken by the literal routes beside /v1/accounts/{accountId}, which would hide an account with one of them
+  public static final List<String> RESERVED_IDS = Collections.unmodifiableList(
+      Arrays.asList("export", "balances"));
+
+  private static final AtomicReferenceFieldUpdater<Account, Object> STATE =
+      AtomicReferenceFieldUpdater.newUpdater(Account.class, Object.class, "state");
+
+  /**
+   * An update of several accounts in progress, installed in their state in
+   * place of a {@link Balance} until it is decided.
+   */
+  public interface PendingUpdate {
+
+    /** The balance {@code account} has according to the update's current status. */
+    Balance resolve(Account account);
+
+    /** Aborts the update if still undecided and puts the resolved balances back. */
+    void complete();
+  }
+
   @NotNull
   @NotEmpty
   private final String accountId;
 
-  @NotNull
-  @Min(value = 0, message = "Initial balance must be positive.")
-  private BigDecimal balance;
+  // Either a Balance or a PendingUpdate; balances are fixed-point minor units, see Money.
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private volatile Object state = Balance.NONE;
+
+  // Spread hash of the id, computed once so lock striping never rehashes the string.
+  @JsonIgnore
+  private final int lockHash;
 
   public Account(String accountId) {
     this.accountId = accountId;
-    this.balance = BigDecimal.ZERO;
+    this.lockHash = lockHashOf(accountId);
+    this.state = new Balance(0, 0, 0, false);
   }
 
   @JsonCreator
   public Account(@JsonProperty("accountId") String accountId,
     @JsonProperty("balance") BigDecimal balance) {
     this.accountId = accountId;
-    this.balance = balance;
+    this.lockHash = lockHashOf(accountId);
+    setBalance(balance);
+  }
+
+  public Account(String accountId, long balanceUnits, int balanceScale) {
+    this.accountId = accountId;
+    this.lockHash = lockHashOf(accountId);
+    this.state = new Balance(balanceUnits, balanceScale, 0, false);
+  }
+
+  @NotNull
+  @Min(value = 0, message = "Initial balance must be positive.")
+  public BigDecimal getBalance() {
+    Balance balance = getBalanceState();
+    return balance.isSet() ? Money.toBigDecimal(balance.getUnits(), balance.getScale()) : null;
+  }
+
+  @JsonIgnore
+  public long getBalanceUnits() {
+    return getBalanceState().getUnits();
+  }
+
+  @JsonIgnore
+  public int getBalanceScale() {
+    return getBalanceState().getScale();
+  }
+
+  /**
+   * The current balance. An undecided pending update reads as not yet applied,
+   * so this never waits.
+   */
+  @JsonIgnore
+  public Balance getBalanceState() {
+    Object current = this.state;
+    return current instanceof PendingUpdate ? ((PendingUpdate) current).resolve(this) : (Balance) current;
+  }
+
+  /**
+   * The current balance with no update pending, completing (and if need be
+   * aborting) whatever update is installed first. Use before a compare-and-set.
+   */
+  @JsonIgnore
+  public Balance getSettledBalance() {
+    while (true) {
+      Object current = this.state;
+      if (!(current instanceof PendingUpdate)) {
+        return (Balance) current;
+      }
+      ((PendingUpdate) current).complete();
+    }
+  }
+
+  public boolean compareAndSetState(Object expected, Object update) {
+    return STATE.compareAndSet(this, expected, update);
+  }
+
+  public void setBalance(BigDecimal balance) {
+    if (balance == null) {
+      update(current -> current.withUnits(0, Balance.NONE.getScale()));
+    } else {
+      long units = Money.unitsOf(balance);
+      int scale = Money.scaleOf(balance);
+      update(current -> current.withUnits(units, scale));
+    }
+  }
+
+  public void setBalance(long balanceUnits, int balanceScale) {
+    update(current -> current.withUnits(balanceUnits, balanceScale));
+  }
+
+  public boolean debit(long amountUnits, int amountScale) {
+    return update(current -> current.debit(amountUnits, amountScale)) != null;
+  }
+
+  public void credit(long amountUnits, int amountScale) {
+    update(current -> current.credit(amountUnits, amountScale));
+  }
+
+  // Sets the amount aside, unless the available balance is short of it
+  public boolean hold(long amountUnits, int amountScale) {
+    return update(current -> current.hold(amountUnits, amountScale)) != null;
+  }
+
+  public void releaseHold(long amountUnits, int amountScale) {
+    update(current -> current.release(amountUnits, amountScale));
+  }
+
+  // Applies the change with a CAS loop; a null result leaves the balance as it is and is returned
+  private Balance update(UnaryOperator<Balance> change) {
+    while (true) {
+      Balance current = getSettledBalance();
+      Balance next = change.apply(current);
+      if (next == null || compareAndSetState(current, next)) {
+        return next;
+      }
+    }
+  }
+
+  public static int lockHashOf(String accountId) {
+    int h = accountId == null ? 0 : accountId.hashCode();
+    return (h ^ (h >>> 16)) & Integer.MAX_VALUE;
+  }
+
+  @Override
+  public String toString() {
+    return "Account(accountId=" + this.accountId + ", balance=" + getBalance() + ")";
   }
 }
@@ -0,0 +1,18 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class AccountImportResult {
+
+	private final long created;
+
+	private final long failed;
+
+	// The first failures in line order; the rest are only counted
+	private final List<ImportLineError> errors;
+
+	private final boolean errorsTruncated;
+}
@@ -0,0 +1,14 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class AccountPage {
+
+	private final List<Account> accounts;
+
+	// Pass back to get the following page; null once the last page has been returned
+	private final String nextCursor;
+}
@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+@Data
+public class AdmissionMetrics {
+
+	private final long admitted;
+
+	private final long rejectedByAccountLimit;
+
+	private final long rejectedByClientLimit;
+
+	// Turned away because transfers were waiting longer than the latency budget
+	private final long shed;
+
+	private final boolean shedding;
+
+	private final long latencyBudgetMillis;
+
+	// Shortest time a transfer spent in this node during the last complete interval
+	private final double minSojournMillis;
+
+	private final int trackedAccounts;
+
+	private final int trackedClients;
+}
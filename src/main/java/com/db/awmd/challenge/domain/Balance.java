@@ -0,0 +1,111 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+/**
+ * Immutable balance of one account. Every change produces a new instance with
+ * the next version, so a balance read earlier can be compared-and-set against
+ * without any lock.
+ *
+ * {@code exclusive} marks an account claimed by a batch; changes made while it
+ * is set keep it set.
+ *
+ * {@code held} is the part of the balance set aside by holds, in units at the
+ * balance's scale. It still counts towards the balance but cannot be debited,
+ * so every engine's sufficiency check sees only what is available.
+ */
+@Data
+public final class Balance {
+
+	public static final Balance NONE = new Balance(0, -1, 0, false);
+
+	private final long units;
+
+	private final int scale;
+
+	private final long version;
+
+	private final boolean exclusive;
+
+	private final long held;
+
+	public Balance(long units, int scale, long version, boolean exclusive) {
+		this(units, scale, version, exclusive, 0);
+	}
+
+	public Balance(long units, int scale, long version, boolean exclusive, long held) {
+		this.units = units;
+		this.scale = scale;
+		this.version = version;
+		this.exclusive = exclusive;
+		this.held = held;
+	}
+
+	public boolean isSet() {
+		return this.scale >= 0;
+	}
+
+	// What debits and new holds may take
+	public long getAvailableUnits() {
+		return this.units - this.held;
+	}
+
+	/**
+	 * Returns the balance after debiting the amount, or null if the balance is
+	 * not sufficient.
+	 */
+	public Balance debit(long amountUnits, int amountScale) {
+		int newScale = Math.max(Math.max(this.scale, 0), amountScale);
+		long balance = Money.rescale(this.units, Math.max(this.scale, 0), newScale);
+		long held = Money.rescale(this.held, Math.max(this.scale, 0), newScale);
+		long amount = Money.rescale(amountUnits, amountScale, newScale);
+		if (balance - held < amount) {
+			return null;
+		}
+		return new Balance(Math.subtractExact(balance, amount), newScale, this.version + 1, this.exclusive, held);
+	}
+
+	public Balance credit(long amountUnits, int amountScale) {
+		int newScale = Math.max(Math.max(this.scale, 0), amountScale);
+		long balance = Money.rescale(this.units, Math.max(this.scale, 0), newScale);
+		return new Balance(Math.addExact(balance, Money.rescale(amountUnits, amountScale, newScale)), newScale,
+				this.version + 1, this.exclusive, Money.rescale(this.held, Math.max(this.scale, 0), newScale));
+	}
+
+	/**
+	 * Returns the balance with the amount set aside by a hold, or null if the
+	 * available balance is not sufficient.
+	 */
+	public Balance hold(long amountUnits, int amountScale) {
+		int newScale = Math.max(Math.max(this.scale, 0), amountScale);
+		long balance = Money.rescale(this.units, Math.max(this.scale, 0), newScale);
+		long held = Money.rescale(this.held, Math.max(this.scale, 0), newScale);
+		long amount = Money.rescale(amountUnits, amountScale, newScale);
+		if (balance - held < amount) {
+			return null;
+		}
+		return new Balance(balance, newScale, this.version + 1, this.exclusive, Math.addExact(held, amount));
+	}
+
+	// Gives back an amount set aside by hold; never leaves less than nothing held
+	public Balance release(long amountUnits, int amountScale) {
+		int newScale = Math.max(Math.max(this.scale, 0), amountScale);
+		long held = Money.rescale(this.held, Math.max(this.scale, 0), newScale);
+		return new Balance(Money.rescale(this.units, Math.max(this.scale, 0), newScale), newScale, this.version + 1,
+				this.exclusive, Math.max(0, held - Money.rescale(amountUnits, amountScale, newScale)));
+	}
+
+	public Balance withUnits(long newUnits, int newScale) {
+		if (this.held == 0) {
+			return new Balance(newUnits, newScale, this.version + 1, this.exclusive);
+		}
+		// Holds stay in place, so the scale cannot drop below theirs
+		int keptScale = Math.max(newScale, this.scale);
+		return new Balance(Money.rescale(newUnits, newScale, keptScale), keptScale, this.version + 1, this.exclusive,
+				Money.rescale(this.held, this.scale, keptScale));
+	}
+
+	public Balance withExclusive(boolean newExclusive) {
+		return new Balance(this.units, this.scale, this.version + 1, newExclusive, this.held);
+	}
+}
@@ -0,0 +1,34 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Data;
+
+/**
+ * Balance of one account as of a single read. Unlike an {@link Account},
+ * which may be a live object that transfers keep changing, a snapshot never
+ * changes after it is taken. Serializes like an Account, plus, while holds
+ * set part of it aside, the balance still available.
+ */
+@Data
+public class BalanceSnapshot {
+
+	private final String accountId;
+
+	private final BigDecimal balance;
+
+	// Null when nothing is held
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private final BigDecimal availableBalance;
+
+	public static BalanceSnapshot of(Account account) {
+		Balance balance = account.getBalanceState();
+		if (!balance.isSet()) {
+			return new BalanceSnapshot(account.getAccountId(), null, null);
+		}
+		return new BalanceSnapshot(account.getAccountId(), Money.toBigDecimal(balance.getUnits(), balance.getScale()),
+				balance.getHeld() == 0 ? null : Money.toBigDecimal(balance.getAvailableUnits(), balance.getScale()));
+	}
+}
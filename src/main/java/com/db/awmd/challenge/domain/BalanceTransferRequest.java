@@ -2,7 +2,9 @@ package com.db.awmd.challenge.domain;
 
 import java.math.BigDecimal;
 
+import javax.validation.constraints.Digits;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
 
 import org.hibernate.validator.constraints.NotEmpty;
 
@@ -23,15 +25,32 @@ public class BalanceTransferRequest {
 	@NotEmpty
 	private String accountToId;
 	
+	@NotNull
 	@Min(value = 0, message = "Amount must be positive number.")
+	@Digits(integer = Money.MAX_AMOUNT_DIGITS, fraction = Money.MAX_AMOUNT_SCALE)
 	private BigDecimal amount;
-	
+
+	// Optional client supplied key; retries carrying the same key are answered from the first outcome.
+	private String idempotencyKey;
+
+	public BalanceTransferRequest(String accountFromId, String accountToId, BigDecimal amount) {
+		this(accountFromId, accountToId, amount, null);
+	}
+
 	 @JsonCreator
 	  public BalanceTransferRequest(@JsonProperty("accountFromId") String accountFromId,
-	    @JsonProperty("accountToId") String accountToId,  @JsonProperty("amount") BigDecimal amount ) {
+	    @JsonProperty("accountToId") String accountToId,  @JsonProperty("amount") BigDecimal amount,
+	    @JsonProperty("idempotencyKey") String idempotencyKey) {
 	    this.accountFromId = accountFromId;
 	    this.accountToId = accountToId;
 	    this.amount = amount;
+	    this.idempotencyKey = idempotencyKey;
 	  }
+
+	// True if both requests describe the same transfer, ignoring the idempotency key
+	public boolean isSameTransfer(BalanceTransferRequest other) {
+		return this.accountFromId.equals(other.accountFromId) && this.accountToId.equals(other.accountToId)
+				&& this.amount.compareTo(other.amount) == 0;
+	}
 	
 }
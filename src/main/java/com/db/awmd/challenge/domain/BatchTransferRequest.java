@@ -0,0 +1,39 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+@Data
+public class BatchTransferRequest {
+
+	public enum Mode {
+		// Apply every transfer or none of them.
+		ATOMIC,
+		// Apply what can be applied and report each transfer separately.
+		BEST_EFFORT
+	}
+
+	@NotNull
+	private Mode mode;
+
+	@NotNull
+	@NotEmpty
+	@Valid
+	private List<BalanceTransferRequest> transfers;
+
+	@JsonCreator
+	public BatchTransferRequest(@JsonProperty("mode") Mode mode,
+			@JsonProperty("transfers") List<BalanceTransferRequest> transfers) {
+		this.mode = mode;
+		this.transfers = transfers;
+	}
+}
@@ -0,0 +1,19 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class ClusterStatus {
+
+	private final String self;
+
+	private final List<String> nodes;
+
+	// Cross-partition transfers this node debited whose commit is not yet acknowledged
+	private final int pendingCommits;
+
+	// Credits this node has prepared and not yet committed or aborted
+	private final int preparedCredits;
+}
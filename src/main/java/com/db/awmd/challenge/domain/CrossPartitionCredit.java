@@ -0,0 +1,21 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import lombok.Data;
+
+/**
+ * The credit side of a cross-partition transfer, sent by the node that
+ * debited {@code accountFromId} to the node that owns {@code accountToId}.
+ */
+@Data
+public class CrossPartitionCredit {
+
+	private final String transferId;
+
+	private final String accountFromId;
+
+	private final String accountToId;
+
+	private final BigDecimal amount;
+}
@@ -0,0 +1,22 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import lombok.Data;
+
+/**
+ * Money set aside on an account until it is captured, released or expires.
+ * It counts towards the account's balance but not its available balance.
+ */
+@Data
+public class Hold {
+
+	private final String holdId;
+
+	private final String accountId;
+
+	private final BigDecimal amount;
+
+	// Epoch milliseconds after which the hold is released by itself
+	private final long expiresAt;
+}
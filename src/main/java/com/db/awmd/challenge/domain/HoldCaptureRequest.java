@@ -0,0 +1,34 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import javax.validation.constraints.Digits;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+@Data
+public class HoldCaptureRequest {
+
+	@NotNull
+	@NotEmpty
+	private String accountToId;
+
+	// Optional; the whole hold is captured when missing, and whatever is left of it released otherwise
+	@Min(value = 0, message = "Amount must be positive number.")
+	@Digits(integer = Money.MAX_AMOUNT_DIGITS, fraction = Money.MAX_AMOUNT_SCALE)
+	private BigDecimal amount;
+
+	@JsonCreator
+	public HoldCaptureRequest(@JsonProperty("accountToId") String accountToId,
+			@JsonProperty("amount") BigDecimal amount) {
+		this.accountToId = accountToId;
+		this.amount = amount;
+	}
+}
@@ -0,0 +1,38 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import javax.validation.constraints.Digits;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+@Data
+public class HoldRequest {
+
+	@NotNull
+	@NotEmpty
+	private String accountId;
+
+	@NotNull
+	@Min(value = 0, message = "Amount must be positive number.")
+	@Digits(integer = Money.MAX_AMOUNT_DIGITS, fraction = Money.MAX_AMOUNT_SCALE)
+	private BigDecimal amount;
+
+	// Optional; the configured default applies when missing
+	private Long ttlSeconds;
+
+	@JsonCreator
+	public HoldRequest(@JsonProperty("accountId") String accountId, @JsonProperty("amount") BigDecimal amount,
+			@JsonProperty("ttlSeconds") Long ttlSeconds) {
+		this.accountId = accountId;
+		this.amount = amount;
+		this.ttlSeconds = ttlSeconds;
+	}
+}
@@ -0,0 +1,15 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+@Data
+public class ImportLineError {
+
+	// 1-based line number in the uploaded body
+	private final long line;
+
+	// Null when the line could not be parsed far enough to find one
+	private final String accountId;
+
+	private final String message;
+}
@@ -0,0 +1,17 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+@Data
+public class LatencySummary {
+
+	private final long count;
+
+	private final long p50Nanos;
+
+	private final long p99Nanos;
+
+	private final long p999Nanos;
+
+	private final long maxNanos;
+}
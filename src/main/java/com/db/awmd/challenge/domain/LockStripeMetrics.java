@@ -0,0 +1,17 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+@Data
+public class LockStripeMetrics {
+
+	private final int stripe;
+
+	private final long acquisitions;
+
+	private final long contended;
+
+	private final long timeouts;
+
+	private final long waitMicros;
+}
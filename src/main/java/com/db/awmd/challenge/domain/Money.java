@@ -0,0 +1,55 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed-point helpers for amounts held as an unscaled {@code long} plus a
+ * decimal scale, e.g. 123.45 is 12345 units at scale 2. All arithmetic is
+ * overflow checked and throws {@link ArithmeticException} instead of wrapping.
+ */
+public final class Money {
+
+	public static final int MAX_SCALE = 18;
+
+	/**
+	 * Bounds of a transfer or hold amount, checked when the request is
+	 * validated. Every balance takes the finest scale of the amounts applied to
+	 * it, so these keep that scale, and with it the range left to the balance,
+	 * from being set by whatever a client sends.
+	 */
+	public static final int MAX_AMOUNT_SCALE = 6;
+
+	public static final int MAX_AMOUNT_DIGITS = 12;
+
+	private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i <= MAX_SCALE; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private Money() {
+	}
+
+	public static int scaleOf(BigDecimal amount) {
+		int scale = Math.max(amount.scale(), 0);
+		if (scale > MAX_SCALE) {
+			throw new ArithmeticException(amount + " has more than " + MAX_SCALE + " decimal places.");
+		}
+		return scale;
+	}
+
+	public static long unitsOf(BigDecimal amount) {
+		return amount.setScale(scaleOf(amount)).unscaledValue().longValueExact();
+	}
+
+	public static BigDecimal toBigDecimal(long units, int scale) {
+		return BigDecimal.valueOf(units, scale);
+	}
+
+	public static long rescale(long units, int fromScale, int toScale) {
+		return fromScale == toScale ? units : Math.multiplyExact(units, POWERS_OF_TEN[toScale - fromScale]);
+	}
+}
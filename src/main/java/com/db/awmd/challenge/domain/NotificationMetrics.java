@@ -0,0 +1,19 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+@Data
+public class NotificationMetrics {
+
+	private final int queueDepth;
+
+	private final long enqueued;
+
+	private final long delivered;
+
+	private final long dropped;
+
+	private final long averageLatencyMicros;
+
+	private final long maxLatencyMicros;
+}
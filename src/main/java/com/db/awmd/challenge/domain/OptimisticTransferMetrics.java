@@ -0,0 +1,19 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+@Data
+public class OptimisticTransferMetrics {
+
+	private final long transfers;
+
+	private final long contendedTransfers;
+
+	private final long retries;
+
+	private final long maxRetries;
+
+	private final long abortedByOthers;
+
+	private final long exclusiveWaits;
+}
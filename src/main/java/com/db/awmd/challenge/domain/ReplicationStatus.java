@@ -0,0 +1,33 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class ReplicationStatus {
+
+	public enum Role {
+		STANDALONE,
+		// Ships its journal to followers
+		LEADER,
+		// Applies a leader's journal and answers reads only
+		FOLLOWER
+	}
+
+	private final Role role;
+
+	// The leader followed, for a follower
+	private final String leader;
+
+	// Addresses of the followers being shipped to, for a leader
+	private final List<String> followers;
+
+	// How long ago a follower last held everything its leader had; null while it copies the accounts afresh
+	private final Long stalenessMillis;
+
+	private final long maxStalenessMillis;
+
+	// Journal records a follower has applied
+	private final long recordsApplied;
+}
@@ -0,0 +1,65 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+/**
+ * A transfer waiting for its turn. A standing order stays scheduled after each
+ * run, with {@code executeAt} moved on to its next run.
+ */
+@Data
+public class ScheduledTransfer {
+
+	private final String scheduleId;
+
+	// Order of creation; transfers due at the same instant run in this order
+	private final long sequence;
+
+	private final String accountFromId;
+
+	private final String accountToId;
+
+	private final BigDecimal amount;
+
+	// Epoch milliseconds of the next run
+	private final long executeAt;
+
+	// Null for a one-off transfer
+	private final Long repeatEverySeconds;
+
+	@JsonCreator
+	public ScheduledTransfer(@JsonProperty("scheduleId") String scheduleId, @JsonProperty("sequence") long sequence,
+			@JsonProperty("accountFromId") String accountFromId, @JsonProperty("accountToId") String accountToId,
+			@JsonProperty("amount") BigDecimal amount, @JsonProperty("executeAt") long executeAt,
+			@JsonProperty("repeatEverySeconds") Long repeatEverySeconds) {
+		this.scheduleId = scheduleId;
+		this.sequence = sequence;
+		this.accountFromId = accountFromId;
+		this.accountToId = accountToId;
+		this.amount = amount;
+		this.executeAt = executeAt;
+		this.repeatEverySeconds = repeatEverySeconds;
+	}
+
+	@JsonIgnore
+	public boolean isRepeating() {
+		return this.repeatEverySeconds != null;
+	}
+
+	// The same standing order, due at its first run after nowMillis
+	public ScheduledTransfer nextRunAfter(long nowMillis) {
+		long interval = this.repeatEverySeconds * 1000;
+		long missed = Math.max(0, (nowMillis - this.executeAt) / interval);
+		return new ScheduledTransfer(this.scheduleId, this.sequence, this.accountFromId, this.accountToId, this.amount,
+				this.executeAt + (missed + 1) * interval, this.repeatEverySeconds);
+	}
+
+	public BalanceTransferRequest toTransferRequest() {
+		return new BalanceTransferRequest(this.accountFromId, this.accountToId, this.amount);
+	}
+}
@@ -0,0 +1,50 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import javax.validation.constraints.Digits;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+@Data
+public class ScheduledTransferRequest {
+
+	@NotNull
+	@NotEmpty
+	private String accountFromId;
+
+	@NotNull
+	@NotEmpty
+	private String accountToId;
+
+	@NotNull
+	@Min(value = 0, message = "Amount must be positive number.")
+	@Digits(integer = Money.MAX_AMOUNT_DIGITS, fraction = Money.MAX_AMOUNT_SCALE)
+	private BigDecimal amount;
+
+	// Epoch milliseconds of the first run; a past instant runs at once
+	@NotNull
+	private Long executeAt;
+
+	// Optional; repeats the transfer this often after executeAt, until it is cancelled
+	@Min(value = 1, message = "Repeat interval must be at least a second.")
+	private Long repeatEverySeconds;
+
+	@JsonCreator
+	public ScheduledTransferRequest(@JsonProperty("accountFromId") String accountFromId,
+			@JsonProperty("accountToId") String accountToId, @JsonProperty("amount") BigDecimal amount,
+			@JsonProperty("executeAt") Long executeAt, @JsonProperty("repeatEverySeconds") Long repeatEverySeconds) {
+		this.accountFromId = accountFromId;
+		this.accountToId = accountToId;
+		this.amount = amount;
+		this.executeAt = executeAt;
+		this.repeatEverySeconds = repeatEverySeconds;
+	}
+}
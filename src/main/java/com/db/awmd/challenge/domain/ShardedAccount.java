@@ -0,0 +1,152 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Account whose balance is split across several cells, in the spirit of
+ * {@link java.util.concurrent.atomic.LongAdder}, for the few accounts that
+ * receive most of the credits.
+ *
+ * Credits are lock-free: each thread adds to its own home cell with a CAS, so
+ * concurrent credits neither share a monitor nor a cache line. Reads sum the
+ * cells. Debits take the account monitor, check the sum and then drain the
+ * home cell first, spilling into the other cells when it runs dry; since
+ * credits only ever grow a cell, a debit that saw enough balance always finds
+ * it. Every cell holds units at one fixed scale, so amounts with more decimal
+ * places than that are rejected with an {@link ArithmeticException}. Holds are
+ * one total kept beside the cells and changed under the monitor, like debits.
+ */
+public class ShardedAccount extends Account {
+
+  // Longs per cell, keeps neighbouring cells on separate cache lines
+  private static final int PADDING = 8;
+
+  private final AtomicLongArray cells;
+
+  private final int mask;
+
+  private final int scale;
+
+  // Units at the cells' scale set aside by holds; written under the monitor
+  private volatile long held;
+
+  public ShardedAccount(String accountId, long balanceUnits, int balanceScale, int cellCount, int scale) {
+    super(accountId, 0, Math.max(scale, balanceScale));
+    this.scale = Math.max(scale, balanceScale);
+    int size = Integer.highestOneBit(Math.max(1, cellCount - 1)) << 1;
+    this.mask = cellCount <= 1 ? 0 : size - 1;
+    this.cells = new AtomicLongArray((this.mask + 1) * PADDING);
+    this.cells.set(0, toCellUnits(balanceUnits, balanceScale));
+  }
+
+  public int getCellCount() {
+    return this.mask + 1;
+  }
+
+  @Override
+  public BigDecimal getBalance() {
+    return Money.toBigDecimal(sum(), this.scale);
+  }
+
+  @Override
+  @JsonIgnore
+  public long getBalanceUnits() {
+    return sum();
+  }
+
+  @Override
+  @JsonIgnore
+  public int getBalanceScale() {
+    return this.scale;
+  }
+
+  @Override
+  @JsonIgnore
+  public Balance getBalanceState() {
+    return new Balance(sum(), this.scale, 0, false, this.held);
+  }
+
+  @Override
+  public synchronized void setBalance(BigDecimal balance) {
+    setBalance(Money.unitsOf(balance), Money.scaleOf(balance));
+  }
+
+  @Override
+  public synchronized void setBalance(long balanceUnits, int balanceScale) {
+    long units = toCellUnits(balanceUnits, balanceScale);
+    for (int i = 0; i <= this.mask; i++) {
+      this.cells.set(i * PADDING, 0);
+    }
+    this.cells.set(0, units);
+  }
+
+  @Override
+  public synchronized boolean debit(long amountUnits, int amountScale) {
+    long amount = toCellUnits(amountUnits, amountScale);
+    // Concurrent credits can only add to what this sees.
+    if (sum() - this.held < amount) {
+      return false;
+    }
+    int home = homeCell();
+    long remaining = amount;
+    for (int i = 0; i <= this.mask && remaining > 0; i++) {
+      int cell = ((home + i) & this.mask) * PADDING;
+      long available = this.cells.get(cell);
+      if (available > 0) {
+        long taken = Math.min(available, remaining);
+        this.cells.addAndGet(cell, -taken);
+        remaining -= taken;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public synchronized boolean hold(long amountUnits, int amountScale) {
+    long amount = toCellUnits(amountUnits, amountScale);
+    if (sum() - this.held < amount) {
+      return false;
+    }
+    this.held += amount;
+    return true;
+  }
+
+  @Override
+  public synchronized void releaseHold(long amountUnits, int amountScale) {
+    this.held = Math.max(0, this.held - toCellUnits(amountUnits, amountScale));
+  }
+
+  @Override
+  public void credit(long amountUnits, int amountScale) {
+    long amount = toCellUnits(amountUnits, amountScale);
+    int cell = homeCell() * PADDING;
+    long current;
+    do {
+      current = this.cells.get(cell);
+    } while (!this.cells.compareAndSet(cell, current, Math.addExact(current, amount)));
+  }
+
+  private long sum() {
+    long sum = 0;
+    for (int i = 0; i <= this.mask; i++) {
+      sum = Math.addExact(sum, this.cells.get(i * PADDING));
+    }
+    return sum;
+  }
+
+  private int homeCell() {
+    long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    return (int) (id >>> 32) & this.mask;
+  }
+
+  private long toCellUnits(long units, int unitsScale) {
+    if (unitsScale > this.scale) {
+      throw new ArithmeticException("Account " + getAccountId() + " keeps balances to " + this.scale
+          + " decimal places.");
+    }
+    return Money.rescale(units, Math.max(unitsScale, 0), this.scale);
+  }
+}
@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import lombok.Data;
+
+@Data
+public class TransactionEntry {
+
+	public enum Type {
+		DEBIT, CREDIT
+	}
+
+	// 1-based position in the account's history; gaps mean entries aged out
+	private final long sequence;
+
+	// Epoch milliseconds
+	private final long timestamp;
+
+	private final Type type;
+
+	private final String counterpartyId;
+
+	private final BigDecimal amount;
+
+	// Balance of the account right after this entry
+	private final BigDecimal balance;
+}
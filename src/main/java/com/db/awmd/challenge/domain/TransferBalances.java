@@ -0,0 +1,15 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+/**
+ * Balances of the two accounts of a transfer as the transfer left them, read
+ * before any other change could reach either account.
+ */
+@Data
+public class TransferBalances {
+
+	private final Balance fromBalance;
+
+	private final Balance toBalance;
+}
@@ -0,0 +1,22 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.Map;
+
+import lombok.Data;
+
+@Data
+public class TransferMetricsReport {
+
+	private final long intervalSeconds;
+
+	// Start of the interval the latencies cover, in epoch milliseconds
+	private final long intervalStart;
+
+	private final long succeeded;
+
+	private final long insufficientBalance;
+
+	private final long invalidAccount;
+
+	private final Map<String, LatencySummary> latencies;
+}
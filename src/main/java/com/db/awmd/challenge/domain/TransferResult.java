@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+@Data
+public class TransferResult {
+
+	public enum Status {
+		APPLIED,
+		FAILED,
+		// Valid on its own but not applied because another transfer of an atomic batch failed.
+		ROLLED_BACK
+	}
+
+	private final int index;
+
+	private final Status status;
+
+	private final String message;
+}
@@ -3,6 +3,6 @@ package com.db.awmd.challenge.exception;
 public class DuplicateAccountIdException extends RuntimeException {
 
   public DuplicateAccountIdException(String message) {
-    super(message);
+    super(message, null, false, false);
   }
 }
@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.exception;
+
+public class HoldNotFoundException extends RuntimeException{
+	
+	public HoldNotFoundException(String message){
+		super(message, null, false, false);
+	}
+
+}
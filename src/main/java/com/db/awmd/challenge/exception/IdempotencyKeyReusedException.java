@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.exception;
+
+public class IdempotencyKeyReusedException extends RuntimeException{
+	
+	public IdempotencyKeyReusedException(String message){
+		super(message, null, false, false);
+	}
+
+}
@@ -3,7 +3,7 @@ package com.db.awmd.challenge.exception;
 public class InsufficientAmountException extends RuntimeException{
 	
 	public InsufficientAmountException(String message) {
-		super(message);
+		super(message, null, false, false);
 	}
 
 }
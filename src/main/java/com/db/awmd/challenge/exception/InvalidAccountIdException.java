@@ -3,7 +3,7 @@ package com.db.awmd.challenge.exception;
 public class InvalidAccountIdException extends RuntimeException{
 	
 	public InvalidAccountIdException(String message){
-		super(message);
+		super(message, null, false, false);
 	}
 
 }
@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.exception;
+
+public class InvalidBatchException extends RuntimeException{
+	
+	public InvalidBatchException(String message){
+		super(message, null, false, false);
+	}
+
+}
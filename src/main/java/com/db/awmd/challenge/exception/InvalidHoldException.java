@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.exception;
+
+public class InvalidHoldException extends RuntimeException{
+	
+	public InvalidHoldException(String message){
+		super(message, null, false, false);
+	}
+
+}
@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.exception;
+
+public class LockTimeoutException extends RuntimeException{
+	
+	public LockTimeoutException(String message){
+		super(message, null, false, false);
+	}
+
+}
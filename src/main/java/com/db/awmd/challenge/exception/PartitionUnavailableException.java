@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.exception;
+
+public class PartitionUnavailableException extends RuntimeException{
+	
+	public PartitionUnavailableException(String message){
+		super(message, null, false, false);
+	}
+
+}
@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.exception;
+
+public class ScheduledTransferNotFoundException extends RuntimeException{
+	
+	public ScheduledTransferNotFoundException(String message){
+		super(message, null, false, false);
+	}
+
+}
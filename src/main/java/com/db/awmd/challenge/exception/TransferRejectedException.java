@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.exception;
+
+public class TransferRejectedException extends RuntimeException{
+	
+	private final long retryAfterSeconds;
+
+	public TransferRejectedException(String message, long retryAfterSeconds){
+		super(message, null, false, false);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	public long getRetryAfterSeconds(){
+		return retryAfterSeconds;
+	}
+
+}
@@ -0,0 +1,428 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal of account mutations stored in fixed size,
+ * memory-mapped segment files.
+ *
+ * Every record carries a CRC32 of its body, and replay stops at the first
+ * record that is empty or does not match its checksum, which is where a crash
+ * tore the tail. Appends only copy bytes into the mapped segment; a background
+ * thread forces dirty segments to disk every {@code fsyncIntervalMillis}, so
+ * one fsync covers every append made since the previous one (group commit).
+ * {@link #awaitDurable()} blocks until everything appended so far is on disk.
+ * A {@link Reader} follows the records as they are appended, e.g. to ship
+ * them to a replica.
+ *
+ * Positions are encoded as {@code segment << 32 | offset}.
+ */
+@Slf4j
+public class AccountsJournal implements AutoCloseable {
+
+	public static final byte CREATE = 1;
+	public static final byte DEBIT = 2;
+	public static final byte CREDIT = 3;
+	// Both legs of a transfer in one record, replayed as a debit and a credit
+	public static final byte TRANSFER = 4;
+
+	// length + crc
+	private static final int HEADER_SIZE = 8;
+
+	// type + id length + amount units/scale + balance units/scale
+	private static final int FIXED_BODY_SIZE = 1 + 2 + 8 + 4 + 8 + 4;
+
+	// credited id length + credited balance units/scale
+	private static final int TRANSFER_EXTRA_SIZE = 2 + 8 + 4;
+
+	public interface RecordHandler {
+		void onRecord(byte type, String accountId, long amountUnits, int amountScale, long balanceUnits,
+				int balanceScale);
+	}
+
+	private final File directory;
+
+	private final int segmentSize;
+
+	private final CRC32 crc = new CRC32();
+
+	private final Object flushMonitor = new Object();
+
+	private final Thread flusher;
+
+	private int segmentIndex;
+
+	private volatile MappedByteBuffer segment;
+
+	private volatile long writtenPosition;
+
+	// Bumped by reset, which lets readers of the journal before it notice
+	private volatile long generation;
+
+	private long flushedPosition;
+
+	public AccountsJournal(File directory, int segmentSize, long fsyncIntervalMillis) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new UncheckedIOException(new IOException("Cannot create journal directory " + directory));
+		}
+		this.flusher = new Thread(() -> flushLoop(fsyncIntervalMillis), "accounts-journal-flusher");
+		this.flusher.setDaemon(true);
+	}
+
+	/**
+	 * Replays every intact record at or after {@code fromPosition} in append
+	 * order, then opens the journal for appending right after the last one.
+	 */
+	public synchronized void open(long fromPosition, RecordHandler handler) {
+		int[] segments = listSegments();
+		int last = segments.length == 0 ? 0 : segments[segments.length - 1];
+		int tailOffset = 0;
+		for (int index : segments) {
+			if (index < segmentOf(fromPosition)) {
+				continue;
+			}
+			int start = index == segmentOf(fromPosition) ? offsetOf(fromPosition) : 0;
+			int end = replaySegment(index, start, handler);
+			if (index == last) {
+				tailOffset = end;
+			}
+		}
+		mapSegment(last);
+		// Wipe a torn tail so records appended over it cannot chain into stale bytes.
+		if (tailOffset + HEADER_SIZE <= this.segmentSize && this.segment.getInt(tailOffset) != 0) {
+			for (int offset = tailOffset; offset < this.segmentSize; offset++) {
+				this.segment.put(offset, (byte) 0);
+			}
+		}
+		this.segment.position(tailOffset);
+		this.writtenPosition = position(last, tailOffset);
+		this.flushedPosition = this.writtenPosition;
+		if (!this.flusher.isAlive()) {
+			this.flusher.start();
+		}
+		log.info("Opened accounts journal in {} at segment {} offset {}", this.directory, last, tailOffset);
+	}
+
+	public synchronized long append(byte type, String accountId, long amountUnits, int amountScale,
+			long balanceUnits, int balanceScale) {
+		byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+		int bodySize = FIXED_BODY_SIZE + id.length;
+		if (this.segment.remaining() < HEADER_SIZE + bodySize) {
+			rollSegment();
+		}
+		MappedByteBuffer buffer = this.segment;
+		int start = buffer.position();
+		buffer.position(start + HEADER_SIZE);
+		buffer.put(type).putShort((short) id.length).put(id).putLong(amountUnits).putInt(amountScale)
+				.putLong(balanceUnits).putInt(balanceScale);
+		return seal(buffer, start, bodySize);
+	}
+
+	/**
+	 * Appends a transfer as one record carrying the resulting balance of both
+	 * accounts, so replay applies both legs or, if the record is torn, neither.
+	 */
+	public synchronized long appendTransfer(String fromAccountId, String toAccountId, long amountUnits,
+			int amountScale, long fromBalanceUnits, int fromBalanceScale, long toBalanceUnits, int toBalanceScale) {
+		byte[] fromId = fromAccountId.getBytes(StandardCharsets.UTF_8);
+		byte[] toId = toAccountId.getBytes(StandardCharsets.UTF_8);
+		int bodySize = FIXED_BODY_SIZE + fromId.length + TRANSFER_EXTRA_SIZE + toId.length;
+		if (this.segment.remaining() < HEADER_SIZE + bodySize) {
+			rollSegment();
+		}
+		MappedByteBuffer buffer = this.segment;
+		int start = buffer.position();
+		buffer.position(start + HEADER_SIZE);
+		buffer.put(TRANSFER).putShort((short) fromId.length).put(fromId).putLong(amountUnits).putInt(amountScale)
+				.putLong(fromBalanceUnits).putInt(fromBalanceScale).putShort((short) toId.length).put(toId)
+				.putLong(toBalanceUnits).putInt(toBalanceScale);
+		return seal(buffer, start, bodySize);
+	}
+
+	private long seal(MappedByteBuffer buffer, int start, int bodySize) {
+		this.crc.reset();
+		ByteBuffer body = buffer.duplicate();
+		body.position(start + HEADER_SIZE).limit(start + HEADER_SIZE + bodySize);
+		this.crc.update(body);
+		// Length goes in last so a torn record is never mistaken for a complete one.
+		buffer.putInt(start + 4, (int) this.crc.getValue());
+		buffer.putInt(start, bodySize);
+		this.writtenPosition = position(this.segmentIndex, buffer.position());
+		return this.writtenPosition;
+	}
+
+	public long getWrittenPosition() {
+		return this.writtenPosition;
+	}
+
+	// Reads from the end of what has been appended so far
+	public synchronized Reader newReader() {
+		return new Reader(this.generation, segmentOf(this.writtenPosition), offsetOf(this.writtenPosition));
+	}
+
+	/**
+	 * Blocks until everything appended so far is on disk. Throws rather than
+	 * return early if interrupted, so a caller never mistakes an unforced write
+	 * for a durable one.
+	 */
+	public void awaitDurable() {
+		long target = this.writtenPosition;
+		synchronized (this.flushMonitor) {
+			while (this.flushedPosition < target) {
+				try {
+					this.flushMonitor.wait();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted before the journal reached disk", ie);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deletes every segment wholly before {@code position}, e.g. once a snapshot
+	 * covering them has been written.
+	 */
+	public synchronized void truncateBefore(long position) {
+		for (int index : listSegments()) {
+			if (index < segmentOf(position) && index != this.segmentIndex) {
+				segmentFile(index).delete();
+			}
+		}
+	}
+
+	public synchronized void reset() {
+		for (int index : listSegments()) {
+			segmentFile(index).delete();
+		}
+		mapSegment(0);
+		this.generation++;
+		this.writtenPosition = 0;
+		synchronized (this.flushMonitor) {
+			this.flushedPosition = 0;
+		}
+	}
+
+	@Override
+	public void close() {
+		this.flusher.interrupt();
+		flush();
+	}
+
+	public static long position(int segment, int offset) {
+		return ((long) segment << 32) | offset;
+	}
+
+	/**
+	 * Hands every intact record from the buffer's position to its limit to
+	 * {@code handler}, in order, and returns how many bytes they take up; stops
+	 * at the first record that is empty, torn or fails its checksum. A transfer
+	 * record reaches the handler as a debit followed by a credit.
+	 */
+	public static int replay(ByteBuffer records, RecordHandler handler) {
+		CRC32 checksum = new CRC32();
+		int start = records.position();
+		int offset = start;
+		while (offset + HEADER_SIZE <= records.limit()) {
+			int bodySize = records.getInt(offset);
+			if (bodySize < FIXED_BODY_SIZE || offset + HEADER_SIZE + bodySize > records.limit()) {
+				break;
+			}
+			ByteBuffer body = records.duplicate();
+			body.position(offset + HEADER_SIZE).limit(offset + HEADER_SIZE + bodySize);
+			checksum.reset();
+			checksum.update(body.duplicate());
+			if ((int) checksum.getValue() != records.getInt(offset + 4)) {
+				log.warn("Checksum mismatch in journal records at offset {}, ignoring the rest", offset);
+				break;
+			}
+			byte type = body.get();
+			String accountId = readId(body);
+			long amountUnits = body.getLong();
+			int amountScale = body.getInt();
+			long balanceUnits = body.getLong();
+			int balanceScale = body.getInt();
+			if (type == TRANSFER) {
+				String toAccountId = readId(body);
+				long toBalanceUnits = body.getLong();
+				int toBalanceScale = body.getInt();
+				handler.onRecord(DEBIT, accountId, amountUnits, amountScale, balanceUnits, balanceScale);
+				handler.onRecord(CREDIT, toAccountId, amountUnits, amountScale, toBalanceUnits, toBalanceScale);
+			} else {
+				handler.onRecord(type, accountId, amountUnits, amountScale, balanceUnits, balanceScale);
+			}
+			offset += HEADER_SIZE + bodySize;
+		}
+		return offset - start;
+	}
+
+	private static String readId(ByteBuffer body) {
+		byte[] id = new byte[body.getShort()];
+		body.get(id);
+		return new String(id, StandardCharsets.UTF_8);
+	}
+
+	private static int segmentOf(long position) {
+		return (int) (position >>> 32);
+	}
+
+	private static int offsetOf(long position) {
+		return (int) position;
+	}
+
+	private void flushLoop(long intervalMillis) {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				Thread.sleep(intervalMillis);
+			} catch (InterruptedException ie) {
+				return;
+			}
+			flush();
+		}
+	}
+
+	private void flush() {
+		long target = this.writtenPosition;
+		MappedByteBuffer current = this.segment;
+		if (current != null && target > this.flushedPosition) {
+			current.force();
+		}
+		synchronized (this.flushMonitor) {
+			if (target > this.flushedPosition) {
+				this.flushedPosition = target;
+			}
+			this.flushMonitor.notifyAll();
+		}
+	}
+
+	// Called with the journal lock held
+	private void rollSegment() {
+		this.segment.force();
+		mapSegment(this.segmentIndex + 1);
+	}
+
+	private void mapSegment(int index) {
+		try (RandomAccessFile file = new RandomAccessFile(segmentFile(index), "rw")) {
+			this.segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+			this.segmentIndex = index;
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	// Returns the offset just past the last intact record
+	private int replaySegment(int index, int start, RecordHandler handler) {
+		try (RandomAccessFile file = new RandomAccessFile(segmentFile(index), "r")) {
+			MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			buffer.position(start);
+			return start + replay(buffer, handler);
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	/**
+	 * Follows the journal from a position, copying out whole records as they are
+	 * appended. Not thread safe. A reader cannot go on once the journal is
+	 * reset or the next segment it needs has been truncated away; its owner then
+	 * starts over with a new reader and a copy of the accounts as they are.
+	 */
+	public final class Reader {
+
+		private final long generation;
+
+		private int segmentIndex;
+
+		private MappedByteBuffer segment;
+
+		private int offset;
+
+		private Reader(long generation, int segmentIndex, int offset) {
+			this.generation = generation;
+			this.segmentIndex = segmentIndex;
+			this.offset = offset;
+		}
+
+		public long getPosition() {
+			return position(this.segmentIndex, this.offset);
+		}
+
+		/**
+		 * Copies the records appended after this reader's position that fit into
+		 * {@code into}, and moves past them. Returns the number of bytes copied,
+		 * or -1 if the reader can no longer follow the journal.
+		 */
+		public int read(ByteBuffer into) {
+			int start = into.position();
+			while (true) {
+				// Records before the written position are complete, as it is set after them
+				long written = AccountsJournal.this.writtenPosition;
+				if (AccountsJournal.this.generation != this.generation) {
+					return -1;
+				}
+				if (this.segment == null && !map()) {
+					return -1;
+				}
+				int end = segmentOf(written) == this.segmentIndex ? offsetOf(written) : AccountsJournal.this.segmentSize;
+				while (this.offset + HEADER_SIZE <= end) {
+					int recordSize = HEADER_SIZE + this.segment.getInt(this.offset);
+					if (recordSize == HEADER_SIZE) {
+						// The rest of a rolled segment is empty
+						break;
+					}
+					if (recordSize > into.remaining()) {
+						return into.position() - start;
+					}
+					ByteBuffer record = this.segment.duplicate();
+					record.position(this.offset).limit(this.offset + recordSize);
+					into.put(record);
+					this.offset += recordSize;
+				}
+				if (segmentOf(written) == this.segmentIndex) {
+					// A reset while copying may have handed out a mix of the old and new journal
+					return AccountsJournal.this.generation == this.generation ? into.position() - start : -1;
+				}
+				this.segmentIndex++;
+				this.offset = 0;
+				this.segment = null;
+			}
+		}
+
+		private boolean map() {
+			try (RandomAccessFile file = new RandomAccessFile(segmentFile(this.segmentIndex), "r")) {
+				this.segment = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+				return true;
+			} catch (IOException ioe) {
+				log.info("Journal segment {} is gone: {}", this.segmentIndex, ioe.getMessage());
+				return false;
+			}
+		}
+	}
+
+	private int[] listSegments() {
+		String[] names = this.directory.list((dir, name) -> name.startsWith("journal-") && name.endsWith(".log"));
+		int[] segments = new int[names == null ? 0 : names.length];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = Integer.parseInt(names[i].substring("journal-".length(), names[i].length() - ".log".length()));
+		}
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	private File segmentFile(int index) {
+		return new File(this.directory, String.format("journal-%08d.log", index));
+	}
+}
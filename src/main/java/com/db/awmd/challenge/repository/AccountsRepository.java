@@ -1,17 +1,73 @@
 package com.db.awmd.challenge.repository;
 
 import java.math.BigDecimal;
+import java.util.function.Consumer;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountPage;
 import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.TransferBalances;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InvalidCursorException;
 
 public interface AccountsRepository {
 
   void createAccount(Account account) throws DuplicateAccountIdException;
 
   Account getAccount(String accountId);
-  Account debitAccount(final Account account, final BigDecimal amount);
-  Account creditAccount(final Account account, final BigDecimal amount);
+  Account debitAccount(final Account account, final long amountUnits, final int amountScale);
+  Account creditAccount(final Account account, final long amountUnits, final int amountScale);
   void clearAccounts();
+
+  // Debits one account and credits the other as one change, giving the debit back if the credit
+  // fails. Callers keep other writers off both accounts; a store that logs its changes logs
+  // the pair as one entry, so a crash never keeps one leg without the other.
+  default TransferBalances transfer(final Account fromAccount, final Account toAccount,
+      final long amountUnits, final int amountScale) {
+    debitAccount(fromAccount, amountUnits, amountScale);
+    try {
+      creditAccount(toAccount, amountUnits, amountScale);
+    } catch (RuntimeException e) {
+      creditAccount(fromAccount, amountUnits, amountScale);
+      throw e;
+    }
+    return new TransferBalances(fromAccount.getBalanceState(), toAccount.getBalanceState());
+  }
+
+  // Weakly consistent walk over every account: each balance is read atomically, but a
+  // transfer running concurrently may show on one of its two accounts only.
+  void forEachAccount(Consumer<Account> action);
+
+  // Up to limit accounts following the opaque cursor of the previous page, or from the start
+  // for a null cursor. Weakly consistent like forEachAccount; the next cursor is null at the end.
+  AccountPage listAccounts(String cursor, int limit) throws InvalidCursorException;
+
+  // Blocks until every mutation made so far survives a restart; a no-op for volatile stores.
+  default void awaitDurable() {
+  }
+
+  // Creates the account or overwrites its balance with one copied from another store, e.g. a
+  // replication leader. Not serialized with transfers; meant for a store nothing else writes to.
+  default void restoreAccount(String accountId, long balanceUnits, int balanceScale) {
+    Account account = getAccount(accountId);
+    if (account == null) {
+      createAccount(new Account(accountId, balanceUnits, balanceScale));
+    } else {
+      account.setBalance(balanceUnits, balanceScale);
+    }
+  }
+
+  default Account debitAccount(final Account account, final BigDecimal amount) {
+    return debitAccount(account, Money.unitsOf(amount), Money.scaleOf(amount));
+  }
+
+  default Account creditAccount(final Account account, final BigDecimal amount) {
+    return creditAccount(account, Money.unitsOf(amount), Money.scaleOf(amount));
+  }
+
+  default TransferBalances transfer(final Account fromAccount, final Account toAccount,
+      final BigDecimal amount) {
+    return transfer(fromAccount, toAccount, Money.unitsOf(amount), Money.scaleOf(amount));
+  }
 }
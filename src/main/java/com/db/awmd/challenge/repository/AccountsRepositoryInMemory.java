@@ -1,7 +1,9 @@
 package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountPage;
 import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.domain.ShardedAccount;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.InsufficientAmountException;
 import com.db.awmd.challenge.exception.InvalidAccountIdException;
@@ -9,25 +11,76 @@ import com.db.awmd.challenge.service.NotificationService;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.NavigableSet;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 @Repository
+@ConditionalOnProperty(name = "accounts.repository.type", havingValue = "memory", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
 	private final Map<String, Account> accounts = new ConcurrentHashMap<>();
 
+	// Ordered ids for cursor paging, only touched by creates; lookups and transfers use the map.
+	private final NavigableSet<String> accountIds = new ConcurrentSkipListSet<>();
+
+	private final Set<String> hotAccountIds;
+
+	private final int hotAccountCells;
+
+	private final int hotAccountScale;
+
+	public AccountsRepositoryInMemory() {
+		this(new String[0], 1, 0);
+	}
+
+	/**
+	 * Accounts whose id is listed in {@code hotAccountIds} are stored as a
+	 * {@link ShardedAccount} so credits to them do not serialize on one monitor.
+	 */
+	@Autowired
+	public AccountsRepositoryInMemory(@Value("${accounts.hot-accounts.ids:}") String[] hotAccountIds,
+			@Value("${accounts.hot-accounts.cells:16}") int hotAccountCells,
+			@Value("${accounts.hot-accounts.scale:2}") int hotAccountScale) {
+		this.hotAccountIds = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(hotAccountIds)));
+		this.hotAccountCells = hotAccountCells;
+		this.hotAccountScale = hotAccountScale;
+	}
+
 	@Override
 	public void createAccount(Account account) throws DuplicateAccountIdException {
+		register(shardIfHot(account));
+	}
+
+	// Hot accounts are stored as a copy, so callers must use getAccount afterwards
+	protected Account shardIfHot(Account account) {
+		if (!this.hotAccountIds.contains(account.getAccountId()) || account instanceof ShardedAccount) {
+			return account;
+		}
+		return new ShardedAccount(account.getAccountId(), account.getBalanceUnits(), account.getBalanceScale(),
+				this.hotAccountCells, this.hotAccountScale);
+	}
+
+	protected void register(Account account) throws DuplicateAccountIdException {
 		Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
 		if (previousAccount != null) {
 			throw new DuplicateAccountIdException("Account id " + account.getAccountId() + " already exists!");
 		}
+		accountIds.add(account.getAccountId());
 	}
 
 	@Override
@@ -38,25 +91,41 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
 	@Override
 	public void clearAccounts() {
 		accounts.clear();
+		accountIds.clear();
 	}
 
-	
-	public Account debitAccount(final Account account, final BigDecimal amount) {
-		accounts.compute(account.getAccountId().trim(), (accountNo, accountObj) -> {
-			if (account.getBalance().doubleValue() >= amount.doubleValue()) {
-				account.setBalance(account.getBalance().subtract(amount));
-			} else
-				throw new InsufficientAmountException(account.getAccountId()+" account does not have sufficent balance.");
-			return account;
-		});
+	@Override
+	public void forEachAccount(Consumer<Account> action) {
+		accounts.values().forEach(action);
+	}
+
+	// The cursor is the last account id of the previous page
+	@Override
+	public AccountPage listAccounts(String cursor, int limit) {
+		Iterator<String> ids = (cursor == null ? accountIds : accountIds.tailSet(cursor, false)).iterator();
+		List<Account> page = new ArrayList<>(limit);
+		String last = null;
+		while (page.size() < limit && ids.hasNext()) {
+			last = ids.next();
+			Account account = accounts.get(last);
+			if (account != null) {
+				page.add(account);
+			}
+		}
+		return new AccountPage(page, ids.hasNext() ? last : null);
+	}
+
+	@Override
+	public Account debitAccount(final Account account, final long amountUnits, final int amountScale) {
+		if (!account.debit(amountUnits, amountScale)) {
+			throw new InsufficientAmountException(account.getAccountId() + " account does not have sufficent balance.");
+		}
 		return account;
 	}
 
-	public Account creditAccount(final Account account, final BigDecimal amount) {
-		 accounts.compute(account.getAccountId(),(accountNo,accountObj)->{
-		  account.setBalance(account.getBalance().add(amount));
-		  return account;
-		  });
- 		return account;
+	@Override
+	public Account creditAccount(final Account account, final long amountUnits, final int amountScale) {
+		account.credit(amountUnits, amountScale);
+		return account;
 	}
 }
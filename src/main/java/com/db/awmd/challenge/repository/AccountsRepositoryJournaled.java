@@ -0,0 +1,211 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Balance;
+import com.db.awmd.challenge.domain.TransferBalances;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory account store that appends every create, debit, credit and
+ * transfer to an {@link AccountsJournal} and rebuilds itself from the journal
+ * on startup. A transfer is one record, so a crash keeps both of its legs or
+ * neither.
+ *
+ * Records carry the resulting balance as well as the amount, so replay only
+ * has to set balances and never re-evaluates a debit. That also lets a fuzzy
+ * {@link AccountsSnapshotStore} snapshot be taken while transfers run: startup
+ * loads the newest snapshot and replays only the journal written after it.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "accounts.repository.type", havingValue = "journal")
+public class AccountsRepositoryJournaled extends AccountsRepositoryInMemory {
+
+	private final AccountsJournal journal;
+
+	private final boolean syncCommit;
+
+	private final AccountsSnapshotStore snapshotStore;
+
+	private final ScheduledExecutorService snapshotScheduler;
+
+	public AccountsRepositoryJournaled(String directory, int segmentSize, long fsyncIntervalMillis,
+			boolean syncCommit) {
+		this(directory, segmentSize, fsyncIntervalMillis, syncCommit, directory, 0, 2, new String[0], 1, 0);
+	}
+
+	@Autowired
+	public AccountsRepositoryJournaled(@Value("${accounts.journal.directory:data/journal}") String directory,
+			@Value("${accounts.journal.segment-size:67108864}") int segmentSize,
+			@Value("${accounts.journal.fsync-interval-ms:2}") long fsyncIntervalMillis,
+			@Value("${accounts.journal.sync-commit:true}") boolean syncCommit,
+			@Value("${accounts.snapshot.directory:data/snapshots}") String snapshotDirectory,
+			@Value("${accounts.snapshot.interval-seconds:300}") long snapshotIntervalSeconds,
+			@Value("${accounts.snapshot.retained:2}") int retainedSnapshots,
+			@Value("${accounts.hot-accounts.ids:}") String[] hotAccountIds,
+			@Value("${accounts.hot-accounts.cells:16}") int hotAccountCells,
+			@Value("${accounts.hot-accounts.scale:2}") int hotAccountScale) {
+		super(hotAccountIds, hotAccountCells, hotAccountScale);
+		this.journal = new AccountsJournal(new File(directory), segmentSize, fsyncIntervalMillis);
+		this.syncCommit = syncCommit;
+		this.snapshotStore = new AccountsSnapshotStore(new File(snapshotDirectory), retainedSnapshots);
+
+		long start = System.nanoTime();
+		long replayFrom = this.snapshotStore.loadLatest(
+				(accountId, balanceUnits, balanceScale) -> super.createAccount(new Account(accountId, balanceUnits, balanceScale)));
+		this.journal.open(replayFrom, this::replay);
+		log.info("Recovered accounts in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+		if (snapshotIntervalSeconds > 0) {
+			this.snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "accounts-snapshot");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.snapshotScheduler.scheduleWithFixedDelay(this::snapshot, snapshotIntervalSeconds,
+					snapshotIntervalSeconds, TimeUnit.SECONDS);
+		} else {
+			this.snapshotScheduler = null;
+		}
+	}
+
+	/**
+	 * Writes a snapshot without pausing writers, then drops the journal segments
+	 * that no retained snapshot needs.
+	 */
+	public synchronized void snapshot() {
+		try {
+			// Everything journaled before this position is already applied to the map.
+			long position = this.journal.getWrittenPosition();
+			long start = System.nanoTime();
+			long count = this.snapshotStore.write(position, this::forEachAccount);
+			// Startup falls back to an older snapshot if the newest is corrupt, so keep its journal too
+			this.journal.truncateBefore(this.snapshotStore.getOldestPosition());
+			log.info("Snapshot of {} accounts at journal position {} took {} ms", count, position,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		} catch (RuntimeException e) {
+			log.error("Snapshot failed", e);
+		}
+	}
+
+	// Every change and its record are made under the journal's lock, so the records
+	// of an account are in the order its balance went through them.
+	@Override
+	public void createAccount(Account account) throws DuplicateAccountIdException {
+		// The account becomes visible in putIfAbsent, so no debit can be journaled ahead of its create.
+		Account stored = shardIfHot(account);
+		synchronized (this.journal) {
+			register(stored);
+			Balance balance = stored.getBalanceState();
+			this.journal.append(AccountsJournal.CREATE, stored.getAccountId(), 0, 0, balance.getUnits(),
+					balance.getScale());
+		}
+	}
+
+	@Override
+	public Account debitAccount(final Account account, final long amountUnits, final int amountScale) {
+		synchronized (this.journal) {
+			super.debitAccount(account, amountUnits, amountScale);
+			Balance balance = account.getBalanceState();
+			this.journal.append(AccountsJournal.DEBIT, account.getAccountId(), amountUnits, amountScale,
+					balance.getUnits(), balance.getScale());
+		}
+		return account;
+	}
+
+	@Override
+	public Account creditAccount(final Account account, final long amountUnits, final int amountScale) {
+		synchronized (this.journal) {
+			super.creditAccount(account, amountUnits, amountScale);
+			Balance balance = account.getBalanceState();
+			this.journal.append(AccountsJournal.CREDIT, account.getAccountId(), amountUnits, amountScale,
+					balance.getUnits(), balance.getScale());
+		}
+		return account;
+	}
+
+	@Override
+	public TransferBalances transfer(final Account fromAccount, final Account toAccount, final long amountUnits,
+			final int amountScale) {
+		synchronized (this.journal) {
+			super.debitAccount(fromAccount, amountUnits, amountScale);
+			try {
+				super.creditAccount(toAccount, amountUnits, amountScale);
+			} catch (RuntimeException e) {
+				super.creditAccount(fromAccount, amountUnits, amountScale);
+				throw e;
+			}
+			Balance fromBalance = fromAccount.getBalanceState();
+			Balance toBalance = toAccount.getBalanceState();
+			this.journal.appendTransfer(fromAccount.getAccountId(), toAccount.getAccountId(), amountUnits,
+					amountScale, fromBalance.getUnits(), fromBalance.getScale(), toBalance.getUnits(),
+					toBalance.getScale());
+			return new TransferBalances(fromBalance, toBalance);
+		}
+	}
+
+	// Journaled as a create, which replays as setting the balance of an existing account
+	@Override
+	public void restoreAccount(String accountId, long balanceUnits, int balanceScale) {
+		Account account = getAccount(accountId);
+		if (account == null) {
+			createAccount(new Account(accountId, balanceUnits, balanceScale));
+			return;
+		}
+		synchronized (this.journal) {
+			account.setBalance(balanceUnits, balanceScale);
+			this.journal.append(AccountsJournal.CREATE, accountId, 0, 0, balanceUnits, balanceScale);
+		}
+	}
+
+	@Override
+	public synchronized void clearAccounts() {
+		super.clearAccounts();
+		this.journal.reset();
+		this.snapshotStore.deleteAll();
+	}
+
+	public AccountsJournal getJournal() {
+		return this.journal;
+	}
+
+	@Override
+	public void awaitDurable() {
+		if (this.syncCommit) {
+			this.journal.awaitDurable();
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		if (this.snapshotScheduler != null) {
+			this.snapshotScheduler.shutdownNow();
+		}
+		this.journal.close();
+	}
+
+	private void replay(byte type, String accountId, long amountUnits, int amountScale, long balanceUnits,
+			int balanceScale) {
+		// A snapshot may already hold accounts created after its journal position.
+		Account account = getAccount(accountId);
+		if (account == null) {
+			super.createAccount(new Account(accountId, balanceUnits, balanceScale));
+		} else {
+			account.setBalance(balanceUnits, balanceScale);
+		}
+	}
+}
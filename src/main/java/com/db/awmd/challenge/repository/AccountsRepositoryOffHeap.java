@@ -0,0 +1,337 @@
+package com.db.awmd.challenge.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountPage;
+import com.db.awmd.challenge.domain.Balance;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.InvalidCursorException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Account store that keeps no per-account objects on the heap. Accounts live
+ * in fixed-width slots of direct {@link ByteBuffer} segments, found through an
+ * open-addressing (linear probing) hash index over the slots themselves:
+ *
+ * <pre>
+ * int idLength | int hash | long balanceUnits | int balanceScale | int pad | long heldUnits | id bytes
+ * </pre>
+ *
+ * A slot with idLength 0 is empty. {@link #getAccount(String)} returns a short
+ * lived {@link OffHeapAccount} view that reads and writes the slot, so two
+ * views of one account are different objects; use an engine that locks by
+ * {@link Account#getLockHash()} rather than by object identity. The Account
+ * handed to {@link #createAccount(Account)} is copied, not kept, so later
+ * changes only show through views, which debit and credit return.
+ *
+ * Slots are read and written under one of {@code LOCK_STRIPES} monitors
+ * picked by slot index; creates are additionally serialized on the store.
+ * The table never resizes, so size it with {@code expected-accounts}.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "accounts.repository.type", havingValue = "offheap")
+public class AccountsRepositoryOffHeap implements AccountsRepository {
+
+	private static final int ID_LENGTH = 0;
+	private static final int HASH = 4;
+	private static final int UNITS = 8;
+	private static final int SCALE = 16;
+	private static final int HELD = 24;
+	private static final int ID = 32;
+
+	private static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+	private static final int LOCK_STRIPES = 4096;
+
+	private static final double MAX_LOAD = 0.75;
+
+	private final ByteBuffer[] segments;
+
+	private final int slotSize;
+
+	private final int maxIdBytes;
+
+	private final int segmentShift;
+
+	private final int segmentMask;
+
+	private final int mask;
+
+	private final long maxAccounts;
+
+	private final Object[] locks = new Object[LOCK_STRIPES];
+
+	private volatile long size;
+
+	@Autowired
+	public AccountsRepositoryOffHeap(@Value("${accounts.offheap.expected-accounts:1000000}") long expectedAccounts,
+			@Value("${accounts.offheap.max-id-bytes:40}") int maxIdBytes) {
+		this.maxIdBytes = maxIdBytes;
+		this.slotSize = (ID + maxIdBytes + 7) & ~7;
+		long wanted = Math.max(16, (long) Math.ceil(expectedAccounts / MAX_LOAD));
+		if (wanted > 1 << 30) {
+			throw new IllegalArgumentException("At most " + (long) ((1 << 30) * MAX_LOAD) + " accounts are supported.");
+		}
+		int slots = Integer.highestOneBit((int) wanted - 1) << 1;
+		this.mask = slots - 1;
+		this.maxAccounts = (long) (slots * MAX_LOAD);
+		int slotsPerSegment = Math.min(slots, Integer.highestOneBit(MAX_SEGMENT_BYTES / this.slotSize));
+		this.segmentShift = Integer.numberOfTrailingZeros(slotsPerSegment);
+		this.segmentMask = slotsPerSegment - 1;
+		this.segments = new ByteBuffer[slots / slotsPerSegment];
+		for (int i = 0; i < this.segments.length; i++) {
+			this.segments[i] = ByteBuffer.allocateDirect(slotsPerSegment * this.slotSize);
+		}
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			this.locks[i] = new Object();
+		}
+		log.info("Allocated {} off-heap account slots of {} bytes ({} MB)", slots, this.slotSize,
+				((long) slots * this.slotSize) >> 20);
+	}
+
+	@Override
+	public void createAccount(Account account) throws DuplicateAccountIdException {
+		byte[] id = idBytes(account.getAccountId());
+		int hash = account.getLockHash();
+		Balance balance = account.getBalanceState();
+		synchronized (this) {
+			int slot = probe(id, hash);
+			if (slot < 0) {
+				throw new DuplicateAccountIdException("Account id " + account.getAccountId() + " already exists!");
+			}
+			if (this.size >= this.maxAccounts) {
+				throw new IllegalStateException("Off-heap account store is full at " + this.size + " accounts.");
+			}
+			synchronized (lockFor(slot)) {
+				ByteBuffer segment = segmentOf(slot);
+				int base = offsetOf(slot);
+				segment.putInt(base + HASH, hash);
+				segment.putLong(base + UNITS, balance.getUnits());
+				segment.putInt(base + SCALE, balance.getScale());
+				segment.putLong(base + HELD, balance.getHeld());
+				for (int i = 0; i < id.length; i++) {
+					segment.put(base + ID + i, id[i]);
+				}
+				segment.putInt(base + ID_LENGTH, id.length);
+			}
+			this.size++;
+		}
+	}
+
+	@Override
+	public Account getAccount(String accountId) {
+		byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+		if (id.length == 0 || id.length > this.maxIdBytes) {
+			return null;
+		}
+		int slot = probe(id, Account.lockHashOf(accountId));
+		return slot < 0 ? new OffHeapAccount(this, -slot - 1, accountId) : null;
+	}
+
+	@Override
+	public synchronized void clearAccounts() {
+		for (int slot = 0; slot <= this.mask; slot++) {
+			synchronized (lockFor(slot)) {
+				segmentOf(slot).putInt(offsetOf(slot) + ID_LENGTH, 0);
+			}
+		}
+		this.size = 0;
+	}
+
+	@Override
+	public Account debitAccount(final Account account, final long amountUnits, final int amountScale) {
+		OffHeapAccount view = viewOf(account);
+		if (!view.debit(amountUnits, amountScale)) {
+			throw new InsufficientAmountException(account.getAccountId() + " account does not have sufficent balance.");
+		}
+		return view;
+	}
+
+	@Override
+	public Account creditAccount(final Account account, final long amountUnits, final int amountScale) {
+		OffHeapAccount view = viewOf(account);
+		view.credit(amountUnits, amountScale);
+		return view;
+	}
+
+	@Override
+	public void forEachAccount(Consumer<Account> action) {
+		for (int slot = 0; slot <= this.mask; slot++) {
+			Account account = accountAt(slot);
+			if (account != null) {
+				action.accept(account);
+			}
+		}
+	}
+
+	// Slots are never freed, so the cursor is simply the next slot index; a page may come back short
+	@Override
+	public AccountPage listAccounts(String cursor, int limit) throws InvalidCursorException {
+		int slot = cursor == null ? 0 : slotOf(cursor);
+		List<Account> page = new ArrayList<>(limit);
+		for (; slot <= this.mask && page.size() < limit; slot++) {
+			Account account = accountAt(slot);
+			if (account != null) {
+				page.add(account);
+			}
+		}
+		return new AccountPage(page, slot <= this.mask ? Integer.toString(slot) : null);
+	}
+
+	public long size() {
+		return this.size;
+	}
+
+	Balance read(int slot) {
+		synchronized (lockFor(slot)) {
+			ByteBuffer segment = segmentOf(slot);
+			int base = offsetOf(slot);
+			return new Balance(segment.getLong(base + UNITS), segment.getInt(base + SCALE), 0, false,
+					segment.getLong(base + HELD));
+		}
+	}
+
+	// Returns the new balance, or null (leaving the slot as it is) if the change yields none
+	Balance update(int slot, UnaryOperator<Balance> change) {
+		synchronized (lockFor(slot)) {
+			Balance next = change.apply(read(slot));
+			if (next != null) {
+				write(slot, next);
+			}
+			return next;
+		}
+	}
+
+	// A slot keeps no version, so expected is compared by amount; the slot is left as it is on a mismatch
+	boolean compareAndSet(int slot, Balance expected, Balance update) {
+		synchronized (lockFor(slot)) {
+			Balance current = read(slot);
+			if (current.getUnits() != expected.getUnits() || current.getScale() != expected.getScale()
+					|| current.getHeld() != expected.getHeld()) {
+				return false;
+			}
+			write(slot, update);
+			return true;
+		}
+	}
+
+	// Called with the slot's lock held
+	private void write(int slot, Balance balance) {
+		ByteBuffer segment = segmentOf(slot);
+		int base = offsetOf(slot);
+		segment.putLong(base + UNITS, balance.getUnits());
+		segment.putInt(base + SCALE, balance.getScale());
+		segment.putLong(base + HELD, balance.getHeld());
+	}
+
+	private OffHeapAccount accountAt(int slot) {
+		byte[] id;
+		synchronized (lockFor(slot)) {
+			ByteBuffer segment = segmentOf(slot);
+			int base = offsetOf(slot);
+			int length = segment.getInt(base + ID_LENGTH);
+			if (length == 0) {
+				return null;
+			}
+			id = new byte[length];
+			for (int i = 0; i < length; i++) {
+				id[i] = segment.get(base + ID + i);
+			}
+		}
+		return new OffHeapAccount(this, slot, new String(id, StandardCharsets.UTF_8));
+	}
+
+	private int slotOf(String cursor) throws InvalidCursorException {
+		try {
+			int slot = Integer.parseInt(cursor);
+			if (slot >= 0 && slot <= this.mask) {
+				return slot;
+			}
+		} catch (NumberFormatException nfe) {
+			// reported below
+		}
+		throw new InvalidCursorException(cursor + " is not a valid cursor.");
+	}
+
+	/**
+	 * Returns {@code -(slot + 1)} of the slot holding {@code id}, or the first
+	 * empty slot of its probe sequence if there is none.
+	 */
+	private int probe(byte[] id, int hash) {
+		int slot = mix(hash) & this.mask;
+		while (true) {
+			synchronized (lockFor(slot)) {
+				ByteBuffer segment = segmentOf(slot);
+				int base = offsetOf(slot);
+				int length = segment.getInt(base + ID_LENGTH);
+				if (length == 0) {
+					return slot;
+				}
+				if (length == id.length && segment.getInt(base + HASH) == hash && idEquals(segment, base, id)) {
+					return -slot - 1;
+				}
+			}
+			slot = (slot + 1) & this.mask;
+		}
+	}
+
+	private static boolean idEquals(ByteBuffer segment, int base, byte[] id) {
+		for (int i = 0; i < id.length; i++) {
+			if (segment.get(base + ID + i) != id[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private OffHeapAccount viewOf(Account account) {
+		if (account instanceof OffHeapAccount && ((OffHeapAccount) account).isViewOf(this)) {
+			return (OffHeapAccount) account;
+		}
+		Account view = getAccount(account.getAccountId());
+		if (view == null) {
+			throw new InvalidAccountIdException("Invalid account id " + account.getAccountId());
+		}
+		return (OffHeapAccount) view;
+	}
+
+	private byte[] idBytes(String accountId) {
+		byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+		if (id.length == 0 || id.length > this.maxIdBytes) {
+			throw new InvalidAccountIdException("Account id must be 1 to " + this.maxIdBytes + " bytes long.");
+		}
+		return id;
+	}
+
+	// Lock hashes of ids like "Id-1", "Id-2" are close together, spread them before probing linearly
+	private static int mix(int hash) {
+		return (hash * 0x9E3779B9) ^ (hash >>> 16);
+	}
+
+	private Object lockFor(int slot) {
+		return this.locks[slot & (LOCK_STRIPES - 1)];
+	}
+
+	private ByteBuffer segmentOf(int slot) {
+		return this.segments[slot >>> this.segmentShift];
+	}
+
+	private int offsetOf(int slot) {
+		return (slot & this.segmentMask) * this.slotSize;
+	}
+}
@@ -0,0 +1,202 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Balance;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compact binary images of every account, each tagged with the journal
+ * position it was started at.
+ *
+ * Snapshots are fuzzy: accounts are read one at a time while transfers keep
+ * running. That is safe because journal records carry absolute balances, so
+ * replaying the journal from the tagged position overwrites anything the
+ * snapshot caught mid-flight with the value it ended up with.
+ */
+@Slf4j
+public class AccountsSnapshotStore {
+
+	private static final int MAGIC = 0x41434353;
+
+	private static final int VERSION = 1;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private static final String PREFIX = "snapshot-";
+
+	private static final String SUFFIX = ".snap";
+
+	public interface AccountHandler {
+		void onAccount(String accountId, long balanceUnits, int balanceScale);
+	}
+
+	private final File directory;
+
+	private final int retained;
+
+	public AccountsSnapshotStore(File directory, int retained) {
+		this.directory = directory;
+		this.retained = retained;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new UncheckedIOException(new IOException("Cannot create snapshot directory " + directory));
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the accounts handed to {@code source}'s consumer and
+	 * returns the number written. The file only becomes visible once complete.
+	 */
+	public long write(long journalPosition, Consumer<Consumer<Account>> source) {
+		File temp = new File(this.directory, PREFIX + "tmp");
+		CRC32 crc = new CRC32();
+		long[] count = new long[1];
+		try (FileOutputStream file = new FileOutputStream(temp)) {
+			DataOutputStream out = new DataOutputStream(
+					new CheckedOutputStream(new BufferedOutputStream(file, BUFFER_SIZE), crc));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(journalPosition);
+			source.accept(account -> {
+				try {
+					byte[] id = account.getAccountId().getBytes(StandardCharsets.UTF_8);
+					Balance balance = account.getBalanceState();
+					out.writeShort(id.length);
+					out.write(id);
+					out.writeLong(balance.getUnits());
+					out.writeInt(balance.getScale());
+					count[0]++;
+				} catch (IOException ioe) {
+					throw new UncheckedIOException(ioe);
+				}
+			});
+			out.writeShort(-1);
+			out.writeLong(count[0]);
+			out.flush();
+			new DataOutputStream(file).writeLong(crc.getValue());
+			file.getChannel().force(true);
+		} catch (IOException ioe) {
+			temp.delete();
+			throw new UncheckedIOException(ioe);
+		}
+		try {
+			Files.move(temp.toPath(), snapshotFile(journalPosition).toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+		long[] positions = listSnapshots();
+		for (int i = 0; i < positions.length - this.retained; i++) {
+			snapshotFile(positions[i]).delete();
+		}
+		return count[0];
+	}
+
+	/**
+	 * Loads the newest intact snapshot and returns the journal position replay
+	 * has to start from, or 0 if there is none.
+	 */
+	public long loadLatest(AccountHandler handler) {
+		long[] positions = listSnapshots();
+		for (int i = positions.length - 1; i >= 0; i--) {
+			if (verify(snapshotFile(positions[i]))) {
+				load(snapshotFile(positions[i]), handler);
+				return positions[i];
+			}
+			log.warn("Snapshot {} is corrupt, trying an older one", snapshotFile(positions[i]));
+		}
+		return 0;
+	}
+
+	/**
+	 * Journal position of the oldest snapshot kept, which is where replay starts
+	 * if every newer one turns out corrupt, or 0 if there is none.
+	 */
+	public long getOldestPosition() {
+		long[] positions = listSnapshots();
+		return positions.length == 0 ? 0 : positions[0];
+	}
+
+	public void deleteAll() {
+		for (long position : listSnapshots()) {
+			snapshotFile(position).delete();
+		}
+	}
+
+	// Checks the trailing checksum before anything is applied, so a bad file never half-loads
+	private boolean verify(File file) {
+		long length = file.length();
+		if (length < Long.BYTES) {
+			return false;
+		}
+		CRC32 crc = new CRC32();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long remaining = length - Long.BYTES;
+			while (remaining > 0) {
+				int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if (read < 0) {
+					return false;
+				}
+				crc.update(buffer, 0, read);
+				remaining -= read;
+			}
+			return in.readLong() == crc.getValue();
+		} catch (IOException ioe) {
+			return false;
+		}
+	}
+
+	private void load(File file, AccountHandler handler) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Unsupported snapshot format in " + file);
+			}
+			in.readLong();
+			byte[] id = new byte[256];
+			int idLength;
+			while ((idLength = in.readShort()) >= 0) {
+				if (idLength > id.length) {
+					id = new byte[idLength];
+				}
+				in.readFully(id, 0, idLength);
+				handler.onAccount(new String(id, 0, idLength, StandardCharsets.UTF_8), in.readLong(), in.readInt());
+			}
+		} catch (EOFException eofe) {
+			throw new UncheckedIOException(new IOException("Truncated snapshot " + file, eofe));
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	private long[] listSnapshots() {
+		String[] names = this.directory.list((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+		long[] positions = new long[names == null ? 0 : names.length];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = Long.parseLong(names[i].substring(PREFIX.length(), names[i].length() - SUFFIX.length()), 16);
+		}
+		Arrays.sort(positions);
+		return positions;
+	}
+
+	private File snapshotFile(long journalPosition) {
+		return new File(this.directory, String.format("%s%016x%s", PREFIX, journalPosition, SUFFIX));
+	}
+}
@@ -0,0 +1,100 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Balance;
+import com.db.awmd.challenge.domain.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+
+/**
+ * View of one slot of an {@link AccountsRepositoryOffHeap}. Holds nothing but
+ * the id and the slot index; every balance read or change goes to the slot.
+ */
+class OffHeapAccount extends Account {
+
+  private final AccountsRepositoryOffHeap store;
+
+  private final int slot;
+
+  OffHeapAccount(AccountsRepositoryOffHeap store, int slot, String accountId) {
+    super(accountId);
+    this.store = store;
+    this.slot = slot;
+  }
+
+  boolean isViewOf(AccountsRepositoryOffHeap owner) {
+    return this.store == owner;
+  }
+
+  @Override
+  public BigDecimal getBalance() {
+    Balance balance = this.store.read(this.slot);
+    return balance.isSet() ? Money.toBigDecimal(balance.getUnits(), balance.getScale()) : null;
+  }
+
+  @Override
+  @JsonIgnore
+  public long getBalanceUnits() {
+    return this.store.read(this.slot).getUnits();
+  }
+
+  @Override
+  @JsonIgnore
+  public int getBalanceScale() {
+    return this.store.read(this.slot).getScale();
+  }
+
+  @Override
+  @JsonIgnore
+  public Balance getBalanceState() {
+    return this.store.read(this.slot);
+  }
+
+  @Override
+  @JsonIgnore
+  public Balance getSettledBalance() {
+    return this.store.read(this.slot);
+  }
+
+  // A slot only ever holds a plain balance: it never matches a pending update and cannot take one
+  @Override
+  public boolean compareAndSetState(Object expected, Object update) {
+    if (!(update instanceof Balance) || ((Balance) update).isExclusive()) {
+      throw new IllegalArgumentException("An off-heap account can only be set to a plain balance.");
+    }
+    return expected instanceof Balance && this.store.compareAndSet(this.slot, (Balance) expected, (Balance) update);
+  }
+
+  @Override
+  public void setBalance(BigDecimal balance) {
+    long units = balance == null ? 0 : Money.unitsOf(balance);
+    int scale = balance == null ? Balance.NONE.getScale() : Money.scaleOf(balance);
+    setBalance(units, scale);
+  }
+
+  @Override
+  public void setBalance(long balanceUnits, int balanceScale) {
+    this.store.update(this.slot, current -> current.withUnits(balanceUnits, balanceScale));
+  }
+
+  @Override
+  public boolean debit(long amountUnits, int amountScale) {
+    return this.store.update(this.slot, current -> current.debit(amountUnits, amountScale)) != null;
+  }
+
+  @Override
+  public void credit(long amountUnits, int amountScale) {
+    this.store.update(this.slot, current -> current.credit(amountUnits, amountScale));
+  }
+
+  @Override
+  public boolean hold(long amountUnits, int amountScale) {
+    return this.store.update(this.slot, current -> current.hold(amountUnits, amountScale)) != null;
+  }
+
+  @Override
+  public void releaseHold(long amountUnits, int amountScale) {
+    this.store.update(this.slot, current -> current.release(amountUnits, amountScale));
+  }
+}
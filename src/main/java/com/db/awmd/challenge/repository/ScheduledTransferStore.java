@@ -0,0 +1,175 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Scheduled transfers kept on disk as an append-only log of lines: a saved
+ * transfer as {@code +} and its JSON, a removed one as {@code -} and its id.
+ * Every write is forced to disk before it returns, one force per call however
+ * many transfers it carries.
+ *
+ * The live lines are also kept in memory. Once removed lines outnumber them
+ * (and there are more than {@code MIN_COMPACTION_LINES} in all) the log is
+ * rewritten with the live ones alone, so it stays proportional to what is
+ * scheduled. A torn last line, left by a crash mid-write, is skipped on load.
+ */
+@Slf4j
+public class ScheduledTransferStore implements AutoCloseable {
+
+	private static final String FILE_NAME = "scheduled-transfers.log";
+
+	private static final int MIN_COMPACTION_LINES = 1024;
+
+	private final File file;
+
+	private final ObjectMapper objectMapper;
+
+	// Saved line of every live transfer, by id
+	private final Map<String, String> live = new LinkedHashMap<>();
+
+	private FileOutputStream out;
+
+	private long lines;
+
+	public ScheduledTransferStore(File directory, ObjectMapper objectMapper) {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new UncheckedIOException(new IOException("Cannot create schedule directory " + directory));
+		}
+		this.file = new File(directory, FILE_NAME);
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Reads back every transfer still scheduled and opens the log for writing.
+	 */
+	public synchronized List<ScheduledTransfer> load() {
+		List<ScheduledTransfer> transfers = new ArrayList<>();
+		if (this.file.exists()) {
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(new FileInputStream(this.file), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith("+")) {
+						try {
+							ScheduledTransfer transfer = this.objectMapper.readValue(line.substring(1),
+									ScheduledTransfer.class);
+							this.live.put(transfer.getScheduleId(), line);
+						} catch (JsonProcessingException jpe) {
+							log.warn("Skipping unreadable line of {}: {}", this.file, jpe.getOriginalMessage());
+						}
+					} else if (line.startsWith("-")) {
+						this.live.remove(line.substring(1));
+					}
+				}
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+		}
+		for (String line : this.live.values()) {
+			try {
+				transfers.add(this.objectMapper.readValue(line.substring(1), ScheduledTransfer.class));
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+		}
+		rewrite();
+		return transfers;
+	}
+
+	public void save(ScheduledTransfer transfer) {
+		write(Collections.singletonList(transfer), Collections.emptyList());
+	}
+
+	public void remove(String scheduleId) {
+		write(Collections.emptyList(), Collections.singletonList(scheduleId));
+	}
+
+	public synchronized void write(Collection<ScheduledTransfer> saved, Collection<String> removed) {
+		if (saved.isEmpty() && removed.isEmpty()) {
+			return;
+		}
+		StringBuilder text = new StringBuilder();
+		for (ScheduledTransfer transfer : saved) {
+			String line;
+			try {
+				line = "+" + this.objectMapper.writeValueAsString(transfer);
+			} catch (JsonProcessingException jpe) {
+				throw new UncheckedIOException(jpe);
+			}
+			this.live.put(transfer.getScheduleId(), line);
+			text.append(line).append('\n');
+		}
+		for (String scheduleId : removed) {
+			this.live.remove(scheduleId);
+			text.append('-').append(scheduleId).append('\n');
+		}
+		this.lines += saved.size() + removed.size();
+		if (this.lines > MIN_COMPACTION_LINES && this.lines > 2 * this.live.size()) {
+			rewrite();
+			return;
+		}
+		try {
+			this.out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+			this.out.getChannel().force(false);
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (this.out != null) {
+			try {
+				this.out.close();
+			} catch (IOException ioe) {
+				log.warn("Closing {} failed", this.file, ioe);
+			}
+			this.out = null;
+		}
+	}
+
+	// Replaces the log with the live lines; the new one only becomes visible once complete
+	private void rewrite() {
+		close();
+		File temp = new File(this.file.getParentFile(), FILE_NAME + ".tmp");
+		try (FileOutputStream rewritten = new FileOutputStream(temp)) {
+			StringBuilder text = new StringBuilder();
+			for (String line : this.live.values()) {
+				text.append(line).append('\n');
+			}
+			rewritten.write(text.toString().getBytes(StandardCharsets.UTF_8));
+			rewritten.getChannel().force(true);
+		} catch (IOException ioe) {
+			temp.delete();
+			throw new UncheckedIOException(ioe);
+		}
+		try {
+			Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			this.out = new FileOutputStream(this.file, true);
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+		this.lines = this.live.size();
+	}
+}
@@ -0,0 +1,96 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only file of transaction history entries that no longer fit in the
+ * in-memory rings, kept in fixed size memory-mapped segments like
+ * {@link AccountsJournal}. Each record is
+ *
+ * <pre>
+ * int size | long sequence | long timestamp | long amountUnits | int amountScale
+ *          | long balanceUnits | int balanceScale
+ *          | short idChars | id chars | short counterpartyChars | counterparty chars
+ * </pre>
+ *
+ * with ids written as UTF-16 so an append encodes nothing, and a size of 0
+ * marking the end of a segment. Segments are forced when they are rolled and
+ * on close, not per append: entries survive a crash of the process but the
+ * last ones may be lost if the machine goes down.
+ */
+public class TransactionArchive implements AutoCloseable {
+
+	// size + sequence + timestamp + amount units/scale + balance units/scale + two char counts
+	private static final int FIXED_RECORD_SIZE = 4 + 8 + 8 + 8 + 4 + 8 + 4 + 2 + 2;
+
+	private final File directory;
+
+	private final String prefix;
+
+	private final int segmentSize;
+
+	private int segmentIndex;
+
+	private MappedByteBuffer segment;
+
+	/**
+	 * Writes segments named {@code <prefix>-<index>.log}, starting after the
+	 * last one already in {@code directory}.
+	 */
+	public TransactionArchive(File directory, String prefix, int segmentSize) {
+		this.directory = directory;
+		this.prefix = prefix;
+		this.segmentSize = segmentSize;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new UncheckedIOException(new IOException("Cannot create history directory " + directory));
+		}
+		String[] names = directory.list((dir, name) -> name.startsWith(prefix + "-") && name.endsWith(".log"));
+		int next = 0;
+		for (String name : names == null ? new String[0] : names) {
+			next = Math.max(next, Integer.parseInt(name.substring(prefix.length() + 1, name.length() - ".log".length())) + 1);
+		}
+		mapSegment(next);
+	}
+
+	public synchronized void append(String accountId, long sequence, long timestamp, String counterpartyId,
+			long amountUnits, int amountScale, long balanceUnits, int balanceScale) {
+		int size = FIXED_RECORD_SIZE + 2 * (accountId.length() + counterpartyId.length());
+		// Keep room for the terminating size of 0
+		if (this.segment.remaining() < size + 4) {
+			this.segment.force();
+			mapSegment(this.segmentIndex + 1);
+		}
+		MappedByteBuffer buffer = this.segment;
+		buffer.putInt(size).putLong(sequence).putLong(timestamp).putLong(amountUnits).putInt(amountScale)
+				.putLong(balanceUnits).putInt(balanceScale);
+		putChars(buffer, accountId);
+		putChars(buffer, counterpartyId);
+	}
+
+	@Override
+	public synchronized void close() {
+		this.segment.force();
+	}
+
+	private static void putChars(MappedByteBuffer buffer, String value) {
+		buffer.putShort((short) value.length());
+		for (int i = 0; i < value.length(); i++) {
+			buffer.putChar(value.charAt(i));
+		}
+	}
+
+	private void mapSegment(int index) {
+		File file = new File(this.directory, String.format("%s-%08d.log", this.prefix, index));
+		try (RandomAccessFile segmentFile = new RandomAccessFile(file, "rw")) {
+			this.segment = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+			this.segmentIndex = index;
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package com.db.awmd.challenge.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountPage;
+import com.db.awmd.challenge.exception.InvalidCursorException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Read-side enumeration of the book for reconciliation: cursor paging and a
+ * streaming NDJSON export. Both walk the live store and are weakly
+ * consistent, see {@link AccountsRepository#forEachAccount}; nothing pauses
+ * transfers. The export writes each account to the response as it is read,
+ * so memory use does not depend on the number of accounts.
+ */
+@Service
+@Slf4j
+public class AccountExporter {
+
+	private final AccountsRepository accountsRepository;
+
+	private final ObjectMapper objectMapper;
+
+	// Left to flush only when its buffer fills, so the response goes out in chunks rather than per account
+	private final ObjectWriter accountWriter;
+
+	private final int maxPageSize;
+
+	@Autowired
+	public AccountExporter(AccountsRepository accountsRepository, ObjectMapper objectMapper,
+			@Value("${accounts.listing.max-page-size:1000}") int maxPageSize) {
+		this.accountsRepository = accountsRepository;
+		this.objectMapper = objectMapper;
+		this.accountWriter = objectMapper.writerFor(Account.class)
+				.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		this.maxPageSize = maxPageSize;
+	}
+
+	public AccountPage listAccounts(String cursor, int limit) throws InvalidCursorException {
+		return this.accountsRepository.listAccounts(cursor, Math.max(1, Math.min(limit, this.maxPageSize)));
+	}
+
+	// Writes one account object per line and returns how many were written
+	public long exportAccounts(OutputStream out) throws IOException {
+		long start = System.nanoTime();
+		long[] count = new long[1];
+		JsonGenerator generator = this.objectMapper.getFactory().createGenerator(out);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		// Lines are ended explicitly below instead of separating values with a space
+		generator.setRootValueSeparator(null);
+		try {
+			this.accountsRepository.forEachAccount(account -> {
+				try {
+					this.accountWriter.writeValue(generator, account);
+					generator.writeRaw('\n');
+					count[0]++;
+				} catch (IOException ioe) {
+					throw new UncheckedIOException(ioe);
+				}
+			});
+		} catch (UncheckedIOException uioe) {
+			throw uioe.getCause();
+		} finally {
+			generator.close();
+		}
+		log.info("Exported {} accounts in {} ms", count[0], (System.nanoTime() - start) / 1_000_000);
+		return count[0];
+	}
+}
@@ -0,0 +1,265 @@
+package com.db.awmd.challenge.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportResult;
+import com.db.awmd.challenge.domain.ImportLineError;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates accounts from a stream of NDJSON objects or {@code accountId,balance}
+ * CSV rows.
+ *
+ * The body is read line by line and handed to a worker pool in batches of
+ * {@code batch-size} lines, with at most two batches per worker in flight, so
+ * memory stays bounded however large the upload is. A line that cannot be
+ * parsed, fails validation or names an existing account is reported and
+ * skipped; the rest of the import carries on. Durable stores are waited on
+ * once per batch rather than once per account. In a cluster only accounts
+ * owned by this node are imported; send each node its own share.
+ */
+@Service
+@Slf4j
+public class AccountImporter {
+
+	public enum Format {
+		NDJSON, CSV
+	}
+
+	private final AccountsRepository accountsRepository;
+
+	private final PartitionMap partitionMap;
+
+	private final ObjectReader accountReader;
+
+	private final ExecutorService executor;
+
+	private final int maxBatchesInFlight;
+
+	private final int batchSize;
+
+	private final int maxReportedErrors;
+
+	public AccountImporter(AccountsRepository accountsRepository, ObjectMapper objectMapper, int threads,
+			int batchSize, int maxReportedErrors) {
+		this(accountsRepository, new PartitionMap("", "", 0), objectMapper, threads, batchSize, maxReportedErrors);
+	}
+
+	@Autowired
+	public AccountImporter(AccountsRepository accountsRepository, PartitionMap partitionMap, ObjectMapper objectMapper,
+			@Value("${accounts.import.threads:4}") int threads,
+			@Value("${accounts.import.batch-size:1000}") int batchSize,
+			@Value("${accounts.import.max-reported-errors:1000}") int maxReportedErrors) {
+		this.accountsRepository = accountsRepository;
+		this.partitionMap = partitionMap;
+		this.accountReader = objectMapper.readerFor(Account.class);
+		this.maxBatchesInFlight = 2 * threads;
+		this.batchSize = batchSize;
+		this.maxReportedErrors = maxReportedErrors;
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "accounts-import-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Imports every line of {@code body}. Accounts created before a read
+	 * failure stay created.
+	 */
+	public AccountImportResult importAccounts(InputStream body, Format format) throws IOException {
+		log.info("Importing accounts from {}", format);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+		Deque<Future<BatchOutcome>> inFlight = new ArrayDeque<>();
+		ImportTotals totals = new ImportTotals();
+		List<String> lines = new ArrayList<>(this.batchSize);
+		long firstLine = 1;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lines.add(line);
+			if (lines.size() == this.batchSize) {
+				if (inFlight.size() == this.maxBatchesInFlight) {
+					totals.add(await(inFlight.removeFirst()));
+				}
+				inFlight.addLast(submit(lines, firstLine, format));
+				firstLine += lines.size();
+				lines = new ArrayList<>(this.batchSize);
+			}
+		}
+		if (!lines.isEmpty()) {
+			inFlight.addLast(submit(lines, firstLine, format));
+		}
+		while (!inFlight.isEmpty()) {
+			totals.add(await(inFlight.removeFirst()));
+		}
+		log.info("Imported {} accounts, {} lines failed", totals.created, totals.failed);
+		return new AccountImportResult(totals.created, totals.failed, totals.errors,
+				totals.failed > totals.errors.size());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	private Future<BatchOutcome> submit(List<String> lines, long firstLine, Format format) {
+		return this.executor.submit(() -> importBatch(lines, firstLine, format));
+	}
+
+	private BatchOutcome importBatch(List<String> lines, long firstLine, Format format) {
+		BatchOutcome outcome = new BatchOutcome();
+		for (int i = 0; i < lines.size(); i++) {
+			long lineNumber = firstLine + i;
+			String line = lines.get(i).trim();
+			if (line.isEmpty() || (format == Format.CSV && lineNumber == 1 && isCsvHeader(line))) {
+				continue;
+			}
+			Account account = null;
+			try {
+				account = format == Format.CSV ? parseCsv(line) : parseJson(line);
+				validate(account);
+				if (!this.partitionMap.isLocal(account.getAccountId())) {
+					throw new ImportLineException(
+							"Account belongs to " + this.partitionMap.ownerOf(account.getAccountId()) + ".");
+				}
+				this.accountsRepository.createAccount(account);
+				outcome.created++;
+			} catch (ImportLineException | DuplicateAccountIdException | IllegalArgumentException
+					| ArithmeticException e) {
+				outcome.errors.add(
+						new ImportLineError(lineNumber, account == null ? null : account.getAccountId(), e.getMessage()));
+			}
+		}
+		if (outcome.created > 0) {
+			this.accountsRepository.awaitDurable();
+		}
+		return outcome;
+	}
+
+	private Account parseJson(String line) {
+		try {
+			return this.accountReader.readValue(line);
+		} catch (JsonProcessingException jpe) {
+			throw new ImportLineException("Malformed JSON: " + jpe.getOriginalMessage());
+		} catch (IOException ioe) {
+			throw new ImportLineException("Malformed JSON: " + ioe.getMessage());
+		}
+	}
+
+	// Ids may not contain commas; fields may be wrapped in double quotes
+	private static Account parseCsv(String line) {
+		String[] fields = line.split(",", -1);
+		if (fields.length != 2) {
+			throw new ImportLineException("Expected accountId,balance but found " + fields.length + " fields.");
+		}
+		String accountId = unquote(fields[0]);
+		String balance = unquote(fields[1]);
+		try {
+			return new Account(accountId, balance.isEmpty() ? null : new BigDecimal(balance));
+		} catch (NumberFormatException nfe) {
+			throw new ImportLineException(balance + " is not a valid balance.");
+		}
+	}
+
+	private static void validate(Account account) {
+		if (account.getAccountId() == null || account.getAccountId().trim().isEmpty()) {
+			throw new ImportLineException("Account id is missing.");
+		}
+		if (Account.RESERVED_IDS.contains(account.getAccountId())) {
+			throw new ImportLineException(account.getAccountId() + " is reserved and cannot be an account id.");
+		}
+		if (account.getBalance() == null) {
+			throw new ImportLineException("Balance is missing.");
+		}
+		if (account.getBalance().signum() < 0) {
+			throw new ImportLineException("Initial balance must be positive.");
+		}
+	}
+
+	private static boolean isCsvHeader(String line) {
+		return unquote(line.split(",", -1)[0]).equalsIgnoreCase("accountId");
+	}
+
+	private static String unquote(String field) {
+		String trimmed = field.trim();
+		if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+			return trimmed.substring(1, trimmed.length() - 1);
+		}
+		return trimmed;
+	}
+
+	private static BatchOutcome await(Future<BatchOutcome> batch) {
+		try {
+			return batch.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while importing accounts", ie);
+		} catch (ExecutionException ee) {
+			throw new IllegalStateException("Import batch failed", ee.getCause());
+		}
+	}
+
+	private static class BatchOutcome {
+
+		private long created;
+
+		private final List<ImportLineError> errors = new ArrayList<>();
+	}
+
+	private class ImportTotals {
+
+		private long created;
+
+		private long failed;
+
+		private final List<ImportLineError> errors = new ArrayList<>();
+
+		// Batches are added in submission order, so the kept errors are the first ones by line
+		void add(BatchOutcome outcome) {
+			this.created += outcome.created;
+			this.failed += outcome.errors.size();
+			for (ImportLineError error : outcome.errors) {
+				if (this.errors.size() == AccountImporter.this.maxReportedErrors) {
+					break;
+				}
+				this.errors.add(error);
+			}
+		}
+	}
+
+	// A line is rejected; carries the message reported back for it
+	private static class ImportLineException extends RuntimeException {
+
+		ImportLineException(String message) {
+			super(message, null, false, false);
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.service;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.LockStripeMetrics;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+
+/**
+ * Hands out exclusive access to accounts independently of the account objects
+ * themselves. Locks are always taken in one global order, so callers holding
+ * several accounts can never deadlock each other.
+ */
+public interface AccountLockManager {
+
+	void lock(Account one, Account two) throws LockTimeoutException;
+
+	void unlock(Account one, Account two);
+
+	void lockAll(Collection<Account> accounts) throws LockTimeoutException;
+
+	void unlockAll(Collection<Account> accounts);
+
+	List<LockStripeMetrics> getMetrics();
+}
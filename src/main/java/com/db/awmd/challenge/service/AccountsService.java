@@ -1,18 +1,33 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Balance;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
 import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.domain.BatchTransferRequest;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.TransactionEntry;
+import com.db.awmd.challenge.domain.TransferBalances;
+import com.db.awmd.challenge.domain.TransferResult;
 import com.db.awmd.challenge.exception.InsufficientAmountException;
 import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.InvalidBatchException;
+import com.db.awmd.challenge.exception.PartitionUnavailableException;
 import com.db.awmd.challenge.repository.AccountsRepository;
-import com.db.awmd.challenge.web.AccountsController;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.concurrent.CompletableFuture;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -25,77 +40,320 @@ public class AccountsService {
 	@Getter
 	private final NotificationService notificationService;
 
+	@Getter
+	private final NotificationDispatcher notificationDispatcher;
+
+	private final TransferEngine transferEngine;
+
+	private final IdempotencyCache idempotencyCache;
+
+	@Getter
+	private final TransferMetrics transferMetrics;
+
+	@Getter
+	private final RequestLogSampler requestLogSampler;
+
+	@Getter
+	private final TransactionHistory transactionHistory;
+
+	private final CrossPartitionTransfers crossPartitionTransfers;
+
+	private final int maxBatchSize;
+
 	@Autowired
-	public AccountsService(AccountsRepository accountsRepository, NotificationService notificationService) {
+	public AccountsService(AccountsRepository accountsRepository, NotificationService notificationService,
+			NotificationDispatcher notificationDispatcher, TransferEngine transferEngine, IdempotencyCache idempotencyCache,
+			TransferMetrics transferMetrics, RequestLogSampler requestLogSampler, TransactionHistory transactionHistory,
+			CrossPartitionTransfers crossPartitionTransfers, @Value("${accounts.transfer.batch-max-size:1000}") int maxBatchSize) {
 		this.accountsRepository = accountsRepository;
 		this.notificationService = notificationService;
+		this.notificationDispatcher = notificationDispatcher;
+		this.transferEngine = transferEngine;
+		this.idempotencyCache = idempotencyCache;
+		this.transferMetrics = transferMetrics;
+		this.requestLogSampler = requestLogSampler;
+		this.transactionHistory = transactionHistory;
+		this.crossPartitionTransfers = crossPartitionTransfers;
+		this.maxBatchSize = maxBatchSize;
 
 	}
 
-	public void createAccount(Account account) {
+	public void createAccount(Account account) throws InvalidAccountIdException {
+		if (Account.RESERVED_IDS.contains(account.getAccountId()))
+			throw new InvalidAccountIdException(account.getAccountId() + " is reserved and cannot be an account id.");
 		this.accountsRepository.createAccount(account);
+		this.accountsRepository.awaitDurable();
 	}
 
 	public Account getAccount(String accountId) {
 		return this.accountsRepository.getAccount(accountId);
 	}
 
+	// One read of the account's current balance; never waits for a transfer
+	public BalanceSnapshot getBalance(String accountId) {
+		Account account = this.accountsRepository.getAccount(accountId);
+		return account == null ? null : BalanceSnapshot.of(account);
+	}
+
+	/**
+	 * Balances of several accounts as of one moment, read inside the engine's
+	 * exclusive section so a transfer between two of them is seen whole or not
+	 * at all. What else waits meanwhile is the engine's: transfers on the same
+	 * lock stripes (striped), touching the accounts (monitor, optimistic), or on
+	 * the accounts' shards plus, when they span several shards, every
+	 * cross-shard transfer (sharded).
+	 */
+	public List<BalanceSnapshot> getBalances(final List<String> accountIds)
+			throws InvalidAccountIdException, InvalidBatchException {
+		if (accountIds.size() > this.maxBatchSize)
+			throw new InvalidBatchException(
+					"Read of " + accountIds.size() + " accounts exceeds the limit of " + this.maxBatchSize + ".");
+		final Map<String, Account> accounts = new LinkedHashMap<>();
+		for (String accountId : accountIds) {
+			Account account = this.accountsRepository.getAccount(accountId);
+			if (account == null)
+				throw new InvalidAccountIdException(accountId + " account does not exists!");
+			accounts.put(accountId, account);
+		}
+		if (accounts.isEmpty())
+			return new ArrayList<>();
+		return this.transferEngine.executeExclusive(accounts.values(), () -> {
+			List<BalanceSnapshot> snapshots = new ArrayList<>(accounts.size());
+			for (Account account : accounts.values())
+				snapshots.add(BalanceSnapshot.of(account));
+			return snapshots;
+		});
+	}
+
+	// Newest first
+	public List<TransactionEntry> getTransactions(String accountId, int limit) throws InvalidAccountIdException {
+		if (this.accountsRepository.getAccount(accountId) == null)
+			throw new InvalidAccountIdException(accountId + " account does not exists!");
+		return this.transactionHistory.recent(accountId, limit);
+	}
+
 	public boolean transferMoney(final BalanceTransferRequest balanceTransferRequest)
 			throws InvalidAccountIdException, InsufficientAmountException {
-		log.info("In transferMoney with request {}", balanceTransferRequest);
-		if (balanceTransferRequest.getAccountFromId().equals(balanceTransferRequest.getAccountToId()))
-			throw new InvalidAccountIdException("From and To accounts are same.");
-		if (balanceTransferRequest.getAmount().doubleValue() < 0)
+		return transferMoney(balanceTransferRequest, null);
+	}
+
+	// Idempotency keys are scoped to clientId; in-process callers pass null and share one scope
+	public boolean transferMoney(final BalanceTransferRequest balanceTransferRequest, String clientId)
+			throws InvalidAccountIdException, InsufficientAmountException {
+		if (this.requestLogSampler.shouldLog(balanceTransferRequest))
+			log.info("In transferMoney with request {}", balanceTransferRequest);
+		try {
+			boolean transferred;
+			if (balanceTransferRequest.getIdempotencyKey() != null)
+				transferred = this.idempotencyCache.execute(clientId, balanceTransferRequest.getIdempotencyKey(),
+						balanceTransferRequest, () -> executeTransfer(balanceTransferRequest));
+			else
+				transferred = executeTransfer(balanceTransferRequest);
+			this.transferMetrics.recordSucceeded();
+			return transferred;
+		} catch (InsufficientAmountException iae) {
+			this.transferMetrics.recordInsufficientBalance();
+			throw iae;
+		} catch (InvalidAccountIdException iaie) {
+			this.transferMetrics.recordInvalidAccount();
+			throw iaie;
+		}
+	}
+
+	private boolean executeTransfer(final BalanceTransferRequest balanceTransferRequest)
+			throws InvalidAccountIdException, InsufficientAmountException {
+		if (this.crossPartitionTransfers.isRemote(balanceTransferRequest.getAccountToId()))
+			return executeCrossPartitionTransfer(balanceTransferRequest);
+		final Account[] accounts = resolveAccounts(balanceTransferRequest);
+		final Account fromAccount = accounts[0];
+		final Account toAccount = accounts[1];
+
+		// Convert once at the boundary; the engines work on fixed-point units only.
+		final long amountUnits = Money.unitsOf(balanceTransferRequest.getAmount());
+		final int amountScale = Money.scaleOf(balanceTransferRequest.getAmount());
+		final TransferBalances balances;
+		try {
+			balances = this.transferEngine.transfer(fromAccount, toAccount, amountUnits, amountScale);
+		} catch (InsufficientAmountException iae) {
+			if (this.requestLogSampler.shouldLog(balanceTransferRequest))
+				log.warn("Insufficient balance while debiting {} with amount of {}", fromAccount.getAccountId(),
+						balanceTransferRequest.getAmount());
+			throw iae;
+		}
+		this.accountsRepository.awaitDurable();
+		long enqueueStart = System.nanoTime();
+		this.notificationDispatcher.enqueue(fromAccount, NotificationDispatcher.Kind.DEBIT,
+				balanceTransferRequest.getAmount(), balances.getFromBalance());
+		this.notificationDispatcher.enqueue(toAccount, NotificationDispatcher.Kind.CREDIT,
+				balanceTransferRequest.getAmount(), balances.getToBalance());
+		this.transferMetrics.record(TransferMetrics.Stage.NOTIFICATION_ENQUEUE, System.nanoTime() - enqueueStart);
+		return true;
+	}
+
+	// The to account is owned by another node, so it is credited there; the from account must be local
+	private boolean executeCrossPartitionTransfer(final BalanceTransferRequest balanceTransferRequest)
+			throws InvalidAccountIdException, InsufficientAmountException, PartitionUnavailableException {
+		if (balanceTransferRequest.getAmount().signum() < 0)
 			throw new InsufficientAmountException(
 					balanceTransferRequest.getAmount() + " not a valid amount to transfer.");
 		final Account fromAccount = this.accountsRepository.getAccount(balanceTransferRequest.getAccountFromId());
 		if (fromAccount == null)
 			throw new InvalidAccountIdException(
 					balanceTransferRequest.getAccountFromId() + " account does not exists!");
-		final Account toAccount = this.accountsRepository.getAccount(balanceTransferRequest.getAccountToId());
-		if (toAccount == null)
-			throw new InvalidAccountIdException(balanceTransferRequest.getAccountToId() + " account does not exists!");
+		final Balance debited = this.crossPartitionTransfers.transfer(fromAccount,
+				balanceTransferRequest.getAccountToId(), balanceTransferRequest.getAmount());
+		this.notificationDispatcher.enqueue(fromAccount, NotificationDispatcher.Kind.DEBIT,
+				balanceTransferRequest.getAmount(), debited);
+		return true;
+	}
 
-		synchronized (getAccountForLock(fromAccount, toAccount, true)) {
-			synchronized (getAccountForLock(fromAccount, toAccount, false)) {
-				try {
-					this.accountsRepository.debitAccount(fromAccount, balanceTransferRequest.getAmount());
-					notifyUser(fromAccount, "Your account debited with " + balanceTransferRequest.getAmount()
-							+ " amount. Now available balance is " + fromAccount.getBalance() + ".");
-				} catch (InsufficientAmountException iae) {
-					log.error("Insufficient Amount Exception while debiting from account " + fromAccount
-							+ " with amount of " + balanceTransferRequest.getAmount(), iae);
-					throw iae;
-				}
-				this.accountsRepository.creditAccount(toAccount, balanceTransferRequest.getAmount());
-				notifyUser(toAccount, "Your account credited with " + balanceTransferRequest.getAmount()
-						+ " amount. Now available balance is " + toAccount.getBalance() + ".");
-				return true;
+	public List<TransferResult> transferBatch(final BatchTransferRequest batchTransferRequest)
+			throws InvalidBatchException {
+		final List<BalanceTransferRequest> transfers = batchTransferRequest.getTransfers();
+		if (transfers.size() > this.maxBatchSize)
+			throw new InvalidBatchException(
+					"Batch of " + transfers.size() + " transfers exceeds the limit of " + this.maxBatchSize + ".");
+		log.info("In transferBatch with {} transfers in {} mode", transfers.size(), batchTransferRequest.getMode());
+		final boolean atomic = batchTransferRequest.getMode() == BatchTransferRequest.Mode.ATOMIC;
+		final TransferResult[] results = new TransferResult[transfers.size()];
+		final Account[][] resolved = new Account[transfers.size()][];
+		final TransferBalances[] balances = new TransferBalances[transfers.size()];
+		final Map<String, Account> involved = new HashMap<>();
+		int firstFailure = -1;
+		for (int i = 0; i < transfers.size(); i++) {
+			try {
+				resolved[i] = resolveAccounts(transfers.get(i));
+				involved.put(resolved[i][0].getAccountId(), resolved[i][0]);
+				involved.put(resolved[i][1].getAccountId(), resolved[i][1]);
+			} catch (InvalidAccountIdException | InsufficientAmountException e) {
+				results[i] = new TransferResult(i, TransferResult.Status.FAILED, e.getMessage());
+				if (firstFailure < 0)
+					firstFailure = i;
+			}
+		}
+		if (atomic && firstFailure >= 0) {
+			markRolledBack(results, firstFailure);
+			return Arrays.asList(results);
+		}
 
+		// All locks for the batch are taken once, in account id order, instead of per transfer.
+		if (!involved.isEmpty()) {
+			this.transferEngine.executeExclusive(involved.values(), () -> {
+				applyBatch(transfers, resolved, results, balances, atomic);
+				return null;
+			});
+			this.accountsRepository.awaitDurable();
+		}
+		for (int i = 0; i < results.length; i++) {
+			if (results[i].getStatus() == TransferResult.Status.APPLIED) {
+				BigDecimal amount = transfers.get(i).getAmount();
+				this.notificationDispatcher.enqueue(resolved[i][0], NotificationDispatcher.Kind.DEBIT, amount,
+						balances[i].getFromBalance());
+				this.notificationDispatcher.enqueue(resolved[i][1], NotificationDispatcher.Kind.CREDIT, amount,
+						balances[i].getToBalance());
 			}
 		}
+		return Arrays.asList(results);
 	}
 
-	// Method to get account object for locking
-	private Account getAccountForLock(final Account one, final Account two, boolean wantSmall) {
-		if (wantSmall) {
-			if (one.getAccountId().compareTo(two.getAccountId()) < 0) {
-				return one;
-			} else {
-				return two;
+	// Must run with exclusive access to every account of the batch; fills in the balances each applied transfer left
+	private void applyBatch(final List<BalanceTransferRequest> transfers, final Account[][] resolved,
+			final TransferResult[] results, final TransferBalances[] balances, final boolean atomic) {
+		if (atomic) {
+			final int failed = checkBatch(transfers, resolved, results);
+			if (failed >= 0) {
+				markRolledBack(results, failed);
+				return;
 			}
-		} else {
-			if (one.getAccountId().compareTo(two.getAccountId()) > 0) {
-				return one;
-			} else {
-				return two;
+		}
+		final List<Integer> applied = new ArrayList<>();
+		for (int i = 0; i < transfers.size(); i++) {
+			if (results[i] != null)
+				continue;
+			final BigDecimal amount = transfers.get(i).getAmount();
+			try {
+				balances[i] = this.accountsRepository.transfer(resolved[i][0], resolved[i][1], amount);
+				results[i] = new TransferResult(i, TransferResult.Status.APPLIED, null);
+				applied.add(i);
+			} catch (InsufficientAmountException | ArithmeticException e) {
+				results[i] = new TransferResult(i, TransferResult.Status.FAILED, e.getMessage());
+				if (atomic) {
+					// Only what checkBatch cannot see ends up here, such as a hot account's fixed scale.
+					// Undo in reverse order so every reversing debit finds the money it credited.
+					for (int j = applied.size() - 1; j >= 0; j--) {
+						int index = applied.get(j);
+						this.accountsRepository.transfer(resolved[index][1], resolved[index][0],
+								transfers.get(index).getAmount());
+					}
+					markRolledBack(results, i);
+					return;
+				}
 			}
 		}
+		// History only shows what the batch left applied
+		for (int index : applied) {
+			recordTransfer(resolved[index][0], resolved[index][1], transfers.get(index).getAmount());
+		}
 	}
 
-	private void notifyUser(Account account, String message) {
-		CompletableFuture.runAsync(() -> {
-			notificationService.notifyAboutTransfer(account, message);
-		});
+	// Plays an atomic batch through on copies of its balances without changing any account. Returns the index of the
+	// first transfer that would fail, with its result filled in, or -1 if the whole batch fits.
+	private int checkBatch(final List<BalanceTransferRequest> transfers, final Account[][] resolved,
+			final TransferResult[] results) {
+		final Map<String, Balance> planned = new HashMap<>();
+		for (int i = 0; i < transfers.size(); i++) {
+			final Account fromAccount = resolved[i][0];
+			final Account toAccount = resolved[i][1];
+			try {
+				final long units = Money.unitsOf(transfers.get(i).getAmount());
+				final int scale = Money.scaleOf(transfers.get(i).getAmount());
+				final Balance debited = planned
+						.computeIfAbsent(fromAccount.getAccountId(), id -> fromAccount.getBalanceState())
+						.debit(units, scale);
+				if (debited == null) {
+					results[i] = new TransferResult(i, TransferResult.Status.FAILED,
+							fromAccount.getAccountId() + " account does not have sufficent balance.");
+					return i;
+				}
+				planned.put(fromAccount.getAccountId(), debited);
+				planned.put(toAccount.getAccountId(), planned
+						.computeIfAbsent(toAccount.getAccountId(), id -> toAccount.getBalanceState())
+						.credit(units, scale));
+			} catch (ArithmeticException e) {
+				results[i] = new TransferResult(i, TransferResult.Status.FAILED, e.getMessage());
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void recordTransfer(final Account fromAccount, final Account toAccount, final BigDecimal amount) {
+		this.transactionHistory.recordTransfer(fromAccount, toAccount, Money.unitsOf(amount), Money.scaleOf(amount));
+	}
+
+	private void markRolledBack(final TransferResult[] results, final int failedIndex) {
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] == null || results[i].getStatus() == TransferResult.Status.APPLIED)
+				results[i] = new TransferResult(i, TransferResult.Status.ROLLED_BACK,
+						"Not applied because transfer " + failedIndex + " failed.");
+		}
+	}
+
+	// Returns the from and to accounts of a request, or fails the same way transferMoney does
+	private Account[] resolveAccounts(final BalanceTransferRequest balanceTransferRequest)
+			throws InvalidAccountIdException, InsufficientAmountException {
+		if (balanceTransferRequest.getAccountFromId().equals(balanceTransferRequest.getAccountToId()))
+			throw new InvalidAccountIdException("From and To accounts are same.");
+		if (balanceTransferRequest.getAmount().signum() < 0)
+			throw new InsufficientAmountException(
+					balanceTransferRequest.getAmount() + " not a valid amount to transfer.");
+		final Account fromAccount = this.accountsRepository.getAccount(balanceTransferRequest.getAccountFromId());
+		if (fromAccount == null)
+			throw new InvalidAccountIdException(
+					balanceTransferRequest.getAccountFromId() + " account does not exists!");
+		final Account toAccount = this.accountsRepository.getAccount(balanceTransferRequest.getAccountToId());
+		if (toAccount == null)
+			throw new InvalidAccountIdException(balanceTransferRequest.getAccountToId() + " account does not exists!");
+		return new Account[] { fromAccount, toAccount };
 	}
 }
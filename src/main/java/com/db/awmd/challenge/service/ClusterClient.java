@@ -0,0 +1,159 @@
+package com.db.awmd.challenge.service;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriUtils;
+
+import com.db.awmd.challenge.domain.CrossPartitionCredit;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.PartitionUnavailableException;
+import com.db.awmd.challenge.web.AccountsController;
+
+/**
+ * HTTP calls from this node to the other nodes of the cluster: forwarding a
+ * request to the node owning its account, and the prepare, commit and abort
+ * steps of a cross-partition transfer. Connections are the JDK's pooled
+ * keep-alive ones. Any answer is returned as it is; only failing to get one
+ * throws {@link PartitionUnavailableException}.
+ *
+ * Every call carries the cluster's shared {@code secret}, which is how the
+ * receiving node tells its peers from other callers.
+ */
+@Service
+public class ClusterClient {
+
+	public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+	private final RestTemplate restTemplate;
+
+	private final String secret;
+
+	public ClusterClient(int connectTimeoutMillis, int readTimeoutMillis) {
+		this(connectTimeoutMillis, readTimeoutMillis, "");
+	}
+
+	@Autowired
+	public ClusterClient(@Value("${accounts.cluster.connect-timeout-ms:1000}") int connectTimeoutMillis,
+			@Value("${accounts.cluster.read-timeout-ms:5000}") int readTimeoutMillis,
+			@Value("${accounts.cluster.secret:}") String secret) {
+		this.secret = secret;
+		SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setConnectTimeout(connectTimeoutMillis);
+		requestFactory.setReadTimeout(readTimeoutMillis);
+		this.restTemplate = new RestTemplate(requestFactory);
+		this.restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+			@Override
+			public boolean hasError(ClientHttpResponse response) {
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * Sends the request on to {@code node} and answers with its status, body
+	 * and content type. {@code path} must already be encoded, see
+	 * {@link #encode(String)}.
+	 */
+	public ResponseEntity<Object> forward(String node, HttpMethod method, String path, Object body) {
+		return forward(node, method, path, body, null);
+	}
+
+	// Passes the client on, so the owner applies that client's rate limit rather than this node's
+	public ResponseEntity<Object> forward(String node, HttpMethod method, String path, Object body, String clientId) {
+		HttpHeaders headers = new HttpHeaders();
+		if (body != null) {
+			headers.setContentType(MediaType.APPLICATION_JSON);
+		}
+		if (clientId != null) {
+			headers.set(AccountsController.CLIENT_ID_HEADER, clientId);
+		}
+		ResponseEntity<String> answer = exchange(node, method, path, body, headers);
+		HttpHeaders answerHeaders = new HttpHeaders();
+		if (answer.getHeaders().getContentType() != null) {
+			answerHeaders.setContentType(answer.getHeaders().getContentType());
+		}
+		if (answer.getHeaders().containsKey(HttpHeaders.RETRY_AFTER)) {
+			answerHeaders.set(HttpHeaders.RETRY_AFTER, answer.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+		}
+		return new ResponseEntity<>(answer.getBody(), answerHeaders, answer.getStatusCode());
+	}
+
+	public void prepare(String node, CrossPartitionCredit credit)
+			throws InvalidAccountIdException, InsufficientAmountException, PartitionUnavailableException {
+		ResponseEntity<String> answer = exchange(node, HttpMethod.POST, "/v1/cluster/transfers/prepare", credit,
+				new HttpHeaders());
+		if (answer.getStatusCode() == HttpStatus.NOT_FOUND) {
+			throw new InvalidAccountIdException(answer.getBody());
+		}
+		if (answer.getStatusCode() == HttpStatus.BAD_REQUEST) {
+			throw new InsufficientAmountException(answer.getBody());
+		}
+		expectOk(node, "prepare", answer);
+	}
+
+	public void commit(String node, String transferId) throws PartitionUnavailableException {
+		expectOk(node, "commit", exchange(node, HttpMethod.POST,
+				"/v1/cluster/transfers/" + encode(transferId) + "/commit", null, new HttpHeaders()));
+	}
+
+	public void abort(String node, String transferId) throws PartitionUnavailableException {
+		expectOk(node, "abort", exchange(node, HttpMethod.POST,
+				"/v1/cluster/transfers/" + encode(transferId) + "/abort", null, new HttpHeaders()));
+	}
+
+	public boolean hasSecret() {
+		return !this.secret.isEmpty();
+	}
+
+	// Compared in constant time, so the secret cannot be guessed a character at a time
+	public boolean isPeer(String presentedSecret) {
+		return hasSecret() && presentedSecret != null && MessageDigest.isEqual(
+				this.secret.getBytes(StandardCharsets.UTF_8), presentedSecret.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static String encode(String pathSegment) {
+		try {
+			return UriUtils.encodePathSegment(pathSegment, "UTF-8");
+		} catch (UnsupportedEncodingException uee) {
+			throw new IllegalStateException(uee);
+		}
+	}
+
+	private ResponseEntity<String> exchange(String node, HttpMethod method, String path, Object body,
+			HttpHeaders headers) {
+		if (hasSecret()) {
+			headers.set(SECRET_HEADER, this.secret);
+		}
+		try {
+			return this.restTemplate.exchange(URI.create(node + path), method, new HttpEntity<>(body, headers),
+					String.class);
+		} catch (RestClientException rce) {
+			throw new PartitionUnavailableException(node + " did not answer: " + rce.getMessage());
+		}
+	}
+
+	private static void expectOk(String node, String step, ResponseEntity<String> answer) {
+		if (answer.getStatusCode() != HttpStatus.OK) {
+			throw new PartitionUnavailableException(
+					node + " refused to " + step + ": " + answer.getStatusCode() + " " + answer.getBody());
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Balance;
+import com.db.awmd.challenge.domain.ClusterStatus;
+import com.db.awmd.challenge.domain.CrossPartitionCredit;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.PartitionUnavailableException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Transfers between accounts owned by different nodes, as a two-phase
+ * reserve/commit run by the node owning the debited account.
+ *
+ * That node reserves the amount by debiting it, then asks the owner of the
+ * credited account to prepare, which checks the account exists and keeps the
+ * credit aside. If the prepare is refused or not answered the reservation is
+ * credited back and the transfer fails. Once prepared the transfer is decided:
+ * the commit that applies the credit is sent at once and retried every
+ * {@code commit-retry-ms} until acknowledged, and a repeated commit is a no-op.
+ * Until then the amount is on neither node's books.
+ *
+ * Only other nodes, presenting the cluster secret, may prepare, commit or
+ * abort, and a prepare must credit a positive amount. Both sides change their
+ * account through the engine's exclusive section, so they serialize with
+ * local transfers under every engine. Reservations and prepared credits are
+ * kept in memory only; a node restarting in the middle of a transfer loses
+ * it, whatever the store.
+ */
+@Service
+@Slf4j
+public class CrossPartitionTransfers {
+
+	private final AccountsRepository accountsRepository;
+
+	private final TransferEngine transferEngine;
+
+	private final TransactionHistory transactionHistory;
+
+	private final NotificationDispatcher notificationDispatcher;
+
+	private final PartitionMap partitionMap;
+
+	private final ClusterClient clusterClient;
+
+	// Decided transfers debited here, by id, to the node whose commit acknowledgement is outstanding
+	private final Map<String, String> pendingCommits = new ConcurrentHashMap<>();
+
+	private final Map<String, CrossPartitionCredit> preparedCredits = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService commitRetries;
+
+	@Autowired
+	public CrossPartitionTransfers(AccountsRepository accountsRepository, TransferEngine transferEngine,
+			TransactionHistory transactionHistory, NotificationDispatcher notificationDispatcher,
+			PartitionMap partitionMap, ClusterClient clusterClient,
+			@Value("${accounts.cluster.commit-retry-ms:1000}") long commitRetryMillis) {
+		this.accountsRepository = accountsRepository;
+		this.transferEngine = transferEngine;
+		this.transactionHistory = transactionHistory;
+		this.notificationDispatcher = notificationDispatcher;
+		this.partitionMap = partitionMap;
+		this.clusterClient = clusterClient;
+		if (partitionMap.isEnabled()) {
+			this.commitRetries = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "cluster-commit-retry");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.commitRetries.scheduleWithFixedDelay(this::retryCommits, commitRetryMillis, commitRetryMillis,
+					TimeUnit.MILLISECONDS);
+		} else {
+			this.commitRetries = null;
+		}
+	}
+
+	public boolean isRemote(String accountId) {
+		return !this.partitionMap.isLocal(accountId);
+	}
+
+	/**
+	 * Moves {@code amount} from a local account to one owned by another node.
+	 * Returns the balance the debit left the local account with once the
+	 * transfer is decided; the credit may land a little later.
+	 */
+	public Balance transfer(Account fromAccount, String toAccountId, BigDecimal amount)
+			throws InsufficientAmountException, InvalidAccountIdException, PartitionUnavailableException {
+		long amountUnits = Money.unitsOf(amount);
+		int amountScale = Money.scaleOf(amount);
+		String node = this.partitionMap.ownerOf(toAccountId);
+		CrossPartitionCredit credit = new CrossPartitionCredit(UUID.randomUUID().toString(),
+				fromAccount.getAccountId(), toAccountId, amount);
+
+		Balance debited = apply(fromAccount, toAccountId, -amountUnits, amountScale);
+		this.accountsRepository.awaitDurable();
+		try {
+			this.clusterClient.prepare(node, credit);
+		} catch (InvalidAccountIdException | InsufficientAmountException | PartitionUnavailableException e) {
+			apply(fromAccount, toAccountId, amountUnits, amountScale);
+			this.accountsRepository.awaitDurable();
+			if (e instanceof PartitionUnavailableException) {
+				// The prepare may have got through; a prepared credit left behind moves no money, but is tidied up
+				abortQuietly(node, credit.getTransferId());
+			}
+			throw e;
+		}
+		this.pendingCommits.put(credit.getTransferId(), node);
+		commit(credit.getTransferId(), node);
+		return debited;
+	}
+
+	public void prepare(CrossPartitionCredit credit) throws InvalidAccountIdException, InsufficientAmountException {
+		if (credit.getAmount() == null || credit.getAmount().signum() <= 0) {
+			throw new InsufficientAmountException(credit.getAmount() + " not a valid amount to transfer.");
+		}
+		if (this.accountsRepository.getAccount(credit.getAccountToId()) == null) {
+			throw new InvalidAccountIdException(credit.getAccountToId() + " account does not exists!");
+		}
+		this.preparedCredits.putIfAbsent(credit.getTransferId(), credit);
+	}
+
+	// An unknown id was committed already: the coordinator only commits what was prepared
+	public void commit(String transferId) {
+		CrossPartitionCredit credit = this.preparedCredits.get(transferId);
+		if (credit == null) {
+			return;
+		}
+		Account toAccount = this.accountsRepository.getAccount(credit.getAccountToId());
+		// A repeated commit arriving meanwhile waits here, and is acknowledged only once the credit has landed
+		Balance credited;
+		synchronized (credit) {
+			if (!this.preparedCredits.containsKey(transferId)) {
+				return;
+			}
+			credited = apply(toAccount, credit.getAccountFromId(), Money.unitsOf(credit.getAmount()),
+					Money.scaleOf(credit.getAmount()));
+			this.accountsRepository.awaitDurable();
+			this.preparedCredits.remove(transferId);
+		}
+		this.notificationDispatcher.enqueue(toAccount, NotificationDispatcher.Kind.CREDIT, credit.getAmount(), credited);
+	}
+
+	public void abort(String transferId) {
+		this.preparedCredits.remove(transferId);
+	}
+
+	public ClusterStatus getStatus() {
+		return new ClusterStatus(this.partitionMap.getSelf(), this.partitionMap.getNodes(),
+				this.pendingCommits.size(), this.preparedCredits.size());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (this.commitRetries != null) {
+			this.commitRetries.shutdown();
+		}
+	}
+
+	// A negative amount is a debit; the account's history gets the change under the same exclusive
+	// section, and the balance it left is returned
+	private Balance apply(Account account, String counterpartyId, long amountUnits, int amountScale) {
+		return this.transferEngine.executeExclusive(Collections.singletonList(account), () -> {
+			Account changed = amountUnits < 0
+					? this.accountsRepository.debitAccount(account, -amountUnits, amountScale)
+					: this.accountsRepository.creditAccount(account, amountUnits, amountScale);
+			Balance balance = changed.getBalanceState();
+			this.transactionHistory.record(account.getAccountId(), counterpartyId, amountUnits, amountScale, balance);
+			return balance;
+		});
+	}
+
+	private void commit(String transferId, String node) {
+		try {
+			this.clusterClient.commit(node, transferId);
+			this.pendingCommits.remove(transferId);
+		} catch (PartitionUnavailableException pue) {
+			log.warn("Commit of transfer {} not acknowledged, will retry: {}", transferId, pue.getMessage());
+		}
+	}
+
+	private void retryCommits() {
+		this.pendingCommits.forEach((transferId, node) -> commit(transferId, node));
+	}
+
+	private void abortQuietly(String node, String transferId) {
+		try {
+			this.clusterClient.abort(node, transferId);
+		} catch (PartitionUnavailableException pue) {
+			log.warn("Abort of transfer {} not acknowledged: {}", transferId, pue.getMessage());
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package com.db.awmd.challenge.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel (Varghese and Lauck) for very many timers that
+ * are mostly cancelled before they fire.
+ *
+ * Level 0 has {@code 2^bits} slots of one tick each; every further level has
+ * as many slots, each spanning a whole turn of the level below. A timer goes
+ * into the lowest level whose turn reaches its deadline, at the slot its
+ * deadline falls in, and is moved down a level when that slot comes round.
+ * Scheduling and cancelling are O(1) list operations; {@link #advance(long)}
+ * costs one step per tick passed plus one per timer moved or fired, whatever
+ * the number of timers waiting. Deadlines further out than the top level
+ * reaches are parked in it and moved again until they are in reach.
+ *
+ * Timers never fire early, and at most one tick late as seen by the
+ * {@code advance} calls. All methods synchronize on the wheel; fired items are
+ * returned rather than run so callers act on them outside it.
+ */
+public class HierarchicalTimerWheel<T> {
+
+	public static final class Timeout<T> {
+
+		private final HierarchicalTimerWheel<T> wheel;
+
+		private final T item;
+
+		private final long deadlineTick;
+
+		private Timeout<T> previous;
+
+		private Timeout<T> next;
+
+		// Slot index within all levels, or -1 when not in the wheel
+		private int slot = -1;
+
+		private Timeout(HierarchicalTimerWheel<T> wheel, T item, long deadlineTick) {
+			this.wheel = wheel;
+			this.item = item;
+			this.deadlineTick = deadlineTick;
+		}
+
+		public T getItem() {
+			return this.item;
+		}
+
+		// Returns false if the timer already fired or was cancelled
+		public boolean cancel() {
+			synchronized (this.wheel) {
+				if (this.slot < 0) {
+					return false;
+				}
+				this.wheel.unlink(this);
+				this.wheel.size--;
+				return true;
+			}
+		}
+	}
+
+	private final long tickMillis;
+
+	private final int bits;
+
+	private final int mask;
+
+	private final int levels;
+
+	// Furthest a timer is placed ahead of the current tick
+	private final long reach;
+
+	// Head of each slot's list, level by level
+	private final Timeout<T>[] heads;
+
+	private long currentTick;
+
+	private int size;
+
+	@SuppressWarnings("unchecked")
+	public HierarchicalTimerWheel(long tickMillis, int bits, int levels, long startMillis) {
+		if (bits * levels >= 63) {
+			throw new IllegalArgumentException("A wheel of " + levels + " levels of 2^" + bits + " slots is too large.");
+		}
+		this.tickMillis = tickMillis;
+		this.bits = bits;
+		this.mask = (1 << bits) - 1;
+		this.levels = levels;
+		this.reach = (1L << (bits * levels)) - 1;
+		this.heads = new Timeout[levels << bits];
+		this.currentTick = startMillis / tickMillis;
+	}
+
+	public long getTickMillis() {
+		return this.tickMillis;
+	}
+
+	public synchronized int size() {
+		return this.size;
+	}
+
+	public synchronized Timeout<T> schedule(T item, long deadlineMillis) {
+		// Rounded up, so a timer never fires before its deadline
+		Timeout<T> timeout = new Timeout<>(this, item, (deadlineMillis + this.tickMillis - 1) / this.tickMillis);
+		// The current tick's slot has been fired already
+		place(timeout, this.currentTick + 1);
+		this.size++;
+		return timeout;
+	}
+
+	/**
+	 * Moves the wheel on to {@code nowMillis} and returns the items of the
+	 * timers that fired, earlier ticks first.
+	 */
+	public synchronized List<T> advance(long nowMillis) {
+		List<T> fired = new ArrayList<>();
+		long targetTick = nowMillis / this.tickMillis;
+		while (this.currentTick < targetTick) {
+			this.currentTick++;
+			// A level's slot comes round when all the levels below it have turned over
+			int top = 0;
+			while (top + 1 < this.levels && (this.currentTick & ((1L << (this.bits * (top + 1))) - 1)) == 0) {
+				top++;
+			}
+			for (int level = top; level > 0; level--) {
+				for (Timeout<T> timeout = detach(slotOf(level, this.currentTick)); timeout != null;) {
+					Timeout<T> next = timeout.next;
+					place(timeout, this.currentTick);
+					timeout = next;
+				}
+			}
+			for (Timeout<T> timeout = detach(slotOf(0, this.currentTick)); timeout != null;) {
+				Timeout<T> next = timeout.next;
+				if (timeout.deadlineTick <= this.currentTick) {
+					timeout.slot = -1;
+					timeout.previous = null;
+					timeout.next = null;
+					this.size--;
+					fired.add(timeout.item);
+				} else {
+					place(timeout, this.currentTick + 1);
+				}
+				timeout = next;
+			}
+		}
+		return fired;
+	}
+
+	// Links the timer into the lowest level that reaches its deadline, but no earlier than earliestTick
+	private void place(Timeout<T> timeout, long earliestTick) {
+		long tick = Math.min(Math.max(timeout.deadlineTick, earliestTick), this.currentTick + this.reach);
+		long delta = tick - this.currentTick;
+		int level = 0;
+		while (level + 1 < this.levels && delta >= 1L << (this.bits * (level + 1))) {
+			level++;
+		}
+		int slot = slotOf(level, tick);
+		Timeout<T> head = this.heads[slot];
+		timeout.slot = slot;
+		timeout.previous = null;
+		timeout.next = head;
+		if (head != null) {
+			head.previous = timeout;
+		}
+		this.heads[slot] = timeout;
+	}
+
+	private void unlink(Timeout<T> timeout) {
+		if (timeout.previous == null) {
+			this.heads[timeout.slot] = timeout.next;
+		} else {
+			timeout.previous.next = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.previous = timeout.previous;
+		}
+		timeout.slot = -1;
+		timeout.previous = null;
+		timeout.next = null;
+	}
+
+	// Empties the slot and returns its former list, still linked through next
+	private Timeout<T> detach(int slot) {
+		Timeout<T> head = this.heads[slot];
+		this.heads[slot] = null;
+		return head;
+	}
+
+	private int slotOf(int level, long tick) {
+		return (level << this.bits) | (int) ((tick >>> (this.bits * level)) & this.mask);
+	}
+}
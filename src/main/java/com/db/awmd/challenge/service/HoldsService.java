@@ -0,0 +1,248 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Hold;
+import com.db.awmd.challenge.domain.HoldCaptureRequest;
+import com.db.awmd.challenge.domain.HoldRequest;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.TransferBalances;
+import com.db.awmd.challenge.exception.HoldNotFoundException;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.InvalidHoldException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Authorize-then-settle holds. Placing a hold sets the amount aside in the
+ * account's balance ({@link com.db.awmd.challenge.domain.Balance#getHeld()}),
+ * so it stays on the ledger but no transfer can debit it. Capturing moves all
+ * or part of it to another account in one exclusive section over the two and
+ * releases the rest; releasing gives it all back.
+ *
+ * Expiry is a {@link HierarchicalTimerWheel} advanced every {@code tick-ms} by
+ * one thread, so outstanding holds cost a map entry and a wheel node each and
+ * nothing is scanned. Whichever of capture, release or expiry removes a hold
+ * from the map first settles it; the others find it gone. Holds, like the
+ * amounts they set aside, are kept in memory only: a restart releases them.
+ */
+@Service
+@Slf4j
+public class HoldsService {
+
+	private static final int WHEEL_BITS = 8;
+
+	private static final int WHEEL_LEVELS = 4;
+
+	private final AccountsRepository accountsRepository;
+
+	private final TransferEngine transferEngine;
+
+	private final TransactionHistory transactionHistory;
+
+	private final NotificationDispatcher notificationDispatcher;
+
+	private final long defaultTtlMillis;
+
+	private final long maxTtlMillis;
+
+	private final Map<String, HierarchicalTimerWheel.Timeout<Hold>> holds = new ConcurrentHashMap<>();
+
+	private final HierarchicalTimerWheel<Hold> expiries;
+
+	private final ScheduledExecutorService expiryTicker;
+
+	@Autowired
+	public HoldsService(AccountsRepository accountsRepository, TransferEngine transferEngine,
+			TransactionHistory transactionHistory, NotificationDispatcher notificationDispatcher,
+			@Value("${accounts.holds.default-ttl-seconds:604800}") long defaultTtlSeconds,
+			@Value("${accounts.holds.max-ttl-seconds:2592000}") long maxTtlSeconds,
+			@Value("${accounts.holds.tick-ms:100}") long tickMillis) {
+		this.accountsRepository = accountsRepository;
+		this.transferEngine = transferEngine;
+		this.transactionHistory = transactionHistory;
+		this.notificationDispatcher = notificationDispatcher;
+		this.defaultTtlMillis = TimeUnit.SECONDS.toMillis(defaultTtlSeconds);
+		this.maxTtlMillis = TimeUnit.SECONDS.toMillis(maxTtlSeconds);
+		this.expiries = new HierarchicalTimerWheel<>(tickMillis, WHEEL_BITS, WHEEL_LEVELS, System.currentTimeMillis());
+		this.expiryTicker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "holds-expiry");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.expiryTicker.scheduleAtFixedRate(this::expireDue, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public Hold placeHold(HoldRequest holdRequest)
+			throws InvalidHoldException, InvalidAccountIdException, InsufficientAmountException {
+		BigDecimal amount = holdRequest.getAmount();
+		if (amount.signum() <= 0) {
+			throw new InvalidHoldException(amount + " is not a valid amount to hold.");
+		}
+		long ttlMillis = holdRequest.getTtlSeconds() == null ? this.defaultTtlMillis
+				: TimeUnit.SECONDS.toMillis(holdRequest.getTtlSeconds());
+		if (ttlMillis <= 0 || ttlMillis > this.maxTtlMillis) {
+			throw new InvalidHoldException(
+					"A hold lasts from 1 to " + TimeUnit.MILLISECONDS.toSeconds(this.maxTtlMillis) + " seconds.");
+		}
+		Account account = this.accountsRepository.getAccount(holdRequest.getAccountId());
+		if (account == null) {
+			throw new InvalidAccountIdException(holdRequest.getAccountId() + " account does not exists!");
+		}
+		long amountUnits = Money.unitsOf(amount);
+		int amountScale = Money.scaleOf(amount);
+		if (!this.transferEngine.executeExclusive(Collections.singletonList(account),
+				() -> account.hold(amountUnits, amountScale))) {
+			throw new InsufficientAmountException(account.getAccountId() + " account does not have sufficent balance.");
+		}
+		Hold hold = new Hold(UUID.randomUUID().toString(), account.getAccountId(), amount,
+				System.currentTimeMillis() + ttlMillis);
+		register(hold);
+		return hold;
+	}
+
+	public Hold getHold(String holdId) throws HoldNotFoundException {
+		HierarchicalTimerWheel.Timeout<Hold> timeout = this.holds.get(holdId);
+		if (timeout == null) {
+			throw new HoldNotFoundException(holdId + " hold does not exist or is already settled.");
+		}
+		return timeout.getItem();
+	}
+
+	/**
+	 * Moves the requested amount, or the whole hold, to another account and
+	 * releases whatever is left of the hold. If the transfer fails the hold
+	 * stays as it was.
+	 */
+	public void capture(String holdId, HoldCaptureRequest captureRequest)
+			throws HoldNotFoundException, InvalidHoldException, InvalidAccountIdException {
+		Hold hold = getHold(holdId);
+		BigDecimal amount = captureRequest.getAmount() == null ? hold.getAmount() : captureRequest.getAmount();
+		if (amount.signum() <= 0 || amount.compareTo(hold.getAmount()) > 0) {
+			throw new InvalidHoldException(
+					amount + " is not a valid amount to capture from a hold of " + hold.getAmount() + ".");
+		}
+		if (captureRequest.getAccountToId().equals(hold.getAccountId())) {
+			throw new InvalidHoldException("A hold cannot be captured to the account it is on.");
+		}
+		Account fromAccount = this.accountsRepository.getAccount(hold.getAccountId());
+		if (fromAccount == null) {
+			throw new InvalidAccountIdException(hold.getAccountId() + " account does not exists!");
+		}
+		Account toAccount = this.accountsRepository.getAccount(captureRequest.getAccountToId());
+		if (toAccount == null) {
+			throw new InvalidAccountIdException(captureRequest.getAccountToId() + " account does not exists!");
+		}
+		claim(hold);
+		long amountUnits = Money.unitsOf(amount);
+		int amountScale = Money.scaleOf(amount);
+		TransferBalances balances;
+		try {
+			// Released and debited in one section, so no transfer can take the money in between
+			balances = this.transferEngine.executeExclusive(Arrays.asList(fromAccount, toAccount), () -> {
+				fromAccount.releaseHold(Money.unitsOf(hold.getAmount()), Money.scaleOf(hold.getAmount()));
+				TransferBalances captured;
+				try {
+					captured = this.accountsRepository.transfer(fromAccount, toAccount, amountUnits, amountScale);
+				} catch (RuntimeException e) {
+					// The failed transfer gave the debit back, so the money is there to hold again
+					fromAccount.hold(Money.unitsOf(hold.getAmount()), Money.scaleOf(hold.getAmount()));
+					throw e;
+				}
+				this.transactionHistory.recordTransfer(fromAccount, toAccount, amountUnits, amountScale);
+				return captured;
+			});
+		} catch (RuntimeException e) {
+			register(hold);
+			throw e;
+		}
+		this.accountsRepository.awaitDurable();
+		this.notificationDispatcher.enqueue(fromAccount, NotificationDispatcher.Kind.DEBIT, amount,
+				balances.getFromBalance());
+		this.notificationDispatcher.enqueue(toAccount, NotificationDispatcher.Kind.CREDIT, amount,
+				balances.getToBalance());
+	}
+
+	public void release(String holdId) throws HoldNotFoundException {
+		Hold hold = getHold(holdId);
+		claim(hold);
+		try {
+			giveBack(hold);
+		} catch (RuntimeException e) {
+			register(hold);
+			throw e;
+		}
+	}
+
+	public int getOutstandingHolds() {
+		return this.holds.size();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		this.expiryTicker.shutdown();
+	}
+
+	// Under the wheel's lock, so the hold cannot expire before it can be found
+	private void register(Hold hold) {
+		synchronized (this.expiries) {
+			this.holds.put(hold.getHoldId(), this.expiries.schedule(hold, hold.getExpiresAt()));
+		}
+	}
+
+	// Takes the hold out of the map and the wheel, or fails if another settlement got there first
+	private void claim(Hold hold) throws HoldNotFoundException {
+		HierarchicalTimerWheel.Timeout<Hold> timeout = this.holds.remove(hold.getHoldId());
+		if (timeout == null) {
+			throw new HoldNotFoundException(hold.getHoldId() + " hold does not exist or is already settled.");
+		}
+		timeout.cancel();
+	}
+
+	private void giveBack(Hold hold) {
+		Account account = this.accountsRepository.getAccount(hold.getAccountId());
+		if (account == null) {
+			return;
+		}
+		this.transferEngine.executeExclusive(Collections.singletonList(account), () -> {
+			account.releaseHold(Money.unitsOf(hold.getAmount()), Money.scaleOf(hold.getAmount()));
+			return null;
+		});
+	}
+
+	private void expireDue() {
+		try {
+			for (Hold hold : this.expiries.advance(System.currentTimeMillis())) {
+				if (this.holds.remove(hold.getHoldId()) != null) {
+					try {
+						giveBack(hold);
+					} catch (RuntimeException e) {
+						// Past its deadline, so it comes round again on the next tick
+						log.warn("Releasing expired hold {} failed, retrying", hold.getHoldId(), e);
+						register(hold);
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			// Thrown out of a scheduled task it would stop the ticker for good
+			log.error("Expiring holds failed", e);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package com.db.awmd.challenge.service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Remembers the outcome of transfers submitted with an idempotency key, so a
+ * retried request gets the original answer instead of moving money twice.
+ * Keys belong to the client that sent them, so two clients picking the same
+ * key neither replay nor block each other's transfers.
+ *
+ * Lookups are plain {@link ConcurrentHashMap} reads. A retry that arrives
+ * while the original is still running waits for it rather than running again.
+ * Entries expire after {@code ttl-seconds}; once the cache grows past
+ * {@code max-entries} a single thread sweeps out expired entries and, if that
+ * is not enough, arbitrary completed ones until it is back under 90%.
+ */
+@Service
+@Slf4j
+public class IdempotencyCache {
+
+	private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	private final int maxEntries;
+
+	private final long ttlNanos;
+
+	@Autowired
+	public IdempotencyCache(@Value("${accounts.idempotency.max-entries:100000}") int maxEntries,
+			@Value("${accounts.idempotency.ttl-seconds:86400}") long ttlSeconds) {
+		this.maxEntries = maxEntries;
+		this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+	}
+
+	public boolean execute(String clientId, String idempotencyKey, BalanceTransferRequest request,
+			Supplier<Boolean> transfer) {
+		Key key = new Key(clientId, idempotencyKey);
+		long now = System.nanoTime();
+		Entry entry = this.entries.get(key);
+		if (entry == null || entry.isExpired(now, this.ttlNanos)) {
+			Entry created = new Entry(request, now);
+			Entry existing = entry == null ? this.entries.putIfAbsent(key, created)
+					: (this.entries.replace(key, entry, created) ? null : this.entries.get(key));
+			if (existing == null) {
+				return run(key, created, transfer);
+			}
+			entry = existing;
+		}
+		if (!entry.request.isSameTransfer(request)) {
+			throw new IdempotencyKeyReusedException("Idempotency key " + idempotencyKey + " was already used for another transfer.");
+		}
+		log.info("Replaying outcome of idempotency key {} for {}", idempotencyKey, clientId);
+		return entry.await();
+	}
+
+	public int size() {
+		return this.entries.size();
+	}
+
+	private boolean run(Key key, Entry entry, Supplier<Boolean> transfer) {
+		try {
+			boolean result = transfer.get();
+			entry.outcome.complete(result);
+			return result;
+		} catch (InvalidAccountIdException | InsufficientAmountException e) {
+			entry.outcome.completeExceptionally(e);
+			throw e;
+		} catch (RuntimeException e) {
+			// Not a business outcome, let the client retry it for real.
+			this.entries.remove(key, entry);
+			entry.outcome.completeExceptionally(e);
+			throw e;
+		} finally {
+			if (this.entries.size() > this.maxEntries) {
+				evict();
+			}
+		}
+	}
+
+	private void evict() {
+		if (!this.evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			long now = System.nanoTime();
+			int target = this.maxEntries * 9 / 10;
+			this.entries.values().removeIf(entry -> entry.outcome.isDone() && entry.isExpired(now, this.ttlNanos));
+			Iterator<Entry> iterator = this.entries.values().iterator();
+			while (this.entries.size() > target && iterator.hasNext()) {
+				if (iterator.next().outcome.isDone()) {
+					iterator.remove();
+				}
+			}
+		} finally {
+			this.evicting.set(false);
+		}
+	}
+
+	private static final class Key {
+
+		private final String clientId;
+
+		private final String idempotencyKey;
+
+		Key(String clientId, String idempotencyKey) {
+			this.clientId = clientId;
+			this.idempotencyKey = idempotencyKey;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return Objects.equals(this.clientId, other.clientId) && this.idempotencyKey.equals(other.idempotencyKey);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Objects.hashCode(this.clientId) + this.idempotencyKey.hashCode();
+		}
+	}
+
+	private static final class Entry {
+
+		private final BalanceTransferRequest request;
+
+		private final long createdAt;
+
+		private final CompletableFuture<Boolean> outcome = new CompletableFuture<>();
+
+		Entry(BalanceTransferRequest request, long createdAt) {
+			this.request = request;
+			this.createdAt = createdAt;
+		}
+
+		boolean isExpired(long now, long ttlNanos) {
+			return now - this.createdAt > ttlNanos;
+		}
+
+		boolean await() {
+			try {
+				return this.outcome.join();
+			} catch (CompletionException ce) {
+				if (ce.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) ce.getCause();
+				}
+				throw ce;
+			}
+		}
+	}
+}
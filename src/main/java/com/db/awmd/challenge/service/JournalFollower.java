@@ -0,0 +1,159 @@
+package com.db.awmd.challenge.service;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import com.db.awmd.challenge.repository.AccountsJournal;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Follower side of replication: applies what a {@link JournalShipper} sends,
+ * in order, from one thread, reconnecting every {@code reconnect-ms} while the
+ * leader cannot be reached. Every connection opens with the replication
+ * secret and starts from a fresh copy of the accounts.
+ *
+ * Journal records are applied by setting the balance they carry, so the store
+ * ends up exactly as the leader's whatever the engine or hot accounts there.
+ * Staleness is the time since the follower last applied a frame that was
+ * caught up on the leader; it leaves out the time the frame spent in transit.
+ */
+@Slf4j
+class JournalFollower implements AutoCloseable {
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+	private final AccountsRepository accountsRepository;
+
+	private final InetSocketAddress leader;
+
+	private final long reconnectMillis;
+
+	private final String secret;
+
+	private final Thread thread;
+
+	private volatile boolean closed;
+
+	private volatile Socket socket;
+
+	// System.nanoTime() when last caught up, or -1 while copying the accounts
+	private volatile long caughtUpAt = -1;
+
+	// Only written by the follower thread
+	private volatile long recordsApplied;
+
+	JournalFollower(AccountsRepository accountsRepository, InetSocketAddress leader, long reconnectMillis,
+			String secret) {
+		this.accountsRepository = accountsRepository;
+		this.leader = leader;
+		this.reconnectMillis = reconnectMillis;
+		this.secret = secret;
+		this.thread = new Thread(this::run, "replication-follower");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	// -1 until the follower has first caught up since it last copied the accounts
+	long getStalenessMillis() {
+		long caughtUpAt = this.caughtUpAt;
+		return caughtUpAt < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - caughtUpAt);
+	}
+
+	long getRecordsApplied() {
+		return this.recordsApplied;
+	}
+
+	// Returns once nothing more will be applied
+	@Override
+	public void close() {
+		this.closed = true;
+		Socket current = this.socket;
+		if (current != null) {
+			try {
+				current.close();
+			} catch (IOException ioe) {
+				// Closing anyway
+			}
+		}
+		this.thread.interrupt();
+		try {
+			this.thread.join();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		while (!this.closed) {
+			try (Socket connection = new Socket()) {
+				this.socket = connection;
+				if (this.closed) {
+					return;
+				}
+				connection.connect(this.leader, CONNECT_TIMEOUT_MILLIS);
+				DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+				out.writeUTF(this.secret);
+				out.flush();
+				log.info("Following leader {}", this.leader);
+				follow(new DataInputStream(new BufferedInputStream(connection.getInputStream(),
+						JournalShipper.BUFFER_SIZE)));
+			} catch (IOException ioe) {
+				if (!this.closed) {
+					log.warn("Lost leader {}: {}", this.leader, ioe.getMessage());
+				}
+			}
+			try {
+				Thread.sleep(this.reconnectMillis);
+			} catch (InterruptedException ie) {
+				return;
+			}
+		}
+	}
+
+	private void follow(DataInputStream in) throws IOException {
+		byte[] records = new byte[JournalShipper.BUFFER_SIZE];
+		while (!this.closed) {
+			byte type = in.readByte();
+			switch (type) {
+			case JournalShipper.RESET:
+				this.caughtUpAt = -1;
+				this.accountsRepository.clearAccounts();
+				break;
+			case JournalShipper.ACCOUNT:
+				this.accountsRepository.restoreAccount(in.readUTF(), in.readLong(), in.readInt());
+				break;
+			case JournalShipper.RECORDS:
+				boolean caughtUp = in.readBoolean();
+				int length = in.readInt();
+				if (length > records.length) {
+					records = new byte[length];
+				}
+				in.readFully(records, 0, length);
+				ByteBuffer batch = ByteBuffer.wrap(records, 0, length);
+				if (AccountsJournal.replay(batch, this::apply) != length) {
+					throw new IOException("Leader sent journal records that do not check out");
+				}
+				if (caughtUp) {
+					this.caughtUpAt = System.nanoTime();
+				}
+				break;
+			default:
+				throw new IOException("Unknown replication frame " + type);
+			}
+		}
+	}
+
+	private void apply(byte type, String accountId, long amountUnits, int amountScale, long balanceUnits,
+			int balanceScale) {
+		this.accountsRepository.restoreAccount(accountId, balanceUnits, balanceScale);
+		this.recordsApplied++;
+	}
+}
@@ -0,0 +1,211 @@
+package com.db.awmd.challenge.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import com.db.awmd.challenge.domain.Balance;
+import com.db.awmd.challenge.repository.AccountsJournal;
+import com.db.awmd.challenge.repository.AccountsRepositoryJournaled;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Leader side of replication: streams the journal of an
+ * {@link AccountsRepositoryJournaled} to every follower that connects.
+ *
+ * A follower first sends the replication secret, and is disconnected unless it
+ * matches. Each follower gets its own thread and {@link AccountsJournal.Reader}.
+ * It is then sent a reset and a copy of every account, walked while transfers
+ * go on, then the raw journal records from a position taken before the walk;
+ * the records carry resulting balances, so replaying them over the fuzzy copy
+ * ends up exact, as recovery does with a snapshot. After that whatever was appended
+ * during each {@code ship-interval-ms} goes out as one frame, and an empty frame
+ * at least every {@code heartbeat-ms}. Nothing on the write path waits for the
+ * shipper; a follower that falls behind a journal reset or truncation is sent
+ * the accounts again.
+ *
+ * Frames are a type byte followed by: nothing for {@link #RESET}; id, balance
+ * units and scale for {@link #ACCOUNT}; a caught-up flag, a length and that
+ * many bytes of journal records for {@link #RECORDS}. A frame is caught up when
+ * it holds everything appended before it was read.
+ */
+@Slf4j
+class JournalShipper implements AutoCloseable {
+
+	static final byte RESET = 1;
+	static final byte ACCOUNT = 2;
+	static final byte RECORDS = 3;
+
+	static final int BUFFER_SIZE = 256 * 1024;
+
+	// How long a follower that connected has to present the secret
+	private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+
+	private final AccountsRepositoryJournaled accountsRepository;
+
+	private final AccountsJournal journal;
+
+	private final Predicate<String> isPeer;
+
+	private final long shipIntervalMillis;
+
+	private final long heartbeatNanos;
+
+	private final ServerSocket serverSocket;
+
+	private final Map<String, Socket> followers = new ConcurrentHashMap<>();
+
+	private volatile boolean closed;
+
+	JournalShipper(AccountsRepositoryJournaled accountsRepository, InetAddress bindAddress, int port,
+			Predicate<String> isPeer, long shipIntervalMillis, long heartbeatMillis) throws IOException {
+		this.accountsRepository = accountsRepository;
+		this.journal = accountsRepository.getJournal();
+		this.isPeer = isPeer;
+		this.shipIntervalMillis = shipIntervalMillis;
+		this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+		this.serverSocket = new ServerSocket(port, 0, bindAddress);
+		Thread acceptor = new Thread(this::accept, "replication-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		log.info("Shipping the journal to followers connecting on {}", this.serverSocket.getLocalSocketAddress());
+	}
+
+	int getPort() {
+		return this.serverSocket.getLocalPort();
+	}
+
+	List<String> getFollowers() {
+		return new ArrayList<>(this.followers.keySet());
+	}
+
+	@Override
+	public void close() {
+		this.closed = true;
+		closeQuietly(this.serverSocket);
+		this.followers.values().forEach(JournalShipper::closeQuietly);
+	}
+
+	private void accept() {
+		while (!this.closed) {
+			try {
+				Socket socket = this.serverSocket.accept();
+				Thread shipper = new Thread(() -> ship(socket), "replication-shipper-" + socket.getRemoteSocketAddress());
+				shipper.setDaemon(true);
+				shipper.start();
+			} catch (IOException ioe) {
+				if (!this.closed) {
+					log.warn("Cannot accept followers: {}", ioe.getMessage());
+				}
+			}
+		}
+	}
+
+	private void ship(Socket socket) {
+		String follower = socket.getRemoteSocketAddress().toString();
+		try {
+			socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+			if (!this.isPeer.test(new DataInputStream(socket.getInputStream()).readUTF())) {
+				log.warn("Refused {}, which did not present the replication secret", follower);
+				closeQuietly(socket);
+				return;
+			}
+			socket.setSoTimeout(0);
+		} catch (IOException ioe) {
+			log.warn("Refused {}, which did not present the replication secret: {}", follower, ioe.getMessage());
+			closeQuietly(socket);
+			return;
+		}
+		this.followers.put(follower, socket);
+		log.info("Follower {} connected", follower);
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE))) {
+			socket.setTcpNoDelay(true);
+			ByteBuffer batch = ByteBuffer.allocate(BUFFER_SIZE);
+			while (!this.closed) {
+				AccountsJournal.Reader reader = this.journal.newReader();
+				sendAccounts(out);
+				streamJournal(reader, batch, out);
+				log.info("Follower {} can no longer be sent the journal from where it is, sending the accounts again",
+						follower);
+			}
+		} catch (IOException | UncheckedIOException e) {
+			if (!this.closed) {
+				log.info("Follower {} disconnected: {}", follower, e.getMessage());
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		} finally {
+			this.followers.remove(follower);
+			closeQuietly(socket);
+		}
+	}
+
+	private void sendAccounts(DataOutputStream out) throws IOException {
+		out.writeByte(RESET);
+		try {
+			this.accountsRepository.forEachAccount(account -> {
+				Balance balance = account.getBalanceState();
+				try {
+					out.writeByte(ACCOUNT);
+					out.writeUTF(account.getAccountId());
+					out.writeLong(balance.getUnits());
+					out.writeInt(balance.getScale());
+				} catch (IOException ioe) {
+					throw new UncheckedIOException(ioe);
+				}
+			});
+		} catch (UncheckedIOException uioe) {
+			throw uioe.getCause();
+		}
+	}
+
+	// Returns when the reader cannot go on
+	private void streamJournal(AccountsJournal.Reader reader, ByteBuffer batch, DataOutputStream out)
+			throws IOException, InterruptedException {
+		long lastSent = System.nanoTime() - this.heartbeatNanos;
+		while (!this.closed) {
+			long written = this.journal.getWrittenPosition();
+			batch.clear();
+			int read = reader.read(batch);
+			if (read < 0) {
+				return;
+			}
+			boolean caughtUp = reader.getPosition() >= written;
+			long now = System.nanoTime();
+			if (read > 0 || now - lastSent >= this.heartbeatNanos) {
+				out.writeByte(RECORDS);
+				out.writeBoolean(caughtUp);
+				out.writeInt(read);
+				out.write(batch.array(), 0, read);
+				out.flush();
+				lastSent = now;
+			}
+			// Otherwise the batch filled up and more is waiting
+			if (caughtUp) {
+				Thread.sleep(this.shipIntervalMillis);
+			}
+		}
+	}
+
+	private static void closeQuietly(AutoCloseable closeable) {
+		try {
+			closeable.close();
+		} catch (Exception e) {
+			// Already closed, or going away
+		}
+	}
+}
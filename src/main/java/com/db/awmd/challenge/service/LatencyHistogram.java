@@ -0,0 +1,77 @@
+package com.db.awmd.challenge.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.db.awmd.challenge.domain.LatencySummary;
+
+/**
+ * Fixed-size log-linear histogram of nanosecond latencies in the style of
+ * HdrHistogram: every power of two is split into 32 linear sub-buckets, so a
+ * reported percentile is within about 3% of the recorded value. Recording is
+ * a single array increment and never allocates. Values above about 18
+ * minutes are clamped.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+
+	private static final long MAX_VALUE = (1L << 40) - 1;
+
+	private static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+		this.counts.incrementAndGet(indexOf(value));
+		if (value > this.max.get()) {
+			this.max.accumulateAndGet(value, Math::max);
+		}
+	}
+
+	/**
+	 * Summarizes everything recorded since the previous call and starts over.
+	 * A value recorded concurrently is counted either now or next time.
+	 */
+	public LatencySummary drain() {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = this.counts.getAndSet(i, 0);
+			total += snapshot[i];
+		}
+		long maxNanos = this.max.getAndSet(0);
+		return new LatencySummary(total, percentile(snapshot, total, 0.5, maxNanos),
+				percentile(snapshot, total, 0.99, maxNanos), percentile(snapshot, total, 0.999, maxNanos), maxNanos);
+	}
+
+	private static long percentile(long[] snapshot, long total, double quantile, long maxNanos) {
+		if (total == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= target) {
+				return Math.min(highestValueOf(i), maxNanos);
+			}
+		}
+		return maxNanos;
+	}
+
+	// Values below 64 get a bucket each; above that 32 buckets per power of two
+	static int indexOf(long value) {
+		int magnitude = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+		return (magnitude << SUB_BUCKET_BITS) + (int) (value >>> magnitude);
+	}
+
+	static long highestValueOf(int index) {
+		int magnitude = Math.max(0, (index >> SUB_BUCKET_BITS) - 1);
+		long subBucket = index - (magnitude << SUB_BUCKET_BITS);
+		return ((subBucket + 1) << magnitude) - 1;
+	}
+}
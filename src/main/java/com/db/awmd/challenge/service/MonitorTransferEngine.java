@@ -0,0 +1,98 @@
+package com.db.awmd.challenge.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ShardedAccount;
+import com.db.awmd.challenge.domain.TransferBalances;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+
+@Service
+@ConditionalOnProperty(name = "accounts.transfer.engine", havingValue = "monitor")
+public class MonitorTransferEngine implements TransferEngine {
+
+	private final AccountsRepository accountsRepository;
+
+	private final TransferMetrics metrics;
+
+	private final TransactionHistory history;
+
+	public MonitorTransferEngine(AccountsRepository accountsRepository) {
+		this(accountsRepository, new TransferMetrics(0), new TransactionHistory(0, "", 0));
+	}
+
+	@Autowired
+	public MonitorTransferEngine(AccountsRepository accountsRepository, TransferMetrics metrics,
+			TransactionHistory history) {
+		// Off-heap accounts are fresh views on every lookup, so their monitors exclude nothing.
+		if (accountsRepository instanceof AccountsRepositoryOffHeap) {
+			throw new IllegalStateException("The monitor transfer engine cannot be used with the off-heap repository.");
+		}
+		this.accountsRepository = accountsRepository;
+		this.metrics = metrics;
+		this.history = history;
+	}
+
+	@Override
+	public TransferBalances transfer(final Account fromAccount, final Account toAccount, final long amountUnits,
+			final int amountScale) throws InsufficientAmountException {
+		// Credits to a sharded account are lock-free, only the debited side needs its monitor.
+		Account lockedAccount = toAccount instanceof ShardedAccount ? fromAccount : toAccount;
+		long start = System.nanoTime();
+		synchronized (getAccountForLock(fromAccount, lockedAccount, true)) {
+			synchronized (getAccountForLock(fromAccount, lockedAccount, false)) {
+				long locked = System.nanoTime();
+				this.metrics.record(TransferMetrics.Stage.LOCK_WAIT, locked - start);
+				TransferBalances balances = this.accountsRepository.transfer(fromAccount, toAccount, amountUnits,
+						amountScale);
+				this.metrics.record(TransferMetrics.Stage.APPLY, System.nanoTime() - locked);
+				this.history.recordTransfer(fromAccount, toAccount, amountUnits, amountScale);
+				return balances;
+			}
+		}
+	}
+
+	@Override
+	public <T> T executeExclusive(Collection<Account> accounts, Supplier<T> work) {
+		List<Account> ordered = new ArrayList<>(accounts);
+		ordered.sort(Comparator.comparing(Account::getAccountId));
+		return lockInOrder(ordered, 0, work);
+	}
+
+	// Takes the account monitors one by one in id order, the same order transfer uses
+	private <T> T lockInOrder(List<Account> ordered, int index, Supplier<T> work) {
+		if (index == ordered.size()) {
+			return work.get();
+		}
+		synchronized (ordered.get(index)) {
+			return lockInOrder(ordered, index + 1, work);
+		}
+	}
+
+	// Method to get account object for locking
+	private Account getAccountForLock(final Account one, final Account two, boolean wantSmall) {
+		if (wantSmall) {
+			if (one.getAccountId().compareTo(two.getAccountId()) < 0) {
+				return one;
+			} else {
+				return two;
+			}
+		} else {
+			if (one.getAccountId().compareTo(two.getAccountId()) > 0) {
+				return one;
+			} else {
+				return two;
+			}
+		}
+	}
+}
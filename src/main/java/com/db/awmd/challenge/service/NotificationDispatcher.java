@@ -0,0 +1,232 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Balance;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.NotificationMetrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Delivers transfer notifications from one dedicated thread instead of the
+ * common ForkJoinPool.
+ *
+ * Callers only enqueue the raw facts of a debit or credit; the message text is
+ * rendered by the dispatcher thread, outside any account lock. Events are
+ * drained in batches and every account gets a single
+ * {@link NotificationService#notifyAboutTransfer} call per batch. When the
+ * bounded queue is full the configured {@link OverflowPolicy} applies.
+ */
+@Service
+@Slf4j
+public class NotificationDispatcher {
+
+	public enum OverflowPolicy {
+		// Discard the notification being enqueued.
+		DROP_NEWEST,
+		// Discard the oldest queued notification to make room.
+		DROP_OLDEST,
+		// Make the transfer thread wait for room.
+		BLOCK,
+		// Deliver on the transfer thread.
+		CALLER_RUNS
+	}
+
+	public enum Kind {
+		DEBIT("debited"), CREDIT("credited");
+
+		private final String verb;
+
+		Kind(String verb) {
+			this.verb = verb;
+		}
+	}
+
+	private final NotificationService notificationService;
+
+	private final BlockingQueue<Event> queue;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final int batchSize;
+
+	private final Thread worker;
+
+	private final LongAdder enqueued = new LongAdder();
+
+	private final LongAdder delivered = new LongAdder();
+
+	private final LongAdder dropped = new LongAdder();
+
+	private final LongAdder latencyNanos = new LongAdder();
+
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+	@Autowired
+	public NotificationDispatcher(NotificationService notificationService,
+			@Value("${accounts.notification.queue-capacity:10000}") int queueCapacity,
+			@Value("${accounts.notification.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+			@Value("${accounts.notification.batch-size:256}") int batchSize) {
+		this.notificationService = notificationService;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.overflowPolicy = overflowPolicy;
+		this.batchSize = batchSize;
+		this.worker = new Thread(this::drainLoop, "notification-dispatcher");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * Queues a notification of a debit or credit. {@code balance} is the one the
+	 * change left the account with, read while the change still held the account,
+	 * since the account may have moved on by the time this is called.
+	 */
+	public void enqueue(Account account, Kind kind, BigDecimal amount, Balance balance) {
+		Event event = new Event(account, kind, amount, balance.getAvailableUnits(), balance.getScale(), System.nanoTime());
+		this.enqueued.increment();
+		if (this.queue.offer(event)) {
+			return;
+		}
+		switch (this.overflowPolicy) {
+		case DROP_NEWEST:
+			this.dropped.increment();
+			break;
+		case DROP_OLDEST:
+			while (!this.queue.offer(event)) {
+				if (this.queue.poll() != null) {
+					this.dropped.increment();
+				}
+			}
+			break;
+		case BLOCK:
+			try {
+				this.queue.put(event);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				this.dropped.increment();
+			}
+			break;
+		case CALLER_RUNS:
+			deliver(account, render(event));
+			recordDelivered(event, System.nanoTime());
+			break;
+		}
+	}
+
+	/**
+	 * Waits until every notification enqueued before this call has been
+	 * delivered or dropped.
+	 */
+	public boolean awaitDelivered(long timeout, TimeUnit unit) throws InterruptedException {
+		long target = this.enqueued.sum();
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (this.delivered.sum() + this.dropped.sum() < target) {
+			if (System.nanoTime() > deadline) {
+				return false;
+			}
+			Thread.sleep(1);
+		}
+		return true;
+	}
+
+	public NotificationMetrics getMetrics() {
+		long count = this.delivered.sum();
+		return new NotificationMetrics(this.queue.size(), this.enqueued.sum(), count, this.dropped.sum(),
+				count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(this.latencyNanos.sum() / count),
+				TimeUnit.NANOSECONDS.toMicros(this.maxLatencyNanos.get()));
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		this.worker.interrupt();
+	}
+
+	private void drainLoop() {
+		List<Event> batch = new ArrayList<>(this.batchSize);
+		Map<String, List<Event>> byAccount = new LinkedHashMap<>();
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				batch.add(this.queue.take());
+				this.queue.drainTo(batch, this.batchSize - 1);
+				for (Event event : batch) {
+					byAccount.computeIfAbsent(event.account.getAccountId(), id -> new ArrayList<>()).add(event);
+				}
+				for (List<Event> events : byAccount.values()) {
+					StringBuilder message = new StringBuilder();
+					for (Event event : events) {
+						if (message.length() > 0) {
+							message.append('\n');
+						}
+						message.append(render(event));
+					}
+					deliver(events.get(0).account, message.toString());
+					long now = System.nanoTime();
+					for (Event event : events) {
+						recordDelivered(event, now);
+					}
+				}
+				batch.clear();
+				byAccount.clear();
+			}
+		} catch (InterruptedException ie) {
+			// shutting down
+		}
+	}
+
+	private void deliver(Account account, String message) {
+		try {
+			this.notificationService.notifyAboutTransfer(account, message);
+		} catch (RuntimeException e) {
+			log.error("Notification to owner of " + account.getAccountId() + " failed", e);
+		}
+	}
+
+	private void recordDelivered(Event event, long now) {
+		long latency = now - event.enqueuedAt;
+		this.latencyNanos.add(latency);
+		this.maxLatencyNanos.accumulateAndGet(latency, Math::max);
+		this.delivered.increment();
+	}
+
+	private static String render(Event event) {
+		return "Your account " + event.kind.verb + " with " + event.amount + " amount. Now available balance is "
+				+ Money.toBigDecimal(event.availableUnits, event.balanceScale) + ".";
+	}
+
+	private static final class Event {
+
+		private final Account account;
+		private final Kind kind;
+		private final BigDecimal amount;
+		// What the balance left free of holds
+		private final long availableUnits;
+		private final int balanceScale;
+		private final long enqueuedAt;
+
+		Event(Account account, Kind kind, BigDecimal amount, long availableUnits, int balanceScale, long enqueuedAt) {
+			this.account = account;
+			this.kind = kind;
+			this.amount = amount;
+			this.availableUnits = availableUnits;
+			this.balanceScale = balanceScale;
+			this.enqueuedAt = enqueuedAt;
+		}
+	}
+}
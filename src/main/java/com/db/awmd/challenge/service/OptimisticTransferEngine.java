@@ -0,0 +1,335 @@
+package com.db.awmd.challenge.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Balance;
+import com.db.awmd.challenge.domain.OptimisticTransferMetrics;
+import com.db.awmd.challenge.domain.ShardedAccount;
+import com.db.awmd.challenge.domain.TransferBalances;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryJournaled;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+
+/**
+ * Lock-free transfers. Both balances are read, the new ones computed, and the
+ * pair is committed with a two-account compare-and-set: a descriptor is
+ * installed over each expected {@link Balance} in turn, then its status is
+ * decided with one CAS, then the new balances replace it. Anyone meeting an
+ * undecided descriptor aborts it and puts the old balances back, so no thread
+ * ever waits on another and a conflicting transfer simply retries.
+ *
+ * Batches claim their accounts by setting {@link Balance#isExclusive()};
+ * transfers wait for the claim to be released, bounded by
+ * {@code lock-timeout-ms} like the lock based engines. Hot
+ * {@link ShardedAccount}s keep their own scheme, so a transfer touching one
+ * commits its two sides one after the other.
+ *
+ * Balances change outside the repository, so neither the journaled
+ * repository, which must see every change in order, nor the off-heap one,
+ * whose accounts have no in-heap state to swap, is supported.
+ */
+@Service
+@ConditionalOnProperty(name = "accounts.transfer.engine", havingValue = "optimistic")
+public class OptimisticTransferEngine implements TransferEngine {
+
+	private final long timeoutNanos;
+
+	private final LongAdder transfers = new LongAdder();
+
+	private final LongAdder contendedTransfers = new LongAdder();
+
+	private final LongAdder retries = new LongAdder();
+
+	private final AtomicLong maxRetries = new AtomicLong();
+
+	private final LongAdder abortedByOthers = new LongAdder();
+
+	private final LongAdder exclusiveWaits = new LongAdder();
+
+	private final TransferMetrics metrics;
+
+	private final TransactionHistory history;
+
+	public OptimisticTransferEngine(AccountsRepository accountsRepository, long timeoutMillis) {
+		this(accountsRepository, timeoutMillis, new TransferMetrics(0), new TransactionHistory(0, "", 0));
+	}
+
+	@Autowired
+	public OptimisticTransferEngine(AccountsRepository accountsRepository,
+			@Value("${accounts.transfer.lock-timeout-ms:0}") long timeoutMillis, TransferMetrics metrics,
+			TransactionHistory history) {
+		if (accountsRepository instanceof AccountsRepositoryJournaled
+				|| accountsRepository instanceof AccountsRepositoryOffHeap) {
+			throw new IllegalStateException("The optimistic transfer engine needs the memory repository.");
+		}
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		this.metrics = metrics;
+		this.history = history;
+	}
+
+	@Override
+	public TransferBalances transfer(final Account fromAccount, final Account toAccount, final long amountUnits,
+			final int amountScale) throws InsufficientAmountException, LockTimeoutException {
+		int attempts = 0;
+		try {
+			if (fromAccount instanceof ShardedAccount || toAccount instanceof ShardedAccount) {
+				return transferSideBySide(fromAccount, toAccount, amountUnits, amountScale);
+			}
+			long start = System.nanoTime();
+			long deadline = start + this.timeoutNanos;
+			while (true) {
+				// Waiting for claims and failed attempts count as lock wait, the attempt that commits as apply
+				long attempt = System.nanoTime();
+				Balance fromBalance = fromAccount.getSettledBalance();
+				Balance toBalance = toAccount.getSettledBalance();
+				if (fromBalance.isExclusive() || toBalance.isExclusive()) {
+					awaitRelease(deadline);
+					attempts++;
+					continue;
+				}
+				Balance debited = fromBalance.debit(amountUnits, amountScale);
+				if (debited == null) {
+					throw insufficient(fromAccount);
+				}
+				Balance credited = toBalance.credit(amountUnits, amountScale);
+				if (commit(fromAccount, fromBalance, debited, toAccount, toBalance, credited)) {
+					this.metrics.record(TransferMetrics.Stage.LOCK_WAIT, attempt - start);
+					this.metrics.record(TransferMetrics.Stage.APPLY, System.nanoTime() - attempt);
+					recordCommitted(fromAccount, debited, toAccount, credited, amountUnits, amountScale);
+					return new TransferBalances(debited, credited);
+				}
+				attempts++;
+			}
+		} finally {
+			record(attempts);
+		}
+	}
+
+	@Override
+	public <T> T executeExclusive(Collection<Account> accounts, Supplier<T> work) {
+		List<Account> ordered = new ArrayList<>(new LinkedHashSet<>(accounts));
+		ordered.sort(Comparator.comparingInt(Account::getLockHash).thenComparing(Account::getAccountId));
+		List<Account> claimed = new ArrayList<>();
+		try {
+			long deadline = System.nanoTime() + this.timeoutNanos;
+			for (Account account : ordered) {
+				if (!(account instanceof ShardedAccount)) {
+					claim(account, deadline);
+					claimed.add(account);
+				}
+			}
+			return lockShardedInOrder(ordered, 0, work);
+		} finally {
+			for (Account account : claimed) {
+				apply(account, balance -> balance.withExclusive(false));
+			}
+		}
+	}
+
+	public OptimisticTransferMetrics getMetrics() {
+		return new OptimisticTransferMetrics(this.transfers.sum(), this.contendedTransfers.sum(), this.retries.sum(),
+				this.maxRetries.get(), this.abortedByOthers.sum(), this.exclusiveWaits.sum());
+	}
+
+	private boolean commit(Account fromAccount, Balance fromBalance, Balance debited, Account toAccount,
+			Balance toBalance, Balance credited) {
+		TwoAccountUpdate update = new TwoAccountUpdate(fromAccount, fromBalance, debited, toAccount, toBalance,
+				credited);
+		// Installing in one global order keeps two transfers from endlessly aborting each other.
+		boolean fromFirst = fromAccount.getLockHash() < toAccount.getLockHash()
+				|| (fromAccount.getLockHash() == toAccount.getLockHash()
+						&& fromAccount.getAccountId().compareTo(toAccount.getAccountId()) < 0);
+		Account first = fromFirst ? fromAccount : toAccount;
+		Account second = fromFirst ? toAccount : fromAccount;
+		if (!first.compareAndSetState(fromFirst ? fromBalance : toBalance, update)) {
+			return false;
+		}
+		if (!second.compareAndSetState(fromFirst ? toBalance : fromBalance, update)) {
+			update.complete();
+			return false;
+		}
+		boolean decided = update.decide();
+		update.complete();
+		if (!decided) {
+			this.abortedByOthers.increment();
+		}
+		return decided;
+	}
+
+	// Hot accounts cannot join a descriptor, so each side is committed on its own. Any wait happens
+	// inside a side's commit, so the whole transfer counts as apply time.
+	private TransferBalances transferSideBySide(Account fromAccount, Account toAccount, long amountUnits,
+			int amountScale) {
+		long start = System.nanoTime();
+		long deadline = start + this.timeoutNanos;
+		boolean debited = fromAccount instanceof ShardedAccount
+				? fromAccount.debit(amountUnits, amountScale)
+				: applyUnclaimed(fromAccount, balance -> balance.debit(amountUnits, amountScale), deadline);
+		if (!debited) {
+			throw insufficient(fromAccount);
+		}
+		try {
+			if (toAccount instanceof ShardedAccount) {
+				toAccount.credit(amountUnits, amountScale);
+			} else {
+				applyUnclaimed(toAccount, balance -> balance.credit(amountUnits, amountScale), deadline);
+			}
+		} catch (ArithmeticException ae) {
+			fromAccount.credit(amountUnits, amountScale);
+			throw ae;
+		}
+		this.metrics.record(TransferMetrics.Stage.APPLY, System.nanoTime() - start);
+		this.history.recordTransfer(fromAccount, toAccount, amountUnits, amountScale);
+		return new TransferBalances(fromAccount.getBalanceState(), toAccount.getBalanceState());
+	}
+
+	/**
+	 * Nothing is held once a commit succeeds, so the entries carry the committed
+	 * balances; a later commit on the same account may get into its ring first.
+	 */
+	private void recordCommitted(Account fromAccount, Balance debited, Account toAccount, Balance credited,
+			long amountUnits, int amountScale) {
+		this.history.record(fromAccount.getAccountId(), toAccount.getAccountId(), -amountUnits, amountScale, debited);
+		this.history.record(toAccount.getAccountId(), fromAccount.getAccountId(), amountUnits, amountScale, credited);
+	}
+
+	// Returns false if the change yields no balance
+	private boolean applyUnclaimed(Account account, UnaryOperator<Balance> change, long deadline) {
+		while (true) {
+			Balance current = account.getSettledBalance();
+			if (current.isExclusive()) {
+				awaitRelease(deadline);
+				continue;
+			}
+			Balance next = change.apply(current);
+			if (next == null) {
+				return false;
+			}
+			if (account.compareAndSetState(current, next)) {
+				return true;
+			}
+		}
+	}
+
+	private void claim(Account account, long deadline) {
+		while (true) {
+			Balance current = account.getSettledBalance();
+			if (current.isExclusive()) {
+				awaitRelease(deadline);
+			} else if (account.compareAndSetState(current, current.withExclusive(true))) {
+				return;
+			}
+		}
+	}
+
+	private static void apply(Account account, UnaryOperator<Balance> change) {
+		while (true) {
+			Balance current = account.getSettledBalance();
+			if (account.compareAndSetState(current, change.apply(current))) {
+				return;
+			}
+		}
+	}
+
+	// A sharded account's debits are serialized on its monitor, so a batch holds that instead
+	private <T> T lockShardedInOrder(List<Account> ordered, int index, Supplier<T> work) {
+		if (index == ordered.size()) {
+			return work.get();
+		}
+		Account account = ordered.get(index);
+		if (!(account instanceof ShardedAccount)) {
+			return lockShardedInOrder(ordered, index + 1, work);
+		}
+		synchronized (account) {
+			return lockShardedInOrder(ordered, index + 1, work);
+		}
+	}
+
+	private void awaitRelease(long deadline) {
+		this.exclusiveWaits.increment();
+		if (this.timeoutNanos > 0 && System.nanoTime() > deadline) {
+			throw new LockTimeoutException("Timed out waiting for account lock, please retry.");
+		}
+		Thread.yield();
+	}
+
+	private void record(int attempts) {
+		this.transfers.increment();
+		if (attempts > 0) {
+			this.contendedTransfers.increment();
+			this.retries.add(attempts);
+			this.maxRetries.accumulateAndGet(attempts, Math::max);
+		}
+	}
+
+	private static InsufficientAmountException insufficient(Account account) {
+		return new InsufficientAmountException(account.getAccountId() + " account does not have sufficent balance.");
+	}
+
+	private static final class TwoAccountUpdate implements Account.PendingUpdate {
+
+		private static final int UNDECIDED = 0;
+		private static final int SUCCEEDED = 1;
+		private static final int FAILED = 2;
+
+		private static final AtomicIntegerFieldUpdater<TwoAccountUpdate> STATUS =
+				AtomicIntegerFieldUpdater.newUpdater(TwoAccountUpdate.class, "status");
+
+		private final Account fromAccount;
+		private final Balance fromBalance;
+		private final Balance debited;
+		private final Account toAccount;
+		private final Balance toBalance;
+		private final Balance credited;
+
+		private volatile int status = UNDECIDED;
+
+		TwoAccountUpdate(Account fromAccount, Balance fromBalance, Balance debited, Account toAccount,
+				Balance toBalance, Balance credited) {
+			this.fromAccount = fromAccount;
+			this.fromBalance = fromBalance;
+			this.debited = debited;
+			this.toAccount = toAccount;
+			this.toBalance = toBalance;
+			this.credited = credited;
+		}
+
+		boolean decide() {
+			return STATUS.compareAndSet(this, UNDECIDED, SUCCEEDED);
+		}
+
+		@Override
+		public Balance resolve(Account account) {
+			boolean succeeded = this.status == SUCCEEDED;
+			if (account == this.fromAccount) {
+				return succeeded ? this.debited : this.fromBalance;
+			}
+			return succeeded ? this.credited : this.toBalance;
+		}
+
+		@Override
+		public void complete() {
+			STATUS.compareAndSet(this, UNDECIDED, FAILED);
+			this.fromAccount.compareAndSetState(this, resolve(this.fromAccount));
+			this.toAccount.compareAndSetState(this, resolve(this.toAccount));
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.db.awmd.challenge.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Assigns every account to one node of the cluster by consistent hashing of
+ * its id. Each node is placed at {@code virtual-nodes} points of a 64-bit
+ * ring, and an account belongs to the node at the first point at or after
+ * its own hash, so adding a node moves only about 1/n of the accounts.
+ *
+ * Nodes are identified by their base URL. Every node must be started with
+ * the same {@code nodes}, in any order. With no nodes configured every
+ * account is local.
+ */
+@Service
+@Slf4j
+public class PartitionMap {
+
+	private final List<String> nodes;
+
+	private final String self;
+
+	// Sorted ring positions and the node owning each
+	private final long[] points;
+
+	private final String[] owners;
+
+	@Autowired
+	public PartitionMap(@Value("${accounts.cluster.nodes:}") String nodes,
+			@Value("${accounts.cluster.self:}") String self,
+			@Value("${accounts.cluster.virtual-nodes:128}") int virtualNodes) {
+		List<String> parsed = new ArrayList<>();
+		for (String node : nodes.split(",")) {
+			if (!node.trim().isEmpty()) {
+				parsed.add(normalize(node));
+			}
+		}
+		Collections.sort(parsed);
+		this.nodes = Collections.unmodifiableList(parsed);
+		if (parsed.isEmpty()) {
+			this.self = null;
+			this.points = new long[0];
+			this.owners = new String[0];
+			return;
+		}
+		this.self = normalize(self);
+		if (!parsed.contains(this.self)) {
+			throw new IllegalStateException(
+					"accounts.cluster.self must be one of accounts.cluster.nodes " + parsed + " but is '" + self + "'");
+		}
+		// Nodes are placed in sorted order, so a rare point collision is resolved the same way everywhere
+		Map<Long, String> ring = new TreeMap<>();
+		for (String node : parsed) {
+			for (int i = 0; i < virtualNodes; i++) {
+				ring.putIfAbsent(hash(node + "#" + i), node);
+			}
+		}
+		this.points = new long[ring.size()];
+		this.owners = new String[ring.size()];
+		int i = 0;
+		for (Map.Entry<Long, String> point : ring.entrySet()) {
+			this.points[i] = point.getKey();
+			this.owners[i] = point.getValue();
+			i++;
+		}
+		log.info("Accounts partitioned over {} nodes, this node is {}", parsed.size(), this.self);
+	}
+
+	public boolean isEnabled() {
+		return this.points.length > 0;
+	}
+
+	public boolean isLocal(String accountId) {
+		return !isEnabled() || this.self.equals(ownerOf(accountId));
+	}
+
+	// Base URL of the node owning the account; null when partitioning is off
+	public String ownerOf(String accountId) {
+		if (!isEnabled()) {
+			return null;
+		}
+		int index = Arrays.binarySearch(this.points, hash(accountId));
+		if (index < 0) {
+			index = -index - 1;
+		}
+		return this.owners[index == this.points.length ? 0 : index];
+	}
+
+	public String getSelf() {
+		return this.self;
+	}
+
+	public List<String> getNodes() {
+		return this.nodes;
+	}
+
+	private static String normalize(String node) {
+		return node.trim().replaceAll("/+$", "");
+	}
+
+	// FNV-1a over the UTF-16 chars, finished with the murmur3 mixer so nearby ids spread over the ring
+	static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb93fe1a85ec3L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,182 @@
+package com.db.awmd.challenge.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.ReplicationStatus;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryJournaled;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Leader/follower replication of the account store, for failover and for
+ * taking reads off the leader.
+ *
+ * A leader ships its journal, so it needs the journal repository; see
+ * {@link JournalShipper}. A follower copies the leader's accounts and then
+ * applies its journal as it arrives (see {@link JournalFollower}), refuses
+ * writes, and answers reads only while its staleness is within
+ * {@code max-staleness-ms}. Promoting a follower stops it following and makes
+ * it writable; with a journal repository of its own it then leads in turn.
+ * Replication is asynchronous: a leader lost with records not yet shipped loses
+ * them, however durable its own journal.
+ *
+ * Leaders and followers share a {@code secret}: a follower presents it when it
+ * connects, and promoting takes it in the {@value #SECRET_HEADER} header. A
+ * leader only listens on {@code bind-address}.
+ */
+@Service
+@Slf4j
+public class ReplicationService {
+
+	public static final String SECRET_HEADER = "X-Replication-Secret";
+
+	private final AccountsRepository accountsRepository;
+
+	private final InetAddress bindAddress;
+
+	private final int port;
+
+	private final String secret;
+
+	private final String leader;
+
+	private final long shipIntervalMillis;
+
+	private final long heartbeatMillis;
+
+	private final long maxStalenessMillis;
+
+	private volatile JournalShipper shipper;
+
+	private volatile JournalFollower follower;
+
+	@Autowired
+	public ReplicationService(AccountsRepository accountsRepository,
+			@Value("${accounts.replication.role:STANDALONE}") ReplicationStatus.Role role,
+			@Value("${accounts.replication.bind-address:127.0.0.1}") String bindAddress,
+			@Value("${accounts.replication.port:18181}") int port,
+			@Value("${accounts.replication.secret:}") String secret,
+			@Value("${accounts.replication.leader:localhost:18181}") String leader,
+			@Value("${accounts.replication.ship-interval-ms:2}") long shipIntervalMillis,
+			@Value("${accounts.replication.heartbeat-ms:100}") long heartbeatMillis,
+			@Value("${accounts.replication.max-staleness-ms:1000}") long maxStalenessMillis,
+			@Value("${accounts.replication.reconnect-ms:1000}") long reconnectMillis) {
+		this.accountsRepository = accountsRepository;
+		this.port = port;
+		this.secret = secret;
+		this.leader = leader;
+		this.shipIntervalMillis = shipIntervalMillis;
+		this.heartbeatMillis = heartbeatMillis;
+		this.maxStalenessMillis = maxStalenessMillis;
+		try {
+			this.bindAddress = InetAddress.getByName(bindAddress);
+		} catch (IOException ioe) {
+			throw new UncheckedIOException("Cannot resolve accounts.replication.bind-address " + bindAddress, ioe);
+		}
+		if (role != ReplicationStatus.Role.STANDALONE && secret.isEmpty()) {
+			throw new IllegalStateException("accounts.replication.secret must be set for a " + role);
+		}
+		if (role == ReplicationStatus.Role.LEADER) {
+			if (!(accountsRepository instanceof AccountsRepositoryJournaled)) {
+				throw new IllegalStateException("A replication leader needs accounts.repository.type=journal");
+			}
+			lead();
+		} else if (role == ReplicationStatus.Role.FOLLOWER) {
+			int colon = leader.lastIndexOf(':');
+			this.follower = new JournalFollower(accountsRepository,
+					new InetSocketAddress(leader.substring(0, colon), Integer.parseInt(leader.substring(colon + 1))),
+					reconnectMillis, secret);
+		}
+	}
+
+	// Compared in constant time; nobody is a peer while no secret is configured
+	public boolean isPeer(String presentedSecret) {
+		return !this.secret.isEmpty() && presentedSecret != null && MessageDigest.isEqual(
+				this.secret.getBytes(StandardCharsets.UTF_8), presentedSecret.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public boolean isFollowing() {
+		return this.follower != null;
+	}
+
+	public long getMaxStalenessMillis() {
+		return this.maxStalenessMillis;
+	}
+
+	// -1 while a follower has not caught up since it last copied the accounts; 0 when not following
+	public long getStalenessMillis() {
+		JournalFollower current = this.follower;
+		return current == null ? 0 : current.getStalenessMillis();
+	}
+
+	// The port followers connect to, or -1 when not leading
+	public int getShipperPort() {
+		JournalShipper current = this.shipper;
+		return current == null ? -1 : current.getPort();
+	}
+
+	public ReplicationStatus getStatus() {
+		JournalFollower currentFollower = this.follower;
+		JournalShipper currentShipper = this.shipper;
+		if (currentFollower != null) {
+			long staleness = currentFollower.getStalenessMillis();
+			return new ReplicationStatus(ReplicationStatus.Role.FOLLOWER, this.leader, Collections.emptyList(),
+					staleness < 0 ? null : staleness, this.maxStalenessMillis, currentFollower.getRecordsApplied());
+		}
+		return new ReplicationStatus(
+				currentShipper == null ? ReplicationStatus.Role.STANDALONE : ReplicationStatus.Role.LEADER, null,
+				currentShipper == null ? Collections.emptyList() : currentShipper.getFollowers(), null,
+				this.maxStalenessMillis, 0);
+	}
+
+	/**
+	 * Stops following and accepts writes from now on. Returns false if this
+	 * node was not following.
+	 */
+	public synchronized boolean promote() {
+		JournalFollower current = this.follower;
+		if (current == null) {
+			return false;
+		}
+		current.close();
+		this.follower = null;
+		log.info("Promoted from follower of {}", this.leader);
+		if (this.accountsRepository instanceof AccountsRepositoryJournaled) {
+			lead();
+		}
+		return true;
+	}
+
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (this.follower != null) {
+			this.follower.close();
+		}
+		if (this.shipper != null) {
+			this.shipper.close();
+		}
+	}
+
+	private void lead() {
+		try {
+			this.shipper = new JournalShipper((AccountsRepositoryJournaled) this.accountsRepository, this.bindAddress,
+					this.port, this::isPeer, this.shipIntervalMillis, this.heartbeatMillis);
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(
+					"Cannot listen for followers on " + this.bindAddress.getHostAddress() + ":" + this.port, ioe);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package com.db.awmd.challenge.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Decides which requests get per-request log lines.
+ *
+ * In {@code SAMPLED} mode about one request in {@code sample-every} is logged.
+ * The decision is derived from the identity of the request object, so the
+ * controller and the service agree on it without sharing any state and a
+ * sampled request is logged at every step.
+ */
+@Service
+public class RequestLogSampler {
+
+	public enum Mode {
+		ALL, SAMPLED, OFF
+	}
+
+	private final Mode mode;
+
+	private final int sampleEvery;
+
+	@Autowired
+	public RequestLogSampler(@Value("${accounts.logging.request-log:ALL}") Mode mode,
+			@Value("${accounts.logging.sample-every:100}") int sampleEvery) {
+		this.mode = mode;
+		this.sampleEvery = Math.max(1, sampleEvery);
+	}
+
+	public boolean shouldLog(Object request) {
+		switch (this.mode) {
+		case ALL:
+			return true;
+		case SAMPLED:
+			int hash = System.identityHashCode(request) * 0x9E3779B9;
+			return ((hash >>> 1) % this.sampleEvery) == 0;
+		default:
+			return false;
+		}
+	}
+}
@@ -0,0 +1,394 @@
+package com.db.awmd.challenge.service;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Balance;
+import com.db.awmd.challenge.domain.TransferBalances;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryJournaled;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Single-writer transfer engine. Every account is owned by exactly one shard,
+ * chosen by account id hash, and only that shard's thread mutates its balance.
+ * Requests reach a shard through a bounded ring buffer: callers claim a slot
+ * with a compare-and-set and the shard thread consumes slots in order, so no
+ * lock is taken on the way. Callers wait for a free slot instead of piling up
+ * work when a shard falls behind.
+ *
+ * A transfer whose accounts live on different shards is executed as a debit on
+ * the source shard followed by a credit on the target shard. The credit is
+ * handed over by the calling thread, never by a shard thread, so two full
+ * shards can never wait on each other. Until the credit lands the money is on
+ * neither shard; sections spanning several shards wait for such handoffs to
+ * finish, so they never see it missing. On a journaled store, whose records must
+ * hold both legs of a transfer, the caller instead parks both shard threads and
+ * applies the transfer itself. Once a debit is queued its caller waits for it
+ * and hands over the credit even if interrupted, and shutting down lets every
+ * queued request run, so no request is left without an outcome.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "accounts.transfer.engine", havingValue = "sharded")
+public class ShardedTransferEngine implements TransferEngine {
+
+	private final AccountsRepository accountsRepository;
+
+	private final Shard[] shards;
+
+	private final Object barrierLock = new Object();
+
+	// Shared by cross-shard transfers from debit to credit, exclusive for multi-shard sections
+	private final StampedLock handoffs = new StampedLock();
+
+	private final TransferMetrics metrics;
+
+	private final TransactionHistory history;
+
+	public ShardedTransferEngine(AccountsRepository accountsRepository, int shardCount, int queueCapacity) {
+		this(accountsRepository, shardCount, queueCapacity, new TransferMetrics(0), new TransactionHistory(0, "", 0));
+	}
+
+	@Autowired
+	public ShardedTransferEngine(AccountsRepository accountsRepository,
+			@Value("${accounts.transfer.shards:4}") int shardCount,
+			@Value("${accounts.transfer.queue-capacity:1024}") int queueCapacity, TransferMetrics metrics,
+			TransactionHistory history) {
+		this.accountsRepository = accountsRepository;
+		this.metrics = metrics;
+		this.history = history;
+		this.shards = new Shard[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			this.shards[i] = new Shard(i, queueCapacity);
+			this.shards[i].start();
+		}
+		log.info("Started sharded transfer engine with {} shards", shardCount);
+	}
+
+	@Override
+	public TransferBalances transfer(final Account fromAccount, final Account toAccount, final long amountUnits,
+			final int amountScale) throws InsufficientAmountException {
+		Shard fromShard = shardFor(fromAccount);
+		Shard toShard = shardFor(toAccount);
+		if (fromShard == toShard) {
+			long queued = System.nanoTime();
+			return await(fromShard.submit(() -> {
+				// Time in the queue is this engine's lock wait
+				long started = System.nanoTime();
+				this.metrics.record(TransferMetrics.Stage.LOCK_WAIT, started - queued);
+				TransferBalances balances = this.accountsRepository.transfer(fromAccount, toAccount, amountUnits,
+						amountScale);
+				this.metrics.record(TransferMetrics.Stage.APPLY, System.nanoTime() - started);
+				this.history.recordTransfer(fromAccount, toAccount, amountUnits, amountScale);
+				return balances;
+			}));
+		} else {
+			long stamp = this.handoffs.readLock();
+			try {
+				if (this.accountsRepository instanceof AccountsRepositoryJournaled) {
+					return transferWithShardsParked(fromShard, toShard, fromAccount, toAccount, amountUnits,
+							amountScale);
+				}
+				return transferAcrossShards(fromShard, toShard, fromAccount, toAccount, amountUnits, amountScale);
+			} finally {
+				this.handoffs.unlockRead(stamp);
+			}
+		}
+	}
+
+	private TransferBalances transferAcrossShards(final Shard fromShard, final Shard toShard,
+			final Account fromAccount, final Account toAccount, final long amountUnits, final int amountScale) {
+		// Each side is recorded by the shard thread that owns the account. Both queue waits add up to
+		// the lock wait and both legs to the apply time; await makes the shard threads' writes visible.
+		long[] waitAndApply = new long[2];
+		long debitQueued = System.nanoTime();
+		Balance debited = await(fromShard.submit(() -> {
+			long started = System.nanoTime();
+			this.accountsRepository.debitAccount(fromAccount, amountUnits, amountScale);
+			Balance balance = fromAccount.getBalanceState();
+			this.history.record(fromAccount.getAccountId(), toAccount.getAccountId(), -amountUnits, amountScale,
+					balance);
+			waitAndApply[0] = started - debitQueued;
+			waitAndApply[1] = System.nanoTime() - started;
+			return balance;
+		}));
+		try {
+			long creditQueued = System.nanoTime();
+			Balance credited = await(toShard.submit(() -> {
+				long started = System.nanoTime();
+				this.accountsRepository.creditAccount(toAccount, amountUnits, amountScale);
+				Balance balance = toAccount.getBalanceState();
+				this.history.record(toAccount.getAccountId(), fromAccount.getAccountId(), amountUnits,
+						amountScale, balance);
+				waitAndApply[0] += started - creditQueued;
+				waitAndApply[1] += System.nanoTime() - started;
+				return balance;
+			}));
+			this.metrics.record(TransferMetrics.Stage.LOCK_WAIT, waitAndApply[0]);
+			this.metrics.record(TransferMetrics.Stage.APPLY, waitAndApply[1]);
+			return new TransferBalances(debited, credited);
+		} catch (ArithmeticException ae) {
+			await(fromShard.submit(() -> {
+				this.accountsRepository.creditAccount(fromAccount, amountUnits, amountScale);
+				this.history.record(fromAccount.getAccountId(), toAccount.getAccountId(), amountUnits,
+						amountScale, fromAccount.getBalanceState());
+			}));
+			throw ae;
+		}
+	}
+
+	// A journaled store has to log both legs as one record, so the caller applies them
+	// itself while the two shard threads wait. The journal makes the caller wait for
+	// disk anyway, which dwarfs parking two threads.
+	private TransferBalances transferWithShardsParked(final Shard fromShard, final Shard toShard,
+			final Account fromAccount, final Account toAccount, final long amountUnits, final int amountScale) {
+		CountDownLatch released = new CountDownLatch(1);
+		try {
+			long start = System.nanoTime();
+			// In index order, like every section that parks more than one shard
+			if (fromShard.getIndex() < toShard.getIndex()) {
+				park(fromShard, released);
+				park(toShard, released);
+			} else {
+				park(toShard, released);
+				park(fromShard, released);
+			}
+			long parked = System.nanoTime();
+			this.metrics.record(TransferMetrics.Stage.LOCK_WAIT, parked - start);
+			TransferBalances balances = this.accountsRepository.transfer(fromAccount, toAccount, amountUnits,
+					amountScale);
+			this.metrics.record(TransferMetrics.Stage.APPLY, System.nanoTime() - parked);
+			this.history.recordTransfer(fromAccount, toAccount, amountUnits, amountScale);
+			return balances;
+		} finally {
+			released.countDown();
+		}
+	}
+
+	@Override
+	public <T> T executeExclusive(Collection<Account> accounts, Supplier<T> work) {
+		SortedSet<Shard> involved = new TreeSet<>(Comparator.comparingInt(Shard::getIndex));
+		for (Account account : accounts) {
+			involved.add(shardFor(account));
+		}
+		if (involved.size() == 1) {
+			return await(involved.first().submit(work));
+		}
+		// Park every involved shard thread so nothing else writes their accounts,
+		// then run the work on the caller. Only one multi-shard section runs at a
+		// time, otherwise two of them could park shards in opposite orders, and
+		// while it runs no cross-shard transfer is in flight anywhere, even
+		// between accounts it does not touch.
+		synchronized (this.barrierLock) {
+			long stamp = this.handoffs.writeLock();
+			CountDownLatch parked = new CountDownLatch(involved.size());
+			CountDownLatch released = new CountDownLatch(1);
+			try {
+				for (Shard shard : involved) {
+					park(shard, parked, released);
+				}
+				awaitUninterruptibly(parked);
+				return work.get();
+			} finally {
+				released.countDown();
+				this.handoffs.unlockWrite(stamp);
+			}
+		}
+	}
+
+	/**
+	 * Stops taking requests. Those already queued still run, and a cross-shard
+	 * transfer past its debit still gets its credit.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		long stamp = this.handoffs.writeLock();
+		try {
+			for (Shard shard : this.shards) {
+				shard.close();
+			}
+		} finally {
+			this.handoffs.unlockWrite(stamp);
+		}
+	}
+
+	private Shard shardFor(Account account) {
+		return this.shards[(account.getAccountId().hashCode() & Integer.MAX_VALUE) % this.shards.length];
+	}
+
+	private static void park(Shard shard, CountDownLatch released) {
+		CountDownLatch parked = new CountDownLatch(1);
+		park(shard, parked, released);
+		awaitUninterruptibly(parked);
+	}
+
+	// Queues a task that holds the shard thread until released, counting down parked once it does
+	private static void park(Shard shard, CountDownLatch parked, CountDownLatch released) {
+		CompletableFuture<Void> parking = shard.submit(() -> {
+			parked.countDown();
+			awaitUninterruptibly(released);
+		});
+		if (parking.isCompletedExceptionally()) {
+			await(parking);
+		}
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException ie) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Uninterruptible: a caller that left early could no longer hand over the credit of its debit
+	private static <T> T await(CompletableFuture<T> result) {
+		try {
+			return result.join();
+		} catch (CompletionException ce) {
+			if (ce.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ce.getCause();
+			}
+			throw new IllegalStateException(ce.getCause());
+		}
+	}
+
+	private static final class Shard extends Thread {
+
+		// Set in tail once the shard takes no more requests
+		private static final long CLOSED = Long.MIN_VALUE;
+
+		private final int index;
+
+		private final AtomicReferenceArray<Runnable> slots;
+
+		private final int mask;
+
+		// Number of slots claimed by callers, plus CLOSED
+		private final AtomicLong tail = new AtomicLong();
+
+		// Number of slots consumed, written by the shard thread only
+		private volatile long head;
+
+		private volatile boolean sleeping;
+
+		Shard(int index, int capacity) {
+			super("transfer-shard-" + index);
+			this.index = index;
+			setDaemon(true);
+			int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+			this.slots = new AtomicReferenceArray<>(size);
+			this.mask = size - 1;
+		}
+
+		CompletableFuture<Void> submit(Runnable task) {
+			return submit(() -> {
+				task.run();
+				return null;
+			});
+		}
+
+		<T> CompletableFuture<T> submit(Supplier<T> task) {
+			CompletableFuture<T> result = new CompletableFuture<>();
+			boolean queued = offer(() -> {
+				try {
+					result.complete(task.get());
+				} catch (RuntimeException e) {
+					result.completeExceptionally(e);
+				}
+			});
+			if (!queued) {
+				result.completeExceptionally(new IllegalStateException(getName() + " is shut down"));
+			}
+			return result;
+		}
+
+		private boolean offer(Runnable entry) {
+			while (true) {
+				long claim = this.tail.get();
+				if (claim < 0) {
+					return false;
+				}
+				if (claim - this.head >= this.slots.length()) {
+					// Full: wait for the shard thread to free a slot
+					Thread.yield();
+				} else if (this.tail.compareAndSet(claim, claim + 1)) {
+					this.slots.set((int) claim & this.mask, entry);
+					if (this.sleeping) {
+						LockSupport.unpark(this);
+					}
+					return true;
+				}
+			}
+		}
+
+		void close() {
+			long claimed;
+			do {
+				claimed = this.tail.get();
+			} while (!this.tail.compareAndSet(claimed, claimed | CLOSED));
+			LockSupport.unpark(this);
+		}
+
+		int getIndex() {
+			return this.index;
+		}
+
+		@Override
+		public void run() {
+			long next = 0;
+			while (true) {
+				int slot = (int) next & this.mask;
+				Runnable entry = this.slots.get(slot);
+				if (entry != null) {
+					this.slots.lazySet(slot, null);
+					this.head = ++next;
+					entry.run();
+					continue;
+				}
+				long claimed = this.tail.get();
+				if (claimed == (next | CLOSED)) {
+					return;
+				}
+				if (claimed != next) {
+					// Claimed but not yet filled in, the caller is about to
+					Thread.yield();
+					continue;
+				}
+				this.sleeping = true;
+				if (this.slots.get(slot) == null && this.tail.get() == next) {
+					LockSupport.park(this);
+				}
+				this.sleeping = false;
+			}
+		}
+	}
+}
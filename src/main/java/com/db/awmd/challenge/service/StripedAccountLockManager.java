@@ -0,0 +1,162 @@
+package com.db.awmd.challenge.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.LockStripeMetrics;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+
+/**
+ * Fixed array of {@link ReentrantLock} stripes indexed by
+ * {@link Account#getLockHash()}. Stripes are acquired in ascending index
+ * order, and two accounts that share a stripe take it once.
+ *
+ * With {@code lock-timeout-ms} above zero, acquisition gives up with a
+ * {@link LockTimeoutException} instead of waiting forever. Each stripe counts
+ * its acquisitions, how many of them had to wait, timeouts and the total wait.
+ */
+@Service
+public class StripedAccountLockManager implements AccountLockManager {
+
+	private final ReentrantLock[] locks;
+
+	private final Stats[] stats;
+
+	private final int mask;
+
+	private final long timeoutNanos;
+
+	@Autowired
+	public StripedAccountLockManager(@Value("${accounts.transfer.lock-stripes:1024}") int stripes,
+			@Value("${accounts.transfer.lock-timeout-ms:0}") long timeoutMillis) {
+		int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+		this.locks = new ReentrantLock[size];
+		this.stats = new Stats[size];
+		for (int i = 0; i < size; i++) {
+			this.locks[i] = new ReentrantLock();
+			this.stats[i] = new Stats();
+		}
+		this.mask = size - 1;
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+	}
+
+	@Override
+	public void lock(Account one, Account two) throws LockTimeoutException {
+		int first = stripeOf(one);
+		int second = stripeOf(two);
+		if (first > second) {
+			int swap = first;
+			first = second;
+			second = swap;
+		}
+		acquire(first);
+		if (second != first) {
+			try {
+				acquire(second);
+			} catch (LockTimeoutException lte) {
+				this.locks[first].unlock();
+				throw lte;
+			}
+		}
+	}
+
+	@Override
+	public void unlock(Account one, Account two) {
+		int first = stripeOf(one);
+		int second = stripeOf(two);
+		this.locks[first].unlock();
+		if (second != first) {
+			this.locks[second].unlock();
+		}
+	}
+
+	@Override
+	public void lockAll(Collection<Account> accounts) throws LockTimeoutException {
+		List<Integer> acquired = new ArrayList<>();
+		try {
+			for (int stripe : stripesOf(accounts)) {
+				acquire(stripe);
+				acquired.add(stripe);
+			}
+		} catch (LockTimeoutException lte) {
+			for (int stripe : acquired) {
+				this.locks[stripe].unlock();
+			}
+			throw lte;
+		}
+	}
+
+	@Override
+	public void unlockAll(Collection<Account> accounts) {
+		for (int stripe : stripesOf(accounts)) {
+			this.locks[stripe].unlock();
+		}
+	}
+
+	@Override
+	public List<LockStripeMetrics> getMetrics() {
+		List<LockStripeMetrics> metrics = new ArrayList<>();
+		for (int i = 0; i < this.stats.length; i++) {
+			Stats stripe = this.stats[i];
+			long acquisitions = stripe.acquisitions.sum();
+			if (acquisitions > 0) {
+				metrics.add(new LockStripeMetrics(i, acquisitions, stripe.contended.sum(), stripe.timeouts.sum(),
+						TimeUnit.NANOSECONDS.toMicros(stripe.waitNanos.sum())));
+			}
+		}
+		return metrics;
+	}
+
+	private int stripeOf(Account account) {
+		return account.getLockHash() & this.mask;
+	}
+
+	private TreeSet<Integer> stripesOf(Collection<Account> accounts) {
+		TreeSet<Integer> stripes = new TreeSet<>();
+		for (Account account : accounts) {
+			stripes.add(stripeOf(account));
+		}
+		return stripes;
+	}
+
+	private void acquire(int stripe) throws LockTimeoutException {
+		ReentrantLock lock = this.locks[stripe];
+		Stats stripeStats = this.stats[stripe];
+		stripeStats.acquisitions.increment();
+		if (lock.tryLock()) {
+			return;
+		}
+		stripeStats.contended.increment();
+		long start = System.nanoTime();
+		try {
+			if (this.timeoutNanos <= 0) {
+				lock.lock();
+			} else if (!lock.tryLock(this.timeoutNanos, TimeUnit.NANOSECONDS)) {
+				stripeStats.timeouts.increment();
+				throw new LockTimeoutException("Timed out waiting for account lock, please retry.");
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new LockTimeoutException("Interrupted while waiting for account lock.");
+		} finally {
+			stripeStats.waitNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	private static final class Stats {
+		private final LongAdder acquisitions = new LongAdder();
+		private final LongAdder contended = new LongAdder();
+		private final LongAdder timeouts = new LongAdder();
+		private final LongAdder waitNanos = new LongAdder();
+	}
+}
@@ -0,0 +1,76 @@
+package com.db.awmd.challenge.service;
+
+import java.util.Collection;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ShardedAccount;
+import com.db.awmd.challenge.domain.TransferBalances;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * Serializes transfers through an {@link AccountLockManager} instead of the
+ * account monitors, so ordering costs an int comparison rather than a string
+ * comparison and lock state no longer depends on account object identity.
+ */
+@Service
+@ConditionalOnProperty(name = "accounts.transfer.engine", havingValue = "striped", matchIfMissing = true)
+public class StripedLockTransferEngine implements TransferEngine {
+
+	private final AccountsRepository accountsRepository;
+
+	private final AccountLockManager lockManager;
+
+	private final TransferMetrics metrics;
+
+	private final TransactionHistory history;
+
+	public StripedLockTransferEngine(AccountsRepository accountsRepository, AccountLockManager lockManager) {
+		this(accountsRepository, lockManager, new TransferMetrics(0), new TransactionHistory(0, "", 0));
+	}
+
+	@Autowired
+	public StripedLockTransferEngine(AccountsRepository accountsRepository, AccountLockManager lockManager,
+			TransferMetrics metrics, TransactionHistory history) {
+		this.accountsRepository = accountsRepository;
+		this.lockManager = lockManager;
+		this.metrics = metrics;
+		this.history = history;
+	}
+
+	@Override
+	public TransferBalances transfer(final Account fromAccount, final Account toAccount, final long amountUnits,
+			final int amountScale) throws InsufficientAmountException, LockTimeoutException {
+		// Credits to a sharded account are lock-free, only the debited side needs its stripe.
+		Account lockedAccount = toAccount instanceof ShardedAccount ? fromAccount : toAccount;
+		long start = System.nanoTime();
+		this.lockManager.lock(fromAccount, lockedAccount);
+		try {
+			long locked = System.nanoTime();
+			this.metrics.record(TransferMetrics.Stage.LOCK_WAIT, locked - start);
+			TransferBalances balances = this.accountsRepository.transfer(fromAccount, toAccount, amountUnits,
+					amountScale);
+			this.metrics.record(TransferMetrics.Stage.APPLY, System.nanoTime() - locked);
+			this.history.recordTransfer(fromAccount, toAccount, amountUnits, amountScale);
+			return balances;
+		} finally {
+			this.lockManager.unlock(fromAccount, lockedAccount);
+		}
+	}
+
+	@Override
+	public <T> T executeExclusive(Collection<Account> accounts, Supplier<T> work) {
+		this.lockManager.lockAll(accounts);
+		try {
+			return work.get();
+		} finally {
+			this.lockManager.unlockAll(accounts);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.db.awmd.challenge.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A token bucket per key, refilled at {@code ratePerSecond} up to
+ * {@code burst} tokens.
+ *
+ * Each bucket is a single long, the instant it would be full again (the
+ * "theoretical arrival time" of GCRA, which behaves exactly like a token
+ * bucket). Taking a token moves that instant on by one token's worth of time
+ * with a compare-and-set, so callers never lock or wait for each other. A
+ * bucket that has refilled completely is the same as a missing one, which is
+ * what {@link #evictFull()} relies on to keep only recently used keys.
+ */
+public class TokenBucketLimiter {
+
+	private final long nanosPerToken;
+
+	private final long burstNanos;
+
+	// Clock origin, so bucket instants start at 0 and compare without overflow
+	private final long epoch = System.nanoTime();
+
+	private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+	private final Function<String, AtomicLong> newBucket = key -> new AtomicLong();
+
+	public TokenBucketLimiter(double ratePerSecond, int burst) {
+		this.nanosPerToken = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+		this.burstNanos = this.nanosPerToken * Math.max(burst, 1);
+	}
+
+	/**
+	 * Takes a token from {@code key}'s bucket and returns 0, or returns how many
+	 * nanoseconds until one is available and takes nothing.
+	 */
+	public long tryAcquire(String key) {
+		return tryAcquire(key, 1);
+	}
+
+	/**
+	 * Takes {@code tokens} tokens at once, or none and returns the wait; more
+	 * tokens than the burst are never available.
+	 */
+	public long tryAcquire(String key, int tokens) {
+		AtomicLong bucket = this.buckets.get(key);
+		if (bucket == null) {
+			bucket = this.buckets.computeIfAbsent(key, this.newBucket);
+		}
+		long now = System.nanoTime() - this.epoch;
+		while (true) {
+			long fullAt = bucket.get();
+			long next = Math.max(fullAt, now) + this.nanosPerToken * tokens;
+			long wait = next - now - this.burstNanos;
+			if (wait > 0) {
+				return wait;
+			}
+			if (bucket.compareAndSet(fullAt, next)) {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns 0 if {@code key}'s bucket has a token, or how many nanoseconds
+	 * until it has one, taking nothing either way.
+	 */
+	public long waitFor(String key) {
+		AtomicLong bucket = this.buckets.get(key);
+		if (bucket == null) {
+			return 0;
+		}
+		long now = System.nanoTime() - this.epoch;
+		return Math.max(0, Math.max(bucket.get(), now) + this.nanosPerToken - now - this.burstNanos);
+	}
+
+	// Puts back a token taken by tryAcquire; nothing to do if the bucket has since been evicted as full
+	public void giveBack(String key) {
+		giveBack(key, 1);
+	}
+
+	public void giveBack(String key, int tokens) {
+		AtomicLong bucket = this.buckets.get(key);
+		if (bucket != null) {
+			bucket.addAndGet(-this.nanosPerToken * tokens);
+		}
+	}
+
+	// A bucket dropped just as a caller takes from it costs at most one extra token
+	public void evictFull() {
+		long now = System.nanoTime() - this.epoch;
+		this.buckets.values().removeIf(bucket -> bucket.get() <= now);
+	}
+
+	public int size() {
+		return this.buckets.size();
+	}
+}
@@ -0,0 +1,283 @@
+package com.db.awmd.challenge.service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Balance;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.TransactionEntry;
+import com.db.awmd.challenge.repository.TransactionArchive;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The last {@code depth} debits and credits of every account.
+ *
+ * Each account has a ring of primitive arrays that starts small and doubles
+ * up to {@code depth}; after that the oldest entry is overwritten, and queued
+ * for a {@link TransactionArchive} first if {@code archive-directory} is set.
+ * Recording copies a few longs, so the engines do it while they still hold the
+ * accounts and every ring lists its account's changes in the order they were
+ * applied. Archive files are written by a thread of their own, since rolling a
+ * segment forces and maps a file; a transfer only waits for it when
+ * {@value #ARCHIVE_QUEUE_CAPACITY} evicted entries are already queued.
+ *
+ * A depth of 0 records nothing. History is keyed by account id and is not
+ * dropped by {@link com.db.awmd.challenge.repository.AccountsRepository#clearAccounts()}.
+ */
+@Service
+@Slf4j
+public class TransactionHistory {
+
+	private static final int INITIAL_CAPACITY = 4;
+
+	// Archive writers, picked by account, so evictions of different accounts rarely share a lock
+	private static final int ARCHIVE_STRIPES = 8;
+
+	private static final int ARCHIVE_QUEUE_CAPACITY = 1 << 16;
+
+	private static final Evicted END_OF_ARCHIVE = new Evicted(0, null, 0, 0, null, 0, 0, 0, 0);
+
+	private final int depth;
+
+	private final TransactionArchive[] archives;
+
+	private final BlockingQueue<Evicted> evicted;
+
+	private final Thread archiver;
+
+	private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+	private final Function<String, Ring> newRing;
+
+	@Autowired
+	public TransactionHistory(@Value("${accounts.history.depth:32}") int depth,
+			@Value("${accounts.history.archive-directory:}") String archiveDirectory,
+			@Value("${accounts.history.archive-segment-size:67108864}") int archiveSegmentSize) {
+		this.depth = depth;
+		if (depth > 0 && !archiveDirectory.isEmpty()) {
+			this.archives = new TransactionArchive[ARCHIVE_STRIPES];
+			for (int i = 0; i < ARCHIVE_STRIPES; i++) {
+				this.archives[i] = new TransactionArchive(new File(archiveDirectory), "history-" + i,
+						archiveSegmentSize);
+			}
+			this.evicted = new ArrayBlockingQueue<>(ARCHIVE_QUEUE_CAPACITY);
+			this.archiver = new Thread(this::archiveLoop, "history-archiver");
+			this.archiver.setDaemon(true);
+			this.archiver.start();
+		} else {
+			this.archives = null;
+			this.evicted = null;
+			this.archiver = null;
+		}
+		this.newRing = accountId -> new Ring(accountId, Math.min(INITIAL_CAPACITY, depth));
+	}
+
+	/**
+	 * Records both sides of a transfer with the balances the accounts have now;
+	 * call it before letting go of them.
+	 */
+	public void recordTransfer(Account fromAccount, Account toAccount, long amountUnits, int amountScale) {
+		if (this.depth == 0) {
+			return;
+		}
+		// Reading the clock costs about as much as the rest of recording, so both sides share one read
+		long timestamp = System.currentTimeMillis();
+		ringOf(fromAccount.getAccountId()).add(timestamp, toAccount.getAccountId(), -amountUnits, amountScale,
+				fromAccount.getBalanceState());
+		ringOf(toAccount.getAccountId()).add(timestamp, fromAccount.getAccountId(), amountUnits, amountScale,
+				toAccount.getBalanceState());
+	}
+
+	// A negative amount is a debit
+	public void record(String accountId, String counterpartyId, long amountUnits, int amountScale,
+			Balance balanceAfter) {
+		if (this.depth == 0) {
+			return;
+		}
+		ringOf(accountId).add(System.currentTimeMillis(), counterpartyId, amountUnits, amountScale, balanceAfter);
+	}
+
+	// Newest first
+	public List<TransactionEntry> recent(String accountId, int limit) {
+		Ring ring = this.rings.get(accountId);
+		return ring == null ? new ArrayList<>() : ring.recent(limit);
+	}
+
+	public void clear() {
+		this.rings.clear();
+	}
+
+	private Ring ringOf(String accountId) {
+		Ring ring = this.rings.get(accountId);
+		return ring != null ? ring : this.rings.computeIfAbsent(accountId, this.newRing);
+	}
+
+	/**
+	 * Writes out the entries already queued for the archive and closes it.
+	 */
+	@PreDestroy
+	public void close() {
+		if (this.archives != null) {
+			putUninterruptibly(END_OF_ARCHIVE);
+			boolean interrupted = false;
+			while (this.archiver.isAlive()) {
+				try {
+					this.archiver.join();
+				} catch (InterruptedException ie) {
+					interrupted = true;
+				}
+			}
+			for (TransactionArchive archive : this.archives) {
+				archive.close();
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	// Never interrupted: an interrupt while mapping a segment would close its file
+	private void archiveLoop() {
+		List<Evicted> batch = new ArrayList<>();
+		while (true) {
+			try {
+				batch.add(this.evicted.take());
+			} catch (InterruptedException ie) {
+				continue;
+			}
+			this.evicted.drainTo(batch);
+			for (Evicted entry : batch) {
+				if (entry == END_OF_ARCHIVE) {
+					return;
+				}
+				try {
+					this.archives[entry.stripe].append(entry.accountId, entry.sequence, entry.timestamp,
+							entry.counterpartyId, entry.amountUnits, entry.amountScale, entry.balanceUnits,
+							entry.balanceScale);
+				} catch (RuntimeException e) {
+					log.error("Could not archive history entry " + entry.sequence + " of " + entry.accountId, e);
+				}
+			}
+			batch.clear();
+		}
+	}
+
+	private void putUninterruptibly(Evicted entry) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				this.evicted.put(entry);
+				break;
+			} catch (InterruptedException ie) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static final class Evicted {
+
+		private final int stripe;
+		private final String accountId;
+		private final long sequence;
+		private final long timestamp;
+		private final String counterpartyId;
+		private final long amountUnits;
+		private final int amountScale;
+		private final long balanceUnits;
+		private final int balanceScale;
+
+		Evicted(int stripe, String accountId, long sequence, long timestamp, String counterpartyId, long amountUnits,
+				int amountScale, long balanceUnits, int balanceScale) {
+			this.stripe = stripe;
+			this.accountId = accountId;
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+			this.counterpartyId = counterpartyId;
+			this.amountUnits = amountUnits;
+			this.amountScale = amountScale;
+			this.balanceUnits = balanceUnits;
+			this.balanceScale = balanceScale;
+		}
+	}
+
+	private final class Ring {
+
+		// Per entry: timestamp, amount units, balance units, amount scale << 32 | balance scale
+		private static final int FIELDS = 4;
+
+		private final String accountId;
+
+		private long[] entries;
+
+		private String[] counterparties;
+
+		// Entries ever recorded; the next one goes to count % capacity
+		private long count;
+
+		Ring(String accountId, int capacity) {
+			this.accountId = accountId;
+			this.entries = new long[capacity * FIELDS];
+			this.counterparties = new String[capacity];
+		}
+
+		synchronized void add(long timestamp, String counterpartyId, long amountUnits, int amountScale,
+				Balance balanceAfter) {
+			int capacity = this.counterparties.length;
+			// The ring only grows before it first wraps, so its entries are still in order from 0
+			if (this.count == capacity && capacity < TransactionHistory.this.depth) {
+				capacity = Math.min(capacity * 2, TransactionHistory.this.depth);
+				this.entries = Arrays.copyOf(this.entries, capacity * FIELDS);
+				this.counterparties = Arrays.copyOf(this.counterparties, capacity);
+			}
+			int slot = (int) (this.count % capacity);
+			int base = slot * FIELDS;
+			if (this.count >= capacity && TransactionHistory.this.archives != null) {
+				long scales = this.entries[base + 3];
+				putUninterruptibly(new Evicted(Account.lockHashOf(this.accountId) % ARCHIVE_STRIPES, this.accountId,
+						this.count - capacity + 1, this.entries[base], this.counterparties[slot], this.entries[base + 1],
+						(int) (scales >> 32), this.entries[base + 2], (int) scales));
+			}
+			this.entries[base] = timestamp;
+			this.entries[base + 1] = amountUnits;
+			this.entries[base + 2] = balanceAfter.getUnits();
+			this.entries[base + 3] = ((long) amountScale << 32) | (balanceAfter.getScale() & 0xFFFFFFFFL);
+			this.counterparties[slot] = counterpartyId;
+			this.count++;
+		}
+
+		synchronized List<TransactionEntry> recent(int limit) {
+			int capacity = this.counterparties.length;
+			int size = (int) Math.min(Math.min(this.count, capacity), Math.max(limit, 0));
+			List<TransactionEntry> recent = new ArrayList<>(size);
+			for (long sequence = this.count; sequence > this.count - size; sequence--) {
+				int slot = (int) ((sequence - 1) % capacity);
+				int base = slot * FIELDS;
+				long amountUnits = this.entries[base + 1];
+				long scales = this.entries[base + 3];
+				recent.add(new TransactionEntry(sequence, this.entries[base],
+						amountUnits < 0 ? TransactionEntry.Type.DEBIT : TransactionEntry.Type.CREDIT,
+						this.counterparties[slot], Money.toBigDecimal(Math.abs(amountUnits), (int) (scales >> 32)),
+						Money.toBigDecimal(this.entries[base + 2], (int) scales)));
+			}
+			return recent;
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package com.db.awmd.challenge.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.AdmissionMetrics;
+import com.db.awmd.challenge.exception.TransferRejectedException;
+
+/**
+ * Decides whether a transfer may run at all, before it takes any lock.
+ *
+ * Token buckets limit how fast each debited account and each client may
+ * transfer ({@code account-rate} and {@code client-rate} per second, 0 for no
+ * limit). A transfer takes a token from both buckets or from neither, so one
+ * turned away by its account's limit does not use up its client's. A batch
+ * takes a token per transfer, all of them or none.
+ *
+ * On top of them the node sheds load as a whole, the way CoDel does: every
+ * {@code interval-ms} it looks at the shortest time an admitted transfer took
+ * from arriving to completing. A transfer's own work takes microseconds, so
+ * that time is waiting, for a thread, for account locks or for the journal,
+ * and when even the shortest wait of an interval is over
+ * {@code latency-budget-ms} a queue is standing rather than a burst passing.
+ * New transfers are then turned away at once for the next interval, letting
+ * the queue drain, rather than joining it only to miss their deadline.
+ */
+@Service
+public class TransferAdmission {
+
+	private static final long EVICTION_SECONDS = 1;
+
+	private final TokenBucketLimiter accountLimiter;
+
+	private final TokenBucketLimiter clientLimiter;
+
+	private final long latencyBudgetNanos;
+
+	private final long intervalNanos;
+
+	private final AtomicLong intervalStart = new AtomicLong(System.nanoTime());
+
+	private final AtomicLong intervalMinSojourn = new AtomicLong(Long.MAX_VALUE);
+
+	private volatile long lastMinSojourn = -1;
+
+	private volatile boolean shedding;
+
+	private final LongAdder admitted = new LongAdder();
+
+	private final LongAdder rejectedByAccountLimit = new LongAdder();
+
+	private final LongAdder rejectedByClientLimit = new LongAdder();
+
+	private final LongAdder shed = new LongAdder();
+
+	private final ScheduledExecutorService evictor;
+
+	@Autowired
+	public TransferAdmission(@Value("${accounts.admission.account-rate:0}") double accountRate,
+			@Value("${accounts.admission.account-burst:10}") int accountBurst,
+			@Value("${accounts.admission.client-rate:0}") double clientRate,
+			@Value("${accounts.admission.client-burst:100}") int clientBurst,
+			@Value("${accounts.admission.latency-budget-ms:0}") long latencyBudgetMillis,
+			@Value("${accounts.admission.interval-ms:100}") long intervalMillis) {
+		this.accountLimiter = accountRate > 0 ? new TokenBucketLimiter(accountRate, accountBurst) : null;
+		this.clientLimiter = clientRate > 0 ? new TokenBucketLimiter(clientRate, clientBurst) : null;
+		this.latencyBudgetNanos = TimeUnit.MILLISECONDS.toNanos(latencyBudgetMillis);
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		if (this.accountLimiter != null || this.clientLimiter != null) {
+			this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "admission-evictor");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.evictor.scheduleAtFixedRate(this::evictFullBuckets, EVICTION_SECONDS, EVICTION_SECONDS,
+					TimeUnit.SECONDS);
+		} else {
+			this.evictor = null;
+		}
+	}
+
+	/**
+	 * Lets the transfer through or throws; an admitted transfer should report
+	 * back through {@link #complete(long)}.
+	 */
+	public void admit(String accountFromId, String clientId) throws TransferRejectedException {
+		rejectIfShedding();
+		if (this.clientLimiter != null) {
+			rejectClientIfWaiting(clientId, this.clientLimiter.waitFor(clientId));
+		}
+		if (this.accountLimiter != null) {
+			rejectAccountIfWaiting(accountFromId, this.accountLimiter.waitFor(accountFromId));
+		}
+		// Both had a token just now, but a concurrent transfer may have taken the last one since
+		if (this.clientLimiter != null) {
+			rejectClientIfWaiting(clientId, this.clientLimiter.tryAcquire(clientId));
+		}
+		if (this.accountLimiter != null) {
+			long wait = this.accountLimiter.tryAcquire(accountFromId);
+			if (wait > 0 && this.clientLimiter != null) {
+				this.clientLimiter.giveBack(clientId);
+			}
+			rejectAccountIfWaiting(accountFromId, wait);
+		}
+		this.admitted.increment();
+	}
+
+	/**
+	 * Lets a batch through as a whole or throws, taking a token per transfer
+	 * from the client and from each transfer's debited account. A batch asking
+	 * one bucket for more than its burst is never let through.
+	 */
+	public void admitBatch(List<String> accountFromIds, String clientId) throws TransferRejectedException {
+		rejectIfShedding();
+		int transfers = accountFromIds.size();
+		if (this.clientLimiter != null) {
+			rejectClientIfWaiting(clientId, this.clientLimiter.tryAcquire(clientId, transfers));
+		}
+		if (this.accountLimiter != null) {
+			Map<String, Integer> perAccount = new LinkedHashMap<>();
+			accountFromIds.forEach(accountFromId -> perAccount.merge(accountFromId, 1, Integer::sum));
+			Map<String, Integer> taken = new HashMap<>();
+			for (Map.Entry<String, Integer> account : perAccount.entrySet()) {
+				long wait = this.accountLimiter.tryAcquire(account.getKey(), account.getValue());
+				if (wait > 0) {
+					taken.forEach(this.accountLimiter::giveBack);
+					if (this.clientLimiter != null) {
+						this.clientLimiter.giveBack(clientId, transfers);
+					}
+					rejectAccountIfWaiting(account.getKey(), wait);
+				}
+				taken.put(account.getKey(), account.getValue());
+			}
+		}
+		this.admitted.add(transfers);
+	}
+
+	// Time from the transfer's or batch's arrival to its completion, failed or not
+	public void complete(long sojournNanos) {
+		if (this.latencyBudgetNanos > 0) {
+			rollOver(System.nanoTime());
+			this.intervalMinSojourn.accumulateAndGet(sojournNanos, Math::min);
+		}
+	}
+
+	public AdmissionMetrics getMetrics() {
+		long minSojourn = this.lastMinSojourn;
+		return new AdmissionMetrics(this.admitted.sum(), this.rejectedByAccountLimit.sum(),
+				this.rejectedByClientLimit.sum(), this.shed.sum(), this.shedding,
+				TimeUnit.NANOSECONDS.toMillis(this.latencyBudgetNanos), minSojourn < 0 ? 0 : minSojourn / 1e6,
+				this.accountLimiter == null ? 0 : this.accountLimiter.size(),
+				this.clientLimiter == null ? 0 : this.clientLimiter.size());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (this.evictor != null) {
+			this.evictor.shutdownNow();
+		}
+	}
+
+	private void rejectIfShedding() throws TransferRejectedException {
+		if (this.latencyBudgetNanos > 0) {
+			rollOver(System.nanoTime());
+			if (this.shedding) {
+				this.shed.increment();
+				throw new TransferRejectedException("Transfers are waiting longer than "
+						+ TimeUnit.NANOSECONDS.toMillis(this.latencyBudgetNanos) + " ms, try again shortly.", 1);
+			}
+		}
+	}
+
+	// The first caller past the end of an interval judges it and starts the next
+	private void rollOver(long now) {
+		long start = this.intervalStart.get();
+		if (now - start >= this.intervalNanos && this.intervalStart.compareAndSet(start, now)) {
+			long minSojourn = this.intervalMinSojourn.getAndSet(Long.MAX_VALUE);
+			// With nothing completed there is nothing to judge, so transfers are let in to find out
+			this.shedding = minSojourn != Long.MAX_VALUE && minSojourn > this.latencyBudgetNanos;
+			this.lastMinSojourn = minSojourn == Long.MAX_VALUE ? -1 : minSojourn;
+		}
+	}
+
+	private void rejectClientIfWaiting(String clientId, long wait) throws TransferRejectedException {
+		if (wait > 0) {
+			this.rejectedByClientLimit.increment();
+			throw new TransferRejectedException("Client " + clientId + " is over its transfer rate limit.",
+					retryAfterSeconds(wait));
+		}
+	}
+
+	private void rejectAccountIfWaiting(String accountFromId, long wait) throws TransferRejectedException {
+		if (wait > 0) {
+			this.rejectedByAccountLimit.increment();
+			throw new TransferRejectedException(accountFromId + " account is over its transfer rate limit.",
+					retryAfterSeconds(wait));
+		}
+	}
+
+	private void evictFullBuckets() {
+		if (this.accountLimiter != null) {
+			this.accountLimiter.evictFull();
+		}
+		if (this.clientLimiter != null) {
+			this.clientLimiter.evictFull();
+		}
+	}
+
+	private static long retryAfterSeconds(long waitNanos) {
+		return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+	}
+}
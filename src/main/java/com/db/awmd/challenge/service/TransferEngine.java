@@ -0,0 +1,31 @@
+package com.db.awmd.challenge.service;
+
+import java.util.Collection;
+import java.util.function.Supplier;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferBalances;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+
+/**
+ * Moves money between two existing accounts. Implementations decide how
+ * concurrent transfers touching the same accounts are serialized.
+ */
+public interface TransferEngine {
+
+	/**
+	 * Debits {@code amountUnits} at {@code amountScale} (see
+	 * {@link com.db.awmd.challenge.domain.Money}) from one account and credits
+	 * it to the other. If the credit fails the debit is reversed. Returns the
+	 * balances it left both accounts with.
+	 */
+	TransferBalances transfer(Account fromAccount, Account toAccount, long amountUnits, int amountScale)
+			throws InsufficientAmountException;
+
+	/**
+	 * Runs {@code work} while no other transfer can touch any of the given
+	 * accounts. Used by batches that must see and change several accounts as
+	 * one unit.
+	 */
+	<T> T executeExclusive(Collection<Account> accounts, Supplier<T> work);
+}
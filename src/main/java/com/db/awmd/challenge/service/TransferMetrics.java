@@ -0,0 +1,114 @@
+package com.db.awmd.challenge.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.LatencySummary;
+import com.db.awmd.challenge.domain.TransferMetricsReport;
+
+/**
+ * Latency histograms for each stage of a transfer plus outcome counters.
+ *
+ * Histograms are drained into a summary every {@code interval-seconds}, so the
+ * report always shows the last complete interval; counters run since startup.
+ * With an interval of 0 nothing is scheduled and {@link #rollover()} has to be
+ * called by hand.
+ */
+@Service
+public class TransferMetrics {
+
+	public enum Stage {
+		// Controller entry to response
+		END_TO_END,
+		// Waiting for the account locks of a transfer, or for a shard's queue or a batch's claim
+		LOCK_WAIT,
+		// Debiting and crediting the accounts, journal append included
+		APPLY,
+		NOTIFICATION_ENQUEUE
+	}
+
+	private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+	private final LongAdder succeeded = new LongAdder();
+
+	private final LongAdder insufficientBalance = new LongAdder();
+
+	private final LongAdder invalidAccount = new LongAdder();
+
+	private final long intervalSeconds;
+
+	private final ScheduledExecutorService scheduler;
+
+	private volatile Map<String, LatencySummary> lastInterval = Collections.emptyMap();
+
+	private volatile long lastIntervalStart;
+
+	private long currentIntervalStart = System.currentTimeMillis();
+
+	@Autowired
+	public TransferMetrics(@Value("${accounts.metrics.interval-seconds:10}") long intervalSeconds) {
+		this.intervalSeconds = intervalSeconds;
+		for (int i = 0; i < this.histograms.length; i++) {
+			this.histograms[i] = new LatencyHistogram();
+		}
+		if (intervalSeconds > 0) {
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "transfer-metrics");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.scheduler.scheduleAtFixedRate(this::rollover, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+		} else {
+			this.scheduler = null;
+		}
+	}
+
+	public void record(Stage stage, long nanos) {
+		this.histograms[stage.ordinal()].record(nanos);
+	}
+
+	public void recordSucceeded() {
+		this.succeeded.increment();
+	}
+
+	public void recordInsufficientBalance() {
+		this.insufficientBalance.increment();
+	}
+
+	public void recordInvalidAccount() {
+		this.invalidAccount.increment();
+	}
+
+	public synchronized void rollover() {
+		Map<String, LatencySummary> summaries = new LinkedHashMap<>();
+		for (Stage stage : Stage.values()) {
+			summaries.put(stage.name(), this.histograms[stage.ordinal()].drain());
+		}
+		this.lastIntervalStart = this.currentIntervalStart;
+		this.currentIntervalStart = System.currentTimeMillis();
+		this.lastInterval = Collections.unmodifiableMap(summaries);
+	}
+
+	public TransferMetricsReport getReport() {
+		return new TransferMetricsReport(this.intervalSeconds, this.lastIntervalStart, this.succeeded.sum(),
+				this.insufficientBalance.sum(), this.invalidAccount.sum(), this.lastInterval);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (this.scheduler != null) {
+			this.scheduler.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,317 @@
+package com.db.awmd.challenge.service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.domain.BatchTransferRequest;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.ScheduledTransferRequest;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.exception.ScheduledTransferNotFoundException;
+import com.db.awmd.challenge.repository.ScheduledTransferStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs transfers at a future instant, once or as standing orders.
+ *
+ * Waiting transfers sit in a {@link HierarchicalTimerWheel} advanced every
+ * {@code tick-ms}. What falls due in a tick is sorted by due time and
+ * creation, cut into batches of {@code batch-size} and applied through
+ * {@link AccountsService#transferBatch} in best-effort mode, so a tick takes
+ * the account locks once per batch instead of once per transfer and a failed
+ * transfer does not hold back the others.
+ *
+ * So that transfers everybody schedules for the same second do not all land
+ * in one tick, each runs up to {@code spread-ms} after its instant, at an
+ * offset fixed by its debited account. Transfers from one account thus keep
+ * their order, and none runs early.
+ *
+ * Schedules are kept in a {@link ScheduledTransferStore} under
+ * {@code directory}, if set, and picked up again on start; a restart after
+ * the instant runs the transfer at once. Each run is recorded there before it
+ * is applied, so runs are at most once: a crash in between loses that run
+ * rather than moving the money twice. A follower of a replicated leader runs
+ * nothing until it is promoted.
+ */
+@Service
+@Slf4j
+public class TransferScheduler {
+
+	private static final int WHEEL_BITS = 8;
+
+	private static final int WHEEL_LEVELS = 4;
+
+	private static final Comparator<ScheduledTransfer> DUE_ORDER = Comparator
+			.comparingLong(ScheduledTransfer::getExecuteAt).thenComparingLong(ScheduledTransfer::getSequence);
+
+	private final AccountsService accountsService;
+
+	private final ReplicationService replicationService;
+
+	private final ScheduledTransferStore store;
+
+	private final int batchSize;
+
+	private final long spreadMillis;
+
+	private final Map<String, Scheduled> scheduled = new ConcurrentHashMap<>();
+
+	private final HierarchicalTimerWheel<Scheduled> wheel;
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final AtomicLong executed = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private final ScheduledExecutorService ticker;
+
+	@Autowired
+	public TransferScheduler(AccountsService accountsService, ReplicationService replicationService,
+			ObjectMapper objectMapper, @Value("${accounts.schedule.directory:}") String directory,
+			@Value("${accounts.schedule.tick-ms:100}") long tickMillis,
+			@Value("${accounts.schedule.batch-size:100}") int batchSize,
+			@Value("${accounts.schedule.spread-ms:1000}") long spreadMillis) {
+		this.accountsService = accountsService;
+		this.replicationService = replicationService;
+		this.store = directory.isEmpty() ? null : new ScheduledTransferStore(new File(directory), objectMapper);
+		this.batchSize = batchSize;
+		this.spreadMillis = spreadMillis;
+		this.wheel = new HierarchicalTimerWheel<>(tickMillis, WHEEL_BITS, WHEEL_LEVELS, System.currentTimeMillis());
+		if (this.store != null) {
+			List<ScheduledTransfer> loaded = this.store.load();
+			for (ScheduledTransfer transfer : loaded) {
+				this.sequence.set(Math.max(this.sequence.get(), transfer.getSequence()));
+				enter(transfer);
+			}
+			log.info("Loaded {} scheduled transfers", loaded.size());
+		}
+		this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "transfer-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.ticker.scheduleAtFixedRate(this::runDue, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public ScheduledTransfer schedule(ScheduledTransferRequest request)
+			throws InvalidAccountIdException, InsufficientAmountException {
+		if (request.getAccountFromId().equals(request.getAccountToId())) {
+			throw new InvalidAccountIdException("From and To accounts are same.");
+		}
+		if (request.getAmount().signum() < 0) {
+			throw new InsufficientAmountException(request.getAmount() + " not a valid amount to transfer.");
+		}
+		// Run as a batch on this node, so both accounts have to be here
+		for (String accountId : new String[] { request.getAccountFromId(), request.getAccountToId() }) {
+			if (this.accountsService.getAccountsRepository().getAccount(accountId) == null) {
+				throw new InvalidAccountIdException(accountId + " account does not exists!");
+			}
+		}
+		ScheduledTransfer transfer = new ScheduledTransfer(UUID.randomUUID().toString(),
+				this.sequence.incrementAndGet(), request.getAccountFromId(), request.getAccountToId(),
+				request.getAmount(), request.getExecuteAt(), request.getRepeatEverySeconds());
+		synchronized (this) {
+			if (this.store != null) {
+				this.store.save(transfer);
+			}
+			enter(transfer);
+		}
+		return transfer;
+	}
+
+	public ScheduledTransfer getScheduledTransfer(String scheduleId) throws ScheduledTransferNotFoundException {
+		Scheduled entry = this.scheduled.get(scheduleId);
+		if (entry == null) {
+			throw new ScheduledTransferNotFoundException(scheduleId + " scheduled transfer does not exist.");
+		}
+		return entry.transfer;
+	}
+
+	/**
+	 * Stops the transfer from running again. A run that has already started
+	 * still completes.
+	 */
+	public synchronized void cancel(String scheduleId) throws ScheduledTransferNotFoundException {
+		Scheduled entry = this.scheduled.remove(scheduleId);
+		if (entry == null) {
+			throw new ScheduledTransferNotFoundException(scheduleId + " scheduled transfer does not exist.");
+		}
+		entry.timeout.cancel();
+		if (this.store != null) {
+			this.store.remove(scheduleId);
+		}
+	}
+
+	public int getPending() {
+		return this.scheduled.size();
+	}
+
+	public long getExecuted() {
+		return this.executed.get();
+	}
+
+	public long getFailed() {
+		return this.failed.get();
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		this.ticker.shutdown();
+		this.ticker.awaitTermination(10, TimeUnit.SECONDS);
+		if (this.store != null) {
+			this.store.close();
+		}
+	}
+
+	private void enter(ScheduledTransfer transfer) {
+		Scheduled entry = new Scheduled(transfer);
+		this.scheduled.put(transfer.getScheduleId(), entry);
+		entry.timeout = this.wheel.schedule(entry, transfer.getExecuteAt() + spreadOffset(transfer));
+	}
+
+	private long spreadOffset(ScheduledTransfer transfer) {
+		return this.spreadMillis <= 0 ? 0 : (transfer.getAccountFromId().hashCode() & 0x7fffffff) % this.spreadMillis;
+	}
+
+	private void runDue() {
+		try {
+			if (this.replicationService.isFollowing()) {
+				return;
+			}
+			List<ScheduledTransfer> due = new ArrayList<>();
+			for (Scheduled entry : this.wheel.advance(System.currentTimeMillis())) {
+				if (this.scheduled.get(entry.transfer.getScheduleId()) == entry) {
+					due.add(entry.transfer);
+				}
+			}
+			due.sort(DUE_ORDER);
+			for (int from = 0; from < due.size(); from += this.batchSize) {
+				runBatch(due.subList(from, Math.min(from + this.batchSize, due.size())));
+			}
+		} catch (RuntimeException e) {
+			// Thrown out of a scheduled task it would stop the ticker for good
+			log.error("Running scheduled transfers failed", e);
+		}
+	}
+
+	private void runBatch(List<ScheduledTransfer> due) {
+		// Recorded as run before running, so a crash in between skips the run instead of repeating it
+		long now = System.currentTimeMillis();
+		List<ScheduledTransfer> batch = new ArrayList<>(due.size());
+		List<ScheduledTransfer> nextRuns = new ArrayList<>(due.size());
+		List<ScheduledTransfer> saved = new ArrayList<>();
+		List<String> removed = new ArrayList<>();
+		synchronized (this) {
+			for (ScheduledTransfer transfer : due) {
+				if (!isCurrent(transfer)) {
+					// Cancelled since it fell due
+					continue;
+				}
+				ScheduledTransfer next = transfer.isRepeating() ? transfer.nextRunAfter(now) : null;
+				if (next != null) {
+					saved.add(next);
+				} else {
+					removed.add(transfer.getScheduleId());
+				}
+				batch.add(transfer);
+				nextRuns.add(next);
+			}
+			if (this.store != null) {
+				this.store.write(saved, removed);
+			}
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+		List<BalanceTransferRequest> transfers = new ArrayList<>(batch.size());
+		for (ScheduledTransfer transfer : batch) {
+			transfers.add(transfer.toTransferRequest());
+		}
+		List<TransferResult> results;
+		try {
+			results = this.accountsService
+					.transferBatch(new BatchTransferRequest(BatchTransferRequest.Mode.BEST_EFFORT, transfers));
+		} catch (LockTimeoutException lte) {
+			log.warn("Scheduled transfers could not lock their accounts, retrying them on the next tick");
+			synchronized (this) {
+				List<ScheduledTransfer> retried = new ArrayList<>();
+				for (ScheduledTransfer transfer : batch) {
+					if (isCurrent(transfer)) {
+						retried.add(transfer);
+						enter(transfer);
+					}
+				}
+				if (this.store != null) {
+					this.store.write(retried, Collections.emptyList());
+				}
+			}
+			return;
+		} catch (RuntimeException e) {
+			// Whether any of them got applied is unknown, so none is run again
+			log.error("Scheduled transfers failed to run, they are not retried", e);
+			results = null;
+		}
+		synchronized (this) {
+			for (int i = 0; i < batch.size(); i++) {
+				ScheduledTransfer transfer = batch.get(i);
+				TransferResult result = results == null ? null : results.get(i);
+				if (result != null && result.getStatus() == TransferResult.Status.APPLIED) {
+					this.executed.incrementAndGet();
+				} else {
+					this.failed.incrementAndGet();
+					if (result != null) {
+						log.warn("Scheduled transfer {} failed: {}", transfer.getScheduleId(), result.getMessage());
+					}
+				}
+				if (!isCurrent(transfer)) {
+					// Cancelled while it ran
+					continue;
+				}
+				if (nextRuns.get(i) != null) {
+					enter(nextRuns.get(i));
+				} else {
+					this.scheduled.remove(transfer.getScheduleId());
+				}
+			}
+		}
+	}
+
+	private boolean isCurrent(ScheduledTransfer transfer) {
+		Scheduled entry = this.scheduled.get(transfer.getScheduleId());
+		return entry != null && entry.transfer == transfer;
+	}
+
+	private static final class Scheduled {
+
+		private final ScheduledTransfer transfer;
+
+		private HierarchicalTimerWheel.Timeout<Scheduled> timeout;
+
+		Scheduled(ScheduledTransfer transfer) {
+			this.transfer = transfer;
+		}
+	}
+}
@@ -2,13 +2,36 @@ package com.db.awmd.challenge.web;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.domain.BatchTransferRequest;
+import com.db.awmd.challenge.domain.TransferResult;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
 import com.db.awmd.challenge.exception.InsufficientAmountException;
 import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.InvalidBatchException;
+import com.db.awmd.challenge.exception.InvalidCursorException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.exception.PartitionUnavailableException;
+import com.db.awmd.challenge.exception.TransferRejectedException;
+import com.db.awmd.challenge.service.AccountExporter;
+import com.db.awmd.challenge.service.AccountImporter;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.ClusterClient;
+import com.db.awmd.challenge.service.PartitionMap;
+import com.db.awmd.challenge.service.TransferAdmission;
+import com.db.awmd.challenge.service.TransferMetrics;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Principal;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -16,7 +39,9 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -24,44 +49,234 @@ import org.springframework.web.bind.annotation.RestController;
 @Slf4j
 public class AccountsController {
 
+	public static final String NDJSON_VALUE = "application/x-ndjson";
+
+	public static final String CSV_VALUE = "text/csv";
+
+	// Names the client a peer forwards a request for; ignored on requests not from a peer
+	public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
 	private final AccountsService accountsService;
 
+	private final AccountImporter accountImporter;
+
+	private final AccountExporter accountExporter;
+
+	private final PartitionMap partitionMap;
+
+	private final ClusterClient clusterClient;
+
+	private final TransferAdmission transferAdmission;
+
 	@Autowired
-	public AccountsController(AccountsService accountsService) {
+	public AccountsController(AccountsService accountsService, AccountImporter accountImporter,
+			AccountExporter accountExporter, PartitionMap partitionMap, ClusterClient clusterClient,
+			TransferAdmission transferAdmission) {
 		this.accountsService = accountsService;
+		this.accountImporter = accountImporter;
+		this.accountExporter = accountExporter;
+		this.partitionMap = partitionMap;
+		this.clusterClient = clusterClient;
+		this.transferAdmission = transferAdmission;
 	}
 
 	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
 	public ResponseEntity<Object> createAccount(@RequestBody @Valid Account account) {
 		log.info("Creating account {}", account);
+		if (!this.partitionMap.isLocal(account.getAccountId())) {
+			return forward(account.getAccountId(), HttpMethod.POST, "/v1/accounts", account);
+		}
 
 		try {
 			this.accountsService.createAccount(account);
 		} catch (DuplicateAccountIdException daie) {
 			return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (InvalidAccountIdException iaie) {
+			return new ResponseEntity<>(iaie.getMessage(), HttpStatus.BAD_REQUEST);
 		}
 
 		return new ResponseEntity<>(HttpStatus.CREATED);
 	}
 
+	// The body is streamed; lines that fail are reported in the result and do not stop the import.
+	@PostMapping(path = "/import", consumes = { NDJSON_VALUE, CSV_VALUE })
+	public ResponseEntity<Object> importAccounts(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+			InputStream body) throws IOException {
+		AccountImporter.Format format = MediaType.parseMediaType(contentType)
+				.isCompatibleWith(MediaType.parseMediaType(CSV_VALUE)) ? AccountImporter.Format.CSV
+						: AccountImporter.Format.NDJSON;
+		return new ResponseEntity<>(this.accountImporter.importAccounts(body, format), HttpStatus.OK);
+	}
+
+	@GetMapping
+	public ResponseEntity<Object> listAccounts(@RequestParam(value = "cursor", required = false) String cursor,
+			@RequestParam(value = "limit", defaultValue = "100") int limit) {
+		try {
+			return new ResponseEntity<>(this.accountExporter.listAccounts(cursor, limit), HttpStatus.OK);
+		} catch (InvalidCursorException ice) {
+			return new ResponseEntity<>(ice.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	// Written straight to the response as the store is walked; no Content-Length, so it goes out chunked.
+	// The path is one of Account.RESERVED_IDS, so no account can be hidden behind it.
+	@GetMapping(path = "/export", produces = NDJSON_VALUE)
+	public void exportAccounts(HttpServletResponse response) throws IOException {
+		log.info("Exporting accounts");
+		response.setContentType(NDJSON_VALUE);
+		response.setCharacterEncoding("UTF-8");
+		this.accountExporter.exportAccounts(response.getOutputStream());
+	}
+
+	// Answered from one read of the balance, not from the live account
 	@GetMapping(path = "/{accountId}")
-	public Account getAccount(@PathVariable String accountId) {
+	public ResponseEntity<Object> getAccount(@PathVariable String accountId) {
 		log.info("Retrieving account for id {}", accountId);
-		return this.accountsService.getAccount(accountId);
+		if (!this.partitionMap.isLocal(accountId)) {
+			return forward(accountId, HttpMethod.GET, "/v1/accounts/" + ClusterClient.encode(accountId), null);
+		}
+		return new ResponseEntity<>(this.accountsService.getBalance(accountId), HttpStatus.OK);
+	}
+
+	// The balances of all the given accounts as of one moment; the path is one of Account.RESERVED_IDS
+	@GetMapping(path = "/balances")
+	public ResponseEntity<Object> getBalances(@RequestParam("ids") List<String> accountIds) {
+		try {
+			return new ResponseEntity<>(this.accountsService.getBalances(accountIds), HttpStatus.OK);
+		} catch (InvalidBatchException ibe) {
+			return new ResponseEntity<>(ibe.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (InvalidAccountIdException iaie) {
+			return new ResponseEntity<>(iaie.getMessage(), HttpStatus.NOT_FOUND);
+		} catch (LockTimeoutException lte) {
+			return new ResponseEntity<>(lte.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+		}
+	}
+
+	@GetMapping(path = "/{accountId}/transactions")
+	public ResponseEntity<Object> getTransactions(@PathVariable String accountId,
+			@RequestParam(value = "limit", defaultValue = "100") int limit) {
+		if (!this.partitionMap.isLocal(accountId)) {
+			return forward(accountId, HttpMethod.GET,
+					"/v1/accounts/" + ClusterClient.encode(accountId) + "/transactions?limit=" + limit, null);
+		}
+		try {
+			return new ResponseEntity<>(this.accountsService.getTransactions(accountId, limit), HttpStatus.OK);
+		} catch (InvalidAccountIdException iaie) {
+			return new ResponseEntity<>(iaie.getMessage(), HttpStatus.NOT_FOUND);
+		}
 	}
 
 	@PostMapping(path = "/transferMoney", consumes = MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<Object> transferMoney(@RequestBody @Valid BalanceTransferRequest balanceTransferRequest) {
-		log.info("Balance transfer request {}", balanceTransferRequest);
+	public ResponseEntity<Object> transferMoney(@RequestBody @Valid BalanceTransferRequest balanceTransferRequest,
+			@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+			@RequestHeader(value = CLIENT_ID_HEADER, required = false) String clientId,
+			HttpServletRequest servletRequest) {
+		long start = System.nanoTime();
+		String client = clientOf(clientId, servletRequest);
+		if (this.accountsService.getRequestLogSampler().shouldLog(balanceTransferRequest)) {
+			log.info("Balance transfer request {}", balanceTransferRequest);
+		}
+		if (idempotencyKey != null) {
+			balanceTransferRequest.setIdempotencyKey(idempotencyKey);
+		}
+		boolean admitted = false;
 		try {
-			this.accountsService.transferMoney(balanceTransferRequest);
+			// Run by the node owning the debited account, which also keeps its idempotency keys and rate limits
+			if (!this.partitionMap.isLocal(balanceTransferRequest.getAccountFromId())) {
+				return forward(balanceTransferRequest.getAccountFromId(), HttpMethod.POST, "/v1/accounts/transferMoney",
+						balanceTransferRequest, client);
+			}
+			this.transferAdmission.admit(balanceTransferRequest.getAccountFromId(), client);
+			admitted = true;
+			this.accountsService.transferMoney(balanceTransferRequest, client);
+		} catch (TransferRejectedException tre) {
+			return tooManyRequests(tre);
+		} catch (IdempotencyKeyReusedException ikre) {
+			return new ResponseEntity<>(ikre.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
 		} catch (InvalidAccountIdException iaie) {
 			return new ResponseEntity<>(iaie.getMessage(), HttpStatus.BAD_REQUEST);
 		} catch (InsufficientAmountException iae) {
 			return new ResponseEntity<>(iae.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (ArithmeticException ae) {
+			// The balance would leave the range a long holds at its scale
+			return new ResponseEntity<>(ae.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (LockTimeoutException lte) {
+			return new ResponseEntity<>(lte.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+		} catch (PartitionUnavailableException pue) {
+			return new ResponseEntity<>(pue.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+		} finally {
+			long elapsed = System.nanoTime() - start;
+			this.accountsService.getTransferMetrics().record(TransferMetrics.Stage.END_TO_END, elapsed);
+			if (admitted) {
+				this.transferAdmission.complete(elapsed);
+			}
 		}
 
 		return new ResponseEntity<>(HttpStatus.ACCEPTED);
 	}
 
+	@PostMapping(path = "/transfers:batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> transferBatch(@RequestBody @Valid BatchTransferRequest batchTransferRequest,
+			@RequestHeader(value = CLIENT_ID_HEADER, required = false) String clientId,
+			HttpServletRequest servletRequest) {
+		long start = System.nanoTime();
+		log.info("Batch transfer request with {} transfers", batchTransferRequest.getTransfers().size());
+		List<TransferResult> results;
+		boolean admitted = false;
+		try {
+			this.transferAdmission.admitBatch(batchTransferRequest.getTransfers().stream()
+					.map(BalanceTransferRequest::getAccountFromId).collect(Collectors.toList()),
+					clientOf(clientId, servletRequest));
+			admitted = true;
+			results = this.accountsService.transferBatch(batchTransferRequest);
+		} catch (TransferRejectedException tre) {
+			return tooManyRequests(tre);
+		} catch (InvalidBatchException ibe) {
+			return new ResponseEntity<>(ibe.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (ArithmeticException ae) {
+			return new ResponseEntity<>(ae.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (LockTimeoutException lte) {
+			return new ResponseEntity<>(lte.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+		} finally {
+			if (admitted) {
+				this.transferAdmission.complete(System.nanoTime() - start);
+			}
+		}
+		if (batchTransferRequest.getMode() == BatchTransferRequest.Mode.ATOMIC
+				&& results.stream().anyMatch(result -> result.getStatus() != TransferResult.Status.APPLIED)) {
+			return new ResponseEntity<>(results, HttpStatus.BAD_REQUEST);
+		}
+		return new ResponseEntity<>(results, HttpStatus.ACCEPTED);
+	}
+
+	private static ResponseEntity<Object> tooManyRequests(TransferRejectedException tre) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.RETRY_AFTER, Long.toString(tre.getRetryAfterSeconds()));
+		return new ResponseEntity<>(tre.getMessage(), headers, HttpStatus.TOO_MANY_REQUESTS);
+	}
+
+	// Requests for an account owned by another node are answered by that node, relayed as they are
+	private ResponseEntity<Object> forward(String accountId, HttpMethod method, String path, Object body) {
+		return forward(accountId, method, path, body, null);
+	}
+
+	private ResponseEntity<Object> forward(String accountId, HttpMethod method, String path, Object body,
+			String clientId) {
+		try {
+			return this.clusterClient.forward(this.partitionMap.ownerOf(accountId), method, path, body, clientId);
+		} catch (PartitionUnavailableException pue) {
+			return new ResponseEntity<>(pue.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+		}
+	}
+
+	// Rate limits apply per authenticated user, else per remote address. The client header is only
+	// trusted from a peer, which forwards the identity it worked out itself.
+	private String clientOf(String clientId, HttpServletRequest servletRequest) {
+		if (clientId != null && !clientId.isEmpty()
+				&& this.clusterClient.isPeer(servletRequest.getHeader(ClusterClient.SECRET_HEADER))) {
+			return clientId;
+		}
+		Principal principal = servletRequest.getUserPrincipal();
+		return principal != null ? principal.getName() : servletRequest.getRemoteAddr();
+	}
 }
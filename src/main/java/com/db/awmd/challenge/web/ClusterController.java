@@ -0,0 +1,93 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.ClusterStatus;
+import com.db.awmd.challenge.domain.CrossPartitionCredit;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.service.ClusterClient;
+import com.db.awmd.challenge.service.CrossPartitionTransfers;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Node-to-node side of cross-partition transfers, called by the node that
+ * debited the money; see {@link CrossPartitionTransfers}. Only registered when
+ * the accounts are partitioned, and the transfer steps answer 403 to callers
+ * not presenting the cluster secret.
+ */
+@RestController
+@RequestMapping("/v1/cluster")
+@Slf4j
+@ConditionalOnExpression("!'${accounts.cluster.nodes:}'.trim().isEmpty()")
+public class ClusterController {
+
+	private final CrossPartitionTransfers crossPartitionTransfers;
+
+	private final ClusterClient clusterClient;
+
+	@Autowired
+	public ClusterController(CrossPartitionTransfers crossPartitionTransfers, ClusterClient clusterClient) {
+		if (!clusterClient.hasSecret()) {
+			throw new IllegalStateException("accounts.cluster.secret must be set when accounts.cluster.nodes is");
+		}
+		this.crossPartitionTransfers = crossPartitionTransfers;
+		this.clusterClient = clusterClient;
+	}
+
+	@GetMapping
+	public ClusterStatus getStatus() {
+		return this.crossPartitionTransfers.getStatus();
+	}
+
+	@PostMapping(path = "/transfers/prepare", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> prepare(@RequestBody CrossPartitionCredit credit,
+			@RequestHeader(name = ClusterClient.SECRET_HEADER, required = false) String secret) {
+		if (!this.clusterClient.isPeer(secret)) {
+			return notAPeer();
+		}
+		try {
+			this.crossPartitionTransfers.prepare(credit);
+		} catch (InvalidAccountIdException iaie) {
+			return new ResponseEntity<>(iaie.getMessage(), HttpStatus.NOT_FOUND);
+		} catch (InsufficientAmountException iae) {
+			return new ResponseEntity<>(iae.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+
+	@PostMapping(path = "/transfers/{transferId}/commit")
+	public ResponseEntity<Object> commit(@PathVariable String transferId,
+			@RequestHeader(name = ClusterClient.SECRET_HEADER, required = false) String secret) {
+		if (!this.clusterClient.isPeer(secret)) {
+			return notAPeer();
+		}
+		this.crossPartitionTransfers.commit(transferId);
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+
+	@PostMapping(path = "/transfers/{transferId}/abort")
+	public ResponseEntity<Object> abort(@PathVariable String transferId,
+			@RequestHeader(name = ClusterClient.SECRET_HEADER, required = false) String secret) {
+		if (!this.clusterClient.isPeer(secret)) {
+			return notAPeer();
+		}
+		log.info("Aborting cross-partition transfer {}", transferId);
+		this.crossPartitionTransfers.abort(transferId);
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+
+	private static ResponseEntity<Object> notAPeer() {
+		return new ResponseEntity<>("Only nodes of the cluster may call this.", HttpStatus.FORBIDDEN);
+	}
+}
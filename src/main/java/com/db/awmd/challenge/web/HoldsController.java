@@ -0,0 +1,97 @@
+package com.db.awmd.challenge.web;
+
+import javax.validation.Valid;
+
+import com.db.awmd.challenge.domain.HoldCaptureRequest;
+import com.db.awmd.challenge.domain.HoldRequest;
+import com.db.awmd.challenge.exception.HoldNotFoundException;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.InvalidHoldException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.service.HoldsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Places holds on an account's funds and settles them; see
+ * {@link HoldsService}. Holds live on the node that placed them.
+ */
+@RestController
+@RequestMapping("/v1/holds")
+@Slf4j
+public class HoldsController {
+
+	private final HoldsService holdsService;
+
+	@Autowired
+	public HoldsController(HoldsService holdsService) {
+		this.holdsService = holdsService;
+	}
+
+	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> placeHold(@RequestBody @Valid HoldRequest holdRequest) {
+		try {
+			return new ResponseEntity<>(this.holdsService.placeHold(holdRequest), HttpStatus.CREATED);
+		} catch (InvalidHoldException ihe) {
+			return new ResponseEntity<>(ihe.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (InvalidAccountIdException iaie) {
+			return new ResponseEntity<>(iaie.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (InsufficientAmountException iae) {
+			return new ResponseEntity<>(iae.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (LockTimeoutException lte) {
+			return new ResponseEntity<>(lte.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+		}
+	}
+
+	@GetMapping(path = "/{holdId}")
+	public ResponseEntity<Object> getHold(@PathVariable String holdId) {
+		try {
+			return new ResponseEntity<>(this.holdsService.getHold(holdId), HttpStatus.OK);
+		} catch (HoldNotFoundException hnfe) {
+			return new ResponseEntity<>(hnfe.getMessage(), HttpStatus.NOT_FOUND);
+		}
+	}
+
+	@PostMapping(path = "/{holdId}/capture", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> capture(@PathVariable String holdId,
+			@RequestBody @Valid HoldCaptureRequest captureRequest) {
+		log.info("Capturing hold {} to {}", holdId, captureRequest.getAccountToId());
+		try {
+			this.holdsService.capture(holdId, captureRequest);
+		} catch (HoldNotFoundException hnfe) {
+			return new ResponseEntity<>(hnfe.getMessage(), HttpStatus.NOT_FOUND);
+		} catch (InvalidHoldException ihe) {
+			return new ResponseEntity<>(ihe.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (InvalidAccountIdException iaie) {
+			return new ResponseEntity<>(iaie.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (ArithmeticException ae) {
+			// The payee's balance would leave the range a long holds at its scale
+			return new ResponseEntity<>(ae.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (LockTimeoutException lte) {
+			return new ResponseEntity<>(lte.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		return new ResponseEntity<>(HttpStatus.ACCEPTED);
+	}
+
+	@PostMapping(path = "/{holdId}/release")
+	public ResponseEntity<Object> release(@PathVariable String holdId) {
+		try {
+			this.holdsService.release(holdId);
+		} catch (HoldNotFoundException hnfe) {
+			return new ResponseEntity<>(hnfe.getMessage(), HttpStatus.NOT_FOUND);
+		} catch (LockTimeoutException lte) {
+			return new ResponseEntity<>(lte.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+}
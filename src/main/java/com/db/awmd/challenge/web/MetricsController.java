@@ -0,0 +1,76 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.AdmissionMetrics;
+import com.db.awmd.challenge.domain.LockStripeMetrics;
+import com.db.awmd.challenge.domain.NotificationMetrics;
+import com.db.awmd.challenge.domain.OptimisticTransferMetrics;
+import com.db.awmd.challenge.domain.TransferMetricsReport;
+import com.db.awmd.challenge.service.AccountLockManager;
+import com.db.awmd.challenge.service.NotificationDispatcher;
+import com.db.awmd.challenge.service.OptimisticTransferEngine;
+import com.db.awmd.challenge.service.TransferAdmission;
+import com.db.awmd.challenge.service.TransferMetrics;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/v1/metrics")
+public class MetricsController {
+
+	private final NotificationDispatcher notificationDispatcher;
+
+	private final AccountLockManager lockManager;
+
+	private final Optional<OptimisticTransferEngine> optimisticEngine;
+
+	private final TransferMetrics transferMetrics;
+
+	private final TransferAdmission transferAdmission;
+
+	@Autowired
+	public MetricsController(NotificationDispatcher notificationDispatcher, AccountLockManager lockManager,
+			Optional<OptimisticTransferEngine> optimisticEngine, TransferMetrics transferMetrics,
+			TransferAdmission transferAdmission) {
+		this.notificationDispatcher = notificationDispatcher;
+		this.lockManager = lockManager;
+		this.optimisticEngine = optimisticEngine;
+		this.transferMetrics = transferMetrics;
+		this.transferAdmission = transferAdmission;
+	}
+
+	// Latencies cover the last complete interval, counters run since startup
+	@GetMapping(path = "/transfers")
+	public TransferMetricsReport getTransferMetrics() {
+		return this.transferMetrics.getReport();
+	}
+
+	// Counters run since startup; the shortest sojourn is the last complete interval's
+	@GetMapping(path = "/admission")
+	public AdmissionMetrics getAdmissionMetrics() {
+		return this.transferAdmission.getMetrics();
+	}
+
+	@GetMapping(path = "/notifications")
+	public NotificationMetrics getNotificationMetrics() {
+		return this.notificationDispatcher.getMetrics();
+	}
+
+	// Only stripes that have been used are listed
+	@GetMapping(path = "/locks")
+	public List<LockStripeMetrics> getLockMetrics() {
+		return this.lockManager.getMetrics();
+	}
+
+	// Only available when the optimistic transfer engine is configured
+	@GetMapping(path = "/optimistic")
+	public ResponseEntity<OptimisticTransferMetrics> getOptimisticMetrics() {
+		return this.optimisticEngine.map(engine -> new ResponseEntity<>(engine.getMetrics(), HttpStatus.OK))
+				.orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+	}
+}
@@ -0,0 +1,65 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.service.ReplicationService;
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Keeps a follower read-only until it is promoted: anything but a GET, or a
+ * call to {@link ReplicationController}, is answered 503. Account reads are
+ * answered 503 as well once the follower is more than
+ * {@code max-staleness-ms} behind its leader, and carry the staleness in
+ * {@link #STALENESS_HEADER} otherwise.
+ */
+@Component
+@ConditionalOnProperty(name = "accounts.replication.role", havingValue = "FOLLOWER")
+public class ReplicaFilter extends OncePerRequestFilter {
+
+	public static final String STALENESS_HEADER = "X-Replica-Staleness-Ms";
+
+	private final ReplicationService replicationService;
+
+	@Autowired
+	public ReplicaFilter(ReplicationService replicationService) {
+		this.replicationService = replicationService;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		if (!this.replicationService.isFollowing() || path.startsWith("/v1/replication")) {
+			chain.doFilter(request, response);
+			return;
+		}
+		if (!"GET".equals(request.getMethod())) {
+			refuse(response, "This node is a read-only replica.");
+			return;
+		}
+		if (path.startsWith("/v1/accounts")) {
+			long staleness = this.replicationService.getStalenessMillis();
+			if (staleness < 0 || staleness > this.replicationService.getMaxStalenessMillis()) {
+				refuse(response, staleness < 0 ? "Replica is copying the accounts from its leader."
+						: "Replica is " + staleness + " ms behind its leader.");
+				return;
+			}
+			response.setHeader(STALENESS_HEADER, String.valueOf(staleness));
+		}
+		chain.doFilter(request, response);
+	}
+
+	private static void refuse(HttpServletResponse response, String message) throws IOException {
+		response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+		response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+		response.getWriter().write(message);
+	}
+}
@@ -0,0 +1,42 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.ReplicationStatus;
+import com.db.awmd.challenge.service.ReplicationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/v1/replication")
+public class ReplicationController {
+
+	private final ReplicationService replicationService;
+
+	@Autowired
+	public ReplicationController(ReplicationService replicationService) {
+		this.replicationService = replicationService;
+	}
+
+	@GetMapping
+	public ReplicationStatus getStatus() {
+		return this.replicationService.getStatus();
+	}
+
+	// Fails over to this follower; the old leader must be stopped first, or its later writes are lost here
+	@PostMapping(path = "/promote")
+	public ResponseEntity<Object> promote(
+			@RequestHeader(name = ReplicationService.SECRET_HEADER, required = false) String secret) {
+		if (!this.replicationService.isPeer(secret)) {
+			return new ResponseEntity<>("Promoting takes the replication secret.", HttpStatus.FORBIDDEN);
+		}
+		if (!this.replicationService.promote()) {
+			return new ResponseEntity<>("Not following a leader.", HttpStatus.CONFLICT);
+		}
+		return new ResponseEntity<>(this.replicationService.getStatus(), HttpStatus.OK);
+	}
+}
@@ -0,0 +1,69 @@
+package com.db.awmd.challenge.web;
+
+import javax.validation.Valid;
+
+import com.db.awmd.challenge.domain.ScheduledTransferRequest;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.ScheduledTransferNotFoundException;
+import com.db.awmd.challenge.service.TransferScheduler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Future-dated transfers and standing orders; see {@link TransferScheduler}.
+ * A one-off transfer is forgotten once it has run.
+ */
+@RestController
+@RequestMapping("/v1/transfers/scheduled")
+@Slf4j
+public class ScheduledTransfersController {
+
+	private final TransferScheduler transferScheduler;
+
+	@Autowired
+	public ScheduledTransfersController(TransferScheduler transferScheduler) {
+		this.transferScheduler = transferScheduler;
+	}
+
+	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> schedule(@RequestBody @Valid ScheduledTransferRequest request) {
+		log.info("Scheduling transfer {}", request);
+		try {
+			return new ResponseEntity<>(this.transferScheduler.schedule(request), HttpStatus.CREATED);
+		} catch (InvalidAccountIdException iaie) {
+			return new ResponseEntity<>(iaie.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (InsufficientAmountException iae) {
+			return new ResponseEntity<>(iae.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	@GetMapping(path = "/{scheduleId}")
+	public ResponseEntity<Object> getScheduledTransfer(@PathVariable String scheduleId) {
+		try {
+			return new ResponseEntity<>(this.transferScheduler.getScheduledTransfer(scheduleId), HttpStatus.OK);
+		} catch (ScheduledTransferNotFoundException stnfe) {
+			return new ResponseEntity<>(stnfe.getMessage(), HttpStatus.NOT_FOUND);
+		}
+	}
+
+	@DeleteMapping(path = "/{scheduleId}")
+	public ResponseEntity<Object> cancel(@PathVariable String scheduleId) {
+		try {
+			this.transferScheduler.cancel(scheduleId);
+		} catch (ScheduledTransferNotFoundException stnfe) {
+			return new ResponseEntity<>(stnfe.getMessage(), HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+}
@@ -0,0 +1,78 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportResult;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountImporter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AccountImporterTest {
+
+	private AccountsRepositoryInMemory repository;
+
+	private AccountImporter importer;
+
+	@Before
+	public void createImporter() {
+		this.repository = new AccountsRepositoryInMemory();
+		// Small batches so a few lines already span several workers
+		this.importer = new AccountImporter(this.repository, new ObjectMapper(), 2, 3, 2);
+	}
+
+	@After
+	public void shutdown() {
+		this.importer.shutdown();
+	}
+
+	@Test
+	public void ndjsonReportsFailedLinesAndImportsTheRest() throws Exception {
+		this.repository.createAccount(new Account("Id-1", 0, 0));
+		String body = "{\"accountId\":\"Id-0\",\"balance\":10}\n"
+				+ "{\"accountId\":\"Id-1\",\"balance\":20}\n"
+				+ "\n"
+				+ "{\"accountId\":\"Id-2\",\"balance\":-1}\n"
+				+ "{not json\n"
+				+ "{\"accountId\":\"Id-3\",\"balance\":30.25}\n";
+
+		AccountImportResult result = this.importer.importAccounts(stream(body), AccountImporter.Format.NDJSON);
+
+		assertThat(result.getCreated()).isEqualTo(2);
+		assertThat(result.getFailed()).isEqualTo(3);
+		assertThat(result.isErrorsTruncated()).isTrue();
+		assertThat(result.getErrors()).hasSize(2);
+		assertThat(result.getErrors().get(0).getLine()).isEqualTo(2);
+		assertThat(result.getErrors().get(0).getMessage()).isEqualTo("Account id Id-1 already exists!");
+		assertThat(result.getErrors().get(1).getLine()).isEqualTo(4);
+		assertThat(this.repository.getAccount("Id-3").getBalance()).isEqualByComparingTo("30.25");
+	}
+
+	@Test
+	public void csvSkipsTheHeader() throws Exception {
+		StringBuilder body = new StringBuilder("accountId,balance\n");
+		for (int i = 0; i < 100; i++) {
+			body.append("\"Id-").append(i).append("\",").append(i).append('\n');
+		}
+		body.append("Id-bad,ten\n");
+
+		AccountImportResult result = this.importer.importAccounts(stream(body.toString()), AccountImporter.Format.CSV);
+
+		assertThat(result.getCreated()).isEqualTo(100);
+		assertThat(result.getErrors()).hasSize(1);
+		assertThat(result.getErrors().get(0).getLine()).isEqualTo(102);
+		assertThat(result.isErrorsTruncated()).isFalse();
+		assertThat(this.repository.getAccount("Id-99").getBalance()).isEqualByComparingTo("99");
+	}
+
+	private static ByteArrayInputStream stream(String body) {
+		return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+	}
+}
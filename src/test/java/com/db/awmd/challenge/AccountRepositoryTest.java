@@ -4,6 +4,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -13,6 +15,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountPage;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.InsufficientAmountException;
 import com.db.awmd.challenge.repository.AccountsRepository;
@@ -39,6 +42,14 @@ public class AccountRepositoryTest {
 		assertThat(this.accountsRepository.getAccount("Id-123")).isEqualTo(account);
 	}
 
+	@Test
+	public void newAccountStartsAtZero() throws Exception {
+		Account account = new Account("Id-123");
+		this.accountsRepository.createAccount(account);
+
+		assertThat(this.accountsRepository.getAccount("Id-123").getBalance()).isEqualByComparingTo("0");
+	}
+
 	@Test
 	public void addAccount_failsOnDuplicateId() throws Exception {
 		String uniqueId = "Id-" + System.currentTimeMillis();
@@ -54,6 +65,27 @@ public class AccountRepositoryTest {
 
 	}
 
+	@Test
+	public void listAccountsPagesThroughEveryAccountOnce() throws Exception {
+		for (int i = 0; i < 25; i++) {
+			this.accountsRepository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+		}
+
+		List<String> listed = new ArrayList<>();
+		String cursor = null;
+		do {
+			AccountPage page = this.accountsRepository.listAccounts(cursor, 10);
+			assertThat(page.getAccounts().size()).isLessThanOrEqualTo(10);
+			page.getAccounts().forEach(account -> listed.add(account.getAccountId()));
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+
+		assertThat(listed).hasSize(25).doesNotHaveDuplicates().contains("Id-0", "Id-24");
+		List<String> walked = new ArrayList<>();
+		this.accountsRepository.forEachAccount(account -> walked.add(account.getAccountId()));
+		assertThat(walked).containsOnlyElementsOf(listed).hasSize(25);
+	}
+
 	@Test
 	public void creditAccount() throws Exception {
 		Account account = new Account("Id-123");
@@ -84,4 +116,26 @@ public class AccountRepositoryTest {
 			assertThat(ex.getMessage()).isEqualTo(account.getAccountId() + " account does not have sufficent balance.");
 		}
 	}
+
+	@Test
+	public void debitWithAmountBeyondDoublePrecision() throws Exception {
+		Account account = new Account("Id-123");
+		account.setBalance(new BigDecimal("9007199254740992"));
+		this.accountsRepository.createAccount(account);
+		try {
+			this.accountsRepository.debitAccount(account, new BigDecimal("9007199254740993"));
+			fail("Should have failed when debiting more than the balance");
+		} catch (InsufficientAmountException ex) {
+			assertThat(account.getBalance()).isEqualTo(new BigDecimal("9007199254740992"));
+		}
+	}
+
+	@Test
+	public void creditKeepsLargestScale() throws Exception {
+		Account account = new Account("Id-123");
+		account.setBalance(new BigDecimal(1000));
+		this.accountsRepository.createAccount(account);
+		assertThat(this.accountsRepository.creditAccount(account, new BigDecimal("0.05")).getBalance())
+				.isEqualTo(new BigDecimal("1000.05"));
+	}
 }
@@ -4,6 +4,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -23,7 +24,8 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.web.context.WebApplicationContext;
 
 @RunWith(SpringRunner.class)
-@SpringBootTest
+// Metrics intervals are rolled over by the tests themselves
+@SpringBootTest(properties = "accounts.metrics.interval-seconds=0")
 @WebAppConfiguration
 public class AccountsControllerTest {
 
@@ -41,6 +43,7 @@ public class AccountsControllerTest {
 
 		// Reset the existing accounts before each test.
 		accountsService.getAccountsRepository().clearAccounts();
+		accountsService.getTransactionHistory().clear();
 	}
 
 	@Test
@@ -68,6 +71,23 @@ public class AccountsControllerTest {
 				.andExpect(status().isBadRequest());
 	}
 
+	@Test
+	public void createAccountReservedId() throws Exception {
+		this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountId\":\"export\",\"balance\":1000}")).andExpect(status().isBadRequest());
+		this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountId\":\"balances\",\"balance\":1000}")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void clusterEndpointsOnlyExistWhenPartitioned() throws Exception {
+		this.mockMvc.perform(post("/v1/cluster/transfers/prepare").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"transferId\":\"t-1\",\"accountFromId\":\"Id-x\",\"accountToId\":\"Id-123\","
+						+ "\"amount\":1000000}"))
+				.andExpect(status().isNotFound());
+		this.mockMvc.perform(post("/v1/cluster/transfers/t-1/commit")).andExpect(status().isNotFound());
+	}
+
 	@Test
 	public void createAccountNoBalance() throws Exception {
 		this.mockMvc.perform(
@@ -218,4 +238,202 @@ public class AccountsControllerTest {
 				.andExpect(status().isBadRequest());
 
 	}
+
+	@Test
+	public void transferMoneyWithTooManyDecimalPlaces() throws Exception {
+		this.accountsService.createAccount(new Account("Id-101", new BigDecimal("500")));
+		this.accountsService.createAccount(new Account("Id-102", new BigDecimal("300")));
+		this.mockMvc
+				.perform(post("/v1/accounts/transferMoney").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-102\",\"amount\":0.000000000000000001}"))
+				.andExpect(status().isBadRequest());
+		this.mockMvc
+				.perform(post("/v1/accounts/transferMoney").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-102\",\"amount\":0.0000000000000000001}"))
+				.andExpect(status().isBadRequest());
+		assertThat(accountsService.getAccount("Id-101").getBalance()).isEqualByComparingTo("500");
+		assertThat(accountsService.getAccount("Id-101").getBalanceScale()).isZero();
+	}
+
+	@Test
+	public void transferMoneyBeyondTheRangeOfTheBalance() throws Exception {
+		this.accountsService.createAccount(new Account("Id-101", new BigDecimal("10000000000000")));
+		this.accountsService.createAccount(new Account("Id-102", new BigDecimal("300")));
+		this.mockMvc
+				.perform(post("/v1/accounts/transferMoney").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-102\",\"amount\":0.000001}"))
+				.andExpect(status().isBadRequest());
+		this.mockMvc
+				.perform(post("/v1/accounts/transfers:batch").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"mode\":\"ATOMIC\",\"transfers\":["
+								+ "{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-102\",\"amount\":0.000001}]}"))
+				.andExpect(status().isBadRequest());
+		assertThat(accountsService.getAccount("Id-101").getBalance()).isEqualByComparingTo("10000000000000");
+		assertThat(accountsService.getAccount("Id-102").getBalance()).isEqualByComparingTo("300");
+	}
+
+	@Test
+	public void transferBatchAtomic() throws Exception {
+		this.accountsService.createAccount(new Account("Id-101", new BigDecimal("500")));
+		this.accountsService.createAccount(new Account("Id-102", new BigDecimal("300")));
+		this.accountsService.createAccount(new Account("Id-103", new BigDecimal("0")));
+		this.mockMvc
+				.perform(post("/v1/accounts/transfers:batch").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"mode\":\"ATOMIC\",\"transfers\":["
+								+ "{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-103\",\"amount\":200},"
+								+ "{\"accountFromId\":\"Id-103\",\"accountToId\":\"Id-102\",\"amount\":150.50}]}"))
+				.andExpect(status().isAccepted());
+		assertThat(accountsService.getAccount("Id-101").getBalance()).isEqualByComparingTo("300");
+		assertThat(accountsService.getAccount("Id-102").getBalance()).isEqualByComparingTo("450.50");
+		assertThat(accountsService.getAccount("Id-103").getBalance()).isEqualByComparingTo("49.50");
+	}
+
+	@Test
+	public void transferBatchAtomicRollsBackOnFailure() throws Exception {
+		this.accountsService.createAccount(new Account("Id-101", new BigDecimal("500")));
+		this.accountsService.createAccount(new Account("Id-102", new BigDecimal("300")));
+		this.mockMvc
+				.perform(post("/v1/accounts/transfers:batch").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"mode\":\"ATOMIC\",\"transfers\":["
+								+ "{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-102\",\"amount\":200},"
+								+ "{\"accountFromId\":\"Id-102\",\"accountToId\":\"Id-101\",\"amount\":900}]}"))
+				.andExpect(status().isBadRequest())
+				.andExpect(content().json("[{\"index\":0,\"status\":\"ROLLED_BACK\"},"
+						+ "{\"index\":1,\"status\":\"FAILED\",\"message\":\"Id-102 account does not have sufficent balance.\"}]"));
+		assertThat(accountsService.getAccount("Id-101").getBalance()).isEqualByComparingTo("500");
+		assertThat(accountsService.getAccount("Id-102").getBalance()).isEqualByComparingTo("300");
+		this.mockMvc.perform(get("/v1/accounts/Id-101/transactions")).andExpect(jsonPath("$.length()").value(0));
+		this.mockMvc.perform(get("/v1/accounts/Id-102/transactions")).andExpect(jsonPath("$.length()").value(0));
+	}
+
+	@Test
+	public void transferBatchBestEffort() throws Exception {
+		this.accountsService.createAccount(new Account("Id-101", new BigDecimal("500")));
+		this.accountsService.createAccount(new Account("Id-102", new BigDecimal("300")));
+		this.mockMvc
+				.perform(post("/v1/accounts/transfers:batch").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"mode\":\"BEST_EFFORT\",\"transfers\":["
+								+ "{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-102\",\"amount\":200},"
+								+ "{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-109\",\"amount\":10}]}"))
+				.andExpect(status().isAccepted())
+				.andExpect(content().json("[{\"index\":0,\"status\":\"APPLIED\"},"
+						+ "{\"index\":1,\"status\":\"FAILED\",\"message\":\"Id-109 account does not exists!\"}]"));
+		assertThat(accountsService.getAccount("Id-101").getBalance()).isEqualByComparingTo("300");
+		assertThat(accountsService.getAccount("Id-102").getBalance()).isEqualByComparingTo("500");
+	}
+
+	@Test
+	public void transferMoneyRetryWithIdempotencyKey() throws Exception {
+		this.accountsService.createAccount(new Account("Id-101", new BigDecimal("500")));
+		this.accountsService.createAccount(new Account("Id-102", new BigDecimal("300")));
+		String key = "key-" + System.nanoTime();
+		for (int i = 0; i < 3; i++) {
+			this.mockMvc
+					.perform(post("/v1/accounts/transferMoney").contentType(MediaType.APPLICATION_JSON)
+							.header("Idempotency-Key", key)
+							.content("{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-102\",\"amount\":300}"))
+					.andExpect(status().isAccepted());
+		}
+		assertThat(accountsService.getAccount("Id-101").getBalance()).isEqualByComparingTo("200");
+		assertThat(accountsService.getAccount("Id-102").getBalance()).isEqualByComparingTo("600");
+
+		this.mockMvc
+				.perform(post("/v1/accounts/transferMoney").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-102\",\"amount\":10,"
+								+ "\"idempotencyKey\":\"" + key + "\"}"))
+				.andExpect(status().isUnprocessableEntity());
+	}
+
+	@Test
+	public void idempotencyKeysAreScopedToTheClient() throws Exception {
+		this.accountsService.createAccount(new Account("Id-101", new BigDecimal("500")));
+		this.accountsService.createAccount(new Account("Id-102", new BigDecimal("300")));
+		String key = "key-" + System.nanoTime();
+		for (String client : new String[] { "10.0.1.1", "10.0.1.2" }) {
+			this.mockMvc
+					.perform(post("/v1/accounts/transferMoney").contentType(MediaType.APPLICATION_JSON)
+							.header("Idempotency-Key", key).with(request -> {
+								request.setRemoteAddr(client);
+								return request;
+							}).content("{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-102\",\"amount\":100}"))
+					.andExpect(status().isAccepted());
+		}
+		assertThat(accountsService.getAccount("Id-101").getBalance()).isEqualByComparingTo("300");
+		assertThat(accountsService.getAccount("Id-102").getBalance()).isEqualByComparingTo("500");
+	}
+
+	@Test
+	public void importAccountsFromCsv() throws Exception {
+		this.mockMvc.perform(post("/v1/accounts/import").contentType("text/csv")
+				.content("accountId,balance\nId-1,100\nId-2,-5\nId-1,7\n")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.created").value(1)).andExpect(jsonPath("$.failed").value(2))
+				.andExpect(jsonPath("$.errors[0].line").value(3)).andExpect(jsonPath("$.errors[1].accountId").value("Id-1"));
+
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("100");
+	}
+
+	@Test
+	public void listAndExportAccounts() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			accountsService.createAccount(new Account("Id-" + i, new BigDecimal("10.50")));
+		}
+
+		this.mockMvc.perform(get("/v1/accounts?limit=2")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.accounts.length()").value(2)).andExpect(jsonPath("$.nextCursor").isNotEmpty());
+		String export = this.mockMvc.perform(get("/v1/accounts/export")).andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith("application/x-ndjson")).andReturn().getResponse()
+				.getContentAsString();
+		assertThat(export.split("\n")).hasSize(3).contains("{\"accountId\":\"Id-1\",\"balance\":10.50}");
+	}
+
+	@Test
+	public void transactionHistoryOfAnAccount() throws Exception {
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal("0")));
+		accountsService.transferMoney(new BalanceTransferRequest("Id-1", "Id-2", new BigDecimal("30")));
+
+		this.mockMvc.perform(get("/v1/accounts/Id-2/transactions")).andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].type").value("CREDIT")).andExpect(jsonPath("$[0].counterpartyId").value("Id-1"))
+				.andExpect(jsonPath("$[0].balance").value(30));
+		this.mockMvc.perform(get("/v1/accounts/Id-9/transactions")).andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void getBalancesOfSeveralAccounts() throws Exception {
+		this.accountsService.createAccount(new Account("Id-101", new BigDecimal("500")));
+		this.accountsService.createAccount(new Account("Id-102", new BigDecimal("300.25")));
+		this.mockMvc.perform(get("/v1/accounts/balances").param("ids", "Id-102,Id-101")).andExpect(status().isOk())
+				.andExpect(content().string(
+						"[{\"accountId\":\"Id-102\",\"balance\":300.25},{\"accountId\":\"Id-101\",\"balance\":500}]"));
+		this.mockMvc.perform(get("/v1/accounts/balances").param("ids", "Id-101,Id-999"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void transferMetricsCountOutcomesAndLatencies() throws Exception {
+		this.accountsService.createAccount(new Account("Id-101", new BigDecimal("500")));
+		this.accountsService.createAccount(new Account("Id-102", new BigDecimal("300")));
+		long succeeded = this.accountsService.getTransferMetrics().getReport().getSucceeded();
+		long insufficient = this.accountsService.getTransferMetrics().getReport().getInsufficientBalance();
+		long invalid = this.accountsService.getTransferMetrics().getReport().getInvalidAccount();
+		this.accountsService.getTransferMetrics().rollover();
+
+		this.mockMvc.perform(post("/v1/accounts/transferMoney").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-102\",\"amount\":100}"))
+				.andExpect(status().isAccepted());
+		this.mockMvc.perform(post("/v1/accounts/transferMoney").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-102\",\"amount\":1000}"))
+				.andExpect(status().isBadRequest());
+		this.mockMvc.perform(post("/v1/accounts/transferMoney").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountFromId\":\"Id-101\",\"accountToId\":\"Id-999\",\"amount\":1}"))
+				.andExpect(status().isBadRequest());
+		this.accountsService.getTransferMetrics().rollover();
+
+		this.mockMvc.perform(get("/v1/metrics/transfers")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.succeeded").value((int) succeeded + 1))
+				.andExpect(jsonPath("$.insufficientBalance").value((int) insufficient + 1))
+				.andExpect(jsonPath("$.invalidAccount").value((int) invalid + 1))
+				.andExpect(jsonPath("$.latencies.END_TO_END.count").value(3))
+				.andExpect(jsonPath("$.latencies.NOTIFICATION_ENQUEUE.count").value(1));
+	}
 }
@@ -0,0 +1,226 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryJournaled;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class AccountsRepositoryJournaledTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private AccountsRepositoryJournaled open() {
+		return new AccountsRepositoryJournaled(folder.getRoot().getPath(), 4096, 1, true);
+	}
+
+	@Test
+	public void replaysBalancesAfterRestart() throws Exception {
+		AccountsRepositoryJournaled repository = open();
+		Account from = new Account("Id-101", new BigDecimal("525.45"));
+		Account to = new Account("Id-102", new BigDecimal("223"));
+		repository.createAccount(from);
+		repository.createAccount(to);
+		// Enough records to roll over several 4k segments.
+		for (int i = 0; i < 200; i++) {
+			repository.debitAccount(from, new BigDecimal("0.05"));
+			repository.creditAccount(to, new BigDecimal("0.05"));
+		}
+		repository.awaitDurable();
+		repository.close();
+
+		AccountsRepositoryJournaled reopened = open();
+		assertThat(reopened.getAccount("Id-101").getBalance()).isEqualTo(new BigDecimal("515.45"));
+		assertThat(reopened.getAccount("Id-102").getBalance()).isEqualTo(new BigDecimal("233.00"));
+		reopened.close();
+	}
+
+	@Test
+	public void ignoresTornTailRecord() throws Exception {
+		AccountsRepositoryJournaled repository = open();
+		Account account = new Account("Id-101", new BigDecimal("100"));
+		repository.createAccount(account);
+		repository.creditAccount(account, new BigDecimal("50"));
+		repository.awaitDurable();
+		repository.close();
+
+		// Flip a byte inside the credit record's body so its checksum no longer matches.
+		File segment = new File(folder.getRoot(), "journal-00000000.log");
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			int createRecord = 8 + 27 + "Id-101".length();
+			file.seek(createRecord + 8 + 3);
+			file.write(0x7f);
+		}
+
+		AccountsRepositoryJournaled reopened = open();
+		assertThat(reopened.getAccount("Id-101").getBalance()).isEqualTo(new BigDecimal("100"));
+		reopened.creditAccount(reopened.getAccount("Id-101"), new BigDecimal("1"));
+		reopened.close();
+
+		AccountsRepositoryJournaled again = open();
+		assertThat(again.getAccount("Id-101").getBalance()).isEqualTo(new BigDecimal("101"));
+		again.close();
+	}
+
+	@Test
+	public void journalsTransferAsOneRecord() throws Exception {
+		AccountsRepositoryJournaled repository = open();
+		repository.createAccount(new Account("Id-101", new BigDecimal("100")));
+		repository.createAccount(new Account("Id-102", new BigDecimal("0")));
+		repository.transfer(repository.getAccount("Id-101"), repository.getAccount("Id-102"), new BigDecimal("30"));
+		repository.awaitDurable();
+		repository.close();
+
+		AccountsRepositoryJournaled reopened = open();
+		assertThat(reopened.getAccount("Id-101").getBalance()).isEqualTo(new BigDecimal("70"));
+		assertThat(reopened.getAccount("Id-102").getBalance()).isEqualTo(new BigDecimal("30"));
+		reopened.close();
+
+		// Tear the transfer record: neither leg may survive on its own.
+		File segment = new File(folder.getRoot(), "journal-00000000.log");
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			int createRecords = 2 * (8 + 27 + "Id-101".length());
+			file.seek(createRecords + 8 + 3);
+			file.write(0x7f);
+		}
+
+		AccountsRepositoryJournaled torn = open();
+		assertThat(torn.getAccount("Id-101").getBalance()).isEqualTo(new BigDecimal("100"));
+		assertThat(torn.getAccount("Id-102").getBalance()).isEqualTo(new BigDecimal("0"));
+		torn.close();
+	}
+
+	@Test
+	public void interruptedWaitForDiskFails() throws Exception {
+		AccountsRepositoryJournaled repository = new AccountsRepositoryJournaled(folder.getRoot().getPath(), 4096,
+				60_000, true);
+		Account account = new Account("Id-101", new BigDecimal("100"));
+		repository.createAccount(account);
+		repository.creditAccount(account, new BigDecimal("1"));
+		Thread.currentThread().interrupt();
+		try {
+			repository.awaitDurable();
+			fail("An interrupted wait must not report the credit as durable");
+		} catch (IllegalStateException ise) {
+			assertThat(Thread.interrupted()).isTrue();
+		} finally {
+			Thread.interrupted();
+			repository.close();
+		}
+	}
+
+	@Test
+	public void appendCostIsMicroseconds() throws Exception {
+		AccountsRepositoryJournaled repository = new AccountsRepositoryJournaled(folder.getRoot().getPath(),
+				64 * 1024 * 1024, 2, false);
+		Account account = new Account("Id-101", new BigDecimal("0"));
+		repository.createAccount(account);
+		int operations = 200_000;
+		long start = System.nanoTime();
+		for (int i = 0; i < operations; i++) {
+			repository.creditAccount(account, 1, 0);
+		}
+		long perOperation = (System.nanoTime() - start) / operations;
+		log.info("Journaled credit took {} ns on average", perOperation);
+		assertThat(account.getBalance()).isEqualTo(new BigDecimal(operations));
+		repository.close();
+	}
+
+	@Test
+	public void recoversFromSnapshotAndJournalTail() throws Exception {
+		AccountsRepositoryJournaled repository = open();
+		Account from = new Account("Id-101", new BigDecimal("100"));
+		Account to = new Account("Id-102", new BigDecimal("0"));
+		repository.createAccount(from);
+		repository.createAccount(to);
+		for (int i = 0; i < 200; i++) {
+			repository.debitAccount(from, new BigDecimal("0.25"));
+			repository.creditAccount(to, new BigDecimal("0.25"));
+		}
+		repository.snapshot();
+		repository.createAccount(new Account("Id-103", new BigDecimal("7")));
+		repository.debitAccount(from, new BigDecimal("10"));
+		repository.creditAccount(to, new BigDecimal("10"));
+		repository.awaitDurable();
+		repository.close();
+
+		assertThat(folder.getRoot().list((dir, name) -> name.startsWith("journal-")).length).isEqualTo(1);
+		AccountsRepositoryJournaled reopened = open();
+		assertThat(reopened.getAccount("Id-101").getBalance()).isEqualTo(new BigDecimal("40.00"));
+		assertThat(reopened.getAccount("Id-102").getBalance()).isEqualTo(new BigDecimal("60.00"));
+		assertThat(reopened.getAccount("Id-103").getBalance()).isEqualTo(new BigDecimal("7"));
+		reopened.close();
+	}
+
+	@Test
+	public void recoversFromOlderSnapshotWhenNewestIsCorrupt() throws Exception {
+		AccountsRepositoryJournaled repository = open();
+		Account from = new Account("Id-101", new BigDecimal("100"));
+		Account to = new Account("Id-102", new BigDecimal("0"));
+		repository.createAccount(from);
+		repository.createAccount(to);
+		// Each round rolls several 4k segments, so the second snapshot starts well past the first.
+		for (int round = 0; round < 2; round++) {
+			if (round == 1) {
+				// Journaled only between the two snapshots
+				repository.createAccount(new Account("Id-103", new BigDecimal("7")));
+			}
+			for (int i = 0; i < 200; i++) {
+				repository.transfer(from, to, new BigDecimal("0.10"));
+			}
+			repository.snapshot();
+		}
+		repository.transfer(from, to, new BigDecimal("1"));
+		repository.awaitDurable();
+		repository.close();
+
+		String[] snapshots = folder.getRoot().list((dir, name) -> name.endsWith(".snap"));
+		Arrays.sort(snapshots);
+		assertThat(snapshots).hasSize(2);
+		try (RandomAccessFile file = new RandomAccessFile(new File(folder.getRoot(), snapshots[1]), "rw")) {
+			file.seek(20);
+			int value = file.read();
+			file.seek(20);
+			file.write(value ^ 0xff);
+		}
+
+		AccountsRepositoryJournaled reopened = open();
+		assertThat(reopened.getAccount("Id-101").getBalance()).isEqualTo(new BigDecimal("59.00"));
+		assertThat(reopened.getAccount("Id-102").getBalance()).isEqualTo(new BigDecimal("41.00"));
+		assertThat(reopened.getAccount("Id-103").getBalance()).isEqualTo(new BigDecimal("7"));
+		reopened.close();
+	}
+
+	@Test
+	public void startupTimeFromSnapshot() throws Exception {
+		int accounts = 200_000;
+		AccountsRepositoryJournaled repository = new AccountsRepositoryJournaled(folder.getRoot().getPath(),
+				256 * 1024 * 1024, 2, false);
+		for (int i = 0; i < accounts; i++) {
+			repository.createAccount(new Account("Id-" + i, i, 2));
+		}
+		repository.snapshot();
+		repository.close();
+
+		long start = System.nanoTime();
+		AccountsRepositoryJournaled reopened = new AccountsRepositoryJournaled(folder.getRoot().getPath(),
+				256 * 1024 * 1024, 2, false);
+		long elapsed = System.nanoTime() - start;
+		log.info("Recovered {} accounts from snapshot in {} ms", accounts, elapsed / 1_000_000);
+		assertThat(reopened.getAccount("Id-" + (accounts - 1)).getBalance()).isEqualTo(new BigDecimal("1999.99"));
+		reopened.close();
+	}
+}
@@ -0,0 +1,146 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Balance;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.InvalidCursorException;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+import com.db.awmd.challenge.service.StripedAccountLockManager;
+import com.db.awmd.challenge.service.StripedLockTransferEngine;
+import com.db.awmd.challenge.service.TransferEngine;
+
+public class AccountsRepositoryOffHeapTest {
+
+	@Test
+	public void createAndReadBack() {
+		AccountsRepositoryOffHeap repository = new AccountsRepositoryOffHeap(1000, 40);
+		repository.createAccount(new Account("Id-123", new BigDecimal("1000.25")));
+
+		Account account = repository.getAccount("Id-123");
+		assertThat(account.getAccountId()).isEqualTo("Id-123");
+		assertThat(account.getBalance()).isEqualTo(new BigDecimal("1000.25"));
+		assertThat(repository.getAccount("Id-124")).isNull();
+
+		try {
+			repository.createAccount(new Account("Id-123", BigDecimal.ONE));
+			fail("Should have failed when adding duplicate account");
+		} catch (DuplicateAccountIdException ex) {
+			assertThat(ex.getMessage()).isEqualTo("Account id Id-123 already exists!");
+		}
+	}
+
+	@Test(expected = InvalidAccountIdException.class)
+	public void idLongerThanSlotIsRejected() {
+		new AccountsRepositoryOffHeap(1000, 8).createAccount(new Account("Id-123456789", BigDecimal.ONE));
+	}
+
+	@Test(expected = InvalidCursorException.class)
+	public void cursorOutsideTheTableIsRejected() {
+		new AccountsRepositoryOffHeap(1000, 40).listAccounts("4096", 10);
+	}
+
+	@Test
+	public void debitAndCreditWriteThroughToTheSlot() {
+		AccountsRepositoryOffHeap repository = new AccountsRepositoryOffHeap(1000, 40);
+		repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+
+		repository.debitAccount(repository.getAccount("Id-1"), 2550, 2);
+		repository.creditAccount(repository.getAccount("Id-1"), 5, 0);
+		assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("79.50"));
+
+		try {
+			repository.debitAccount(repository.getAccount("Id-1"), 80, 0);
+			fail("Should have failed on insufficient balance");
+		} catch (InsufficientAmountException ex) {
+			assertThat(ex.getMessage()).isEqualTo("Id-1 account does not have sufficent balance.");
+		}
+		assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("79.50"));
+	}
+
+	@Test
+	public void compareAndSetGoesToTheSlot() {
+		AccountsRepositoryOffHeap repository = new AccountsRepositoryOffHeap(1000, 40);
+		repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+		Account view = repository.getAccount("Id-1");
+		Balance read = view.getSettledBalance();
+
+		assertThat(view.compareAndSetState(read, read.debit(30, 0))).isTrue();
+		// Another view sees the change, and the balance it was read from is now stale
+		assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(70));
+		assertThat(view.compareAndSetState(read, read.debit(50, 0))).isFalse();
+		assertThat(repository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(70));
+
+		try {
+			view.compareAndSetState(view.getSettledBalance(), view.getSettledBalance().withExclusive(true));
+			fail("Should have refused a state the slot cannot hold");
+		} catch (IllegalArgumentException ex) {
+			assertThat(ex.getMessage()).isEqualTo("An off-heap account can only be set to a plain balance.");
+		}
+	}
+
+	@Test
+	public void fullTableProbesToEveryAccount() {
+		AccountsRepositoryOffHeap repository = new AccountsRepositoryOffHeap(100_000, 16);
+		for (int i = 0; i < 100_000; i++) {
+			repository.createAccount(new Account("Id-" + i, i, 0));
+		}
+		assertThat(repository.size()).isEqualTo(100_000);
+		for (int i = 0; i < 100_000; i++) {
+			assertThat(repository.getAccount("Id-" + i).getBalanceUnits()).isEqualTo(i);
+		}
+
+		repository.clearAccounts();
+		assertThat(repository.getAccount("Id-1")).isNull();
+		assertThat(repository.size()).isZero();
+	}
+
+	@Test
+	public void stripedEngineConservesMoney() throws Exception {
+		AccountsRepositoryOffHeap repository = new AccountsRepositoryOffHeap(1000, 40);
+		for (int i = 0; i < 16; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+		}
+		TransferEngine engine = new StripedLockTransferEngine(repository, new StripedAccountLockManager(64, 0));
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		CountDownLatch done = new CountDownLatch(8);
+		for (int t = 0; t < 8; t++) {
+			final int seed = t;
+			executor.submit(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					String from = "Id-" + (seed + i) % 16;
+					String to = "Id-" + (seed + i * 7 + 1) % 16;
+					if (from.equals(to)) {
+						continue;
+					}
+					try {
+						engine.transfer(repository.getAccount(from), repository.getAccount(to), 1, 0);
+					} catch (InsufficientAmountException iae) {
+						// expected once an account runs dry
+					}
+				}
+				done.countDown();
+			});
+		}
+		assertThat(done.await(60, TimeUnit.SECONDS)).isTrue();
+		executor.shutdown();
+
+		BigDecimal total = BigDecimal.ZERO;
+		for (int i = 0; i < 16; i++) {
+			total = total.add(repository.getAccount("Id-" + i).getBalance());
+		}
+		assertThat(total).isEqualByComparingTo(new BigDecimal(16_000));
+	}
+}
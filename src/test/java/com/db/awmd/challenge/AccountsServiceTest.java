@@ -5,22 +5,30 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
 import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.domain.BatchTransferRequest;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.InsufficientAmountException;
 import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.loadgen.LoadGenerator;
+import com.db.awmd.challenge.loadgen.LoadGeneratorConfig;
+import com.db.awmd.challenge.loadgen.LoadReport;
+import com.db.awmd.challenge.loadgen.ServiceTransferDriver;
+import com.db.awmd.challenge.loadgen.TransferDriver;
 import com.db.awmd.challenge.service.AccountsService;
 import com.db.awmd.challenge.service.EmailNotificationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.read.ListAppender;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -101,6 +109,8 @@ public class AccountsServiceTest {
 				uniqueAccountIdTo, new BigDecimal("125.45"));
 
 		this.accountsService.transferMoney(balanceTransferRequest);
+		// Notifications are delivered by the dispatcher thread.
+		assertTrue(this.accountsService.getNotificationDispatcher().awaitDelivered(5, TimeUnit.SECONDS));
 		this.accountsService.getAccount(uniqueAccountIdFrom);
 		this.accountsService.getAccount(uniqueAccountIdTo);
 		List<ILoggingEvent> logsList = listAppender.list;
@@ -115,6 +125,27 @@ public class AccountsServiceTest {
 
 	}
 
+	@Test
+	public void NotificationCarriesBalanceLeftByItsOwnTransfer() throws Exception {
+		Logger notificationLogger = (Logger) LoggerFactory.getLogger(EmailNotificationService.class);
+		ListAppender<ILoggingEvent> listAppender = new ListAppender<>();
+		listAppender.start();
+		notificationLogger.addAppender(listAppender);
+		this.accountsService.createAccount(new Account("Id-101", new BigDecimal("500")));
+		this.accountsService.createAccount(new Account("Id-102", new BigDecimal("0")));
+
+		// Both are notified after the batch, by when the account has moved on from the first
+		this.accountsService.transferBatch(new BatchTransferRequest(BatchTransferRequest.Mode.BEST_EFFORT,
+				Arrays.asList(new BalanceTransferRequest("Id-101", "Id-102", new BigDecimal("100")),
+						new BalanceTransferRequest("Id-101", "Id-102", new BigDecimal("150")))));
+		assertTrue(this.accountsService.getNotificationDispatcher().awaitDelivered(5, TimeUnit.SECONDS));
+		String messages = listAppender.list.toString();
+		notificationLogger.detachAppender(listAppender);
+		assertThat(messages).contains("Your account debited with 100 amount. Now available balance is 400.")
+				.contains("Your account debited with 150 amount. Now available balance is 250.")
+				.contains("Your account credited with 100 amount. Now available balance is 100.");
+	}
+
 	@Test
 	public void transferMoney_failOnGreaterAmount() throws Exception {
 
@@ -205,39 +236,46 @@ public class AccountsServiceTest {
 	}
 
 	@Test
-	public void transferMoneyWithMultiThread() throws Exception {
-		String uniqueAccountIdOne = "Id-101";
-		String uniqueAccountIdTwo = "Id-102";
-		Account accountOne = new Account(uniqueAccountIdOne, new BigDecimal("525.45"));
-		Account accountTwo = new Account(uniqueAccountIdTwo, new BigDecimal("223.30"));
-		this.accountsService.createAccount(accountOne);
-		this.accountsService.createAccount(accountTwo);
-		Thread t1 = new Thread() {
-			public void run() {
-				BalanceTransferRequest balanceTransferRequest = new BalanceTransferRequest(uniqueAccountIdOne,
-						uniqueAccountIdTwo, new BigDecimal("125.45"));
-				assertThat(accountsService.transferMoney(balanceTransferRequest)).isEqualTo(true);
-				assertThat(accountsService.getAccount(uniqueAccountIdOne).getBalance())
-						.isEqualTo(new BigDecimal("400.00"));
-				assertThat(accountsService.getAccount(uniqueAccountIdTwo).getBalance())
-						.isEqualTo(new BigDecimal("348.75"));
-
-			}
-		};
-		Thread t2 = new Thread() {
-			public void run() {
-				BalanceTransferRequest balanceTransferRequest = new BalanceTransferRequest(uniqueAccountIdTwo,
-						uniqueAccountIdOne, new BigDecimal("125.45"));
-				assertThat(accountsService.transferMoney(balanceTransferRequest)).isEqualTo(true);
-				assertThat(accountsService.getAccount(uniqueAccountIdOne).getBalance())
-						.isEqualTo(new BigDecimal("525.45"));
-				assertThat(accountsService.getAccount(uniqueAccountIdTwo).getBalance())
-						.isEqualTo(new BigDecimal("223.30"));
+	public void consistentReadOfSeveralAccountsSeesWholeTransfers() throws Exception {
+		this.accountsService.createAccount(new Account("Id-101", new BigDecimal("500")));
+		this.accountsService.createAccount(new Account("Id-102", new BigDecimal("300")));
+		Thread transfers = new Thread(() -> {
+			for (int i = 0; i < 20_000; i++) {
+				this.accountsService.transferMoney(new BalanceTransferRequest("Id-101", "Id-102", BigDecimal.ONE));
+				this.accountsService.transferMoney(new BalanceTransferRequest("Id-102", "Id-101", BigDecimal.ONE));
 			}
-		};
-		ExecutorService executor = Executors.newFixedThreadPool(2);
-		executor.submit(t1);
-		executor.submit(t2);
+		});
+		transfers.start();
+		int reads = 0;
+		while (transfers.isAlive() || reads == 0) {
+			List<BalanceSnapshot> balances = this.accountsService.getBalances(Arrays.asList("Id-101", "Id-102"));
+			assertThat(balances).extracting(BalanceSnapshot::getAccountId).containsExactly("Id-101", "Id-102");
+			assertThat(balances.get(0).getBalance().add(balances.get(1).getBalance())).isEqualByComparingTo("800");
+			reads++;
+		}
+		transfers.join();
+	}
+
+	@Test
+	public void transferMoneyWithMultiThread() throws Exception {
+		LoadGeneratorConfig config = new LoadGeneratorConfig();
+		config.setThreads(8);
+		config.setRequests(20_000);
+		config.setWarmupRequests(0);
+		config.setAccounts(16);
+		config.setInsufficientRatio(0.05);
+		config.setSameAccountRatio(0.05);
+		LoadReport report = new LoadGenerator(config, new ServiceTransferDriver(this.accountsService),
+				new ObjectMapper()).run();
+
+		assertThat(report.isConserved()).isTrue();
+		assertThat(report.getRequests()).isEqualTo(20_000);
+		assertThat(report.getFailures()).isZero();
+		assertThat(report.getOutcomes().get(TransferDriver.Outcome.ACCEPTED)).isPositive();
+		assertThat(report.getOutcomes().get(TransferDriver.Outcome.INSUFFICIENT_FUNDS)).isPositive();
+		assertThat(report.getOutcomes().get(TransferDriver.Outcome.INVALID_ACCOUNT)).isPositive();
+		this.accountsService.getAccountsRepository()
+				.forEachAccount(account -> assertThat(account.getBalance().signum()).isNotNegative());
 	}
 
 }
@@ -0,0 +1,67 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.service.HierarchicalTimerWheel;
+
+public class HierarchicalTimerWheelTest {
+
+	@Test
+	public void timersFireInTheirTickNeverEarlier() {
+		// 4 slots per level, so deadlines cascade through every level and some lie beyond the top one
+		HierarchicalTimerWheel<Long> wheel = new HierarchicalTimerWheel<>(10, 2, 3, 0);
+		Random random = new Random(7);
+		List<Long> deadlines = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			long deadline = 1 + random.nextInt(3000);
+			deadlines.add(deadline);
+			wheel.schedule(deadline, deadline);
+		}
+		assertThat(wheel.size()).isEqualTo(2000);
+
+		int fired = 0;
+		for (long now = 0; now <= 3010; now += 1 + random.nextInt(25)) {
+			for (long deadline : wheel.advance(now)) {
+				assertThat(deadline).isLessThanOrEqualTo(now);
+				// Deadlines round up to a tick, and a tick is seen at the first advance past it
+				assertThat(deadline).isGreaterThan(now - 10 - 25);
+				fired++;
+			}
+		}
+		fired += wheel.advance(3010).size();
+		assertThat(fired).isEqualTo(deadlines.size());
+		assertThat(wheel.size()).isZero();
+	}
+
+	@Test
+	public void cancelledTimersDoNotFire() {
+		HierarchicalTimerWheel<String> wheel = new HierarchicalTimerWheel<>(1, 4, 2, 1000);
+		HierarchicalTimerWheel.Timeout<String> kept = wheel.schedule("kept", 1020);
+		HierarchicalTimerWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 1020);
+		HierarchicalTimerWheel.Timeout<String> far = wheel.schedule("far", 1300);
+
+		assertThat(cancelled.cancel()).isTrue();
+		assertThat(cancelled.cancel()).isFalse();
+		assertThat(wheel.advance(1019)).isEmpty();
+		assertThat(wheel.advance(1020)).containsExactly("kept");
+		assertThat(kept.cancel()).isFalse();
+		assertThat(far.cancel()).isTrue();
+		assertThat(wheel.size()).isZero();
+		assertThat(wheel.advance(2000)).isEmpty();
+	}
+
+	@Test
+	public void pastDeadlinesFireOnTheNextTick() {
+		HierarchicalTimerWheel<String> wheel = new HierarchicalTimerWheel<>(10, 8, 2, 5000);
+		wheel.schedule("late", 10);
+
+		assertThat(wheel.advance(5009)).isEmpty();
+		assertThat(wheel.advance(5010)).containsExactly("late");
+	}
+}
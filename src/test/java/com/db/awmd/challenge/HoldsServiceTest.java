@@ -0,0 +1,170 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.domain.Hold;
+import com.db.awmd.challenge.domain.HoldCaptureRequest;
+import com.db.awmd.challenge.domain.HoldRequest;
+import com.db.awmd.challenge.exception.HoldNotFoundException;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.exception.InvalidHoldException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.EmailNotificationService;
+import com.db.awmd.challenge.service.HoldsService;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class HoldsServiceTest {
+
+	@Autowired
+	private AccountsService accountsService;
+
+	@Autowired
+	private HoldsService holdsService;
+
+	@Before
+	public void createAccounts() {
+		this.accountsService.getAccountsRepository().clearAccounts();
+		this.accountsService.createAccount(new Account("Id-payer", new BigDecimal("100.00")));
+		this.accountsService.createAccount(new Account("Id-payee", new BigDecimal("0")));
+	}
+
+	@Test
+	public void heldFundsStayOnTheLedgerButCannotBeTransferred() {
+		this.holdsService.placeHold(new HoldRequest("Id-payer", new BigDecimal("70"), null));
+
+		BalanceSnapshot balance = this.accountsService.getBalance("Id-payer");
+		assertThat(balance.getBalance()).isEqualByComparingTo("100");
+		assertThat(balance.getAvailableBalance()).isEqualByComparingTo("30");
+		try {
+			this.accountsService.transferMoney(new BalanceTransferRequest("Id-payer", "Id-payee", new BigDecimal("31")));
+			fail("Should have refused to spend held funds");
+		} catch (InsufficientAmountException iae) {
+			assertThat(iae.getMessage()).isEqualTo("Id-payer account does not have sufficent balance.");
+		}
+		try {
+			this.holdsService.placeHold(new HoldRequest("Id-payer", new BigDecimal("30.01"), null));
+			fail("Should have refused to hold more than is available");
+		} catch (InsufficientAmountException iae) {
+			assertThat(iae.getMessage()).isEqualTo("Id-payer account does not have sufficent balance.");
+		}
+		this.accountsService.transferMoney(new BalanceTransferRequest("Id-payer", "Id-payee", new BigDecimal("30")));
+		assertThat(this.accountsService.getBalance("Id-payer").getAvailableBalance()).isEqualByComparingTo("0");
+	}
+
+	@Test
+	public void notificationsGiveTheBalanceLeftFreeOfHolds() throws Exception {
+		Logger notificationLogger = (Logger) LoggerFactory.getLogger(EmailNotificationService.class);
+		ListAppender<ILoggingEvent> listAppender = new ListAppender<>();
+		listAppender.start();
+		notificationLogger.addAppender(listAppender);
+		this.holdsService.placeHold(new HoldRequest("Id-payer", new BigDecimal("70"), null));
+		this.accountsService.transferMoney(new BalanceTransferRequest("Id-payer", "Id-payee", new BigDecimal("10")));
+
+		assertThat(this.accountsService.getNotificationDispatcher().awaitDelivered(5, TimeUnit.SECONDS)).isTrue();
+		notificationLogger.detachAppender(listAppender);
+		assertThat(listAppender.list.toString())
+				.contains("Your account debited with 10 amount. Now available balance is 20.00.");
+	}
+
+	@Test
+	public void partialCapturePaysThePayeeAndReleasesTheRest() {
+		Hold hold = this.holdsService.placeHold(new HoldRequest("Id-payer", new BigDecimal("70"), 60L));
+
+		this.holdsService.capture(hold.getHoldId(), new HoldCaptureRequest("Id-payee", new BigDecimal("45.50")));
+
+		BalanceSnapshot payer = this.accountsService.getBalance("Id-payer");
+		assertThat(payer.getBalance()).isEqualByComparingTo("54.50");
+		assertThat(payer.getAvailableBalance()).isNull();
+		assertThat(this.accountsService.getBalance("Id-payee").getBalance()).isEqualByComparingTo("45.50");
+		assertThat(this.accountsService.getTransactions("Id-payee", 1).get(0).getCounterpartyId()).isEqualTo("Id-payer");
+		try {
+			this.holdsService.release(hold.getHoldId());
+			fail("Should have found the hold settled");
+		} catch (HoldNotFoundException hnfe) {
+			assertThat(hnfe.getMessage()).isEqualTo(hold.getHoldId() + " hold does not exist or is already settled.");
+		}
+	}
+
+	@Test
+	public void failedCaptureLeavesTheHoldInPlace() {
+		this.accountsService.createAccount(new Account("Id-full", new BigDecimal(Long.MAX_VALUE)));
+		Hold hold = this.holdsService.placeHold(new HoldRequest("Id-payer", new BigDecimal("10"), null));
+		try {
+			this.holdsService.capture(hold.getHoldId(), new HoldCaptureRequest("Id-full", new BigDecimal("10")));
+			fail("Should have refused to credit past the largest balance");
+		} catch (ArithmeticException ae) {
+			// Expected
+		}
+		assertThat(this.holdsService.getHold(hold.getHoldId())).isEqualTo(hold);
+		BalanceSnapshot payer = this.accountsService.getBalance("Id-payer");
+		assertThat(payer.getBalance()).isEqualByComparingTo("100");
+		assertThat(payer.getAvailableBalance()).isEqualByComparingTo("90");
+		assertThat(this.accountsService.getBalance("Id-full").getBalance()).isEqualByComparingTo(
+				new BigDecimal(Long.MAX_VALUE));
+
+		this.holdsService.capture(hold.getHoldId(), new HoldCaptureRequest("Id-payee", null));
+		assertThat(this.accountsService.getBalance("Id-payee").getBalance()).isEqualByComparingTo("10");
+	}
+
+	@Test
+	public void captureCannotExceedTheHold() {
+		Hold hold = this.holdsService.placeHold(new HoldRequest("Id-payer", new BigDecimal("10"), null));
+		try {
+			this.holdsService.capture(hold.getHoldId(), new HoldCaptureRequest("Id-payee", new BigDecimal("10.01")));
+			fail("Should have refused to capture more than was held");
+		} catch (InvalidHoldException ihe) {
+			assertThat(ihe.getMessage()).isEqualTo("10.01 is not a valid amount to capture from a hold of 10.");
+		}
+		assertThat(this.holdsService.getHold(hold.getHoldId())).isEqualTo(hold);
+		assertThat(this.accountsService.getBalance("Id-payer").getAvailableBalance()).isEqualByComparingTo("90");
+	}
+
+	@Test
+	public void releaseGivesTheFundsBack() {
+		Hold hold = this.holdsService.placeHold(new HoldRequest("Id-payer", new BigDecimal("100"), null));
+
+		this.holdsService.release(hold.getHoldId());
+
+		assertThat(this.accountsService.getBalance("Id-payer").getAvailableBalance()).isNull();
+		assertThat(this.accountsService.getBalance("Id-payee").getBalance()).isEqualByComparingTo("0");
+	}
+
+	@Test
+	public void expiredHoldsAreReleased() throws Exception {
+		Hold hold = this.holdsService.placeHold(new HoldRequest("Id-payer", new BigDecimal("25"), 1L));
+		assertThat(this.accountsService.getBalance("Id-payer").getAvailableBalance()).isEqualByComparingTo("75");
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (this.accountsService.getBalance("Id-payer").getAvailableBalance() != null) {
+			assertThat(System.nanoTime()).as("hold released within 10 s").isLessThan(deadline);
+			Thread.sleep(20);
+		}
+		assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(hold.getExpiresAt());
+		try {
+			this.holdsService.getHold(hold.getHoldId());
+			fail("Should have forgotten the expired hold");
+		} catch (HoldNotFoundException hnfe) {
+			// Expected
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ShardedAccount;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.StripedAccountLockManager;
+import com.db.awmd.challenge.service.StripedLockTransferEngine;
+import com.db.awmd.challenge.service.TransferEngine;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class HotAccountShardingTest {
+
+	private static final int PAYERS = 64;
+	private static final int THREADS = 8;
+	private static final int TRANSFERS_PER_THREAD = 20_000;
+
+	@Test
+	public void hotAccountIsStoredSharded() {
+		AccountsRepository repository = new AccountsRepositoryInMemory(new String[] { "FEES" }, 4, 2);
+		repository.createAccount(new Account("FEES", new BigDecimal("10.5")));
+		repository.createAccount(new Account("Id-1", new BigDecimal("10.5")));
+
+		Account fees = repository.getAccount("FEES");
+		assertThat(fees).isInstanceOf(ShardedAccount.class);
+		assertThat(((ShardedAccount) fees).getCellCount()).isEqualTo(4);
+		assertThat(fees.getBalance()).isEqualTo(new BigDecimal("10.50"));
+		assertThat(repository.getAccount("Id-1")).isNotInstanceOf(ShardedAccount.class);
+	}
+
+	@Test
+	public void debitSpillsIntoOtherCells() throws Exception {
+		ShardedAccount account = new ShardedAccount("FEES", 0, 0, 4, 2);
+		Thread[] creditors = new Thread[8];
+		for (int i = 0; i < creditors.length; i++) {
+			creditors[i] = new Thread(() -> account.credit(100, 0));
+			creditors[i].start();
+		}
+		for (Thread creditor : creditors) {
+			creditor.join();
+		}
+		assertThat(account.getBalance()).isEqualTo(new BigDecimal("800.00"));
+
+		assertThat(account.debit(75025, 2)).isTrue();
+		assertThat(account.getBalance()).isEqualTo(new BigDecimal("49.75"));
+		assertThat(account.debit(4976, 2)).isFalse();
+		assertThat(account.debit(4975, 2)).isTrue();
+		assertThat(account.getBalance()).isEqualTo(new BigDecimal("0.00"));
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void amountsFinerThanTheCellScaleAreRejected() {
+		new ShardedAccount("FEES", 0, 0, 4, 2).credit(1, 3);
+	}
+
+	@Test
+	public void fanInToHotAccountConservesMoney() throws Exception {
+		long plain = fanIn(new AccountsRepositoryInMemory());
+		long sharded = fanIn(new AccountsRepositoryInMemory(new String[] { "FEES" }, 16, 2));
+		log.info("Fan-in to one account: {} transfers/s plain, {} transfers/s sharded with {} threads", plain,
+				sharded, THREADS);
+	}
+
+	private long fanIn(AccountsRepository repository) throws InterruptedException {
+		repository.createAccount(new Account("FEES", BigDecimal.ZERO));
+		for (int i = 0; i < PAYERS; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(TRANSFERS_PER_THREAD)));
+		}
+		TransferEngine engine = new StripedLockTransferEngine(repository, new StripedAccountLockManager(1024, 0));
+		Account fees = repository.getAccount("FEES");
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch done = new CountDownLatch(THREADS);
+		long start = System.nanoTime();
+		for (int t = 0; t < THREADS; t++) {
+			final int seed = t;
+			executor.submit(() -> {
+				for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+					engine.transfer(repository.getAccount("Id-" + (seed + i * THREADS) % PAYERS), fees, 1, 0);
+				}
+				done.countDown();
+			});
+		}
+		assertThat(done.await(60, TimeUnit.SECONDS)).isTrue();
+		long elapsed = System.nanoTime() - start;
+		executor.shutdown();
+
+		BigDecimal total = fees.getBalance();
+		for (int i = 0; i < PAYERS; i++) {
+			total = total.add(repository.getAccount("Id-" + i).getBalance());
+		}
+		assertThat(total).isEqualByComparingTo(new BigDecimal((long) PAYERS * TRANSFERS_PER_THREAD));
+		assertThat(fees.getBalance()).isEqualByComparingTo(new BigDecimal((long) THREADS * TRANSFERS_PER_THREAD));
+		return (long) THREADS * TRANSFERS_PER_THREAD * 1_000_000_000L / elapsed;
+	}
+}
@@ -0,0 +1,38 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.LatencySummary;
+import com.db.awmd.challenge.service.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void percentilesAreWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long nanos = 1; nanos <= 100_000; nanos++) {
+			histogram.record(nanos * 1_000);
+		}
+		LatencySummary summary = histogram.drain();
+
+		assertThat(summary.getCount()).isEqualTo(100_000);
+		assertThat((double) summary.getP50Nanos()).isCloseTo(50_000_000, within(50_000_000 * 0.04));
+		assertThat((double) summary.getP99Nanos()).isCloseTo(99_000_000, within(99_000_000 * 0.04));
+		assertThat((double) summary.getP999Nanos()).isCloseTo(99_900_000, within(99_900_000 * 0.04));
+		assertThat(summary.getMaxNanos()).isEqualTo(100_000_000);
+	}
+
+	@Test
+	public void drainStartsANewInterval() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(42);
+		assertThat(histogram.drain().getP50Nanos()).isEqualTo(42);
+
+		LatencySummary empty = histogram.drain();
+		assertThat(empty.getCount()).isZero();
+		assertThat(empty.getMaxNanos()).isZero();
+	}
+}
@@ -0,0 +1,196 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.domain.ClusterStatus;
+import com.db.awmd.challenge.domain.CrossPartitionCredit;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.ClusterClient;
+import com.db.awmd.challenge.service.PartitionMap;
+
+public class PartitionedClusterTest {
+
+	private static final int NODES = 3;
+
+	private static final String SECRET = "test-cluster-secret";
+
+	private static final List<String> urls = new ArrayList<>();
+
+	private static final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+
+	private final RestTemplate http = new RestTemplate();
+
+	@BeforeClass
+	public static void startNodes() throws IOException {
+		List<Integer> ports = new ArrayList<>();
+		for (int i = 0; i < NODES; i++) {
+			try (ServerSocket socket = new ServerSocket(0)) {
+				ports.add(socket.getLocalPort());
+			}
+			urls.add("http://localhost:" + ports.get(i));
+		}
+		for (int i = 0; i < NODES; i++) {
+			contexts.add(SpringApplication.run(DevChallengeApplication.class, "--server.port=" + ports.get(i),
+					"--accounts.cluster.nodes=" + String.join(",", urls), "--accounts.cluster.self=" + urls.get(i),
+					"--accounts.cluster.commit-retry-ms=50", "--accounts.cluster.secret=" + SECRET));
+		}
+	}
+
+	@AfterClass
+	public static void stopNodes() {
+		contexts.forEach(ConfigurableApplicationContext::close);
+	}
+
+	public PartitionedClusterTest() {
+		// Error statuses are asserted on, not thrown
+		this.http.setErrorHandler(new DefaultResponseErrorHandler() {
+			@Override
+			public boolean hasError(ClientHttpResponse response) {
+				return false;
+			}
+		});
+	}
+
+	@Before
+	public void clearAccounts() {
+		for (ConfigurableApplicationContext context : contexts) {
+			context.getBean(AccountsService.class).getAccountsRepository().clearAccounts();
+		}
+	}
+
+	@Test
+	public void accountsAreSpreadEvenlyAndAddingANodeMovesFewOfThem() {
+		PartitionMap three = new PartitionMap("http://a,http://b,http://c", "http://a", 128);
+		PartitionMap four = new PartitionMap("http://c,http://a,http://d,http://b", "http://a", 128);
+		Map<String, Integer> perNode = new HashMap<>();
+		int moved = 0;
+		for (int i = 0; i < 30_000; i++) {
+			String owner = three.ownerOf("Id-" + i);
+			perNode.merge(owner, 1, Integer::sum);
+			if (!owner.equals(four.ownerOf("Id-" + i))) {
+				assertThat(four.ownerOf("Id-" + i)).isEqualTo("http://d");
+				moved++;
+			}
+		}
+		assertThat(perNode).hasSize(3);
+		perNode.values().forEach(count -> assertThat(count).isBetween(8_000, 12_000));
+		assertThat(moved).isBetween(5_000, 10_000);
+	}
+
+	@Test
+	public void transfersWithinAndAcrossPartitionsThroughAnyNode() {
+		// Ids on node 0 and 1, and a second one on node 0
+		PartitionMap map = contexts.get(0).getBean(PartitionMap.class);
+		String local = idOwnedBy(map, urls.get(0), 0);
+		String localToo = idOwnedBy(map, urls.get(0), 1);
+		String remote = idOwnedBy(map, urls.get(1), 0);
+		for (String id : new String[] { local, localToo, remote }) {
+			assertThat(this.http.postForEntity(urls.get(2) + "/v1/accounts", new Account(id, new BigDecimal("100")),
+					String.class).getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		}
+		assertThat(contexts.get(0).getBean(AccountsService.class).getAccount(local)).isNotNull();
+		assertThat(contexts.get(1).getBean(AccountsService.class).getAccount(remote)).isNotNull();
+
+		assertThat(transfer(urls.get(2), local, remote, "30").getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		assertThat(transfer(urls.get(1), local, localToo, "20").getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		assertThat(transfer(urls.get(0), remote, local, "5.50").getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+
+		assertThat(balanceOf(urls.get(2), local)).isEqualByComparingTo("55.50");
+		assertThat(balanceOf(urls.get(2), localToo)).isEqualByComparingTo("120");
+		assertThat(balanceOf(urls.get(0), remote)).isEqualByComparingTo("124.50");
+		for (ConfigurableApplicationContext context : contexts) {
+			ClusterStatus status = this.http.getForObject(urls.get(contexts.indexOf(context)) + "/v1/cluster",
+					ClusterStatus.class);
+			assertThat(status.getPendingCommits()).isZero();
+			assertThat(status.getPreparedCredits()).isZero();
+		}
+	}
+
+	@Test
+	public void refusedCrossPartitionTransfersLeaveBothSidesUntouched() {
+		PartitionMap map = contexts.get(0).getBean(PartitionMap.class);
+		String local = idOwnedBy(map, urls.get(0), 0);
+		String remote = idOwnedBy(map, urls.get(1), 0);
+		String missing = idOwnedBy(map, urls.get(1), 1);
+		this.http.postForEntity(urls.get(0) + "/v1/accounts", new Account(local, new BigDecimal("100")), String.class);
+		this.http.postForEntity(urls.get(1) + "/v1/accounts", new Account(remote, new BigDecimal("100")), String.class);
+
+		ResponseEntity<String> unknown = transfer(urls.get(0), local, missing, "10");
+		assertThat(unknown.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(unknown.getBody()).isEqualTo(missing + " account does not exists!");
+		ResponseEntity<String> tooMuch = transfer(urls.get(1), local, remote, "100.01");
+		assertThat(tooMuch.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+
+		assertThat(balanceOf(urls.get(1), local)).isEqualByComparingTo("100");
+		assertThat(balanceOf(urls.get(0), remote)).isEqualByComparingTo("100");
+	}
+
+	@Test
+	public void onlyPeersMayPrepareOrCommitAndOnlyPositiveCredits() {
+		PartitionMap map = contexts.get(0).getBean(PartitionMap.class);
+		String remote = idOwnedBy(map, urls.get(1), 0);
+		this.http.postForEntity(urls.get(1) + "/v1/accounts", new Account(remote, new BigDecimal("10")), String.class);
+
+		CrossPartitionCredit inflate = new CrossPartitionCredit("t-1", "Id-x", remote, new BigDecimal("1000000"));
+		assertThat(this.http.postForEntity(urls.get(1) + "/v1/cluster/transfers/prepare", inflate, String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+		HttpHeaders wrongSecret = new HttpHeaders();
+		wrongSecret.set(ClusterClient.SECRET_HEADER, "guess");
+		assertThat(this.http.postForEntity(urls.get(1) + "/v1/cluster/transfers/prepare",
+				new HttpEntity<>(inflate, wrongSecret), String.class).getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+		assertThat(this.http.postForEntity(urls.get(1) + "/v1/cluster/transfers/t-1/commit", null, String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+
+		HttpHeaders peer = new HttpHeaders();
+		peer.set(ClusterClient.SECRET_HEADER, SECRET);
+		CrossPartitionCredit drain = new CrossPartitionCredit("t-2", "Id-x", remote, new BigDecimal("-5"));
+		assertThat(this.http.postForEntity(urls.get(1) + "/v1/cluster/transfers/prepare",
+				new HttpEntity<>(drain, peer), String.class).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		this.http.postForEntity(urls.get(1) + "/v1/cluster/transfers/t-2/commit", new HttpEntity<>(null, peer),
+				String.class);
+
+		assertThat(balanceOf(urls.get(1), remote)).isEqualByComparingTo("10");
+	}
+
+	private ResponseEntity<String> transfer(String node, String from, String to, String amount) {
+		return this.http.postForEntity(node + "/v1/accounts/transferMoney",
+				new BalanceTransferRequest(from, to, new BigDecimal(amount)), String.class);
+	}
+
+	private BigDecimal balanceOf(String node, String accountId) {
+		return this.http.getForObject(node + "/v1/accounts/" + accountId, Account.class).getBalance();
+	}
+
+	// The skip-th id of the form Id-n owned by the node
+	private static String idOwnedBy(PartitionMap map, String node, int skip) {
+		for (int i = 0;; i++) {
+			if (map.ownerOf("Id-" + i).equals(node) && skip-- == 0) {
+				return "Id-" + i;
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.db.awmd.challenge;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import java.math.BigDecimal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.ClusterClient;
+import com.db.awmd.challenge.web.AccountsController;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "accounts.admission.account-rate=0.1", "accounts.admission.account-burst=2",
+		"accounts.admission.client-rate=0.1", "accounts.admission.client-burst=3",
+		"accounts.cluster.secret=test-cluster-secret" })
+@WebAppConfiguration
+public class RateLimitedTransfersTest {
+
+	private MockMvc mockMvc;
+
+	@Autowired
+	private AccountsService accountsService;
+
+	@Autowired
+	private WebApplicationContext webApplicationContext;
+
+	@Before
+	public void prepareMockMvc() {
+		this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+		this.accountsService.getAccountsRepository().clearAccounts();
+		this.accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+		this.accountsService.createAccount(new Account("Id-2", new BigDecimal("100")));
+	}
+
+	@Test
+	public void overLimitTransfersAreRefusedBeforeTheyRun() throws Exception {
+		this.mockMvc.perform(transfer("Id-1", "Id-2", "10.0.0.1")).andExpect(status().isAccepted());
+		this.mockMvc.perform(transfer("Id-1", "Id-2", "10.0.0.1")).andExpect(status().isAccepted());
+		this.mockMvc.perform(transfer("Id-1", "Id-2", "10.0.0.2")).andExpect(status().isTooManyRequests())
+				.andExpect(header().string("Retry-After", "10"));
+		this.mockMvc.perform(transfer("Id-2", "Id-1", "10.0.0.1")).andExpect(status().isAccepted());
+		this.mockMvc.perform(transfer("Id-2", "Id-1", "10.0.0.1")).andExpect(status().isTooManyRequests());
+
+		this.mockMvc.perform(get("/v1/accounts/Id-1")).andExpect(jsonPath("$.balance").value(99));
+		this.mockMvc.perform(get("/v1/metrics/admission")).andExpect(jsonPath("$.admitted").value(3))
+				.andExpect(jsonPath("$.rejectedByAccountLimit").value(1))
+				.andExpect(jsonPath("$.rejectedByClientLimit").value(1));
+	}
+
+	@Test
+	public void batchesAreAdmittedWholeOrNotAtAll() throws Exception {
+		this.accountsService.createAccount(new Account("Id-6", new BigDecimal("100")));
+		this.accountsService.createAccount(new Account("Id-7", new BigDecimal("100")));
+		this.mockMvc.perform(batch("[" + item("Id-6", "Id-7") + "," + item("Id-6", "Id-7") + "]", "10.0.0.4"))
+				.andExpect(status().isAccepted());
+		// The client has one token left, so neither transfer runs
+		this.mockMvc.perform(batch("[" + item("Id-7", "Id-6") + "," + item("Id-7", "Id-6") + "]", "10.0.0.4"))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(content().string("Client 10.0.0.4 is over its transfer rate limit."));
+		// Id-6 has no tokens left, and the client keeps the two this batch would have taken
+		this.mockMvc.perform(batch("[" + item("Id-7", "Id-6") + "," + item("Id-6", "Id-7") + "]", "10.0.0.5"))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(content().string("Id-6 account is over its transfer rate limit."));
+		this.mockMvc.perform(get("/v1/accounts/Id-6")).andExpect(jsonPath("$.balance").value(98));
+
+		this.mockMvc.perform(batch("[" + item("Id-7", "Id-6") + "," + item("Id-7", "Id-6") + "]", "10.0.0.5"))
+				.andExpect(status().isAccepted());
+		this.mockMvc.perform(get("/v1/accounts/Id-6")).andExpect(jsonPath("$.balance").value(100));
+	}
+
+	@Test
+	public void clientHeaderIsOnlyTrustedFromPeers() throws Exception {
+		for (String id : new String[] { "Id-3", "Id-4", "Id-5" }) {
+			this.accountsService.createAccount(new Account(id, new BigDecimal("100")));
+		}
+		this.mockMvc.perform(transfer("Id-3", "Id-4", "10.0.0.3").header(AccountsController.CLIENT_ID_HEADER, "a"))
+				.andExpect(status().isAccepted());
+		this.mockMvc.perform(transfer("Id-4", "Id-3", "10.0.0.3").header(AccountsController.CLIENT_ID_HEADER, "b"))
+				.andExpect(status().isAccepted());
+		this.mockMvc.perform(transfer("Id-5", "Id-3", "10.0.0.3").header(AccountsController.CLIENT_ID_HEADER, "c"))
+				.andExpect(status().isAccepted());
+		this.mockMvc.perform(transfer("Id-3", "Id-5", "10.0.0.3").header(AccountsController.CLIENT_ID_HEADER, "d"))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(content().string("Client 10.0.0.3 is over its transfer rate limit."));
+
+		this.mockMvc.perform(transfer("Id-4", "Id-5", "10.0.0.3").header(AccountsController.CLIENT_ID_HEADER, "e")
+				.header(ClusterClient.SECRET_HEADER, "test-cluster-secret")).andExpect(status().isAccepted());
+	}
+
+	private static MockHttpServletRequestBuilder batch(String transfers, String remoteAddress) {
+		return post("/v1/accounts/transfers:batch").contentType(MediaType.APPLICATION_JSON)
+				.with(request -> {
+					request.setRemoteAddr(remoteAddress);
+					return request;
+				})
+				.content("{\"mode\":\"BEST_EFFORT\",\"transfers\":" + transfers + "}");
+	}
+
+	private static String item(String from, String to) {
+		return "{\"accountFromId\":\"" + from + "\",\"accountToId\":\"" + to + "\",\"amount\":1}";
+	}
+
+	private static MockHttpServletRequestBuilder transfer(String from, String to, String remoteAddress) {
+		return post("/v1/accounts/transferMoney").contentType(MediaType.APPLICATION_JSON)
+				.with(request -> {
+					request.setRemoteAddr(remoteAddress);
+					return request;
+				})
+				.content("{\"accountFromId\":\"" + from + "\",\"accountToId\":\"" + to + "\",\"amount\":1}");
+	}
+}
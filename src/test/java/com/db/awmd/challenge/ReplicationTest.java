@@ -0,0 +1,226 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceTransferRequest;
+import com.db.awmd.challenge.domain.ReplicationStatus;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.ReplicationService;
+import com.db.awmd.challenge.web.ReplicaFilter;
+
+public class ReplicationTest {
+
+	private static final int ACCOUNTS = 10;
+
+	private static final String SECRET = "test-replication-secret";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final RestTemplate http = new RestTemplate();
+
+	private ConfigurableApplicationContext leader;
+
+	private ConfigurableApplicationContext follower;
+
+	private String leaderUrl;
+
+	private String followerUrl;
+
+	public ReplicationTest() {
+		// Error statuses are asserted on, not thrown
+		this.http.setErrorHandler(new DefaultResponseErrorHandler() {
+			@Override
+			public boolean hasError(ClientHttpResponse response) {
+				return false;
+			}
+		});
+	}
+
+	@Before
+	public void startLeaderAndFollower() throws IOException {
+		int leaderPort = freePort();
+		this.leader = SpringApplication.run(DevChallengeApplication.class, "--server.port=" + leaderPort,
+				"--accounts.repository.type=journal",
+				"--accounts.journal.directory=" + this.folder.newFolder("journal"),
+				"--accounts.snapshot.directory=" + this.folder.newFolder("snapshots"),
+				"--accounts.snapshot.interval-seconds=0", "--accounts.replication.role=LEADER",
+				"--accounts.replication.port=0", "--accounts.replication.secret=" + SECRET);
+		this.leaderUrl = "http://localhost:" + leaderPort;
+		int followerPort = freePort();
+		this.follower = SpringApplication.run(DevChallengeApplication.class, "--server.port=" + followerPort,
+				"--accounts.replication.role=FOLLOWER",
+				"--accounts.replication.leader=localhost:"
+						+ this.leader.getBean(ReplicationService.class).getShipperPort(),
+				"--accounts.replication.max-staleness-ms=500", "--accounts.replication.reconnect-ms=100",
+				"--accounts.replication.secret=" + SECRET);
+		this.followerUrl = "http://localhost:" + followerPort;
+	}
+
+	@After
+	public void stopLeaderAndFollower() {
+		this.follower.close();
+		if (this.leader.isActive()) {
+			this.leader.close();
+		}
+	}
+
+	@Test
+	public void followerServesTheLeadersBalancesAndRefusesWrites() throws Exception {
+		AccountsService leaderService = this.leader.getBean(AccountsService.class);
+		for (int i = 0; i < ACCOUNTS; i++) {
+			leaderService.createAccount(new Account("Id-" + i, new BigDecimal("100")));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int t = 0; t < 4; t++) {
+			Random random = new Random(t);
+			executor.execute(() -> {
+				for (int i = 0; i < 500; i++) {
+					int from = random.nextInt(ACCOUNTS);
+					int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+					try {
+						leaderService.transferMoney(
+								new BalanceTransferRequest("Id-" + from, "Id-" + to, new BigDecimal("1.25")));
+					} catch (RuntimeException e) {
+						// Insufficient funds now and then; the follower must match either way
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+		AccountsRepository leaderAccounts = this.leader.getBean(AccountsRepository.class);
+		AccountsRepository followerAccounts = this.follower.getBean(AccountsRepository.class);
+		await(() -> {
+			for (int i = 0; i < ACCOUNTS; i++) {
+				Account copy = followerAccounts.getAccount("Id-" + i);
+				if (copy == null
+						|| copy.getBalance().compareTo(leaderAccounts.getAccount("Id-" + i).getBalance()) != 0) {
+					return false;
+				}
+			}
+			return true;
+		});
+
+		ResponseEntity<Account> read = this.http.getForEntity(this.followerUrl + "/v1/accounts/Id-0", Account.class);
+		assertThat(read.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(read.getBody().getBalance()).isEqualByComparingTo(leaderAccounts.getAccount("Id-0").getBalance());
+		assertThat(Long.parseLong(read.getHeaders().getFirst(ReplicaFilter.STALENESS_HEADER))).isBetween(0L, 500L);
+
+		assertThat(this.http.postForEntity(this.followerUrl + "/v1/accounts/transferMoney",
+				new BalanceTransferRequest("Id-0", "Id-1", BigDecimal.ONE), String.class).getStatusCode())
+						.isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(followerAccounts.getAccount("Id-0").getBalance())
+				.isEqualByComparingTo(leaderAccounts.getAccount("Id-0").getBalance());
+
+		ReplicationStatus followerStatus = this.http.getForObject(this.followerUrl + "/v1/replication",
+				ReplicationStatus.class);
+		assertThat(followerStatus.getRole()).isEqualTo(ReplicationStatus.Role.FOLLOWER);
+		assertThat(followerStatus.getRecordsApplied()).isGreaterThan(0);
+		assertThat(this.http.getForObject(this.leaderUrl + "/v1/replication", ReplicationStatus.class).getFollowers())
+				.hasSize(1);
+	}
+
+	@Test
+	public void followerStartsOverWhenTheLeadersJournalIsReset() {
+		AccountsService leaderService = this.leader.getBean(AccountsService.class);
+		AccountsRepository followerAccounts = this.follower.getBean(AccountsRepository.class);
+		leaderService.createAccount(new Account("Id-old", new BigDecimal("100")));
+		await(() -> followerAccounts.getAccount("Id-old") != null);
+
+		leaderService.getAccountsRepository().clearAccounts();
+		leaderService.createAccount(new Account("Id-new", new BigDecimal("7")));
+
+		await(() -> followerAccounts.getAccount("Id-new") != null && followerAccounts.getAccount("Id-old") == null);
+		assertThat(followerAccounts.getAccount("Id-new").getBalance()).isEqualByComparingTo("7");
+	}
+
+	@Test
+	public void promotedFollowerTakesOverFromAStoppedLeader() {
+		this.leader.getBean(AccountsService.class).createAccount(new Account("Id-0", new BigDecimal("100")));
+		this.leader.getBean(AccountsService.class).createAccount(new Account("Id-1", new BigDecimal("0")));
+		AccountsRepository followerAccounts = this.follower.getBean(AccountsRepository.class);
+		await(() -> followerAccounts.getAccount("Id-1") != null);
+
+		this.leader.close();
+		await(() -> this.http.getForEntity(this.followerUrl + "/v1/accounts/Id-0", String.class)
+				.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE);
+
+		assertThat(this.http.postForEntity(this.followerUrl + "/v1/replication/promote", null, String.class)
+				.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+		HttpHeaders peer = new HttpHeaders();
+		peer.set(ReplicationService.SECRET_HEADER, SECRET);
+		assertThat(this.http.postForEntity(this.followerUrl + "/v1/replication/promote", new HttpEntity<>(null, peer),
+				String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(this.http.postForEntity(this.followerUrl + "/v1/accounts/transferMoney",
+				new BalanceTransferRequest("Id-0", "Id-1", new BigDecimal("40")), String.class).getStatusCode())
+						.isEqualTo(HttpStatus.ACCEPTED);
+		ResponseEntity<Account> read = this.http.getForEntity(this.followerUrl + "/v1/accounts/Id-1", Account.class);
+		assertThat(read.getBody().getBalance()).isEqualByComparingTo("40");
+		assertThat(read.getHeaders().containsKey(ReplicaFilter.STALENESS_HEADER)).isFalse();
+		assertThat(this.http.getForObject(this.followerUrl + "/v1/replication", ReplicationStatus.class).getRole())
+				.isEqualTo(ReplicationStatus.Role.STANDALONE);
+	}
+
+	@Test
+	public void leaderSendsNothingToAFollowerWithoutTheSecret() throws IOException {
+		this.leader.getBean(AccountsService.class).createAccount(new Account("Id-0", new BigDecimal("100")));
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+				this.leader.getBean(ReplicationService.class).getShipperPort())) {
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			out.writeUTF("guess");
+			out.flush();
+			socket.setSoTimeout(10_000);
+			assertThat(socket.getInputStream().read()).isEqualTo(-1);
+		}
+	}
+
+	private static void await(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).as("condition met within 10 s").isLessThan(deadline);
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(ie);
+			}
+		}
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.service.RequestLogSampler;
+
+public class RequestLogSamplerTest {
+
+	@Test
+	public void sampledModeLogsAboutOneRequestInN() {
+		RequestLogSampler sampler = new RequestLogSampler(RequestLogSampler.Mode.SAMPLED, 100);
+		int logged = 0;
+		for (int i = 0; i < 100_000; i++) {
+			if (sampler.shouldLog(new Object())) {
+				logged++;
+			}
+		}
+		assertThat(logged).isBetween(700, 1300);
+	}
+
+	@Test
+	public void decisionIsStableForOneRequest() {
+		RequestLogSampler sampler = new RequestLogSampler(RequestLogSampler.Mode.SAMPLED, 7);
+		for (int i = 0; i < 1000; i++) {
+			Object request = new Object();
+			assertThat(sampler.shouldLog(request)).isEqualTo(sampler.shouldLog(request));
+		}
+	}
+
+	@Test
+	public void allAndOffIgnoreTheRequest() {
+		assertThat(new RequestLogSampler(RequestLogSampler.Mode.ALL, 100).shouldLog(new Object())).isTrue();
+		assertThat(new RequestLogSampler(RequestLogSampler.Mode.OFF, 1).shouldLog(new Object())).isFalse();
+	}
+}
@@ -0,0 +1,91 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Balance;
+import com.db.awmd.challenge.domain.TransactionEntry;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.StripedAccountLockManager;
+import com.db.awmd.challenge.service.StripedLockTransferEngine;
+import com.db.awmd.challenge.service.TransactionHistory;
+import com.db.awmd.challenge.service.TransferMetrics;
+
+public class TransactionHistoryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void transfersAreRecordedOnBothAccountsNewestFirst() {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		repository.createAccount(new Account("Id-1", 10_000, 2));
+		repository.createAccount(new Account("Id-2", 0, 2));
+		TransactionHistory history = new TransactionHistory(32, "", 0);
+		StripedLockTransferEngine engine = new StripedLockTransferEngine(repository,
+				new StripedAccountLockManager(64, 0), new TransferMetrics(0), history);
+
+		engine.transfer(repository.getAccount("Id-1"), repository.getAccount("Id-2"), 2_500, 2);
+		engine.transfer(repository.getAccount("Id-2"), repository.getAccount("Id-1"), 5, 1);
+
+		List<TransactionEntry> entries = history.recent("Id-1", 10);
+		assertThat(entries).hasSize(2);
+		assertThat(entries.get(0).getSequence()).isEqualTo(2);
+		assertThat(entries.get(0).getType()).isEqualTo(TransactionEntry.Type.CREDIT);
+		assertThat(entries.get(0).getAmount()).isEqualByComparingTo("0.5");
+		assertThat(entries.get(0).getBalance()).isEqualByComparingTo("75.50");
+		assertThat(entries.get(1).getType()).isEqualTo(TransactionEntry.Type.DEBIT);
+		assertThat(entries.get(1).getCounterpartyId()).isEqualTo("Id-2");
+		assertThat(entries.get(1).getBalance()).isEqualByComparingTo("75.00");
+		assertThat(history.recent("Id-2", 1)).extracting(TransactionEntry::getBalance)
+				.containsExactly(new BigDecimal("24.50"));
+	}
+
+	@Test
+	public void oldEntriesAreOverwrittenAndArchived() {
+		File archive = new File(this.folder.getRoot(), "history");
+		TransactionHistory history = new TransactionHistory(10, archive.getPath(), 1 << 16);
+		for (int i = 1; i <= 25; i++) {
+			history.record("Id-1", "Id-2", i, 0, new Balance(i, 0, i, false));
+		}
+		history.close();
+
+		List<TransactionEntry> entries = history.recent("Id-1", 100);
+		assertThat(entries).hasSize(10);
+		assertThat(entries.get(0).getSequence()).isEqualTo(25);
+		assertThat(entries.get(9).getSequence()).isEqualTo(16);
+		assertThat(entries.get(9).getAmount()).isEqualByComparingTo("16");
+		assertThat(archive.list((dir, name) -> name.startsWith("history-"))).hasSize(8);
+		long archivedBytes = 0;
+		for (File file : archive.listFiles()) {
+			archivedBytes += recordsSize(file);
+		}
+		// 15 evicted entries of 48 fixed bytes plus two 4 character ids
+		assertThat(archivedBytes).isEqualTo(15 * (48 + 16));
+	}
+
+	private static long recordsSize(File file) {
+		try (RandomAccessFile segment = new RandomAccessFile(file, "r")) {
+			long total = 0;
+			int size;
+			while ((size = segment.readInt()) != 0) {
+				total += size;
+				segment.seek(total);
+			}
+			return total;
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.db.awmd.challenge.domain.AdmissionMetrics;
+import com.db.awmd.challenge.exception.TransferRejectedException;
+import com.db.awmd.challenge.service.TokenBucketLimiter;
+import com.db.awmd.challenge.service.TransferAdmission;
+
+public class TransferAdmissionTest {
+
+	@Test
+	public void bucketAllowsItsBurstThenRefillsAtItsRate() throws Exception {
+		TokenBucketLimiter limiter = new TokenBucketLimiter(20, 3);
+		for (int i = 0; i < 3; i++) {
+			assertThat(limiter.tryAcquire("Id-hot")).isZero();
+		}
+		long wait = limiter.tryAcquire("Id-hot");
+		assertThat(wait).isBetween(1L, TimeUnit.MILLISECONDS.toNanos(50));
+		assertThat(limiter.tryAcquire("Id-cold")).isZero();
+
+		TimeUnit.NANOSECONDS.sleep(wait);
+		assertThat(limiter.tryAcquire("Id-hot")).isZero();
+		assertThat(limiter.tryAcquire("Id-hot")).isPositive();
+	}
+
+	@Test
+	public void fullBucketsAreEvicted() throws Exception {
+		TokenBucketLimiter limiter = new TokenBucketLimiter(1000, 1);
+		limiter.tryAcquire("Id-1");
+		limiter.tryAcquire("Id-2");
+		assertThat(limiter.size()).isEqualTo(2);
+
+		Thread.sleep(5);
+		limiter.evictFull();
+		assertThat(limiter.size()).isZero();
+	}
+
+	@Test
+	public void aTransferRefusedByOneLimitTakesNothingFromTheOther() {
+		TransferAdmission admission = new TransferAdmission(1, 1, 1, 2, 0, 100);
+		admission.admit("Id-1", "client-a");
+		try {
+			admission.admit("Id-1", "client-a");
+			fail("Should have limited the account");
+		} catch (TransferRejectedException tre) {
+			assertThat(tre.getMessage()).isEqualTo("Id-1 account is over its transfer rate limit.");
+		}
+		admission.admit("Id-2", "client-a");
+		admission.shutdown();
+	}
+
+	@Test
+	public void accountAndClientLimitsAreCountedApart() {
+		TransferAdmission admission = new TransferAdmission(1, 2, 1, 2, 0, 100);
+		admission.admit("Id-1", "client-a");
+		admission.admit("Id-1", "client-b");
+		try {
+			admission.admit("Id-1", "client-c");
+			fail("Should have limited the account");
+		} catch (TransferRejectedException tre) {
+			assertThat(tre.getMessage()).isEqualTo("Id-1 account is over its transfer rate limit.");
+			assertThat(tre.getRetryAfterSeconds()).isEqualTo(1);
+		}
+		admission.admit("Id-2", "client-a");
+		try {
+			admission.admit("Id-3", "client-a");
+			fail("Should have limited the client");
+		} catch (TransferRejectedException tre) {
+			assertThat(tre.getMessage()).isEqualTo("Client client-a is over its transfer rate limit.");
+		}
+
+		AdmissionMetrics metrics = admission.getMetrics();
+		assertThat(metrics.getAdmitted()).isEqualTo(3);
+		assertThat(metrics.getRejectedByAccountLimit()).isEqualTo(1);
+		assertThat(metrics.getRejectedByClientLimit()).isEqualTo(1);
+		admission.shutdown();
+	}
+
+	@Test
+	public void shedsForAnIntervalOnceEvenTheQuickestTransferWasOverBudget() throws Exception {
+		TransferAdmission admission = new TransferAdmission(0, 0, 0, 0, 50, 20);
+		admission.admit("Id-1", "client-a");
+		admission.complete(TimeUnit.MILLISECONDS.toNanos(80));
+		admission.complete(TimeUnit.MILLISECONDS.toNanos(60));
+		Thread.sleep(25);
+
+		try {
+			admission.admit("Id-1", "client-a");
+			fail("Should have shed the transfer");
+		} catch (TransferRejectedException tre) {
+			assertThat(tre.getMessage()).isEqualTo("Transfers are waiting longer than 50 ms, try again shortly.");
+		}
+		assertThat(admission.getMetrics().isShedding()).isTrue();
+		assertThat(admission.getMetrics().getMinSojournMillis()).isEqualTo(60.0);
+
+		// Nothing completed while shedding, so the next interval lets transfers in again
+		Thread.sleep(25);
+		admission.admit("Id-1", "client-a");
+		admission.complete(TimeUnit.MILLISECONDS.toNanos(10));
+		admission.complete(TimeUnit.MILLISECONDS.toNanos(90));
+		Thread.sleep(25);
+		admission.admit("Id-1", "client-a");
+
+		AdmissionMetrics metrics = admission.getMetrics();
+		assertThat(metrics.isShedding()).isFalse();
+		assertThat(metrics.getShed()).isEqualTo(1);
+		assertThat(metrics.getAdmitted()).isEqualTo(3);
+	}
+}
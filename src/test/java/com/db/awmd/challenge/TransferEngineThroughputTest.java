@@ -0,0 +1,261 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InsufficientAmountException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryJournaled;
+import com.db.awmd.challenge.service.MonitorTransferEngine;
+import com.db.awmd.challenge.service.OptimisticTransferEngine;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+import com.db.awmd.challenge.service.StripedAccountLockManager;
+import com.db.awmd.challenge.service.StripedLockTransferEngine;
+import com.db.awmd.challenge.service.TransactionHistory;
+import com.db.awmd.challenge.service.TransferEngine;
+import com.db.awmd.challenge.service.TransferMetrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class TransferEngineThroughputTest {
+
+	private static final int ACCOUNTS = 16;
+	private static final int THREADS = 8;
+	private static final int TRANSFERS_PER_THREAD = 20_000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void monitorEngineConservesMoney() throws Exception {
+		AccountsRepository repository = new AccountsRepositoryInMemory();
+		runAndCompare("monitor", repository, new MonitorTransferEngine(repository));
+	}
+
+	@Test
+	public void stripedLockEngineConservesMoney() throws Exception {
+		AccountsRepository repository = new AccountsRepositoryInMemory();
+		StripedAccountLockManager lockManager = new StripedAccountLockManager(64, 0);
+		runAndCompare("striped", repository, new StripedLockTransferEngine(repository, lockManager));
+		assertThat(lockManager.getMetrics()).isNotEmpty();
+	}
+
+	@Test
+	public void shardedEngineConservesMoney() throws Exception {
+		AccountsRepository repository = new AccountsRepositoryInMemory();
+		ShardedTransferEngine engine = new ShardedTransferEngine(repository, 4, 1024);
+		try {
+			runAndCompare("sharded", repository, engine);
+		} finally {
+			engine.shutdown();
+		}
+	}
+
+	@Test
+	public void shardedEngineJournalsCrossShardTransfersWhole() throws Exception {
+		AccountsRepositoryJournaled repository = new AccountsRepositoryJournaled(folder.getRoot().getPath(),
+				1024 * 1024, 2, false);
+		ShardedTransferEngine engine = new ShardedTransferEngine(repository, 4, 1024);
+		try {
+			runAndCompare("sharded journaled", repository, engine);
+		} finally {
+			engine.shutdown();
+			repository.close();
+		}
+		// Replay sets balances from the records alone, so they must still add up
+		AccountsRepositoryJournaled reopened = new AccountsRepositoryJournaled(folder.getRoot().getPath(),
+				1024 * 1024, 2, false);
+		BigDecimal total = BigDecimal.ZERO;
+		for (int i = 0; i < ACCOUNTS; i++) {
+			total = total.add(reopened.getAccount("Id-" + i).getBalance());
+		}
+		reopened.close();
+		assertThat(total).isEqualByComparingTo(new BigDecimal(1000 * ACCOUNTS));
+	}
+
+	@Test
+	public void shardedEngineFinishesTransfersOfAnInterruptedCaller() {
+		AccountsRepository repository = new AccountsRepositoryInMemory();
+		ShardedTransferEngine engine = new ShardedTransferEngine(repository, 2, 16);
+		// Adjacent ids hash to different shards of two, so the transfer crosses shards
+		Account from = new Account("Id-1", new BigDecimal(100));
+		Account to = new Account("Id-2", new BigDecimal(100));
+		repository.createAccount(from);
+		repository.createAccount(to);
+		try {
+			Thread.currentThread().interrupt();
+			engine.transfer(from, to, 30, 0);
+			assertThat(Thread.interrupted()).isTrue();
+		} finally {
+			Thread.interrupted();
+			engine.shutdown();
+		}
+		assertThat(from.getBalance()).isEqualTo(new BigDecimal(70));
+		assertThat(to.getBalance()).isEqualTo(new BigDecimal(130));
+	}
+
+	@Test
+	public void shardedEngineRefusesTransfersOnceShutDown() {
+		AccountsRepository repository = new AccountsRepositoryInMemory();
+		ShardedTransferEngine engine = new ShardedTransferEngine(repository, 2, 16);
+		Account from = new Account("Id-1", new BigDecimal(100));
+		Account to = new Account("Id-2", new BigDecimal(100));
+		repository.createAccount(from);
+		repository.createAccount(to);
+		engine.transfer(from, to, 30, 0);
+		engine.shutdown();
+		try {
+			engine.transfer(from, to, 30, 0);
+			fail("Should have refused the transfer");
+		} catch (IllegalStateException ise) {
+			assertThat(ise.getMessage()).endsWith("is shut down");
+		}
+		try {
+			engine.executeExclusive(Arrays.asList(from, to), () -> null);
+			fail("Should have refused the batch");
+		} catch (IllegalStateException ise) {
+			assertThat(ise.getMessage()).endsWith("is shut down");
+		}
+		assertThat(from.getBalance()).isEqualTo(new BigDecimal(70));
+		assertThat(to.getBalance()).isEqualTo(new BigDecimal(130));
+	}
+
+	@Test
+	public void shardedAndOptimisticEnginesRecordLockWaitAndApply() throws Exception {
+		AccountsRepository shardedRepository = new AccountsRepositoryInMemory();
+		TransferMetrics shardedMetrics = new TransferMetrics(0);
+		ShardedTransferEngine sharded = new ShardedTransferEngine(shardedRepository, 4, 1024, shardedMetrics,
+				new TransactionHistory(0, "", 0));
+		try {
+			assertStagesRecorded(shardedRepository, sharded, shardedMetrics);
+		} finally {
+			sharded.shutdown();
+		}
+		AccountsRepository optimisticRepository = new AccountsRepositoryInMemory();
+		TransferMetrics optimisticMetrics = new TransferMetrics(0);
+		OptimisticTransferEngine optimistic = new OptimisticTransferEngine(optimisticRepository, 0, optimisticMetrics,
+				new TransactionHistory(0, "", 0));
+		assertStagesRecorded(optimisticRepository, optimistic, optimisticMetrics);
+	}
+
+	@Test
+	public void optimisticEngineConservesMoney() throws Exception {
+		AccountsRepository repository = new AccountsRepositoryInMemory();
+		OptimisticTransferEngine engine = new OptimisticTransferEngine(repository, 0);
+		runAndCompare("optimistic", repository, engine);
+		assertThat(engine.getMetrics().getTransfers()).isPositive();
+		log.info("optimistic engine: {}", engine.getMetrics());
+	}
+
+	@Test
+	public void optimisticEngineWaitsForExclusiveBatch() throws Exception {
+		AccountsRepository repository = new AccountsRepositoryInMemory();
+		OptimisticTransferEngine engine = new OptimisticTransferEngine(repository, 0);
+		Account one = new Account("Id-1", new BigDecimal(100));
+		Account two = new Account("Id-2", new BigDecimal(100));
+		repository.createAccount(one);
+		repository.createAccount(two);
+		CountDownLatch claimed = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread batch = new Thread(() -> engine.executeExclusive(Arrays.asList(one, two), () -> {
+			repository.debitAccount(one, 100, 0);
+			claimed.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			repository.creditAccount(one, 100, 0);
+			return null;
+		}));
+		batch.start();
+		claimed.await();
+		Thread transfer = new Thread(() -> engine.transfer(one, two, 50, 0));
+		transfer.start();
+		transfer.join(200);
+		assertThat(transfer.isAlive()).isTrue();
+		release.countDown();
+		transfer.join(5000);
+		batch.join(5000);
+		assertThat(one.getBalance()).isEqualTo(new BigDecimal(50));
+		assertThat(two.getBalance()).isEqualTo(new BigDecimal(150));
+		assertThat(engine.getMetrics().getExclusiveWaits()).isPositive();
+	}
+
+	// Transfers between every pair of ACCOUNTS, so a sharded engine sees same-shard and cross-shard ones
+	private static void assertStagesRecorded(AccountsRepository repository, TransferEngine engine,
+			TransferMetrics metrics) {
+		Account[] accounts = new Account[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accounts[i] = new Account("Id-" + i, new BigDecimal(1000));
+			repository.createAccount(accounts[i]);
+		}
+		int transfers = 0;
+		for (int i = 0; i < ACCOUNTS; i++) {
+			for (int j = 0; j < ACCOUNTS; j++) {
+				if (i != j) {
+					engine.transfer(accounts[i], accounts[j], 1, 0);
+					transfers++;
+				}
+			}
+		}
+		metrics.rollover();
+		assertThat(metrics.getReport().getLatencies().get("LOCK_WAIT").getCount()).isEqualTo(transfers);
+		assertThat(metrics.getReport().getLatencies().get("APPLY").getCount()).isEqualTo(transfers);
+	}
+
+	private void runAndCompare(String name, AccountsRepository repository, TransferEngine engine)
+			throws InterruptedException {
+		Account[] accounts = new Account[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accounts[i] = new Account("Id-" + i, new BigDecimal(1000));
+			repository.createAccount(accounts[i]);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch done = new CountDownLatch(THREADS);
+		long start = System.nanoTime();
+		for (int t = 0; t < THREADS; t++) {
+			final int seed = t;
+			executor.submit(() -> {
+				for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+					Account from = accounts[(seed + i) % ACCOUNTS];
+					Account to = accounts[(seed + i * 7 + 1) % ACCOUNTS];
+					if (from == to) {
+						continue;
+					}
+					try {
+						engine.transfer(from, to, 1, 0);
+					} catch (InsufficientAmountException iae) {
+						// expected once an account runs dry
+					}
+				}
+				done.countDown();
+			});
+		}
+		assertThat(done.await(60, TimeUnit.SECONDS)).isTrue();
+		long elapsed = System.nanoTime() - start;
+		executor.shutdown();
+
+		BigDecimal total = BigDecimal.ZERO;
+		for (Account account : accounts) {
+			total = total.add(repository.getAccount(account.getAccountId()).getBalance());
+		}
+		assertThat(total).isEqualByComparingTo(new BigDecimal(1000 * ACCOUNTS));
+		log.info("{} engine: {} transfers/s with {} threads", name,
+				(long) THREADS * TRANSFERS_PER_THREAD * 1_000_000_000L / elapsed, THREADS);
+	}
+}
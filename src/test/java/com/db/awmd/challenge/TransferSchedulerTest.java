@@ -0,0 +1,176 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BatchTransferRequest;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.ScheduledTransferRequest;
+import com.db.awmd.challenge.exception.ScheduledTransferNotFoundException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.ReplicationService;
+import com.db.awmd.challenge.service.TransferScheduler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "accounts.schedule.tick-ms=10", "accounts.schedule.spread-ms=50" })
+public class TransferSchedulerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Autowired
+	private AccountsService accountsService;
+
+	@Autowired
+	private ReplicationService replicationService;
+
+	@Autowired
+	private TransferScheduler transferScheduler;
+
+	@Before
+	public void createAccounts() {
+		this.accountsService.getAccountsRepository().clearAccounts();
+		this.accountsService.createAccount(new Account("Id-from", new BigDecimal("10")));
+		this.accountsService.createAccount(new Account("Id-to", new BigDecimal("0")));
+		this.accountsService.createAccount(new Account("Id-other", new BigDecimal("0")));
+	}
+
+	@Test
+	public void transferRunsAtItsInstantAndNotBefore() {
+		long executeAt = System.currentTimeMillis() + 300;
+		ScheduledTransfer scheduled = this.transferScheduler
+				.schedule(new ScheduledTransferRequest("Id-from", "Id-to", new BigDecimal("4"), executeAt, null));
+		assertThat(this.transferScheduler.getScheduledTransfer(scheduled.getScheduleId())).isEqualTo(scheduled);
+
+		await(() -> this.accountsService.getAccount("Id-to").getBalance().signum() > 0);
+
+		assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(executeAt);
+		assertThat(this.accountsService.getAccount("Id-from").getBalance()).isEqualByComparingTo("6");
+		await(() -> {
+			try {
+				this.transferScheduler.getScheduledTransfer(scheduled.getScheduleId());
+				return false;
+			} catch (ScheduledTransferNotFoundException stnfe) {
+				return true;
+			}
+		});
+	}
+
+	@Test
+	public void transfersDueTogetherRunInTheOrderTheyWereScheduled() {
+		long executeAt = System.currentTimeMillis() + 100;
+		this.transferScheduler
+				.schedule(new ScheduledTransferRequest("Id-from", "Id-to", new BigDecimal("10"), executeAt, null));
+		this.transferScheduler
+				.schedule(new ScheduledTransferRequest("Id-from", "Id-other", new BigDecimal("10"), executeAt, null));
+
+		await(() -> this.transferScheduler.getPending() == 0);
+
+		assertThat(this.accountsService.getAccount("Id-to").getBalance()).isEqualByComparingTo("10");
+		assertThat(this.accountsService.getAccount("Id-other").getBalance()).isEqualByComparingTo("0");
+	}
+
+	@Test
+	public void standingOrderRepeatsUntilCancelled() throws Exception {
+		ScheduledTransfer scheduled = this.transferScheduler.schedule(new ScheduledTransferRequest("Id-from", "Id-to",
+				new BigDecimal("1"), System.currentTimeMillis(), 1L));
+
+		await(() -> this.transferScheduler.getScheduledTransfer(scheduled.getScheduleId()).getExecuteAt() > scheduled
+				.getExecuteAt() + 1000);
+		assertThat(this.accountsService.getAccount("Id-to").getBalance()).isEqualByComparingTo("2");
+		this.transferScheduler.cancel(scheduled.getScheduleId());
+		Thread.sleep(1200);
+
+		assertThat(this.accountsService.getAccount("Id-to").getBalance()).isEqualByComparingTo("2");
+		try {
+			this.transferScheduler.cancel(scheduled.getScheduleId());
+			fail("Should have found the standing order cancelled");
+		} catch (ScheduledTransferNotFoundException stnfe) {
+			assertThat(stnfe.getMessage()).isEqualTo(scheduled.getScheduleId() + " scheduled transfer does not exist.");
+		}
+	}
+
+	@Test
+	public void schedulesSurviveARestart() throws Exception {
+		String directory = this.folder.getRoot().getPath();
+		TransferScheduler before = new TransferScheduler(this.accountsService, this.replicationService,
+				new ObjectMapper(), directory, 10, 100, 0);
+		ScheduledTransfer kept = before.schedule(new ScheduledTransferRequest("Id-from", "Id-to", new BigDecimal("3"),
+				System.currentTimeMillis() + 500, null));
+		ScheduledTransfer cancelled = before.schedule(new ScheduledTransferRequest("Id-from", "Id-other",
+				new BigDecimal("3"), System.currentTimeMillis() + 500, null));
+		before.cancel(cancelled.getScheduleId());
+		before.shutdown();
+
+		TransferScheduler after = new TransferScheduler(this.accountsService, this.replicationService,
+				new ObjectMapper(), directory, 10, 100, 0);
+		try {
+			assertThat(after.getPending()).isEqualTo(1);
+			assertThat(after.getScheduledTransfer(kept.getScheduleId())).isEqualTo(kept);
+			ScheduledTransfer next = after.schedule(new ScheduledTransferRequest("Id-from", "Id-other",
+					new BigDecimal("1"), System.currentTimeMillis() + 500, null));
+			assertThat(next.getSequence()).isGreaterThan(kept.getSequence());
+
+			await(() -> after.getPending() == 0);
+			assertThat(this.accountsService.getAccount("Id-to").getBalance()).isEqualByComparingTo("3");
+			assertThat(this.accountsService.getAccount("Id-other").getBalance()).isEqualByComparingTo("1");
+		} finally {
+			after.shutdown();
+		}
+	}
+
+	@Test
+	public void aRunRecordedBeforeItIsAppliedIsNotRepeatedAfterARestart() throws Exception {
+		String directory = this.folder.getRoot().getPath();
+		// Stands in for a crash after the run was recorded but before it was applied
+		AccountsService crashing = spy(this.accountsService);
+		doThrow(new IllegalStateException("Crashed")).when(crashing).transferBatch(any(BatchTransferRequest.class));
+		TransferScheduler before = new TransferScheduler(crashing, this.replicationService, new ObjectMapper(),
+				directory, 10, 100, 0);
+		before.schedule(new ScheduledTransferRequest("Id-from", "Id-to", new BigDecimal("3"),
+				System.currentTimeMillis(), null));
+		await(() -> before.getPending() == 0);
+		before.shutdown();
+
+		TransferScheduler after = new TransferScheduler(this.accountsService, this.replicationService,
+				new ObjectMapper(), directory, 10, 100, 0);
+		try {
+			assertThat(after.getPending()).isZero();
+			assertThat(before.getFailed()).isEqualTo(1);
+			assertThat(this.accountsService.getAccount("Id-to").getBalance()).isEqualByComparingTo("0");
+		} finally {
+			after.shutdown();
+		}
+	}
+
+	private static void await(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).as("condition met within 10 s").isLessThan(deadline);
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(ie);
+			}
+		}
+	}
+}